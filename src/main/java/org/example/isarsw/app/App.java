@@ -7,14 +7,44 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
+import org.example.isarsw.dao.ExportDao;
 import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
 import org.example.isarsw.service.ArrivalCheckService;
+import org.example.isarsw.service.DataExporter;
+import org.example.isarsw.service.FlightCache;
+import org.example.isarsw.service.FlightService;
+import org.example.isarsw.service.HistoryArchiver;
+import org.example.isarsw.service.HistoryWriter;
+import org.example.isarsw.service.ImportReport;
+import org.example.isarsw.service.ScheduleAuditReport;
+import org.example.isarsw.service.ScheduleAuditor;
+import org.example.isarsw.service.ScheduleReplay;
+import org.example.isarsw.service.TimetableImporter;
 
 import java.net.URL;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
 
 public class App extends Application {
 
+    // Период сверки кэша рейсов с БД (записи в обход приложения)
+    private static final long CACHE_RECONCILE_SECONDS = 60;
+    // Период переноса старой истории в архивы
+    private static final long HISTORY_ARCHIVE_HOURS = 24;
+    // Период снимков расписания: воспроизведение истории не длиннее этого отрезка
+    private static final long SCHEDULE_SNAPSHOT_HOURS = 6;
+    private static final DateTimeFormatter STATE_AT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
     private ArrivalCheckService arrivalCheckService;
+    private final HistoryArchiver historyArchiver = new HistoryArchiver();
+    private final ScheduleReplay scheduleReplay = new ScheduleReplay();
     private static Image appIcon; // ← Сохраняем иконку статически
 
     @Override
@@ -23,6 +53,11 @@ public class App extends Application {
             System.out.println("Инициализация базы данных...");
             DB.init();
             System.out.println("База данных успешно инициализирована");
+            FlightCache.shared().load();
+            FlightCache.shared().startReconciler(CACHE_RECONCILE_SECONDS);
+            HistoryWriter.shared().start();
+            historyArchiver.start(HISTORY_ARCHIVE_HOURS);
+            scheduleReplay.start(SCHEDULE_SNAPSHOT_HOURS);
         } catch (Exception e) {
             e.printStackTrace();
             Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -108,10 +143,59 @@ public class App extends Application {
         if (arrivalCheckService != null) {
             arrivalCheckService.stopChecking();
         }
+        FlightCache.shared().stopReconciler();
+        historyArchiver.stop();
+        scheduleReplay.stop();
+        System.out.println("Кэш рейсов: " + FlightCache.shared().getMetrics());
+        // Очередь журнала дописывается до закрытия пула соединений
+        HistoryWriter.shared().stop();
+        System.out.println("Журнал изменений: " + HistoryWriter.shared().getMetrics());
+        DB.shutdown();
         super.stop();
     }
 
     public static void main(String[] args) {
+        List<String> argList = Arrays.asList(args);
+        int importIdx = argList.indexOf("--import");
+        if (importIdx >= 0) {
+            // Импорт без интерфейса: java ... App --import файл.csv [--override]
+            if (importIdx + 1 >= args.length) {
+                System.err.println("Не указан файл для импорта: --import <файл.csv|файл.json>");
+                System.exit(2);
+            }
+            System.exit(runImport(Path.of(args[importIdx + 1]), argList.contains("--override")));
+        }
+
+        int exportIdx = argList.indexOf("--export");
+        if (exportIdx >= 0) {
+            // Выгрузка без интерфейса: java ... App --export flights|history файл.csv|.json|.ndjson[.gz]
+            if (exportIdx + 2 >= args.length) {
+                System.err.println("Использование: --export <flights|history> <файл.csv|.json|.ndjson[.gz]>");
+                System.exit(2);
+            }
+            System.exit(runExport(args[exportIdx + 1], Path.of(args[exportIdx + 2])));
+        }
+
+        if (argList.contains("--archive-history")) {
+            // Архивация истории без интерфейса (например, из планировщика ОС)
+            System.exit(runArchive());
+        }
+
+        int stateAtIdx = argList.indexOf("--state-at");
+        if (stateAtIdx >= 0) {
+            // Расписание на момент по истории: java ... App --state-at "2026-10-18 14:05"
+            if (stateAtIdx + 1 >= args.length) {
+                System.err.println("Не указан момент: --state-at \"ГГГГ-ММ-ДД ЧЧ:ММ\"");
+                System.exit(2);
+            }
+            System.exit(runStateAt(args[stateAtIdx + 1]));
+        }
+
+        if (argList.contains("--audit")) {
+            // Аудит без интерфейса: код выхода 0 — конфликтов нет, 3 — найдены, 1 — ошибка
+            System.exit(runAudit());
+        }
+
         if (args.length > 0 && args[0].equals("--recreate-db")) {
             try {
                 System.out.println("Принудительное пересоздание таблиц...");
@@ -123,4 +207,114 @@ public class App extends Application {
         }
         launch(args);
     }
+
+    private static int runImport(Path file, boolean overrideConflicts) {
+        try {
+            DB.init();
+            System.out.println("Импорт расписания из " + file + "...");
+            ImportReport report = new TimetableImporter(new FlightService()).importFile(file, overrideConflicts);
+            System.out.println("Импорт завершён: " + report);
+            List<ImportReport.Rejection> rejections = report.getRejections();
+            for (int i = 0; i < Math.min(20, rejections.size()); i++) {
+                System.out.println("  " + rejections.get(i));
+            }
+            if (report.getRejected() > 20) {
+                System.out.println("  ... и ещё " + (report.getRejected() - 20));
+            }
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Ошибка импорта: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        } finally {
+            DB.shutdown();
+        }
+    }
+
+    private static int runAudit() {
+        try {
+            DB.init();
+            System.out.println("Аудит расписания...");
+            ScheduleAuditReport report = new ScheduleAuditor().audit();
+            System.out.println("Аудит завершён: " + report);
+            List<ScheduleAuditReport.Conflict> conflicts = report.getConflicts();
+            for (int i = 0; i < Math.min(20, conflicts.size()); i++) {
+                System.out.println("  " + conflicts.get(i));
+            }
+            if (report.getTotalConflicts() > 20) {
+                System.out.println("  ... и ещё " + (report.getTotalConflicts() - 20));
+            }
+            return report.isClean() ? 0 : 3;
+        } catch (Exception e) {
+            System.err.println("Ошибка аудита: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        } finally {
+            DB.shutdown();
+        }
+    }
+
+    private static int runArchive() {
+        try {
+            DB.init();
+            HistoryArchiver archiver = new HistoryArchiver();
+            System.out.println("Архивация истории, политика: " + archiver.policy());
+            System.out.println("Архивация завершена: " + archiver.run());
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Ошибка архивации: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        } finally {
+            DB.shutdown();
+        }
+    }
+
+    private static int runStateAt(String moment) {
+        long ts;
+        try {
+            ts = LocalDateTime.parse(moment.trim(), STATE_AT_FORMAT).atZone(ZoneId.systemDefault()).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            System.err.println("Некорректный момент \"" + moment + "\", ожидается ГГГГ-ММ-ДД ЧЧ:ММ");
+            return 2;
+        }
+        try {
+            DB.init();
+            ScheduleReplay.State state = new ScheduleReplay().scheduleAt(ts);
+            System.out.println("Расписание на " + moment + ": " + state);
+            DateTimeFormatter time = DateTimeFormatter.ofPattern("dd.MM HH:mm").withZone(ZoneId.systemDefault());
+            for (FlightRecord f : state.flights()) {
+                System.out.println(String.format("  %-10s %-30s пл. %-4s %s-%s %s", f.number(), f.route(), f.platform(),
+                        time.format(Instant.ofEpochSecond(f.arriveTs())), time.format(Instant.ofEpochSecond(f.departureTs())),
+                        f.status().label()));
+            }
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Ошибка восстановления расписания: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        } finally {
+            DB.shutdown();
+        }
+    }
+
+    private static int runExport(String tableName, Path file) {
+        try {
+            ExportDao.Table table = ExportDao.Table.fromName(tableName);
+            DB.init();
+            System.out.println("Выгрузка " + tableName + " в " + file + "...");
+            long started = System.nanoTime();
+            long rows = new DataExporter().export(table, file);
+            long ms = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+            System.out.println("Выгрузка завершена: строк " + rows + ", время: " + ms + " мс" +
+                    String.format(" (%.0f строк/с)", rows * 1000.0 / ms));
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Ошибка выгрузки: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        } finally {
+            DB.shutdown();
+        }
+    }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
 import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
 import org.example.isarsw.service.FlightService;
 
 import java.time.Instant;
@@ -52,8 +53,8 @@ public class ArrivalCheckController {
         });
     }
 
-    public void setFlight(Flight flight) {
-        this.flight = flight;
+    public void setFlight(FlightRecord flight) {
+        this.flight = Flight.from(flight);
         updateFlightInfo();
     }
 
@@ -163,23 +164,23 @@ public class ArrivalCheckController {
             lblCurrentStatus.getStyleClass().clear();
             lblCurrentStatus.getStyleClass().add("info-label-bold");
 
-            switch (currentStatus) {
-                case FlightService.STATUS_PLANNED:
+            switch (flight.getFlightStatus()) {
+                case PLANNED:
                     lblCurrentStatus.getStyleClass().add("status-planned");
                     break;
-                case FlightService.STATUS_EN_ROUTE:
+                case EN_ROUTE:
                     lblCurrentStatus.getStyleClass().add("status-en-route");
                     break;
-                case FlightService.STATUS_BOARDING:
+                case BOARDING:
                     lblCurrentStatus.getStyleClass().add("status-boarding");
                     break;
-                case FlightService.STATUS_DELAYED:
+                case DELAYED:
                     lblCurrentStatus.getStyleClass().add("status-delayed");
                     break;
-                case FlightService.STATUS_CANCELLED:
+                case CANCELLED:
                     lblCurrentStatus.getStyleClass().add("status-cancelled");
                     break;
-                case FlightService.STATUS_DEPARTED:
+                case DEPARTED:
                     lblCurrentStatus.getStyleClass().add("status-departed");
                     break;
             }
@@ -0,0 +1,202 @@
+package org.example.isarsw.controller;
+
+import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+import javafx.stage.Stage;
+import org.example.isarsw.dao.HistoryDao;
+import org.example.isarsw.model.AuditFilter;
+import org.example.isarsw.model.HistoryEntry;
+import org.example.isarsw.service.FlightService;
+import org.example.isarsw.service.HistoryWriter;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.example.isarsw.util.CommonUtils.showAlert;
+
+// Журнал изменений всех рейсов. В таблице — скользящее окно не больше MAX_ROWS записей:
+// при прокрутке к нижней строке догружается страница более старых записей, к верхней —
+// более новых, а лишние строки с противоположного края отбрасываются. Страницы
+// выбираются по ключу (timestamp, id), поэтому память и время страницы постоянны
+// при любом размере журнала.
+public class AuditLogController {
+
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_ROWS = 1000;
+    private static final long HISTORY_FLUSH_WAIT_MILLIS = 1000;
+    private static final String ALL = "Все";
+
+    @FXML private TableView<HistoryEntry> auditTable;
+    @FXML private TableColumn<HistoryEntry, String> colTimestamp;
+    @FXML private TableColumn<HistoryEntry, String> colFlight;
+    @FXML private TableColumn<HistoryEntry, String> colActor;
+    @FXML private TableColumn<HistoryEntry, String> colAction;
+    @FXML private TableColumn<HistoryEntry, String> colBefore;
+    @FXML private TableColumn<HistoryEntry, String> colAfter;
+    @FXML private ChoiceBox<String> cbActor;
+    @FXML private ChoiceBox<String> cbAction;
+    @FXML private DatePicker dpFrom;
+    @FXML private DatePicker dpTo;
+    @FXML private Label lblInfo;
+
+    private final HistoryDao historyDao = new HistoryDao();
+    private final DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private AuditFilter filter = AuditFilter.NONE;
+    // Есть ли записи за краями окна
+    private boolean hasOlder;
+    private boolean hasNewer;
+
+    @FXML
+    private void initialize() {
+        colTimestamp.setCellValueFactory(c -> new SimpleStringProperty(fmt.format(Instant.ofEpochSecond(c.getValue().getTimestamp()))));
+        colFlight.setCellValueFactory(c -> new SimpleStringProperty(String.valueOf(c.getValue().getFlightId())));
+        colActor.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().getActor()));
+        colAction.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().getAction()));
+        colBefore.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().getPayloadBefore() == null ? "" : c.getValue().getPayloadBefore()));
+        colAfter.setCellValueFactory(c -> new SimpleStringProperty(c.getValue().getPayloadAfter() == null ? "" : c.getValue().getPayloadAfter()));
+
+        cbActor.getItems().addAll(ALL, FlightService.ACTOR_ADMIN, FlightService.ACTOR_SYSTEM, FlightService.ACTOR_IMPORT);
+        cbActor.setValue(ALL);
+        cbAction.getItems().addAll(ALL, "CREATE", "UPDATE", "DELETE", "STATUS_MANUAL", "STATUS_AUTO");
+        cbAction.setValue(ALL);
+
+        // Строки создаются только для видимой части таблицы: отрисовка крайней строки окна
+        // означает, что пользователь докрутил до края
+        auditTable.setRowFactory(tv -> new TableRow<>() {
+            @Override
+            protected void updateItem(HistoryEntry item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) return;
+                int last = getTableView().getItems().size() - 1;
+                if (getIndex() == last && hasOlder) {
+                    Platform.runLater(() -> loadOlder(item));
+                } else if (getIndex() == 0 && hasNewer) {
+                    Platform.runLater(() -> loadNewer(item));
+                }
+            }
+        });
+
+        awaitHistory();
+        loadFirst();
+    }
+
+    // Последние изменения могут ещё ждать в очереди журнала
+    private static void awaitHistory() {
+        try {
+            HistoryWriter.shared().awaitFlushed(HISTORY_FLUSH_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---------- ЗАГРУЗКА ----------
+
+    private void loadFirst() {
+        try {
+            long started = System.nanoTime();
+            List<HistoryEntry> page = historyDao.findAuditPageBefore(filter, HistoryDao.NEWEST_TS, HistoryDao.NEWEST_ID, PAGE_SIZE);
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            hasOlder = page.size() == PAGE_SIZE;
+            hasNewer = false;
+            auditTable.getItems().setAll(page);
+            if (!page.isEmpty()) auditTable.scrollTo(0);
+            lblInfo.setText(page.isEmpty()
+                    ? "Записей не найдено"
+                    : "Первая страница загружена за " + millis + " мс" + (hasOlder ? ", прокрутите вниз для более ранних" : ""));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            showAlert("Ошибка загрузки журнала", "Не удалось прочитать журнал изменений: " + e.getMessage());
+        }
+    }
+
+    // Повторный вызов для той же крайней строки ничего не делает: окно уже сдвинуто
+    private void loadOlder(HistoryEntry last) {
+        ObservableList<HistoryEntry> items = auditTable.getItems();
+        if (!hasOlder || items.isEmpty() || items.get(items.size() - 1) != last) return;
+        try {
+            List<HistoryEntry> page = historyDao.findAuditPageBefore(filter, last.getTimestamp(), last.getId(), PAGE_SIZE);
+            hasOlder = page.size() == PAGE_SIZE;
+            items.addAll(page);
+            int excess = items.size() - MAX_ROWS;
+            if (excess > 0) {
+                items.remove(0, excess);
+                hasNewer = true;
+                auditTable.scrollTo(items.size() - page.size() - 1);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            hasOlder = false;
+        }
+    }
+
+    private void loadNewer(HistoryEntry first) {
+        ObservableList<HistoryEntry> items = auditTable.getItems();
+        if (!hasNewer || items.isEmpty() || items.get(0) != first) return;
+        try {
+            List<HistoryEntry> page = historyDao.findAuditPageAfter(filter, first.getTimestamp(), first.getId(), PAGE_SIZE);
+            hasNewer = page.size() == PAGE_SIZE;
+            items.addAll(0, page);
+            int excess = items.size() - MAX_ROWS;
+            if (excess > 0) {
+                items.remove(MAX_ROWS, items.size());
+                hasOlder = true;
+            }
+            auditTable.scrollTo(page.size());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            hasNewer = false;
+        }
+    }
+
+    // ---------- ФИЛЬТРЫ ----------
+
+    @FXML
+    private void onApply() {
+        LocalDate from = dpFrom.getValue();
+        LocalDate to = dpTo.getValue();
+        Long fromTs = from == null ? null : from.atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        Long toTs = to == null ? null : to.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toEpochSecond() - 1;
+        try {
+            filter = new AuditFilter(valueOrNull(cbActor), valueOrNull(cbAction), fromTs, toTs);
+        } catch (IllegalArgumentException e) {
+            showAlert("Некорректный период", e.getMessage());
+            return;
+        }
+        loadFirst();
+    }
+
+    @FXML
+    private void onReset() {
+        cbActor.setValue(ALL);
+        cbAction.setValue(ALL);
+        dpFrom.setValue(null);
+        dpTo.setValue(null);
+        filter = AuditFilter.NONE;
+        loadFirst();
+    }
+
+    @FXML
+    private void onRefresh() {
+        awaitHistory();
+        loadFirst();
+    }
+
+    private static String valueOrNull(ChoiceBox<String> box) {
+        String v = box.getValue();
+        return v == null || ALL.equals(v) ? null : v;
+    }
+
+    @FXML
+    private void onClose() {
+        Stage st = (Stage) auditTable.getScene().getWindow();
+        st.close();
+    }
+}
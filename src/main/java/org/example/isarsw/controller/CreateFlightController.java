@@ -6,11 +6,15 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
-import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
 import org.example.isarsw.service.FlightService;
+import org.example.isarsw.service.PlatformAllocator;
+import org.example.isarsw.util.CommonUtils;
 
 import java.io.IOException;
 import java.time.*;
+import java.util.List;
 
 public class CreateFlightController {
 
@@ -21,12 +25,14 @@ public class CreateFlightController {
     @FXML private DatePicker dpArrive;
     @FXML private ChoiceBox<String> cbStatus;
     @FXML private Label lblDepartureTime;
+    @FXML private Label lblConflict;
     @FXML private HBox arriveTime;
     @FXML private HBox standingTimeBox;
 
     private TimePickerController arriveTimeController;
     private TimePickerForMinutesController standingTimeController;
     private final FlightService flightService = new FlightService();
+    private final PlatformAllocator platformAllocator = new PlatformAllocator();
 
     @FXML
     private void initialize() {
@@ -62,6 +68,7 @@ public class CreateFlightController {
 
     private void setupChangeListeners() {
         dpArrive.valueProperty().addListener((obs, oldVal, newVal) -> calculateDepartureTime());
+        tfPlatform.textProperty().addListener((obs, oldVal, newVal) -> updateConflictPreview());
 
         // Более безопасная проверка
         if (arriveTimeController != null) {
@@ -94,6 +101,27 @@ public class CreateFlightController {
         } catch (Exception e) {
             lblDepartureTime.setText("--:--");
         }
+        updateConflictPreview();
+    }
+
+    // Предварительная проверка конфликтов по индексу занятости платформ (без запроса к БД)
+    private void updateConflictPreview() {
+        String platform = tfPlatform.getText() == null ? "" : tfPlatform.getText().trim();
+        if (platform.isEmpty() || dpArrive.getValue() == null
+                || arriveTimeController == null || standingTimeController == null) {
+            lblConflict.setText("");
+            return;
+        }
+        try {
+            long arriveTs = LocalDateTime.of(dpArrive.getValue(), arriveTimeController.getValue())
+                    .atZone(ZoneId.systemDefault()).toEpochSecond();
+            CommonUtils.ConflictPreview preview = CommonUtils.conflictPreview(flightService, platformAllocator,
+                    platform, arriveTs, standingTimeController.getValue(), null);
+            lblConflict.setStyle(preview.style());
+            lblConflict.setText(preview.text());
+        } catch (Exception e) {
+            lblConflict.setText("");
+        }
     }
 
     @FXML
@@ -127,20 +155,39 @@ public class CreateFlightController {
             long arriveTs = LocalDateTime.of(dpArrive.getValue(), ltArr)
                     .atZone(ZoneId.systemDefault()).toEpochSecond();
 
-            Flight f = new Flight(num, route, arriveTs, standingTime, platform, cbStatus.getValue());
+            FlightRecord f = FlightRecord.draft(num, route, arriveTs, standingTime, platform,
+                    FlightStatus.fromLabel(cbStatus.getValue()));
 
             try {
                 flightService.addFlight(f, false);
                 close();
             } catch (IllegalStateException e) {
+                // Лучшая свободная платформа предлагается отдельной кнопкой
+                List<PlatformAllocator.Suggestion> free = platformAllocator.suggest(arriveTs, standingTime, null, 1);
+                ButtonType moveTo = free.isEmpty() ? null
+                        : new ButtonType("На платформу " + free.get(0).platform(), ButtonBar.ButtonData.OTHER);
+
                 Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
                 alert.setTitle("Конфликт расписания");
                 alert.setHeaderText("Обнаружен конфликт по времени или платформе");
-                alert.setContentText(e.getMessage() + "\n\nХотите сохранить несмотря на конфликт?");
+                alert.setContentText(e.getMessage() + "\n\nХотите сохранить несмотря на конфликт?" +
+                        (free.isEmpty() ? "" : "\nСвободная " + free.get(0) + "."));
+                if (moveTo != null) alert.getButtonTypes().add(0, moveTo);
 
-                if (alert.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.OK) {
+                ButtonType choice = alert.showAndWait().orElse(ButtonType.CANCEL);
+                if (choice == ButtonType.OK) {
                     flightService.addFlight(f, true);
                     close();
+                } else if (choice == moveTo) {
+                    FlightRecord moved = f.withPlatform(free.get(0).platform());
+                    try {
+                        flightService.addFlight(moved, false);
+                        close();
+                    } catch (IllegalStateException moveConflict) {
+                        // Платформу заняли, пока открыт диалог — форма остаётся открытой
+                        showAlert("Конфликт расписания", "Платформа " + moved.platform() +
+                                " уже занята:\n" + moveConflict.getMessage());
+                    }
                 }
             }
 
@@ -6,7 +6,9 @@ import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
 import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
 import org.example.isarsw.service.FlightService;
+import org.example.isarsw.service.PlatformAllocator;
 import org.example.isarsw.util.CommonUtils;
 
 import java.io.IOException;
@@ -26,12 +28,14 @@ public class EditFlightController {
     @FXML private DatePicker dpArrive;
     @FXML private ChoiceBox<String> cbStatus;
     @FXML private Label lblDepartureTime;
+    @FXML private Label lblConflict;
     @FXML private HBox arriveTime;
     @FXML private HBox standingTimeBox;
 
     private TimePickerController arriveTimeController;
     private TimePickerForMinutesController standingTimeController;
     private final FlightService flightService = new FlightService();
+    private final PlatformAllocator platformAllocator = new PlatformAllocator();
     private Flight editing;
 
     @FXML
@@ -69,6 +73,7 @@ public class EditFlightController {
 
     private void setupChangeListeners() {
         dpArrive.valueProperty().addListener((obs, oldVal, newVal) -> calculateDepartureTime());
+        tfPlatform.textProperty().addListener((obs, oldVal, newVal) -> updateConflictPreview());
 
         if (arriveTimeController != null) {
             if (arriveTimeController.cbHour != null) {
@@ -101,14 +106,34 @@ public class EditFlightController {
         } catch (Exception e) {
             lblDepartureTime.setText("--:--");
         }
+        updateConflictPreview();
+    }
+
+    // Предварительная проверка конфликтов по индексу занятости платформ (без запроса к БД)
+    private void updateConflictPreview() {
+        String platform = tfPlatform.getText() == null ? "" : tfPlatform.getText().trim();
+        if (platform.isEmpty() || dpArrive.getValue() == null
+                || arriveTimeController == null || standingTimeController == null || editing == null) {
+            lblConflict.setText("");
+            return;
+        }
+        try {
+            long arriveTs = LocalDateTime.of(dpArrive.getValue(), arriveTimeController.getValue())
+                    .atZone(ZoneId.systemDefault()).toEpochSecond();
+            CommonUtils.ConflictPreview preview = CommonUtils.conflictPreview(flightService, platformAllocator,
+                    platform, arriveTs, standingTimeController.getValue(), editing.getId());
+            lblConflict.setStyle(preview.style());
+            lblConflict.setText(preview.text());
+        } catch (Exception e) {
+            lblConflict.setText("");
+        }
     }
 
     private void loadFlight(long flightId) {
         try {
-            Optional<Flight> opt = flightService.listAll().stream()
-                    .filter(f -> f.getId().equals(flightId)).findFirst();
+            Optional<FlightRecord> opt = flightService.findById(flightId);
             if (opt.isPresent()) {
-                editing = opt.get();
+                editing = Flight.from(opt.get());
                 bindToForm(editing);
             } else {
                 CommonUtils.showAlert("Ошибка", "Рейс не найден");
@@ -171,12 +196,12 @@ public class EditFlightController {
             editing.setStatus(cbStatus.getValue());
 
             try {
-                flightService.updateFlight(editing, false);
+                flightService.updateFlight(editing.toRecord(), false);
                 closeWindow();
             } catch (IllegalStateException conflictEx) {
-                boolean ok = confirmOverride("Обнаружен конфликт по времени/платформе. Сохранить несмотря на это?");
+                boolean ok = confirmOverride(conflictEx.getMessage() + "\nСохранить несмотря на это?");
                 if (ok) {
-                    flightService.updateFlight(editing, true);
+                    flightService.updateFlight(editing.toRecord(), true);
                     closeWindow();
                 }
             }
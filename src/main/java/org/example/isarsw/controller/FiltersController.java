@@ -5,12 +5,11 @@ import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.DatePicker;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
-import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightFilter;
 import org.example.isarsw.service.FlightService;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.util.function.Predicate;
 
 public class FiltersController {
 
@@ -46,39 +45,19 @@ public class FiltersController {
         LocalDate to = dpTo.getValue();
         String platform = tfPlatform.getText().trim();
 
-        Predicate<Flight> predicate = flight -> {
-            // Фильтр по статусу
-            if (status != null && !status.isEmpty()) {
-                if (!status.equals(flight.getStatus())) return false;
-            }
-
-            // Фильтр по платформе
-            if (platform != null && !platform.isEmpty()) {
-                if (!flight.getPlatform().toLowerCase().contains(platform.toLowerCase())) return false;
-            }
-
-            // Фильтр по дате прибытия (от)
-            if (from != null) {
-                long fromEpoch = from
-                        .atStartOfDay(ZoneId.systemDefault())
-                        .toEpochSecond();
-                if (flight.getArriveTs() < fromEpoch) return false;
-            }
-
-            // Фильтр по дате прибытия (до)
-            if (to != null) {
-                long toEpoch = to
-                        .plusDays(1)
-                        .atStartOfDay(ZoneId.systemDefault())
-                        .toEpochSecond() - 1;
-                if (flight.getArriveTs() > toEpoch) return false;
-            }
-
-            return true;
-        };
+        // Фильтр выполняется в БД, поэтому передаём условия, а не предикат
+        Long fromEpoch = from == null ? null : from
+                .atStartOfDay(ZoneId.systemDefault())
+                .toEpochSecond();
+        Long toEpoch = to == null ? null : to
+                .plusDays(1)
+                .atStartOfDay(ZoneId.systemDefault())
+                .toEpochSecond() - 1;
+
+        FlightFilter filter = new FlightFilter(status, platform, fromEpoch, toEpoch, null);
 
         if (mainController != null) {
-            mainController.setFilterPredicate(predicate);
+            mainController.setFilter(filter);
         }
 
         closeWindow();
@@ -92,7 +71,7 @@ public class FiltersController {
         tfPlatform.clear();
 
         if (mainController != null) {
-            mainController.setFilterPredicate(f -> true);
+            mainController.setFilter(FlightFilter.NONE);
         }
     }
 
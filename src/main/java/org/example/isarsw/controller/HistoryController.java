@@ -5,6 +5,7 @@ import javafx.scene.control.*;
 import javafx.stage.Stage;
 import org.example.isarsw.dao.HistoryDao;
 import org.example.isarsw.model.HistoryEntry;
+import org.example.isarsw.service.HistoryWriter;
 
 import java.time.Instant;
 import java.time.ZoneId;
@@ -23,6 +24,8 @@ public class HistoryController {
     @FXML private TableColumn<HistoryEntry, String> colAfter;
     @FXML private Label lblFlightInfo;
 
+    private static final long HISTORY_FLUSH_WAIT_MILLIS = 1000;
+
     private final HistoryDao historyDao = new HistoryDao();
     private final DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss").withZone(ZoneId.systemDefault());
 
@@ -40,6 +43,8 @@ public class HistoryController {
     private void loadHistory() {
         if (currentFlightId == null) return;
         try {
+            // Последние изменения могут ещё ждать в очереди журнала
+            HistoryWriter.shared().awaitFlushed(HISTORY_FLUSH_WAIT_MILLIS);
             List<HistoryEntry> list = historyDao.listByFlight(currentFlightId);
             historyTable.getItems().setAll(list);
 
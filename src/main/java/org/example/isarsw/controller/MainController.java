@@ -1,10 +1,9 @@
 package org.example.isarsw.controller;
 
 import javafx.application.Platform;
-import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.binding.Bindings;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -18,17 +17,26 @@ import javafx.stage.Screen;
 import javafx.stage.Stage;
 import org.example.isarsw.app.App;
 import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightFilter;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.example.isarsw.service.FlightChanges;
+import org.example.isarsw.service.FlightPage;
 import org.example.isarsw.service.FlightService;
+import org.example.isarsw.service.PlatformAllocator;
+import org.example.isarsw.service.ScheduleAuditReport;
+import org.example.isarsw.service.ScheduleAuditor;
 import org.example.isarsw.service.StatusScheduler;
 import org.example.isarsw.util.CommonUtils;
+import org.example.isarsw.util.FlightListReconciler;
 
 import java.io.IOException;
 import java.net.URL;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.List;
-import java.util.Optional;
-import java.util.function.Predicate;
 
 import static org.example.isarsw.util.CommonUtils.showAlert;
 
@@ -45,16 +53,27 @@ public class MainController {
     @FXML private TableColumn<Flight, String> colDeparture;
     @FXML private TableColumn<Flight, String> colStatus;
     @FXML private Label lblStatus;
+    @FXML private Label lblPage;
+    @FXML private Button btnPrevPage;
+    @FXML private Button btnNextPage;
     @FXML private TextField searchField;
     @FXML private BorderPane mainPane;
 
     // ---------- DATA ----------
+    // В таблице только текущее окно расписания (PAGE_SIZE рейсов по ключу arrive_ts, id).
+    // Фильтры и поиск выполняются в SQL, сортировка по колонкам — внутри окна.
+    private static final int PAGE_SIZE = 100;
+
     private final FlightService flightService = new FlightService();
-    private final StatusScheduler statusScheduler = new StatusScheduler(5);
+    private final StatusScheduler statusScheduler = new StatusScheduler();
     private final ObservableList<Flight> masterData = FXCollections.observableArrayList();
-    private FilteredList<Flight> filteredData;
     private SortedList<Flight> sortedData;
-    private Predicate<Flight> externalFilter = f -> true;
+
+    // Меняются только в потоке JavaFX; поток обновления читает снимок
+    private volatile FlightPage page;
+    private volatile FlightFilter filter = FlightFilter.NONE;
+    private volatile FlightChanges feedMark;
+    private FlightFilter dialogFilter = FlightFilter.NONE;
 
     // ---------- INIT ----------
     @FXML
@@ -68,8 +87,6 @@ public class MainController {
         // Обновляем статус при изменении данных
         masterData.addListener((javafx.collections.ListChangeListener.Change<? extends Flight> change) ->
                 updateStatusLabel());
-        filteredData.addListener((javafx.collections.ListChangeListener.Change<? extends Flight> change) ->
-                updateStatusLabel());
 
         // Назначаем контекстное меню
         flightsTable.setOnContextMenuRequested(event -> onTableRightClick());
@@ -90,13 +107,17 @@ public class MainController {
 
         // Колонка прибытия
         if (colArrive != null) {
-            colArrive.setCellValueFactory(c -> new SimpleObjectProperty<>(formatTime(c.getValue().getArriveTs())));
+            // Привязка к свойствам: рейс обновляется на месте, и ячейка должна это увидеть
+            colArrive.setCellValueFactory(c -> Bindings.createStringBinding(
+                    () -> formatTime(c.getValue().getArriveTs()), c.getValue().arriveTsProperty()));
             colArrive.setCellFactory(col -> createStyledTableCell());
         }
 
         // Колонка отправления
         if (colDeparture != null) {
-            colDeparture.setCellValueFactory(c -> new SimpleObjectProperty<>(formatDepartureTime(c.getValue())));
+            colDeparture.setCellValueFactory(c -> Bindings.createStringBinding(
+                    () -> formatDepartureTime(c.getValue()),
+                    c.getValue().arriveTsProperty(), c.getValue().standingTimeProperty()));
             colDeparture.setCellFactory(col -> createStyledTableCell());
         }
 
@@ -113,7 +134,7 @@ public class MainController {
                         setTooltip(null);
                     } else {
                         setText(status);
-                        setStyle(getStatusStyle(status));
+                        setStyle(getStatusStyle(FlightStatus.find(status)));
                         setTooltip(new Tooltip(FlightService.getStatusDescription(status)));
                     }
                 }
@@ -132,21 +153,22 @@ public class MainController {
         };
     }
 
-    private String getStatusStyle(String status) {
+    private String getStatusStyle(FlightStatus status) {
         String baseStyle = "-fx-font-size: 14px; -fx-font-weight: bold;";
 
+        if (status == null) return baseStyle;
         switch (status) {
-            case FlightService.STATUS_PLANNED:
+            case PLANNED:
                 return baseStyle + " -fx-text-fill: #2196F3;";
-            case FlightService.STATUS_EN_ROUTE:
+            case EN_ROUTE:
                 return baseStyle + " -fx-text-fill: #673AB7;";
-            case FlightService.STATUS_BOARDING:
+            case BOARDING:
                 return baseStyle + " -fx-text-fill: #4CAF50;";
-            case FlightService.STATUS_DELAYED:
+            case DELAYED:
                 return baseStyle + " -fx-text-fill: #FF5722;";
-            case FlightService.STATUS_CANCELLED:
+            case CANCELLED:
                 return baseStyle + " -fx-text-fill: #F44336; -fx-strikethrough: true;";
-            case FlightService.STATUS_DEPARTED:
+            case DEPARTED:
                 return baseStyle + " -fx-text-fill: #34495e;";
             default:
                 return baseStyle;
@@ -154,15 +176,26 @@ public class MainController {
     }
 
     private void setupDataFiltering() {
-        filteredData = new FilteredList<>(masterData, f -> true);
-        sortedData = new SortedList<>(filteredData);
+        sortedData = new SortedList<>(masterData);
         sortedData.comparatorProperty().bind(flightsTable.comparatorProperty());
         flightsTable.setItems(sortedData);
     }
 
     private void updateStatusLabel() {
         if (lblStatus != null) {
-            lblStatus.setText(String.valueOf(filteredData.size()));
+            lblStatus.setText(String.valueOf(masterData.size()));
+        }
+    }
+
+    private void updatePager() {
+        FlightPage p = page;
+        if (p == null) return;
+        if (btnPrevPage != null) btnPrevPage.setDisable(!p.hasPrevious());
+        if (btnNextPage != null) btnNextPage.setDisable(!p.hasNext());
+        if (lblPage != null) {
+            List<FlightRecord> items = p.items();
+            lblPage.setText(items.isEmpty() ? "нет поездов"
+                    : formatTime(items.get(0).arriveTs()) + " — " + formatTime(items.get(items.size() - 1).arriveTs()));
         }
     }
 
@@ -183,12 +216,27 @@ public class MainController {
         Thread t = new Thread(() -> {
             while (true) {
                 try {
-                    List<Flight> fresh = flightService.listAll();
-                    Platform.runLater(() -> {
-                        sync(masterData, fresh);
-                        updateStatusLabel();
-                    });
+                    // Читаем только изменения с прошлого цикла, а не всё окно
+                    FlightPage current = page;
+                    FlightFilter currentFilter = filter;
+                    FlightChanges since = feedMark;
+                    if (current != null && since != null) {
+                        FlightChanges delta = flightService.changesSince(since);
+                        Platform.runLater(() -> {
+                            // Пока шёл запрос, пользователь мог перейти на другое окно
+                            if (page != current || filter != currentFilter || feedMark != since) return;
+                            feedMark = delta;
+                            if (!delta.isEmpty()) {
+                                // Рейс остаётся в окне, если проходит фильтр и его ключ в границах окна
+                                FlightListReconciler.applyChanges(masterData, delta.changed(), delta.deletedIds(),
+                                        f -> currentFilter.test(f) && current.covers(f.arriveTs(), f.id()));
+                                updateStatusLabel();
+                            }
+                        });
+                    }
                     Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    return;
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
@@ -198,48 +246,72 @@ public class MainController {
         t.start();
     }
 
-    private void sync(ObservableList<Flight> target, List<Flight> fresh) {
-        target.removeIf(old -> fresh.stream().noneMatch(f -> f.getId().equals(old.getId())));
-        for (Flight f : fresh) {
-            int idx = -1;
-            for (int i = 0; i < target.size(); i++) {
-                if (target.get(i).getId().equals(f.getId())) {
-                    idx = i;
-                    break;
-                }
-            }
-            if (idx == -1) target.add(f);
-            else target.set(idx, f);
+    // Перечитывает текущее окно; при первом запуске — окно с начала текущих суток
+    private void loadFromDb() {
+        FlightPage current = page;
+        if (current == null) {
+            showPage(() -> flightService.pageFrom(startOfToday(), FlightPage.FIRST_ID, PAGE_SIZE, filter));
+        } else {
+            showPage(() -> flightService.pageFrom(current.cursorTs(), current.cursorId(), PAGE_SIZE, filter));
         }
     }
 
-    private void loadFromDb() {
+    private interface PageQuery {
+        FlightPage load() throws SQLException;
+    }
+
+    private void showPage(PageQuery query) {
         try {
-            masterData.setAll(flightService.listAll());
+            FlightChanges mark = flightService.changeFeedStart();
+            FlightPage p = query.load();
+            feedMark = mark;
+            page = p;
+            FlightListReconciler.reconcile(masterData, p.items());
             updateStatusLabel();
+            updatePager();
         } catch (SQLException e) {
             e.printStackTrace();
             showAlert("Ошибка загрузки данных", "Не удалось загрузить поезда из базы данных: " + e.getMessage());
         }
     }
 
+    private long startOfToday() {
+        return LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    // ---------- PAGING ----------
+    @FXML
+    public void onPrevPage() {
+        FlightPage current = page;
+        if (current != null) showPage(() -> flightService.previousPage(current, PAGE_SIZE, filter));
+    }
+
+    @FXML
+    public void onNextPage() {
+        FlightPage current = page;
+        if (current != null) showPage(() -> flightService.nextPage(current, PAGE_SIZE, filter));
+    }
+
+    @FXML
+    public void onToday() {
+        page = null;
+        loadFromDb();
+    }
+
     // ---------- SEARCH ----------
+    // Поиск и фильтры выполняются в БД; окно начинается с даты «с» фильтра или с текущих суток
     @FXML
     public void onSearch() {
-        String q = searchField.getText().trim().toLowerCase();
-        filteredData.setPredicate(f ->
-                externalFilter.test(f) &&
-                        (q.isEmpty() ||
-                                f.getNumber().toLowerCase().contains(q) ||
-                                f.getRoute().toLowerCase().contains(q) ||
-                                f.getPlatform().toLowerCase().contains(q))
-        );
-        updateStatusLabel();
+        FlightFilter next = dialogFilter.withText(searchField.getText());
+        if (next.equals(filter)) return;
+        filter = next;
+        long from = next.getArriveFrom() != null ? next.getArriveFrom() : startOfToday();
+        showPage(() -> flightService.pageFrom(from, FlightPage.FIRST_ID, PAGE_SIZE, next));
     }
 
     // ---------- FILTER API ----------
-    public void setFilterPredicate(Predicate<Flight> p) {
-        this.externalFilter = p;
+    public void setFilter(FlightFilter f) {
+        this.dialogFilter = f == null ? FlightFilter.NONE : f;
         onSearch();
     }
 
@@ -302,6 +374,12 @@ public class MainController {
         openWindow("/org/example/isarsw/fxml/history.fxml", "История изменений поезда " + selected.getNumber());
     }
 
+    // Журнал изменений всех рейсов с фильтрами по автору, действию и периоду
+    @FXML
+    public void onAuditLog() {
+        openWindow("/org/example/isarsw/fxml/audit_log.fxml", "Журнал изменений");
+    }
+
     @FXML
     public void onFilters() {
         try {
@@ -337,6 +415,92 @@ public class MainController {
         }
     }
 
+    // ---------- АУДИТ РАСПИСАНИЯ ----------
+    // Полный проход по таблице — в фоновом потоке, чтобы не блокировать интерфейс
+    private static final int AUDIT_SHOWN_CONFLICTS = 500;
+
+    @FXML
+    private void onAudit() {
+        Thread t = new Thread(() -> {
+            try {
+                ScheduleAuditReport report = new ScheduleAuditor().audit();
+                Platform.runLater(() -> showAuditReport(report));
+            } catch (SQLException e) {
+                Platform.runLater(() -> showAlert("Ошибка аудита", "Не удалось проверить расписание: " + e.getMessage()));
+            }
+        }, "schedule-audit");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void showAuditReport(ScheduleAuditReport report) {
+        Alert alert = new Alert(report.isClean() ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING);
+        alert.setTitle("Аудит расписания");
+        alert.setHeaderText(report.isClean() ? "Конфликтов не найдено" : "Найдено конфликтов: " + report.getTotalConflicts());
+        alert.setContentText(report.toString());
+
+        if (!report.isClean()) {
+            StringBuilder details = new StringBuilder();
+            List<ScheduleAuditReport.Conflict> conflicts = report.getConflicts();
+            for (int i = 0; i < Math.min(AUDIT_SHOWN_CONFLICTS, conflicts.size()); i++) {
+                details.append(conflicts.get(i)).append('\n');
+            }
+            if (report.getTotalConflicts() > AUDIT_SHOWN_CONFLICTS) {
+                details.append("... и ещё ").append(report.getTotalConflicts() - AUDIT_SHOWN_CONFLICTS);
+            }
+            TextArea area = new TextArea(details.toString());
+            area.setEditable(false);
+            area.setWrapText(false);
+            area.setPrefSize(720, 360);
+            alert.getDialogPane().setExpandableContent(area);
+            alert.getDialogPane().setExpanded(true);
+        }
+        alert.showAndWait();
+    }
+
+    // ---------- ПЕРЕНАЗНАЧЕНИЕ ПЛАТФОРМ ----------
+    // Сутки — те, с которых начинается показанное окно (или текущие)
+    @FXML
+    private void onOptimizePlatforms() {
+        FlightPage current = page;
+        LocalDate day = current != null && !current.items().isEmpty()
+                ? Instant.ofEpochSecond(current.items().get(0).arriveTs()).atZone(ZoneId.systemDefault()).toLocalDate()
+                : LocalDate.now();
+        try {
+            PlatformAllocator.Plan plan = new PlatformAllocator().plan(day);
+            if (plan.isEmpty()) {
+                showAlert("Платформы на сутки", "Переносы не требуются: " + plan);
+                return;
+            }
+
+            StringBuilder details = new StringBuilder();
+            for (PlatformAllocator.Move move : plan.moves()) details.append(move).append('\n');
+            for (FlightRecord f : plan.unresolved()) {
+                details.append("рейс ").append(f.number()).append(": свободной платформы нет\n");
+            }
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION, plan.toString(), ButtonType.YES, ButtonType.NO);
+            alert.setTitle("Платформы на сутки");
+            alert.setHeaderText("Применить переносы?");
+            TextArea area = new TextArea(details.toString());
+            area.setEditable(false);
+            area.setPrefSize(520, 300);
+            alert.getDialogPane().setExpandableContent(area);
+            alert.getDialogPane().setExpanded(true);
+
+            if (alert.showAndWait().orElse(ButtonType.NO) == ButtonType.YES) {
+                int applied = flightService.applyPlatformPlan(plan);
+                loadFromDb();
+                showAlert("Платформы на сутки", "Перенесено рейсов: " + applied);
+            }
+        } catch (IllegalStateException e) {
+            // План устарел: за время подтверждения платформы заняли другие рейсы
+            loadFromDb();
+            showAlert("Платформы на сутки", "План не применён, постройте его заново.\n" + e.getMessage());
+        } catch (SQLException e) {
+            showAlert("Ошибка", "Не удалось подобрать платформы: " + e.getMessage());
+        }
+    }
+
     // ---------- CONTEXT MENU ----------
     @FXML
     private void onTableRightClick() {
@@ -0,0 +1,100 @@
+package org.example.isarsw.dao;
+
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightStatus;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Построчный обход таблиц для выгрузки. Строки не собираются в список и не
+// превращаются в записи рейсов: курсор только вперёд, значение за значением уходит в RowSink.
+// Чтение идёт с соединения-читателя, WAL даёт согласованный снимок на всё время обхода.
+public class ExportDao {
+
+    public static final int FETCH_SIZE = 1000;
+
+    public enum Table {
+        // Статус выгружается подписью, как его видит диспетчер, а не кодом из БД
+        FLIGHTS("SELECT id, number, route, arrive_ts, standing_time, platform, " +
+                FlightStatus.labelSql("status") + " AS status, " +
+                "created_at, updated_at, last_arrival_check FROM flights ORDER BY id"),
+        // Сжатые снимки (BLOB) распаковываются в текст, payload_format: 0 — полные снимки, 1 — разница полей
+        HISTORY("SELECT id, flight_id, action, actor, timestamp, payload_before, payload_after, payload_format " +
+                "FROM history ORDER BY id", "payload_before", "payload_after");
+
+        private final String sql;
+        private final Set<String> encodedColumns;
+
+        Table(String sql, String... encodedColumns) {
+            this.sql = sql;
+            this.encodedColumns = Set.of(encodedColumns);
+        }
+
+        public static Table fromName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Неизвестная таблица для выгрузки: " + name + " (flights или history)");
+            }
+        }
+    }
+
+    public interface RowSink {
+        void begin(String[] columns) throws IOException;
+
+        // values переиспользуется между строками — не сохранять ссылку
+        void row(Object[] values) throws IOException;
+
+        void end() throws IOException;
+    }
+
+    // Возвращает число выгруженных строк. История выгружается вместе с архивами:
+    // сначала месячные архивы от старых к новым, затем основная таблица
+    public long stream(Table table, RowSink sink) throws SQLException, IOException {
+        try (Connection c = DB.getReadConnection();
+             Statement st = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            st.setFetchSize(FETCH_SIZE);
+
+            List<String> queries = new ArrayList<>();
+            if (table == Table.HISTORY) {
+                for (int month : HistoryArchiveDao.months(c)) {
+                    queries.add(table.sql.replace("FROM history ", "FROM " + HistoryArchiveDao.tableName(month) + " "));
+                }
+            }
+            queries.add(table.sql);
+
+            long rows = 0;
+            for (int q = 0; q < queries.size(); q++) {
+                try (ResultSet rs = st.executeQuery(queries.get(q))) {
+                    ResultSetMetaData md = rs.getMetaData();
+                    String[] columns = new String[md.getColumnCount()];
+                    boolean[] encoded = new boolean[columns.length];
+                    for (int i = 0; i < columns.length; i++) {
+                        columns[i] = md.getColumnLabel(i + 1);
+                        encoded[i] = table.encodedColumns.contains(columns[i]);
+                    }
+
+                    if (q == 0) sink.begin(columns);
+                    Object[] values = new Object[columns.length];
+                    while (rs.next()) {
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = encoded[i] ? HistoryCodec.decode(rs.getObject(i + 1)) : rs.getObject(i + 1);
+                        }
+                        sink.row(values);
+                        rows++;
+                    }
+                }
+            }
+            sink.end();
+            return rows;
+        }
+    }
+}
@@ -1,35 +1,69 @@
 package org.example.isarsw.dao;
 
+import org.example.isarsw.db.ConnectionPool;
 import org.example.isarsw.db.DB;
-import org.example.isarsw.model.Flight;
-import org.example.isarsw.service.FlightService;
+import org.example.isarsw.model.FlightFilter;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 public class FlightDao {
 
+    // ---------- SQL ----------
+    // Запросы вынесены в константы: их текст используется в тестах плана запроса
+
+    // Текст запроса не зависит от excludeId (для нового рейса передаётся -1),
+    // поэтому выражение одно и берётся из кэша соединения
+    static final String SQL_FIND_CONFLICTING = "SELECT * FROM flights WHERE platform = ? AND id != ?"
+            + " AND arrive_ts < ? AND (arrive_ts + (standing_time * 60)) > ?"
+            + " AND status NOT IN (?, ?)"
+            // Рейс, прибывший раньше (начало окна - самая длинная стоянка), не может
+            // пересекать окно. Нижняя граница превращает поиск по индексу платформы
+            // из сканирования всей истории платформы в узкий диапазон.
+            + " AND arrive_ts > ? - (SELECT COALESCE(MAX(standing_time), 0) FROM flights) * 60";
+
+    // Ключ страницы — пара (arrive_ts, id). Условие раскрыто вручную вместо (a, b) >= (?, ?),
+    // чтобы SQLite шёл по индексу arrive_ts (в нём id уже упорядочен внутри равных ключей)
+    // без сортировки и без OFFSET, который перечитывает все пропущенные строки.
+    static final String SQL_PAGE_FROM = "SELECT * FROM flights WHERE arrive_ts >= ? AND (arrive_ts > ? OR id >= ?)";
+    static final String SQL_PAGE_BEFORE = "SELECT * FROM flights WHERE arrive_ts <= ? AND (arrive_ts < ? OR id < ?)";
+
+    // Полный проход по рейсам, занимающим платформы, для аудита расписания
+    static final String SQL_SCAN_OCCUPANCY = "SELECT id, number, platform, arrive_ts, standing_time, status"
+            + " FROM flights WHERE status NOT IN (?, ?)";
+
+    static final String SQL_FIND_ALL_VERSIONS = "SELECT id, updated_at FROM flights INDEXED BY idx_flights_updated";
+
+    // Лента изменений: диапазон по индексу updated_at, в устоявшемся режиме — единицы строк
+    static final String SQL_FIND_CHANGED_SINCE = "SELECT * FROM flights WHERE updated_at >= ? ORDER BY updated_at";
+
     // ---------- ОСНОВНЫЕ CRUD МЕТОДЫ ----------
 
-    public Flight create(Flight f) throws SQLException {
+    // Возвращает запись с выданным id
+    public FlightRecord create(FlightRecord f) throws SQLException {
         String sql = "INSERT INTO flights(number, route, arrive_ts, standing_time, platform, status, created_at, updated_at, last_arrival_check) " +
                 "VALUES(?,?,?,?,?,?,?,?,?)";
         try (Connection c = DB.getConnection();
              PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             setFlightParameters(ps, f);
-            ps.setLong(7, f.getCreatedAt());
-            ps.setLong(8, f.getUpdatedAt());
-            ps.setLong(9, f.getLastArrivalCheck());
+            ps.setLong(7, f.createdAt());
+            ps.setLong(8, f.updatedAt());
+            ps.setLong(9, f.lastArrivalCheck());
 
             ps.executeUpdate();
 
             try (ResultSet rs = ps.getGeneratedKeys()) {
                 if (rs.next()) {
-                    f.setId(rs.getLong(1));
-                    return f;
+                    return f.withId(rs.getLong(1));
                 } else {
                     throw new SQLException("Creating flight failed, no ID obtained.");
                 }
@@ -37,20 +71,79 @@ public class FlightDao {
         }
     }
 
-    public void update(Flight f) throws SQLException {
+    // Пакетная вставка для импорта расписаний. Вызывается внутри транзакции
+    // (UnitOfWork): соединение на запись принадлежит потоку, и AUTOINCREMENT
+    // выдаёт пакету подряд идущие id, которые восстанавливаются по last_insert_rowid().
+    // Возвращает записи с выданными id в порядке flights.
+    public List<FlightRecord> createBatch(List<FlightRecord> flights) throws SQLException {
+        if (flights.isEmpty()) return new ArrayList<>();
+        String sql = "INSERT INTO flights(number, route, arrive_ts, standing_time, platform, status, created_at, updated_at, last_arrival_check) " +
+                "VALUES(?,?,?,?,?,?,?,?,?)";
+        try (Connection c = DB.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+
+            for (FlightRecord f : flights) {
+                setFlightParameters(ps, f);
+                ps.setLong(7, f.createdAt());
+                ps.setLong(8, f.updatedAt());
+                ps.setLong(9, f.lastArrivalCheck());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+
+            long lastId;
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT last_insert_rowid()")) {
+                lastId = rs.getLong(1);
+            }
+            long id = lastId - flights.size() + 1;
+            List<FlightRecord> saved = new ArrayList<>(flights.size());
+            for (FlightRecord f : flights) {
+                saved.add(f.withId(id++));
+            }
+            return saved;
+        }
+    }
+
+    public void update(FlightRecord f) throws SQLException {
         String sql = "UPDATE flights SET number=?, route=?, arrive_ts=?, standing_time=?, platform=?, status=?, updated_at=?, last_arrival_check=? WHERE id=?";
         try (Connection c = DB.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
 
             setFlightParameters(ps, f);
-            ps.setLong(7, f.getUpdatedAt());
-            ps.setLong(8, f.getLastArrivalCheck());
-            ps.setLong(9, f.getId());
+            ps.setLong(7, f.updatedAt());
+            ps.setLong(8, f.lastArrivalCheck());
+            ps.setLong(9, f.id());
 
             ps.executeUpdate();
         }
     }
 
+    // Групповая смена статуса одним выражением UPDATE ... WHERE id IN (...).
+    // Условие на прежний статус защищает от перезаписи рейса, изменённого другим процессом.
+    // Список id делится на части, чтобы не превысить лимит параметров SQLite.
+    static final int MAX_IN_PARAMS = 500;
+
+    public int updateStatuses(List<Long> ids, FlightStatus fromStatus, FlightStatus toStatus, long updatedAt) throws SQLException {
+        int updated = 0;
+        try (Connection c = DB.getConnection()) {
+            for (int from = 0; from < ids.size(); from += MAX_IN_PARAMS) {
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IN_PARAMS));
+                String sql = "UPDATE flights SET status=?, updated_at=? WHERE status=? AND id IN ("
+                        + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setInt(1, toStatus.code());
+                    ps.setLong(2, updatedAt);
+                    ps.setInt(3, fromStatus.code());
+                    int i = 4;
+                    for (Long id : chunk) ps.setLong(i++, id);
+                    updated += ps.executeUpdate();
+                }
+            }
+        }
+        return updated;
+    }
+
     public void delete(long id) throws SQLException {
         try (Connection c = DB.getConnection();
              PreparedStatement ps = c.prepareStatement("DELETE FROM flights WHERE id = ?")) {
@@ -59,9 +152,9 @@ public class FlightDao {
         }
     }
 
-    public Optional<Flight> findById(long id) throws SQLException {
+    public Optional<FlightRecord> findById(long id) throws SQLException {
         String sql = "SELECT * FROM flights WHERE id = ?";
-        try (Connection c = DB.getConnection();
+        try (Connection c = DB.getReadConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setLong(1, id);
             try (ResultSet rs = ps.executeQuery()) {
@@ -71,179 +164,219 @@ public class FlightDao {
         }
     }
 
-    public List<Flight> findAll() throws SQLException {
+    public List<FlightRecord> findAll() throws SQLException {
         String sql = "SELECT * FROM flights ORDER BY arrive_ts";
-        try (Connection c = DB.getConnection();
+        try (Connection c = DB.getReadConnection();
              PreparedStatement ps = c.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
 
-            List<Flight> list = new ArrayList<>();
+            List<FlightRecord> list = new ArrayList<>();
             while (rs.next()) list.add(map(rs));
             return list;
         }
     }
 
-    public List<Flight> search(String query) throws SQLException {
-        String sql = "SELECT * FROM flights WHERE number LIKE ? OR route LIKE ? OR platform LIKE ? ORDER BY arrive_ts";
-        try (Connection c = DB.getConnection();
+    public List<FlightRecord> search(String query) throws SQLException {
+        String sql = "SELECT * FROM flights WHERE " + TEXT_MATCH_SQL + " ORDER BY arrive_ts";
+        try (Connection c = DB.getReadConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
 
-            String q = "%" + query + "%";
+            String q = likeLower(query);
             ps.setString(1, q);
             ps.setString(2, q);
             ps.setString(3, q);
 
             try (ResultSet rs = ps.executeQuery()) {
-                List<Flight> list = new ArrayList<>();
+                List<FlightRecord> list = new ArrayList<>();
                 while (rs.next()) list.add(map(rs));
                 return list;
             }
         }
     }
 
-    // ---------- ВАЖНЫЕ БИЗНЕС-МЕТОДЫ ----------
-
-    public List<Flight> findConflicting(String platform, long newArriveTs, int newStandingTime, Long excludeId) throws SQLException {
-        long newDepartureTs = newArriveTs + (newStandingTime * 60L);
+    // ---------- ПОСТРАНИЧНАЯ ВЫБОРКА ----------
 
-        String sql = "SELECT * FROM flights WHERE platform = ?"
-                + (excludeId != null ? " AND id != ? " : " ")
-                + " AND arrive_ts < ? AND (arrive_ts + (standing_time * 60)) > ?"
-                + " AND status NOT IN (?, ?)";
-
-        try (Connection c = DB.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+    // Не больше limit рейсов, начиная с ключа (fromTs, fromId) включительно
+    public List<FlightRecord> findPageFrom(long fromTs, long fromId, int limit, FlightFilter filter) throws SQLException {
+        return findPage(SQL_PAGE_FROM, " ORDER BY arrive_ts, id LIMIT ?", fromTs, fromId, limit, filter);
+    }
 
-            int idx = 1;
-            ps.setString(idx++, platform);
-            if (excludeId != null) ps.setLong(idx++, excludeId);
-            ps.setLong(idx++, newDepartureTs);
-            ps.setLong(idx++, newArriveTs);
-            ps.setString(idx++, FlightService.STATUS_CANCELLED);
-            ps.setString(idx, FlightService.STATUS_DEPARTED);
+    // Не больше limit рейсов строго перед ключом (beforeTs, beforeId), по возрастанию ключа
+    public List<FlightRecord> findPageBefore(long beforeTs, long beforeId, int limit, FlightFilter filter) throws SQLException {
+        List<FlightRecord> page = findPage(SQL_PAGE_BEFORE, " ORDER BY arrive_ts DESC, id DESC LIMIT ?", beforeTs, beforeId, limit, filter);
+        Collections.reverse(page);
+        return page;
+    }
 
+    private List<FlightRecord> findPage(String base, String order, long ts, long id, int limit, FlightFilter filter) throws SQLException {
+        StringBuilder sql = new StringBuilder(base);
+        List<Object> params = new ArrayList<>(List.of(ts, ts, id));
+        appendFilter(sql, params, filter);
+        sql.append(order);
+        params.add(limit);
+
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
             try (ResultSet rs = ps.executeQuery()) {
-                List<Flight> out = new ArrayList<>();
-                while (rs.next()) out.add(map(rs));
-                return out;
+                List<FlightRecord> list = new ArrayList<>(limit);
+                while (rs.next()) list.add(map(rs));
+                return list;
             }
         }
     }
 
-    public List<Flight> findFlightsNeedingArrivalCheck(long timeWindowStart, long timeWindowEnd) throws SQLException {
-        String sql = "SELECT * FROM flights WHERE status = ? AND " +
-                "arrive_ts BETWEEN ? AND ? AND " +
-                "(last_arrival_check = 0 OR last_arrival_check < arrive_ts) " +
-                "ORDER BY arrive_ts";
-        try (Connection c = DB.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+    // Поиск подстроки без учёта регистра, как FlightFilter.test: обе стороны LIKE в нижнем
+    // регистре по правилам Java — функция ulower регистрируется пулом соединений
+    // (LIKE сам складывает только латиницу); % и _ из текста пользователя экранируются
+    private static final String LOWER = ConnectionPool.UNICODE_LOWER_FUNCTION;
+    private static final String LIKE = " LIKE ? ESCAPE '\\'";
+    private static final String TEXT_MATCH_SQL =
+            LOWER + "(number)" + LIKE + " OR " + LOWER + "(route)" + LIKE + " OR " + LOWER + "(platform)" + LIKE;
+
+    static String likeLower(String text) {
+        String lower = text.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + lower + "%";
+    }
+
+    // Текст запроса зависит только от набора заданных условий, значения идут параметрами —
+    // вариантов немного, и все они остаются в кэше выражений соединения
+    static void appendFilter(StringBuilder sql, List<Object> params, FlightFilter filter) {
+        if (filter == null) return;
+        if (filter.getStatus() != null) {
+            sql.append(" AND status = ?");
+            params.add(filter.getStatus().code());
+        }
+        if (filter.getPlatform() != null) {
+            sql.append(" AND ").append(LOWER).append("(platform)").append(LIKE);
+            params.add(likeLower(filter.getPlatform()));
+        }
+        if (filter.getArriveFrom() != null) {
+            sql.append(" AND arrive_ts >= ?");
+            params.add(filter.getArriveFrom());
+        }
+        if (filter.getArriveTo() != null) {
+            sql.append(" AND arrive_ts <= ?");
+            params.add(filter.getArriveTo());
+        }
+        if (filter.getText() != null) {
+            String q = likeLower(filter.getText());
+            sql.append(" AND (").append(TEXT_MATCH_SQL).append(")");
+            params.add(q);
+            params.add(q);
+            params.add(q);
+        }
+    }
 
-            ps.setString(1, FlightService.STATUS_EN_ROUTE);
-            ps.setLong(2, timeWindowStart);
-            ps.setLong(3, timeWindowEnd);
+    // ---------- ЛЕНТА ИЗМЕНЕНИЙ ----------
 
+    public List<FlightRecord> findChangedSince(long updatedAtFrom) throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(SQL_FIND_CHANGED_SINCE)) {
+            ps.setLong(1, updatedAtFrom);
             try (ResultSet rs = ps.executeQuery()) {
-                List<Flight> out = new ArrayList<>();
+                List<FlightRecord> out = new ArrayList<>();
                 while (rs.next()) out.add(map(rs));
                 return out;
             }
         }
     }
 
-    public List<Flight> findFlightsReadyForDeparture(long currentTime) throws SQLException {
-        String sql = "SELECT * FROM flights WHERE status = ? AND " +
-                "(arrive_ts + (standing_time * 60)) <= ? " +
-                "ORDER BY arrive_ts";
-        try (Connection c = DB.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+    public long maxUpdatedAt() throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT COALESCE(MAX(updated_at), 0) FROM flights");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.getLong(1);
+        }
+    }
+
+    // id -> updated_at всех рейсов для сверки кэша; читается из покрывающего индекса
+    // idx_flights_updated без обращения к самой таблице
+    public Map<Long, Long> findAllVersions() throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(SQL_FIND_ALL_VERSIONS);
+             ResultSet rs = ps.executeQuery()) {
+            Map<Long, Long> out = new HashMap<>();
+            while (rs.next()) out.put(rs.getLong(1), rs.getLong(2));
+            return out;
+        }
+    }
 
-            ps.setString(1, FlightService.STATUS_BOARDING);
-            ps.setLong(2, currentTime);
+    public interface OccupancyRow {
+        void accept(long id, String number, String platform, long arriveTs, int standingTime, FlightStatus status);
+    }
 
+    // Построчный обход без создания записей: курсор только вперёд, как в ExportDao
+    public long scanOccupancy(OccupancyRow row) throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(SQL_SCAN_OCCUPANCY,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(ExportDao.FETCH_SIZE);
+            ps.setInt(1, FlightStatus.CANCELLED.code());
+            ps.setInt(2, FlightStatus.DEPARTED.code());
+
+            long rows = 0;
             try (ResultSet rs = ps.executeQuery()) {
-                List<Flight> out = new ArrayList<>();
-                while (rs.next()) out.add(map(rs));
-                return out;
+                while (rs.next()) {
+                    row.accept(rs.getLong(1), rs.getString(2), rs.getString(3),
+                            rs.getLong(4), rs.getInt(5), FlightStatus.fromCode(rs.getInt(6)));
+                    rows++;
+                }
             }
+            return rows;
         }
     }
 
-    // ---------- ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ----------
+    // ---------- ВАЖНЫЕ БИЗНЕС-МЕТОДЫ ----------
 
-    private void setFlightParameters(PreparedStatement ps, Flight f) throws SQLException {
-        ps.setString(1, f.getNumber());
-        ps.setString(2, f.getRoute());
-        ps.setLong(3, f.getArriveTs());
-        ps.setInt(4, f.getStandingTime());
-        ps.setString(5, f.getPlatform());
-        ps.setString(6, f.getStatus());
-    }
-
-    private Flight map(ResultSet rs) throws SQLException {
-        Flight f = new Flight();
-        f.setId(rs.getLong("id"));
-        f.setNumber(rs.getString("number"));
-        f.setRoute(rs.getString("route"));
-        f.setArriveTs(rs.getLong("arrive_ts"));
-        f.setStandingTime(rs.getInt("standing_time"));
-        f.setPlatform(rs.getString("platform"));
-        f.setStatus(rs.getString("status"));
-        f.setCreatedAt(rs.getLong("created_at"));
-        f.setUpdatedAt(rs.getLong("updated_at"));
-        f.setLastArrivalCheck(rs.getLong("last_arrival_check"));
-        return f;
-    }
-
-    // УДАЛЯЕМ ТОЛЬКО ТЕ МЕТОДЫ, КОТОРЫЕ ТОЧНО НЕ ИСПОЛЬЗУЮТСЯ:
-
-    // 1. findFlightsNeedingStatusUpdate - используется в StatusScheduler
-    public List<Flight> findFlightsNeedingStatusUpdate(long currentTime) throws SQLException {
-        String sql = "SELECT * FROM flights WHERE " +
-                "status NOT IN (?, ?) AND " +
-                "arrive_ts <= ? " +
-                "ORDER BY arrive_ts";
-        try (Connection c = DB.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+    // Активные рейсы платформы, чья стоянка пересекает [from, to)
+    public List<FlightRecord> findOccupying(String platform, long from, long to, Long excludeId) throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(SQL_FIND_CONFLICTING)) {
 
-            ps.setString(1, FlightService.STATUS_CANCELLED);
-            ps.setString(2, FlightService.STATUS_DEPARTED);
-            ps.setLong(3, currentTime);
+            ps.setString(1, platform);
+            ps.setLong(2, excludeId != null ? excludeId : -1L);
+            ps.setLong(3, to);
+            ps.setLong(4, from);
+            ps.setInt(5, FlightStatus.CANCELLED.code());
+            ps.setInt(6, FlightStatus.DEPARTED.code());
+            ps.setLong(7, from);
 
             try (ResultSet rs = ps.executeQuery()) {
-                List<Flight> out = new ArrayList<>();
+                List<FlightRecord> out = new ArrayList<>();
                 while (rs.next()) out.add(map(rs));
                 return out;
             }
         }
     }
 
-    // 2. updateLastArrivalCheck - используется в ArrivalCheckService
-    public void updateLastArrivalCheck(long flightId, long timestamp) throws SQLException {
-        String sql = "UPDATE flights SET last_arrival_check = ? WHERE id = ?";
-        try (Connection c = DB.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+    // ---------- ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ----------
 
-            ps.setLong(1, timestamp);
-            ps.setLong(2, flightId);
-            ps.executeUpdate();
-        }
+    private void setFlightParameters(PreparedStatement ps, FlightRecord f) throws SQLException {
+        ps.setString(1, f.number());
+        ps.setString(2, f.route());
+        ps.setLong(3, f.arriveTs());
+        ps.setInt(4, f.standingTime());
+        ps.setString(5, f.platform());
+        ps.setInt(6, f.status().code());
     }
 
-    // 3. findFlightsDelayedOver24Hours - используется в ArrivalCheckService
-    public List<Flight> findFlightsDelayedOver24Hours(long twentyFourHoursAgo) throws SQLException {
-        String sql = "SELECT * FROM flights WHERE status = ? AND arrive_ts < ? " +
-                "ORDER BY arrive_ts";
-        try (Connection c = DB.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-
-            ps.setString(1, FlightService.STATUS_DELAYED);
-            ps.setLong(2, twentyFourHoursAgo);
-
-            try (ResultSet rs = ps.executeQuery()) {
-                List<Flight> out = new ArrayList<>();
-                while (rs.next()) out.add(map(rs));
-                return out;
-            }
-        }
+    private FlightRecord map(ResultSet rs) throws SQLException {
+        return new FlightRecord(
+                rs.getLong("id"),
+                rs.getString("number"),
+                rs.getString("route"),
+                rs.getLong("arrive_ts"),
+                rs.getInt("standing_time"),
+                rs.getString("platform"),
+                FlightStatus.fromCode(rs.getInt("status")),
+                rs.getLong("created_at"),
+                rs.getLong("updated_at"),
+                rs.getLong("last_arrival_check"));
     }
-}
\ No newline at end of file
+}
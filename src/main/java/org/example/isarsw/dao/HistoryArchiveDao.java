@@ -0,0 +1,184 @@
+package org.example.isarsw.dao;
+
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightStatus;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Помесячные архивы истории: таблицы history_archive_ГГГГММ с теми же колонками,
+// что и history, но без внешнего ключа — архив переживает удаление рейса.
+// history_archive_index хранит месяц архива каждого рейса: чтение истории рейса
+// обращается к одной архивной таблице, а не ко всем сразу.
+// Рейс переносится целиком, поэтому его записи в архиве лежат в одной таблице.
+public class HistoryArchiveDao {
+
+    public static final String TABLE_PREFIX = "history_archive_";
+    static final String INDEX_TABLE = "history_archive_index";
+
+    // Рейсы, отбывшие или отменённые до порога и ещё имеющие записи в основной таблице.
+    // Выражение времени отправления совпадает с индексом idx_flights_status_departure.
+    static final String SQL_FIND_ARCHIVABLE =
+            "SELECT id, (arrive_ts + (standing_time * 60)) FROM flights " +
+            "WHERE status IN (" + FlightStatus.DEPARTED.code() + ", " + FlightStatus.CANCELLED.code() + ") " +
+            "AND (arrive_ts + (standing_time * 60)) < ? " +
+            "AND EXISTS (SELECT 1 FROM history WHERE history.flight_id = flights.id) LIMIT ?";
+
+    // История удалённых рейсов: месяц архива — по последней записи
+    static final String SQL_FIND_ORPHANED =
+            "SELECT flight_id, MAX(timestamp) FROM history " +
+            "WHERE flight_id NOT IN (SELECT id FROM flights) " +
+            "GROUP BY flight_id HAVING MAX(timestamp) < ? LIMIT ?";
+
+    // Рейс и момент, по которому выбирается месяц архива
+    public record Candidate(long flightId, long ts) {}
+
+    // ГГГГММ → имя таблицы; число, поэтому подстановка в SQL безопасна
+    public static String tableName(int month) {
+        if (month < 190001 || month > 999912 || month % 100 < 1 || month % 100 > 12) {
+            throw new IllegalArgumentException("Некорректный месяц архива: " + month);
+        }
+        return TABLE_PREFIX + month;
+    }
+
+    // ---------- ЧТЕНИЕ ----------
+
+    // Месяцы существующих архивов по возрастанию
+    public static List<Integer> months(Connection c) throws SQLException {
+        List<Integer> out = new ArrayList<>();
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT name FROM sqlite_master WHERE type = 'table' AND name GLOB 'history_archive_[0-9][0-9][0-9][0-9][0-9][0-9]'");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.add(Integer.parseInt(rs.getString(1).substring(TABLE_PREFIX.length())));
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    public List<Integer> months() throws SQLException {
+        try (Connection c = DB.getReadConnection()) {
+            return months(c);
+        }
+    }
+
+    // null — записей рейса в архиве нет
+    public Integer monthOf(long flightId) throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(HistoryDao.SQL_ARCHIVE_MONTH)) {
+            ps.setLong(1, flightId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    public List<Candidate> findArchivable(long departedBefore, int limit) throws SQLException {
+        return candidates(SQL_FIND_ARCHIVABLE, departedBefore, limit);
+    }
+
+    public List<Candidate> findOrphaned(long lastChangeBefore, int limit) throws SQLException {
+        return candidates(SQL_FIND_ORPHANED, lastChangeBefore, limit);
+    }
+
+    private List<Candidate> candidates(String sql, long before, int limit) throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, before);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Candidate> out = new ArrayList<>();
+                while (rs.next()) out.add(new Candidate(rs.getLong(1), rs.getLong(2)));
+                return out;
+            }
+        }
+    }
+
+    public long hotRowCount() throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM history");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.getLong(1);
+        }
+    }
+
+    // ---------- ПЕРЕНОС ----------
+    // Вызывается внутри транзакции (UnitOfWork): копирование, удаление и запись
+    // в индекс архива фиксируются вместе
+
+    // Возвращает число перенесённых записей истории
+    public int moveFlights(int month, List<Long> flightIds) throws SQLException {
+        if (flightIds.isEmpty()) return 0;
+        String table = tableName(month);
+        String in = "(" + "?,".repeat(flightIds.size() - 1) + "?)";
+        try (Connection c = DB.getConnection()) {
+            ensureTable(c, table);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT OR REPLACE INTO " + table + "(" + HistoryDao.COLUMNS + ") SELECT " + HistoryDao.COLUMNS +
+                            " FROM history WHERE flight_id IN " + in)) {
+                bindIds(ps, flightIds);
+                ps.executeUpdate();
+            }
+            int moved;
+            try (PreparedStatement ps = c.prepareStatement("DELETE FROM history WHERE flight_id IN " + in)) {
+                bindIds(ps, flightIds);
+                moved = ps.executeUpdate();
+            }
+            // Рейс, изменённый после архивации, остаётся в прежнем месяце
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT OR IGNORE INTO " + INDEX_TABLE + "(flight_id, month) VALUES(?, ?)")) {
+                for (long id : flightIds) {
+                    ps.setLong(1, id);
+                    ps.setInt(2, month);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            return moved;
+        }
+    }
+
+    // Возвращает число удалённых записей истории
+    public long dropMonth(int month) throws SQLException {
+        String table = tableName(month);
+        try (Connection c = DB.getConnection()) {
+            long rows;
+            try (PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM " + table);
+                 ResultSet rs = ps.executeQuery()) {
+                rows = rs.getLong(1);
+            }
+            try (PreparedStatement ps = c.prepareStatement("DELETE FROM " + INDEX_TABLE + " WHERE month = ?")) {
+                ps.setInt(1, month);
+                ps.executeUpdate();
+            }
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("DROP TABLE " + table);
+            }
+            return rows;
+        }
+    }
+
+    private static void ensureTable(Connection c, String table) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " (" +
+                    "id INTEGER PRIMARY KEY," +
+                    "flight_id INTEGER," +
+                    "action TEXT NOT NULL," +
+                    "actor TEXT NOT NULL," +
+                    "timestamp INTEGER NOT NULL," +
+                    "payload_before TEXT," +
+                    "payload_after TEXT," +
+                    "payload_format INTEGER NOT NULL DEFAULT 0)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_flight_ts ON " + table + "(flight_id, timestamp)");
+            // Журнал аудита (HistoryDao.findAuditPage) — те же индексы, что у основной таблицы
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_ts ON " + table + "(timestamp)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_actor_ts ON " + table + "(actor, timestamp)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_action_ts ON " + table + "(action, timestamp)");
+        }
+    }
+
+    private static void bindIds(PreparedStatement ps, List<Long> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) ps.setLong(i + 1, ids.get(i));
+    }
+}
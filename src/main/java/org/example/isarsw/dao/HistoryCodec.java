@@ -0,0 +1,82 @@
+package org.example.isarsw.dao;
+
+import org.example.isarsw.model.FlightStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Хранение payload_before/payload_after. Короткие разницы полей пишутся текстом,
+// длинные (полные снимки рейса) — сырым deflate в BLOB той же колонки. SQLite хранит
+// тип значения в каждой ячейке, поэтому признак сжатия отдельно не нужен: TEXT — как есть,
+// BLOB — распаковать. Словарь содержит имена полей FlightRecord.toPayload() и подписи статусов,
+// за счёт него сжимается даже снимок в пару сотен байт.
+final class HistoryCodec {
+
+    // Короче этого текст не сжимается: выигрыш меньше накладных расходов deflate
+    static final int COMPRESS_MIN_CHARS = 96;
+
+    // Словарь нельзя менять: им распаковываются уже записанные значения
+    private static final byte[] DICTIONARY = buildDictionary();
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(
+            () -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private HistoryCodec() {}
+
+    private static byte[] buildDictionary() {
+        StringBuilder sb = new StringBuilder();
+        for (FlightStatus s : FlightStatus.values()) {
+            sb.append("\"status\":\"").append(s.label()).append("\",");
+        }
+        // Самые частые подстроки — в конце словаря, до них ближе всего
+        sb.append("{\"id\":,\"number\":\"\",\"route\":\"\",\"arriveTs\":17,\"standingTime\":,\"departureTs\":17,")
+                .append("\"platform\":\"\",\"status\":\"\",\"createdAt\":17,\"updatedAt\":17,\"lastArrivalCheck\":0}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // String или byte[] для PreparedStatement.setObject
+    static Object encode(String text) {
+        if (text == null || text.length() < COMPRESS_MIN_CHARS) return text;
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        Deflater d = DEFLATER.get();
+        d.reset();
+        d.setDictionary(DICTIONARY);
+        d.setInput(raw);
+        d.finish();
+        byte[] out = new byte[raw.length];
+        int len = 0;
+        while (!d.finished() && len < out.length) {
+            len += d.deflate(out, len, out.length - len);
+        }
+        // Несжимаемое значение остаётся текстом
+        if (!d.finished()) return text;
+        return Arrays.copyOf(out, len);
+    }
+
+    static String decode(Object stored) throws SQLException {
+        if (stored == null || stored instanceof String) return (String) stored;
+        if (!(stored instanceof byte[] packed)) return stored.toString();
+        Inflater inf = INFLATER.get();
+        inf.reset();
+        inf.setDictionary(DICTIONARY);
+        inf.setInput(packed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(packed.length * 4);
+        byte[] buf = new byte[512];
+        try {
+            while (!inf.finished()) {
+                int n = inf.inflate(buf);
+                if (n == 0 && (inf.needsInput() || inf.needsDictionary())) break;
+                out.write(buf, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new SQLException("Повреждённая запись истории: " + e.getMessage(), e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -1,18 +1,92 @@
 package org.example.isarsw.dao;
 
 import org.example.isarsw.db.DB;
+import org.example.isarsw.model.AuditFilter;
 import org.example.isarsw.model.HistoryEntry;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class HistoryDao {
 
+    // id — последний столбец индекса (flight_id, timestamp): записи одной секунды идут в порядке записи
+    static final String SQL_LIST_BY_FLIGHT = "SELECT * FROM history WHERE flight_id = ? ORDER BY timestamp DESC, id DESC";
+
+    // Записи рейса после его последнего полного снимка (CREATE или периодический снимок)
+    static final String SQL_COUNT_SINCE_FULL = "SELECT COUNT(*) FROM history WHERE flight_id = ? AND id > " +
+            "COALESCE((SELECT MAX(id) FROM history WHERE flight_id = ? AND payload_format = " + HistoryEntry.FORMAT_FULL + "), 0)";
+
+    static final String SQL_ARCHIVE_MONTH = "SELECT month FROM " + HistoryArchiveDao.INDEX_TABLE + " WHERE flight_id = ?";
+
+    // Надгробия для ленты изменений: удалённые рейсы в диапазоне id истории (поиск по первичному ключу).
+    // NOT INDEXED — иначе планировщик выбирает индекс по action и перебирает все удаления.
+    static final String SQL_FIND_DELETED_BETWEEN = "SELECT flight_id FROM history NOT INDEXED WHERE id > ? AND id <= ? AND action = 'DELETE'";
+
+    // Журнал аудита: ключ (timestamp, id) по убыванию, как у окна расписания (FlightDao.findPageBefore)
+    static final String COLUMNS = "id, flight_id, action, actor, timestamp, payload_before, payload_after, payload_format";
+    static final String AUDIT_OLDER = "timestamp <= ? AND (timestamp < ? OR id < ?)";
+    static final String AUDIT_NEWER = "timestamp >= ? AND (timestamp > ? OR id > ?)";
+
+    // Ключ «новее всех записей» — начало журнала
+    public static final long NEWEST_TS = Long.MAX_VALUE;
+    public static final long NEWEST_ID = Long.MAX_VALUE;
+
+    static final String SQL_INSERT = "INSERT INTO history(flight_id, action, actor, timestamp, payload_before, payload_after, payload_format) VALUES(?,?,?,?,?,?,?)";
+
+    // Строк в одном многострочном INSERT: 7 параметров на строку, 700 на выражение
+    static final int ROWS_PER_STATEMENT = 100;
+    private static final int PARAMS_PER_ROW = 7;
+    static final String SQL_INSERT_MULTI = SQL_INSERT + ",(?,?,?,?,?,?,?)".repeat(ROWS_PER_STATEMENT - 1);
+
     public void insert(HistoryEntry e) throws SQLException {
-        String sql = "INSERT INTO history(flight_id, action, actor, timestamp, payload_before, payload_after) VALUES(?,?,?,?,?,?)";
         try (Connection c = DB.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+             PreparedStatement ps = c.prepareStatement(SQL_INSERT)) {
+            bind(ps, 0, e);
+            ps.executeUpdate();
+        }
+    }
+
+    // Пакетная вставка: полные порции по ROWS_PER_STATEMENT строк — многострочным INSERT,
+    // остаток — однострочным. Текст выражений постоянный, поэтому оба берутся из кэша выражений.
+    // Транзакцию задаёт вызывающий (UnitOfWork), иначе каждая порция фиксируется отдельно.
+    public void insertBatch(List<HistoryEntry> entries) throws SQLException {
+        if (entries.isEmpty()) return;
+        int full = entries.size() - entries.size() % ROWS_PER_STATEMENT;
+        try (Connection c = DB.getConnection()) {
+            if (full > 0) {
+                try (PreparedStatement ps = c.prepareStatement(SQL_INSERT_MULTI)) {
+                    for (int from = 0; from < full; from += ROWS_PER_STATEMENT) {
+                        for (int i = 0; i < ROWS_PER_STATEMENT; i++) {
+                            bind(ps, i * PARAMS_PER_ROW, entries.get(from + i));
+                        }
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            if (full < entries.size()) {
+                try (PreparedStatement ps = c.prepareStatement(SQL_INSERT)) {
+                    for (int i = full; i < entries.size(); i++) {
+                        bind(ps, 0, entries.get(i));
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+        }
+    }
+
+    // Запись, которую БД отвергла (нарушение ограничения, неверный тип): хранится как есть,
+    // текстом и без сжатия, вместе с ошибкой — для ручного разбора
+    public void insertDeadLetter(HistoryEntry e, String error, long failedAt) throws SQLException {
+        try (Connection c = DB.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "INSERT INTO history_dead_letter(flight_id, action, actor, timestamp, payload_before, payload_after, " +
+                     "payload_format, error, failed_at) VALUES(?,?,?,?,?,?,?,?,?)")) {
             if (e.getFlightId() == null) ps.setNull(1, Types.BIGINT);
             else ps.setLong(1, e.getFlightId());
             ps.setString(2, e.getAction());
@@ -20,30 +94,247 @@ public class HistoryDao {
             ps.setLong(4, e.getTimestamp());
             ps.setString(5, e.getPayloadBefore());
             ps.setString(6, e.getPayloadAfter());
+            ps.setInt(7, e.getPayloadFormat());
+            ps.setString(8, error);
+            ps.setLong(9, failedAt);
             ps.executeUpdate();
         }
     }
 
+    private static void bind(PreparedStatement ps, int offset, HistoryEntry e) throws SQLException {
+        if (e.getFlightId() == null) ps.setNull(offset + 1, Types.BIGINT);
+        else ps.setLong(offset + 1, e.getFlightId());
+        ps.setString(offset + 2, e.getAction());
+        ps.setString(offset + 3, e.getActor());
+        ps.setLong(offset + 4, e.getTimestamp());
+        bindPayload(ps, offset + 5, e.getPayloadBefore());
+        bindPayload(ps, offset + 6, e.getPayloadAfter());
+        ps.setInt(offset + 7, e.getPayloadFormat());
+    }
+
+    private static void bindPayload(PreparedStatement ps, int index, String payload) throws SQLException {
+        Object stored = HistoryCodec.encode(payload);
+        if (stored == null) ps.setNull(index, Types.VARCHAR);
+        else if (stored instanceof byte[] packed) ps.setBytes(index, packed);
+        else ps.setString(index, (String) stored);
+    }
+
+    // Основная таблица и, если рейс уже архивирован, его месячный архив (HistoryArchiveDao).
+    // Оба запроса идут по индексу (flight_id, timestamp) и сортировки не требуют.
     public List<HistoryEntry> listByFlight(Long flightId) throws SQLException {
-        String sql = "SELECT * FROM history WHERE flight_id = ? ORDER BY timestamp DESC";
-        try (Connection c = DB.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+        try (Connection c = DB.getReadConnection()) {
+            List<HistoryEntry> out = new ArrayList<>();
+            readInto(c, SQL_LIST_BY_FLIGHT, flightId, out);
+            Integer month = archiveMonth(c, flightId);
+            if (month != null) {
+                readInto(c, "SELECT * FROM " + HistoryArchiveDao.tableName(month) +
+                        " WHERE flight_id = ? ORDER BY timestamp DESC, id DESC", flightId, out);
+                out.sort(Comparator.comparingLong(HistoryEntry::getTimestamp)
+                        .thenComparingLong(HistoryEntry::getId).reversed());
+            }
+            return out;
+        }
+    }
+
+    // Архив не учитывается: после архивации рейс меняется редко, а цепочка разниц
+    // в основной таблице всё равно ограничена
+    public int countSinceFull(long flightId) throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(SQL_COUNT_SINCE_FULL)) {
+            ps.setLong(1, flightId);
+            ps.setLong(2, flightId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private static Integer archiveMonth(Connection c, long flightId) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(SQL_ARCHIVE_MONTH)) {
             ps.setLong(1, flightId);
             try (ResultSet rs = ps.executeQuery()) {
-                List<HistoryEntry> out = new ArrayList<>();
-                while (rs.next()) {
-                    HistoryEntry e = new HistoryEntry();
-                    e.setId(rs.getLong("id"));
-                    e.setFlightId(rs.getLong("flight_id"));
-                    e.setAction(rs.getString("action"));
-                    e.setActor(rs.getString("actor"));
-                    e.setTimestamp(rs.getLong("timestamp"));
-                    e.setPayloadBefore(rs.getString("payload_before"));
-                    e.setPayloadAfter(rs.getString("payload_after"));
-                    out.add(e);
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    private static void readInto(Connection c, String sql, long flightId, List<HistoryEntry> out) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, flightId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(map(rs));
+            }
+        }
+    }
+
+    private static HistoryEntry map(ResultSet rs) throws SQLException {
+        HistoryEntry e = new HistoryEntry();
+        e.setId(rs.getLong("id"));
+        e.setFlightId(rs.getLong("flight_id"));
+        e.setAction(rs.getString("action"));
+        e.setActor(rs.getString("actor"));
+        e.setTimestamp(rs.getLong("timestamp"));
+        e.setPayloadBefore(HistoryCodec.decode(rs.getObject("payload_before")));
+        e.setPayloadAfter(HistoryCodec.decode(rs.getObject("payload_after")));
+        e.setPayloadFormat(rs.getInt("payload_format"));
+        return e;
+    }
+
+    // ---------- ЖУРНАЛ АУДИТА ----------
+    // Все записи истории с фильтрами, по убыванию (timestamp, id). Основная таблица и
+    // помесячные архивы читаются одним составным запросом UNION ALL: каждая часть уже
+    // упорядочена своим индексом, SQLite сливает их и останавливается на LIMIT,
+    // поэтому стоимость страницы не зависит от размера журнала.
+
+    // Не больше limit записей строго старше ключа (beforeTs, beforeId), сначала новые
+    public List<HistoryEntry> findAuditPageBefore(AuditFilter filter, long beforeTs, long beforeId, int limit) throws SQLException {
+        return findAuditPage(AUDIT_OLDER, true, filter, beforeTs, beforeId, limit);
+    }
+
+    // Не больше limit записей строго новее ключа (afterTs, afterId), ближайшие к ключу;
+    // порядок результата тот же — сначала новые
+    public List<HistoryEntry> findAuditPageAfter(AuditFilter filter, long afterTs, long afterId, int limit) throws SQLException {
+        List<HistoryEntry> page = findAuditPage(AUDIT_NEWER, false, filter, afterTs, afterId, limit);
+        Collections.reverse(page);
+        return page;
+    }
+
+    private List<HistoryEntry> findAuditPage(String keyset, boolean newestFirst, AuditFilter filter,
+                                             long ts, long id, int limit) throws SQLException {
+        try (Connection c = DB.getReadConnection()) {
+            List<String> tables = new ArrayList<>();
+            tables.add("history");
+            for (int month : HistoryArchiveDao.months(c)) tables.add(HistoryArchiveDao.tableName(month));
+
+            List<Object> params = new ArrayList<>();
+            String sql = auditSql(tables, keyset, newestFirst, filter, ts, id, params);
+            params.add(limit);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                for (int i = 0; i < params.size(); i++) {
+                    ps.setObject(i + 1, params.get(i));
                 }
+                try (ResultSet rs = ps.executeQuery()) {
+                    List<HistoryEntry> out = new ArrayList<>(limit);
+                    while (rs.next()) out.add(map(rs));
+                    return out;
+                }
+            }
+        }
+    }
+
+    // Условия одинаковы во всех частях, параметры повторяются для каждой таблицы
+    static String auditSql(List<String> tables, String keyset, boolean newestFirst, AuditFilter filter,
+                           long ts, long id, List<Object> params) {
+        // Граница периода со стороны прокрутки входит в ключ: из двух верхних (нижних) границ
+        // SQLite ограничивает поиск по индексу только одной, и это должна быть более узкая
+        Long upper = filter.toTs();
+        Long lower = filter.fromTs();
+        if (newestFirst && upper != null) {
+            if (upper < ts) {
+                ts = upper;
+                id = Long.MAX_VALUE;
+            }
+            upper = null;
+        } else if (!newestFirst && lower != null) {
+            if (lower > ts) {
+                ts = lower;
+                id = Long.MIN_VALUE;
+            }
+            lower = null;
+        }
+
+        StringBuilder where = new StringBuilder(keyset);
+        List<Object> armParams = new ArrayList<>(List.of(ts, ts, id));
+        if (filter.actor() != null) {
+            where.append(" AND actor = ?");
+            armParams.add(filter.actor());
+        }
+        if (filter.action() != null) {
+            where.append(" AND action = ?");
+            armParams.add(filter.action());
+        }
+        if (lower != null) {
+            where.append(" AND timestamp >= ?");
+            armParams.add(lower);
+        }
+        if (upper != null) {
+            where.append(" AND timestamp <= ?");
+            armParams.add(upper);
+        }
+
+        StringBuilder sql = new StringBuilder();
+        for (String table : tables) {
+            if (sql.length() > 0) sql.append(" UNION ALL ");
+            sql.append("SELECT ").append(COLUMNS).append(" FROM ").append(table).append(" WHERE ").append(where);
+            params.addAll(armParams);
+        }
+        sql.append(newestFirst ? " ORDER BY timestamp DESC, id DESC" : " ORDER BY timestamp, id").append(" LIMIT ?");
+        return sql.toString();
+    }
+
+    // ---------- ВОСПРОИЗВЕДЕНИЕ ----------
+    // Записи с id в (afterId, upToId] и временем не позже upToTs в порядке записи, из основной
+    // таблицы и архивов. Диапазон id — поиск по первичному ключу каждой таблицы, слияние по id;
+    // записи не накапливаются, а передаются по одной (ScheduleReplay).
+    public void replay(long afterId, long upToId, long upToTs, Consumer<HistoryEntry> sink) throws SQLException {
+        try (Connection c = DB.getReadConnection()) {
+            List<String> tables = new ArrayList<>();
+            tables.add("history");
+            for (int month : HistoryArchiveDao.months(c)) tables.add(HistoryArchiveDao.tableName(month));
+
+            String sql = replaySql(tables);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                int i = 1;
+                for (int t = 0; t < tables.size(); t++) {
+                    ps.setLong(i++, afterId);
+                    ps.setLong(i++, upToId);
+                    ps.setLong(i++, upToTs);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) sink.accept(map(rs));
+                }
+            }
+        }
+    }
+
+    static String replaySql(List<String> tables) {
+        StringBuilder sql = new StringBuilder();
+        for (String table : tables) {
+            if (sql.length() > 0) sql.append(" UNION ALL ");
+            sql.append("SELECT ").append(COLUMNS).append(" FROM ").append(table)
+                    .append(" WHERE id > ? AND id <= ? AND timestamp <= ?");
+        }
+        return sql.append(" ORDER BY id").toString();
+    }
+
+    // Последний выданный id истории (AUTOINCREMENT), включая перенесённые в архив записи
+    public long lastId() throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT seq FROM sqlite_sequence WHERE name = 'history'");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    public long maxId() throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM history");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.getLong(1);
+        }
+    }
+
+    // id рейсов, удалённых записями истории с id в (afterId, upToId]
+    public List<Long> findDeletedFlightIds(long afterId, long upToId) throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(SQL_FIND_DELETED_BETWEEN)) {
+            ps.setLong(1, afterId);
+            ps.setLong(2, upToId);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Long> out = new ArrayList<>();
+                while (rs.next()) out.add(rs.getLong(1));
                 return out;
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package org.example.isarsw.dao;
+
+import org.example.isarsw.db.DB;
+
+import java.sql.*;
+
+// Снимки состояния расписания для воспроизведения истории (ScheduleReplay). Снимок —
+// все рейсы после применения записей истории с id до history_id включительно, по строке
+// FlightRecord.toPayload() на рейс, сжатые так же, как снимки в истории (HistoryCodec).
+// max_ts — самое позднее время среди этих записей: снимок годится как начало
+// воспроизведения для любого момента не раньше max_ts.
+public class ScheduleSnapshotDao {
+
+    static final String SQL_LATEST_AT_OR_BEFORE =
+            "SELECT id, history_id, max_ts, created_at, flights FROM schedule_snapshots " +
+            "WHERE max_ts <= ? ORDER BY max_ts DESC, id DESC LIMIT 1";
+
+    static final String SQL_FIRST_AFTER =
+            "SELECT id, history_id, max_ts, created_at, flights FROM schedule_snapshots " +
+            "WHERE max_ts > ? ORDER BY max_ts, id LIMIT 1";
+
+    public record Snapshot(long id, long historyId, long maxTs, long createdAt, int flights) {}
+
+    // ---------- ЧТЕНИЕ ----------
+
+    // Последний снимок, начатый не позже ts; null — такого нет
+    public Snapshot latestAtOrBefore(long ts) throws SQLException {
+        return find(SQL_LATEST_AT_OR_BEFORE, ts);
+    }
+
+    // Первый снимок позже ts: его history_id ограничивает воспроизведение сверху
+    public Snapshot firstAfter(long ts) throws SQLException {
+        return find(SQL_FIRST_AFTER, ts);
+    }
+
+    public Snapshot latest() throws SQLException {
+        return latestAtOrBefore(Long.MAX_VALUE);
+    }
+
+    private Snapshot find(String sql, long ts) throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, ts);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                return new Snapshot(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getInt(5));
+            }
+        }
+    }
+
+    // Строки рейсов снимка, разделённые переводом строки
+    public String loadPayload(long snapshotId) throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT payload FROM schedule_snapshots WHERE id = ?")) {
+            ps.setLong(1, snapshotId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Снимок расписания не найден: " + snapshotId);
+                return HistoryCodec.decode(rs.getObject(1));
+            }
+        }
+    }
+
+    public long count() throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM schedule_snapshots");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.getLong(1);
+        }
+    }
+
+    // ---------- ЗАПИСЬ ----------
+
+    public Snapshot insert(long historyId, long maxTs, long createdAt, int flights, String payload) throws SQLException {
+        try (Connection c = DB.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "INSERT INTO schedule_snapshots(history_id, max_ts, created_at, flights, payload) VALUES(?,?,?,?,?)",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            ps.setLong(1, historyId);
+            ps.setLong(2, maxTs);
+            ps.setLong(3, createdAt);
+            ps.setInt(4, flights);
+            Object stored = HistoryCodec.encode(payload);
+            if (stored instanceof byte[] packed) ps.setBytes(5, packed);
+            else ps.setString(5, (String) stored);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                keys.next();
+                return new Snapshot(keys.getLong(1), historyId, maxTs, createdAt, flights);
+            }
+        }
+    }
+
+    // Оставляет keep последних снимков; возвращает число удалённых
+    public int prune(int keep) throws SQLException {
+        try (Connection c = DB.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "DELETE FROM schedule_snapshots WHERE id NOT IN " +
+                     "(SELECT id FROM schedule_snapshots ORDER BY id DESC LIMIT ?)")) {
+            ps.setInt(1, keep);
+            return ps.executeUpdate();
+        }
+    }
+}
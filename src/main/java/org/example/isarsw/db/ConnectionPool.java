@@ -0,0 +1,447 @@
+package org.example.isarsw.db;
+
+import org.sqlite.Function;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Пул долгоживущих соединений SQLite: одно выделенное соединение на запись
+// и N соединений только для чтения. SQLite допускает лишь одного писателя,
+// поэтому запись сериализуется на уровне пула, а не на уровне файла БД.
+public class ConnectionPool implements AutoCloseable {
+
+    public static final int DEFAULT_READERS = 4;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MS = 10_000;
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL_MS = 30_000;
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
+    // Встроенные lower() и LIKE SQLite меняют регистр только у латиницы
+    public static final String UNICODE_LOWER_FUNCTION = "ulower";
+
+    private final String url;
+    private final int readerCount;
+    private final long acquireTimeoutMs;
+    private final long healthCheckIntervalMs;
+
+    // Писатель один; ReentrantLock позволяет потоку, уже держащему соединение
+    // (например, внутри транзакции), повторно получить его без взаимоблокировки
+    private final ReentrantLock writerLock = new ReentrantLock(true);
+    private PooledConnection writer;
+
+    private final BlockingQueue<PooledConnection> idleReaders;
+    private final List<PooledConnection> allReaders = new ArrayList<>();
+    private volatile boolean closed = false;
+
+    // Настройка сессии (PRAGMA), применяемая к каждому соединению. При смене
+    // увеличивается версия, и соединение перенастраивается при следующей выдаче.
+    private volatile ConnectionInitializer initializer;
+    private volatile int initializerVersion = 0;
+
+    // ---------- МЕТРИКИ ----------
+    private final AtomicLong writerBorrows = new AtomicLong();
+    private final AtomicLong readerBorrows = new AtomicLong();
+    private final AtomicLong waitNanosTotal = new AtomicLong();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong healthCheckFailures = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    public ConnectionPool(String url) throws SQLException {
+        this(url, DEFAULT_READERS, DEFAULT_ACQUIRE_TIMEOUT_MS, DEFAULT_HEALTH_CHECK_INTERVAL_MS);
+    }
+
+    public ConnectionPool(String url, int readerCount, long acquireTimeoutMs, long healthCheckIntervalMs) throws SQLException {
+        if (readerCount < 1) {
+            throw new IllegalArgumentException("Количество соединений для чтения должно быть положительным");
+        }
+        this.url = url;
+        this.readerCount = readerCount;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+        this.idleReaders = new ArrayBlockingQueue<>(readerCount);
+
+        try {
+            writer = open(false);
+            for (int i = 0; i < readerCount; i++) {
+                PooledConnection r = open(true);
+                allReaders.add(r);
+                idleReaders.add(r);
+            }
+        } catch (SQLException e) {
+            closeConnections();
+            throw e;
+        }
+    }
+
+    // ---------- ВЫДАЧА СОЕДИНЕНИЙ ----------
+
+    // Соединение для записи. Повторный вызов из того же потока возвращает
+    // то же физическое соединение, соединение освобождается при закрытии внешнего.
+    public Connection getWriter() throws SQLException {
+        ensureOpen();
+        writerBorrows.incrementAndGet();
+
+        if (!writerLock.isHeldByCurrentThread()) {
+            long start = System.nanoTime();
+            boolean acquired;
+            try {
+                acquired = writerLock.tryLock(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Ожидание соединения для записи прервано", e);
+            }
+            recordWait(System.nanoTime() - start);
+            if (!acquired) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Не удалось получить соединение для записи за " + acquireTimeoutMs + " мс");
+            }
+            try {
+                writer = ensureHealthy(writer, false);
+                ensureInitialized(writer, true);
+            } catch (SQLException e) {
+                writerLock.unlock();
+                throw e;
+            }
+        } else {
+            writerLock.lock();
+        }
+
+        return handle(writer, this::releaseWriter);
+    }
+
+    // Соединение для чтения. Если поток уже держит писателя (идёт транзакция),
+    // читаем через него же, чтобы видеть собственные незафиксированные изменения.
+    public Connection getReader() throws SQLException {
+        ensureOpen();
+        if (writerLock.isHeldByCurrentThread()) {
+            return getWriter();
+        }
+
+        readerBorrows.incrementAndGet();
+        long start = System.nanoTime();
+        PooledConnection pc;
+        try {
+            pc = idleReaders.poll(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения для чтения прервано", e);
+        }
+        recordWait(System.nanoTime() - start);
+        if (pc == null) {
+            timeouts.incrementAndGet();
+            throw new SQLException("Не удалось получить соединение для чтения за " + acquireTimeoutMs + " мс");
+        }
+
+        try {
+            PooledConnection healthy = ensureHealthy(pc, true);
+            if (healthy != pc) replaceReader(pc, healthy);
+            pc = healthy;
+            ensureInitialized(pc, false);
+        } catch (SQLException e) {
+            idleReaders.offer(pc);
+            throw e;
+        }
+
+        final PooledConnection borrowed = pc;
+        return handle(borrowed, () -> releaseReader(borrowed));
+    }
+
+    private void releaseWriter() {
+        try {
+            if (writerLock.getHoldCount() == 1) {
+                resetState(writer);
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    private void releaseReader(PooledConnection pc) {
+        resetState(pc);
+        if (closed) {
+            pc.closeQuietly();
+        } else {
+            idleReaders.offer(pc);
+        }
+    }
+
+    // Незавершённая транзакция не должна «утечь» к следующему пользователю соединения
+    private void resetState(PooledConnection pc) {
+        pc.lastUsed = System.currentTimeMillis();
+        try {
+            if (!pc.physical.getAutoCommit()) {
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            pc.broken = true;
+            System.err.println("Не удалось сбросить состояние соединения: " + e.getMessage());
+        }
+    }
+
+    // ---------- НАСТРОЙКА СЕССИИ ----------
+
+    @FunctionalInterface
+    public interface ConnectionInitializer {
+        void apply(Connection c, boolean writer) throws SQLException;
+    }
+
+    // Устанавливает настройку и сразу применяет её к писателю, чтобы
+    // параметры уровня файла (journal_mode) вступили в силу до первых запросов
+    public void setInitializer(ConnectionInitializer init) throws SQLException {
+        this.initializer = init;
+        this.initializerVersion++;
+        // ensureInitialized вызывается внутри getWriter(), соединение сразу возвращается
+        getWriter().close();
+    }
+
+    private void ensureInitialized(PooledConnection pc, boolean isWriter) throws SQLException {
+        ConnectionInitializer init = initializer;
+        int version = initializerVersion;
+        if (init == null || pc.initializerVersion == version) return;
+        init.apply(pc.physical, isWriter);
+        pc.initializerVersion = version;
+    }
+
+    // ---------- ПРОВЕРКА ЖИВОСТИ ----------
+
+    private PooledConnection ensureHealthy(PooledConnection pc, boolean readOnly) throws SQLException {
+        long idle = System.currentTimeMillis() - pc.lastUsed;
+        if (!pc.broken && idle < healthCheckIntervalMs) {
+            return pc;
+        }
+        if (!pc.broken && isValid(pc)) {
+            pc.lastUsed = System.currentTimeMillis();
+            return pc;
+        }
+
+        healthCheckFailures.incrementAndGet();
+        reconnects.incrementAndGet();
+        System.err.println("Соединение с БД не прошло проверку, переподключаемся");
+        pc.closeQuietly();
+        return open(readOnly);
+    }
+
+    private boolean isValid(PooledConnection pc) {
+        try (Statement st = pc.physical.createStatement()) {
+            st.execute("SELECT 1");
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private synchronized void replaceReader(PooledConnection old, PooledConnection fresh) {
+        int idx = allReaders.indexOf(old);
+        if (idx >= 0) allReaders.set(idx, fresh);
+    }
+
+    // Проверка всех простаивающих соединений; возвращает число переоткрытых
+    public int healthCheck() throws SQLException {
+        ensureOpen();
+        int replaced = 0;
+
+        List<PooledConnection> drained = new ArrayList<>();
+        idleReaders.drainTo(drained);
+        try {
+            for (int i = 0; i < drained.size(); i++) {
+                PooledConnection pc = drained.get(i);
+                if (!isValid(pc)) {
+                    pc.broken = true;
+                    PooledConnection fresh = ensureHealthy(pc, true);
+                    replaceReader(pc, fresh);
+                    drained.set(i, fresh);
+                    replaced++;
+                }
+            }
+        } finally {
+            idleReaders.addAll(drained);
+        }
+
+        if (writerLock.tryLock()) {
+            try {
+                if (!isValid(writer)) {
+                    writer.broken = true;
+                    writer = ensureHealthy(writer, false);
+                    replaced++;
+                }
+            } finally {
+                writerLock.unlock();
+            }
+        }
+        return replaced;
+    }
+
+    // ---------- ОБСЛУЖИВАНИЕ ----------
+
+    private PooledConnection open(boolean readOnly) throws SQLException {
+        Connection c = DriverManager.getConnection(url);
+        try (Statement st = c.createStatement()) {
+            st.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            if (readOnly) {
+                st.execute("PRAGMA query_only = ON");
+            }
+            Function.create(c, UNICODE_LOWER_FUNCTION, new UnicodeLower(), 1, Function.FLAG_DETERMINISTIC);
+        } catch (SQLException e) {
+            c.close();
+            throw e;
+        }
+        return new PooledConnection(c, new StatementCache(c, StatementCache.DEFAULT_CAPACITY, statementHits, statementMisses));
+    }
+
+    private Connection handle(PooledConnection pc, Runnable onClose) {
+        AtomicBoolean released = new AtomicBoolean(false);
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (released.compareAndSet(false, true)) onClose.run();
+                            return null;
+                        case "isClosed":
+                            return released.get() || pc.physical.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "PooledConnection[" + url + "]";
+                        default:
+                            break;
+                    }
+                    if (released.get()) {
+                        throw new SQLException("Соединение уже возвращено в пул");
+                    }
+                    // prepareStatement(sql) и prepareStatement(sql, autoGeneratedKeys) — через кэш
+                    if (method.getName().equals("prepareStatement") && args.length <= 2
+                            && (args.length == 1 || args[1] instanceof Integer)) {
+                        int keys = args.length == 2 ? (Integer) args[1] : -1;
+                        return pc.statements.prepare((String) args[0], keys);
+                    }
+                    try {
+                        return method.invoke(pc.physical, args);
+                    } catch (InvocationTargetException e) {
+                        if (e.getCause() instanceof SQLException) pc.markIfBroken((SQLException) e.getCause());
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private void recordWait(long nanos) {
+        waitNanosTotal.addAndGet(nanos);
+        waitNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) throw new SQLException("Пул соединений закрыт");
+    }
+
+    public PoolMetrics getMetrics() {
+        long borrows = writerBorrows.get() + readerBorrows.get();
+        return new PoolMetrics(
+                readerCount,
+                idleReaders.size(),
+                writerLock.isLocked(),
+                writerBorrows.get(),
+                readerBorrows.get(),
+                borrows == 0 ? 0 : waitNanosTotal.get() / borrows / 1000,
+                waitNanosMax.get() / 1000,
+                timeouts.get(),
+                healthCheckFailures.get(),
+                reconnects.get(),
+                statementHits.get(),
+                statementMisses.get()
+        );
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        closeConnections();
+    }
+
+    // Конструктор вызывает напрямую: close() переопределяем и не должен видеть недостроенный пул
+    private void closeConnections() {
+        for (PooledConnection r : allReaders) r.closeQuietly();
+        idleReaders.clear();
+        if (writer != null) writer.closeQuietly();
+    }
+
+    // Физическое соединение с отметкой времени последнего использования
+    // ulower(x): нижний регистр по правилам Java (кириллица, Ё); NULL остаётся NULL
+    private static final class UnicodeLower extends Function {
+        @Override
+        protected void xFunc() throws SQLException {
+            String v = value_text(0);
+            if (v == null) result();
+            else result(v.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static final class PooledConnection {
+        final Connection physical;
+        final StatementCache statements;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile boolean broken = false;
+        volatile int initializerVersion = 0;
+
+        PooledConnection(Connection physical, StatementCache statements) {
+            this.physical = physical;
+            this.statements = statements;
+        }
+
+        void markIfBroken(SQLException e) {
+            String msg = e.getMessage();
+            if (msg != null && (msg.contains("database connection closed") || msg.contains("SQLITE_IOERR"))) {
+                broken = true;
+            }
+        }
+
+        void closeQuietly() {
+            statements.close();
+            try {
+                physical.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    // Снимок метрик пула; время ожидания — в микросекундах
+    public record PoolMetrics(int readers, int idleReaders, boolean writerBusy,
+                              long writerBorrows, long readerBorrows,
+                              long avgWaitMicros, long maxWaitMicros,
+                              long timeouts, long healthCheckFailures, long reconnects,
+                              long statementHits, long statementMisses) {
+        @Override
+        public String toString() {
+            return "читателей: " + idleReaders + "/" + readers +
+                    ", писатель занят: " + writerBusy +
+                    ", выдано (запись/чтение): " + writerBorrows + "/" + readerBorrows +
+                    ", ожидание ср/макс: " + avgWaitMicros + "/" + maxWaitMicros + " мкс" +
+                    ", таймауты: " + timeouts +
+                    ", сбоев проверки: " + healthCheckFailures +
+                    ", кэш выражений (попадания/промахи): " + statementHits + "/" + statementMisses;
+        }
+    }
+}
@@ -1,159 +1,149 @@
 package org.example.isarsw.db;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DB {
-    private static final String DB_URL = "jdbc:sqlite:app.db";
+    private static final String DEFAULT_DB_URL = "jdbc:sqlite:app.db";
 
+    // Размер пула задаётся системным свойством: -Disarsw.db.readers=8
+    private static final String READERS_PROPERTY = "isarsw.db.readers";
+
+    private static String dbUrl = DEFAULT_DB_URL;
+    private static volatile ConnectionPool pool;
+
+    // ---------- ПУЛ СОЕДИНЕНИЙ ----------
+
+    // Соединение для записи (единственное). close() возвращает его в пул.
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DB_URL);
+        return pool().getWriter();
     }
 
-    public static void init() throws SQLException {
-        try (Connection conn = getConnection();
-             Statement st = conn.createStatement()) {
-
-            conn.setAutoCommit(false);
+    // Соединение только для чтения из пула
+    public static Connection getReadConnection() throws SQLException {
+        return pool().getReader();
+    }
 
-            // Проверяем существование таблицы flights
-            boolean tableExists = false;
-            try (var rs = conn.getMetaData().getTables(null, null, "flights", null)) {
-                tableExists = rs.next();
+    private static ConnectionPool pool() throws SQLException {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DB.class) {
+                p = pool;
+                if (p == null) {
+                    int readers = Integer.getInteger(READERS_PROPERTY, ConnectionPool.DEFAULT_READERS);
+                    p = new ConnectionPool(dbUrl, readers,
+                            ConnectionPool.DEFAULT_ACQUIRE_TIMEOUT_MS,
+                            ConnectionPool.DEFAULT_HEALTH_CHECK_INTERVAL_MS);
+                    pool = p;
+                    System.out.println("Пул соединений открыт: " + readers + " на чтение, 1 на запись");
+                }
             }
+        }
+        return p;
+    }
 
-            if (tableExists) {
-                // Проверяем наличие старых колонок и мигрируем если нужно
-                migrateIfNeeded(conn, st);
-            } else {
-                // Создаем новую таблицу с новой схемой
-                createNewTables(st);
-            }
+    // Переключение на другой файл БД (используется в тестах и утилитах)
+    public static synchronized void setUrl(String url) {
+        shutdown();
+        dbUrl = url;
+    }
 
-            // Создаем таблицу history (если не существует)
-            createHistoryTable(st);
+    public static String getUrl() {
+        return dbUrl;
+    }
 
-            // Создаем таблицу для хранения конфигурации
-            createConfigTable(st);
+    public static ConnectionPool.PoolMetrics getPoolMetrics() {
+        ConnectionPool p = pool;
+        return p == null ? null : p.getMetrics();
+    }
 
-            conn.commit();
-            System.out.println("База данных инициализирована успешно");
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            System.out.println("Пул соединений: " + pool.getMetrics());
+            pool.close();
+            pool = null;
+        }
+    }
 
+    public static void init() throws SQLException {
+        try (Connection conn = getConnection()) {
+            // На актуальной схеме это один запрос версии; иначе — недостающие шаги миграции
+            SchemaMigrator.migrate(conn);
+            System.out.println("База данных инициализирована успешно (схема версии " +
+                    SchemaMigrator.currentVersion(conn) + ")");
         } catch (SQLException e) {
             System.err.println("Ошибка инициализации базы данных: " + e.getMessage());
             throw e;
         }
-    }
-
-    private static void migrateIfNeeded(Connection conn, Statement st) throws SQLException {
-        // Проверяем наличие колонки standing_time
-        boolean hasStandingTime = false;
-        try (var rs = conn.getMetaData().getColumns(null, null, "flights", "standing_time")) {
-            hasStandingTime = rs.next();
-        }
 
-        // Проверяем наличие колонки last_arrival_check
-        boolean hasLastArrivalCheck = false;
-        try (var rs = conn.getMetaData().getColumns(null, null, "flights", "last_arrival_check")) {
-            hasLastArrivalCheck = rs.next();
-        }
+        // journal_mode нельзя менять внутри транзакции, поэтому профиль
+        // применяется после миграций
+        applyPragmaProfile();
+    }
 
-        if (!hasStandingTime || !hasLastArrivalCheck) {
-            System.out.println("Обнаружена старая схема базы данных. Выполняем миграцию...");
-
-            // Создаем временную таблицу с новой схемой
-            st.executeUpdate("CREATE TABLE flights_new (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "number TEXT NOT NULL," +
-                    "route TEXT NOT NULL," +
-                    "arrive_ts INTEGER NOT NULL," +
-                    "standing_time INTEGER NOT NULL DEFAULT 30," +
-                    "platform TEXT NOT NULL," +
-                    "status TEXT NOT NULL," +
-                    "created_at INTEGER NOT NULL," +
-                    "updated_at INTEGER NOT NULL," +
-                    "last_arrival_check INTEGER DEFAULT 0" +
-                    ");");
-
-            // Копируем данные из старой таблицы
-            boolean hasArriveTs = false;
-            try (var rs = conn.getMetaData().getColumns(null, null, "flights", "arrive_ts")) {
-                hasArriveTs = rs.next();
+    // ---------- ПРОФИЛЬ PRAGMA ----------
+
+    // Профиль и размер mmap берутся из таблицы config; при первом запуске
+    // туда записываются значения по умолчанию, чтобы их было видно и можно было поменять
+    private static void applyPragmaProfile() throws SQLException {
+        PragmaProfile profile;
+        long mmapSize;
+        try (Connection conn = getConnection()) {
+            String storedProfile = getConfig(conn, PragmaProfile.CONFIG_KEY);
+            profile = PragmaProfile.fromName(storedProfile);
+            if (storedProfile == null) {
+                setConfig(conn, PragmaProfile.CONFIG_KEY, profile.getName());
             }
 
-            if (hasArriveTs) {
-                // Копируем существующие данные
-                if (hasLastArrivalCheck) {
-                    st.executeUpdate("INSERT INTO flights_new " +
-                            "(id, number, route, arrive_ts, standing_time, platform, status, created_at, updated_at, last_arrival_check) " +
-                            "SELECT id, number, route, arrive_ts, standing_time, platform, status, created_at, updated_at, last_arrival_check " +
-                            "FROM flights");
-                } else {
-                    st.executeUpdate("INSERT INTO flights_new " +
-                            "(id, number, route, arrive_ts, standing_time, platform, status, created_at, updated_at, last_arrival_check) " +
-                            "SELECT id, number, route, arrive_ts, COALESCE(standing_time, 30), platform, status, created_at, updated_at, 0 " +
-                            "FROM flights");
-                }
+            String storedMmap = getConfig(conn, PragmaProfile.MMAP_CONFIG_KEY);
+            mmapSize = PragmaProfile.DEFAULT_MMAP_SIZE;
+            if (storedMmap == null) {
+                setConfig(conn, PragmaProfile.MMAP_CONFIG_KEY, String.valueOf(mmapSize));
             } else {
-                long now = System.currentTimeMillis() / 1000;
-                st.executeUpdate("INSERT INTO flights_new " +
-                        "(id, number, route, arrive_ts, standing_time, platform, status, created_at, updated_at, last_arrival_check) " +
-                        "SELECT id, number, route, " + now + ", 30, platform, status, created_at, updated_at, 0 " +
-                        "FROM flights");
+                try {
+                    mmapSize = Long.parseLong(storedMmap.trim());
+                } catch (NumberFormatException e) {
+                    System.err.println("Некорректное значение " + PragmaProfile.MMAP_CONFIG_KEY + ": " + storedMmap);
+                }
             }
+        }
+
+        final long mmap = mmapSize;
+        pool().setInitializer((c, writer) -> profile.apply(c, writer, mmap));
+        System.out.println("Профиль PRAGMA: " + profile.describe(mmap));
+    }
+
+    // Смена профиля без перезапуска: сохраняется в config и применяется ко всем соединениям
+    public static void setPragmaProfile(PragmaProfile profile) throws SQLException {
+        try (Connection conn = getConnection()) {
+            setConfig(conn, PragmaProfile.CONFIG_KEY, profile.getName());
+        }
+        applyPragmaProfile();
+    }
 
-            // Удаляем старую таблицу и переименовываем новую
-            st.executeUpdate("DROP TABLE flights");
-            st.executeUpdate("ALTER TABLE flights_new RENAME TO flights");
+    // ---------- КОНФИГУРАЦИЯ ----------
 
-            System.out.println("Миграция базы данных выполнена успешно");
-        } else {
-            System.out.println("База данных уже в новой схеме");
+    public static String getConfig(Connection conn, String key) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT value FROM config WHERE key = ?")) {
+            ps.setString(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
         }
     }
 
-    private static void createNewTables(Statement st) throws SQLException {
-        st.executeUpdate(
-                "CREATE TABLE flights (" +
-                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                        "number TEXT NOT NULL," +
-                        "route TEXT NOT NULL," +
-                        "arrive_ts INTEGER NOT NULL," +
-                        "standing_time INTEGER NOT NULL DEFAULT 30," +
-                        "platform TEXT NOT NULL," +
-                        "status TEXT NOT NULL," +
-                        "created_at INTEGER NOT NULL," +
-                        "updated_at INTEGER NOT NULL," +
-                        "last_arrival_check INTEGER DEFAULT 0" +
-                        ");"
-        );
-        System.out.println("Создана таблица flights с новой схемой");
-    }
-
-    private static void createHistoryTable(Statement st) throws SQLException {
-        st.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS history (" +
-                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                        "flight_id INTEGER," +
-                        "action TEXT NOT NULL," +
-                        "actor TEXT NOT NULL," +
-                        "timestamp INTEGER NOT NULL," +
-                        "payload_before TEXT," +
-                        "payload_after TEXT," +
-                        "FOREIGN KEY(flight_id) REFERENCES flights(id) ON DELETE CASCADE" +
-                        ");"
-        );
-    }
-
-    private static void createConfigTable(Statement st) throws SQLException {
-        st.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS config (" +
-                        "key TEXT PRIMARY KEY," +
-                        "value TEXT" +
-                        ");"
-        );
+    public static void setConfig(Connection conn, String key, String value) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO config(key, value) VALUES(?, ?) ON CONFLICT(key) DO UPDATE SET value = excluded.value")) {
+            ps.setString(1, key);
+            ps.setString(2, value);
+            ps.executeUpdate();
+        }
     }
 
     public static void recreateTables() throws SQLException {
@@ -163,53 +153,34 @@ public class DB {
             conn.setAutoCommit(false);
 
             // Удаляем таблицы
+            dropHistoryArchives(st);
+            st.executeUpdate("DROP TABLE IF EXISTS schedule_snapshots");
+            st.executeUpdate("DROP TABLE IF EXISTS history_archive_index");
+            st.executeUpdate("DROP TABLE IF EXISTS history_dead_letter");
             st.executeUpdate("DROP TABLE IF EXISTS history");
             st.executeUpdate("DROP TABLE IF EXISTS config");
             st.executeUpdate("DROP TABLE IF EXISTS flights");
-
-            // Создаем заново с новой схемой
-            st.executeUpdate(
-                    "CREATE TABLE flights (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                            "number TEXT NOT NULL," +
-                            "route TEXT NOT NULL," +
-                            "arrive_ts INTEGER NOT NULL," +
-                            "standing_time INTEGER NOT NULL DEFAULT 30," +
-                            "platform TEXT NOT NULL," +
-                            "status TEXT NOT NULL," +
-                            "created_at INTEGER NOT NULL," +
-                            "updated_at INTEGER NOT NULL," +
-                            "last_arrival_check INTEGER DEFAULT 0" +
-                            ");"
-            );
-
-            st.executeUpdate(
-                    "CREATE TABLE history (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                            "flight_id INTEGER," +
-                            "action TEXT NOT NULL," +
-                            "actor TEXT NOT NULL," +
-                            "timestamp INTEGER NOT NULL," +
-                            "payload_before TEXT," +
-                            "payload_after TEXT," +
-                            "FOREIGN KEY(flight_id) REFERENCES flights(id) ON DELETE CASCADE" +
-                            ");"
-            );
-
-            st.executeUpdate(
-                    "CREATE TABLE config (" +
-                            "key TEXT PRIMARY KEY," +
-                            "value TEXT" +
-                            ");"
-            );
-
+            st.executeUpdate("DROP TABLE IF EXISTS schema_version");
             conn.commit();
+
+            // Создаем заново, прогоняя все миграции с нуля
+            SchemaMigrator.migrate(conn);
             System.out.println("Таблицы пересозданы с новой схемой");
         }
     }
 
+    // Помесячные архивы истории history_archive_ГГГГММ (HistoryArchiveDao)
+    private static void dropHistoryArchives(Statement st) throws SQLException {
+        List<String> archives = new ArrayList<>();
+        try (ResultSet rs = st.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' " +
+                "AND name GLOB 'history_archive_[0-9][0-9][0-9][0-9][0-9][0-9]'")) {
+            while (rs.next()) archives.add(rs.getString(1));
+        }
+        for (String table : archives) st.executeUpdate("DROP TABLE IF EXISTS " + table);
+    }
+
     public static void checkIntegrity() throws SQLException {
-        try (Connection conn = getConnection();
+        try (Connection conn = getReadConnection();
              Statement st = conn.createStatement();
              var rs = st.executeQuery("PRAGMA integrity_check")) {
 
@@ -230,6 +201,10 @@ public class DB {
              Statement st = conn.createStatement()) {
 
             conn.setAutoCommit(false);
+            dropHistoryArchives(st);
+            // Снимки расписания собраны из удаляемой истории
+            st.executeUpdate("DELETE FROM schedule_snapshots");
+            st.executeUpdate("DELETE FROM history_archive_index");
             st.executeUpdate("DELETE FROM history");
             st.executeUpdate("DELETE FROM flights");
             st.executeUpdate("DELETE FROM config");
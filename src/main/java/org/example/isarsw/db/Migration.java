@@ -0,0 +1,42 @@
+package org.example.isarsw.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Один шаг миграции схемы. Шаги выполняются строго по возрастанию версии,
+// каждый — в своей транзакции (шаг может сам фиксировать промежуточные порции).
+public final class Migration {
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection conn, Progress progress) throws SQLException;
+    }
+
+    // Отчёт о ходе длительных шагов (пакетное копирование)
+    @FunctionalInterface
+    public interface Progress {
+        void report(String stage, long done, long total);
+    }
+
+    private final int version;
+    private final String description;
+    private final Step step;
+
+    public Migration(int version, String description, Step step) {
+        this.version = version;
+        this.description = description;
+        this.step = step;
+    }
+
+    public int getVersion() { return version; }
+    public String getDescription() { return description; }
+
+    void apply(Connection conn, Progress progress) throws SQLException {
+        step.apply(conn, progress);
+    }
+
+    @Override
+    public String toString() {
+        return "V" + version + " " + description;
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.isarsw.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+// Именованные наборы PRAGMA, применяемые к каждому соединению пула.
+// Во всех профилях включён WAL: читатели (обновление таблицы) и писатель
+// (планировщик статусов) не блокируют друг друга.
+public enum PragmaProfile {
+
+    // Максимальная надёжность: fsync на каждый коммит
+    DURABLE("durable", "WAL", "FULL", -8_000, "DEFAULT"),
+
+    // Профиль по умолчанию: в режиме WAL NORMAL не теряет целостность при сбое ОС,
+    // теряются лишь последние коммиты
+    BALANCED("balanced", "WAL", "NORMAL", -16_000, "MEMORY"),
+
+    // Для массовой загрузки расписаний: без fsync, большой кэш
+    THROUGHPUT("throughput", "WAL", "OFF", -64_000, "MEMORY");
+
+    public static final String CONFIG_KEY = "db.pragma_profile";
+    public static final String MMAP_CONFIG_KEY = "db.mmap_size";
+    public static final long DEFAULT_MMAP_SIZE = 64L * 1024 * 1024;
+
+    private final String name;
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSize; // отрицательное значение — в КиБ
+    private final String tempStore;
+
+    PragmaProfile(String name, String journalMode, String synchronous, int cacheSize, String tempStore) {
+        this.name = name;
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.tempStore = tempStore;
+    }
+
+    public String getName() { return name; }
+    public String getJournalMode() { return journalMode; }
+    public String getSynchronous() { return synchronous; }
+    public int getCacheSize() { return cacheSize; }
+    public String getTempStore() { return tempStore; }
+
+    public static PragmaProfile fromName(String value) {
+        if (value == null || value.isBlank()) return BALANCED;
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        for (PragmaProfile p : values()) {
+            if (p.name.equals(v)) return p;
+        }
+        System.err.println("Неизвестный профиль PRAGMA '" + value + "', используется " + BALANCED.name);
+        return BALANCED;
+    }
+
+    // journal_mode хранится в самом файле БД и меняется только писателем;
+    // на соединениях query_only его смена запрещена
+    public void apply(Connection c, boolean writer, long mmapSize) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            if (writer) {
+                try (ResultSet rs = st.executeQuery("PRAGMA journal_mode = " + journalMode)) {
+                    if (rs.next() && !journalMode.equalsIgnoreCase(rs.getString(1))) {
+                        System.err.println("SQLite не включил journal_mode=" + journalMode + ", текущий: " + rs.getString(1));
+                    }
+                }
+            }
+            st.execute("PRAGMA synchronous = " + synchronous);
+            st.execute("PRAGMA cache_size = " + cacheSize);
+            st.execute("PRAGMA temp_store = " + tempStore);
+            st.execute("PRAGMA mmap_size = " + Math.max(0, mmapSize));
+        }
+    }
+
+    public String describe(long mmapSize) {
+        return name + " (journal_mode=" + journalMode +
+                ", synchronous=" + synchronous +
+                ", cache_size=" + cacheSize +
+                ", temp_store=" + tempStore +
+                ", mmap_size=" + mmapSize + ")";
+    }
+}
@@ -0,0 +1,340 @@
+package org.example.isarsw.db;
+
+import org.example.isarsw.model.FlightStatus;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Версионные миграции схемы. Текущая версия хранится в таблице schema_version
+// (по строке на применённый шаг), поэтому запуск на актуальной БД стоит
+// одного запроса MAX(version), без проверки колонок через метаданные.
+public class SchemaMigrator {
+
+    public static final int DEFAULT_CHUNK_SIZE = 5_000;
+
+    // Вывод прогресса в консоль, не чаще одного раза на порцию
+    public static final Migration.Progress CONSOLE_PROGRESS = (stage, done, total) -> {
+        if (total > 0) {
+            System.out.println("  " + stage + ": " + done + "/" + total + " (" + (done * 100 / total) + "%)");
+        } else {
+            System.out.println("  " + stage + ": " + done);
+        }
+    };
+
+    // ---------- ШАГИ МИГРАЦИИ ----------
+    // Новые шаги добавляются только в конец списка; уже выпущенные шаги не меняются.
+
+    static final String FLIGHTS_COLUMNS_DDL =
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "number TEXT NOT NULL," +
+            "route TEXT NOT NULL," +
+            "arrive_ts INTEGER NOT NULL," +
+            "standing_time INTEGER NOT NULL DEFAULT 30," +
+            "platform TEXT NOT NULL," +
+            "status TEXT NOT NULL," +
+            "created_at INTEGER NOT NULL," +
+            "updated_at INTEGER NOT NULL," +
+            "last_arrival_check INTEGER DEFAULT 0";
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "базовые таблицы flights, history, config", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate("CREATE TABLE IF NOT EXISTS flights (" + FLIGHTS_COLUMNS_DDL + ")");
+                    st.executeUpdate(
+                            "CREATE TABLE IF NOT EXISTS history (" +
+                                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                                    "flight_id INTEGER," +
+                                    "action TEXT NOT NULL," +
+                                    "actor TEXT NOT NULL," +
+                                    "timestamp INTEGER NOT NULL," +
+                                    "payload_before TEXT," +
+                                    "payload_after TEXT," +
+                                    "FOREIGN KEY(flight_id) REFERENCES flights(id) ON DELETE CASCADE" +
+                                    ")");
+                    st.executeUpdate("CREATE TABLE IF NOT EXISTS config (key TEXT PRIMARY KEY, value TEXT)");
+                }
+            }),
+
+            // Старые БД без колонок стоянки и проверки прибытия. Раньше таблица
+            // пересоздавалась целиком; ADD COLUMN меняет только схему, без копирования строк.
+            new Migration(2, "колонки arrive_ts, standing_time, last_arrival_check", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    if (!hasColumn(conn, "flights", "arrive_ts")) {
+                        // Для строк без времени прибытия берём момент миграции, как и прежде
+                        long now = Instant.now().getEpochSecond();
+                        st.executeUpdate("ALTER TABLE flights ADD COLUMN arrive_ts INTEGER NOT NULL DEFAULT " + now);
+                    }
+                    if (!hasColumn(conn, "flights", "standing_time")) {
+                        st.executeUpdate("ALTER TABLE flights ADD COLUMN standing_time INTEGER NOT NULL DEFAULT 30");
+                    }
+                    if (!hasColumn(conn, "flights", "last_arrival_check")) {
+                        st.executeUpdate("ALTER TABLE flights ADD COLUMN last_arrival_check INTEGER DEFAULT 0");
+                    }
+                }
+            }),
+
+            new Migration(3, "индексы планировщика, конфликтов и истории", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    // Поиск конфликтов: platform = ? AND arrive_ts в окне
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_flights_platform_arrive ON flights(platform, arrive_ts)");
+                    // Выборки по статусу и времени прибытия (фильтр таблицы по статусу)
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_flights_status_arrive ON flights(status, arrive_ts)");
+                    // HistoryArchiveDao.SQL_FIND_ARCHIVABLE: status IN (...) AND время отправления < ?;
+                    // выражение совпадает с выражением в запросе
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_flights_status_departure ON flights(status, (arrive_ts + (standing_time * 60)))");
+                    // HistoryDao.listByFlight: flight_id = ? ORDER BY timestamp
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_history_flight_ts ON history(flight_id, timestamp)");
+                    // Ключ прежнего механизма версий индексов больше не нужен
+                    st.executeUpdate("DELETE FROM config WHERE key = 'db.index_version'");
+                }
+            }),
+
+            // MAX(standing_time) для нижней границы окна конфликтов — без полного сканирования
+            new Migration(4, "индекс по времени стоянки для ограничения окна конфликтов", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_flights_standing_time ON flights(standing_time)");
+                }
+            }),
+
+            // FlightDao.findPageFrom/findPageBefore: ключ (arrive_ts, id), id — rowid индекса
+            new Migration(5, "индекс постраничной выборки по времени прибытия", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_flights_arrive ON flights(arrive_ts)");
+                }
+            }),
+
+            // FlightDao.findChangedSince / maxUpdatedAt: лента изменений для обновления таблицы
+            new Migration(6, "индекс ленты изменений по updated_at", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_flights_updated ON flights(updated_at)");
+                }
+            }),
+
+            // Подпись статуса (TEXT) заменяется кодом FlightStatus. DROP/RENAME COLUMN
+            // вместо пересоздания таблицы: DROP TABLE flights удалил бы историю по внешнему ключу.
+            // Коды заполняются порциями (updateInChunks); прерванный шаг при следующем запуске
+            // продолжает с последней зафиксированной порции, подписи до конца шага не удаляются.
+            // Неизвестная подпись не угадывается: миграция останавливается со списком таких подписей,
+            // их нужно исправить в app.db вручную.
+            new Migration(7, "целочисленный код статуса рейса", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    List<String> unknown = new ArrayList<>();
+                    try (ResultSet rs = st.executeQuery("SELECT DISTINCT status FROM flights " +
+                            "WHERE status IS NULL OR status NOT IN (" + FlightStatus.labelsSql() + ")")) {
+                        while (rs.next()) unknown.add(rs.getString(1) == null ? "NULL" : "'" + rs.getString(1) + "'");
+                    }
+                    if (!unknown.isEmpty()) {
+                        throw new SQLException("Неизвестные статусы рейсов: " + String.join(", ", unknown) +
+                                ". Допустимые: " + FlightStatus.labelsSql());
+                    }
+                    // Колонку, входящую в индекс, удалить нельзя
+                    st.executeUpdate("DROP INDEX IF EXISTS idx_flights_status_arrive");
+                    st.executeUpdate("DROP INDEX IF EXISTS idx_flights_status_departure");
+                    if (!hasColumn(conn, "flights", "status_code")) {
+                        st.executeUpdate("ALTER TABLE flights ADD COLUMN status_code INTEGER NOT NULL DEFAULT "
+                                + FlightStatus.PLANNED.code());
+                    }
+                    updateInChunks(conn, "flights", "status_code = " + FlightStatus.codeSql("status"),
+                            "migration.v7.last_id", DEFAULT_CHUNK_SIZE, "перевод статусов в коды", progress);
+                    st.executeUpdate("ALTER TABLE flights DROP COLUMN status");
+                    st.executeUpdate("ALTER TABLE flights RENAME COLUMN status_code TO status");
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_flights_status_arrive ON flights(status, arrive_ts)");
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_flights_status_departure ON flights(status, (arrive_ts + (standing_time * 60)))");
+                }
+            }),
+            new Migration(8, "формат записей истории: полные снимки или разница полей", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    // Все прежние записи хранят полные снимки (или статус до/после) текстом
+                    st.executeUpdate("ALTER TABLE history ADD COLUMN payload_format INTEGER NOT NULL DEFAULT 0");
+                }
+            }),
+            // Сами архивы history_archive_ГГГГММ создаются при переносе (HistoryArchiveDao)
+            new Migration(9, "индекс помесячных архивов истории", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate("CREATE TABLE IF NOT EXISTS history_archive_index (" +
+                            "flight_id INTEGER PRIMARY KEY," +
+                            "month INTEGER NOT NULL)");
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_history_archive_index_month ON history_archive_index(month)");
+                }
+            }),
+            // Индексы журнала аудита; уже созданным архивам — те же, что создаёт HistoryArchiveDao
+            new Migration(10, "индексы журнала аудита по времени, автору и действию", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    // HistoryDao.findAuditPage*: ключ (timestamp, id) по убыванию, id — rowid индекса;
+                    // фильтр по автору или действию — равенство по первой колонке и тот же порядок
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_history_ts ON history(timestamp)");
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_history_actor_ts ON history(actor, timestamp)");
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_history_action_ts ON history(action, timestamp)");
+                    List<String> archives = new ArrayList<>();
+                    try (ResultSet rs = st.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' " +
+                            "AND name GLOB 'history_archive_[0-9][0-9][0-9][0-9][0-9][0-9]'")) {
+                        while (rs.next()) archives.add(rs.getString(1));
+                    }
+                    for (int i = 0; i < archives.size(); i++) {
+                        String table = archives.get(i);
+                        st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_ts ON " + table + "(timestamp)");
+                        st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_actor_ts ON " + table + "(actor, timestamp)");
+                        st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_action_ts ON " + table + "(action, timestamp)");
+                        progress.report("индексы архивов истории", i + 1, archives.size());
+                    }
+                }
+            }),
+            // Снимки для воспроизведения истории (ScheduleSnapshotDao); первый снимок
+            // строится при первом запуске ScheduleReplay
+            new Migration(11, "снимки состояния расписания", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate("CREATE TABLE IF NOT EXISTS schedule_snapshots (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "history_id INTEGER NOT NULL," +
+                            "max_ts INTEGER NOT NULL," +
+                            "created_at INTEGER NOT NULL," +
+                            "flights INTEGER NOT NULL," +
+                            "payload BLOB NOT NULL)");
+                    st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_schedule_snapshots_max_ts ON schedule_snapshots(max_ts)");
+                }
+            }),
+            // Записи истории, отвергнутые БД при фоновой записи (HistoryWriter); колонки без
+            // ограничений, чтобы принять любую такую запись
+            new Migration(12, "отвергнутые записи истории", (conn, progress) -> {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate("CREATE TABLE IF NOT EXISTS history_dead_letter (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "flight_id INTEGER," +
+                            "action TEXT," +
+                            "actor TEXT," +
+                            "timestamp INTEGER," +
+                            "payload_before TEXT," +
+                            "payload_after TEXT," +
+                            "payload_format INTEGER," +
+                            "error TEXT," +
+                            "failed_at INTEGER NOT NULL)");
+                }
+            })
+    );
+
+    // ---------- ВЫПОЛНЕНИЕ ----------
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).getVersion();
+    }
+
+    public static int currentVersion(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER PRIMARY KEY," +
+                    "description TEXT NOT NULL," +
+                    "applied_at INTEGER NOT NULL" +
+                    ")");
+            try (ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    public static void migrate(Connection conn) throws SQLException {
+        migrate(conn, CONSOLE_PROGRESS);
+    }
+
+    public static void migrate(Connection conn, Migration.Progress progress) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            int current = currentVersion(conn);
+            conn.commit();
+            if (current >= latestVersion()) {
+                return;
+            }
+
+            System.out.println("Схема БД версии " + current + ", последняя версия " + latestVersion());
+            for (Migration m : MIGRATIONS) {
+                if (m.getVersion() <= current) continue;
+
+                long start = System.currentTimeMillis();
+                System.out.println("Миграция " + m + "...");
+                try {
+                    m.apply(conn, progress);
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "INSERT INTO schema_version(version, description, applied_at) VALUES(?,?,?)")) {
+                        ps.setInt(1, m.getVersion());
+                        ps.setString(2, m.getDescription());
+                        ps.setLong(3, Instant.now().getEpochSecond());
+                        ps.executeUpdate();
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    System.err.println("Ошибка миграции " + m + ": " + e.getMessage());
+                    throw e;
+                }
+                System.out.println("Миграция " + m + " выполнена за " + (System.currentTimeMillis() - start) + " мс");
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    // ---------- ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ДЛЯ ШАГОВ ----------
+
+    static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+            return false;
+        }
+    }
+
+    // Обновление строк таблицы порциями по id с фиксацией каждой порции, чтобы блокировка
+    // записи не держалась весь шаг. Последний обработанный id хранится в config под cursorKey
+    // и фиксируется вместе с порцией, так что прерванная миграция продолжается с места
+    // остановки. Ключ удаляется в транзакции шага и исчезает вместе с записью о версии.
+    static void updateInChunks(Connection conn, String table, String setClause, String cursorKey,
+                               int chunkSize, String stage, Migration.Progress progress) throws SQLException {
+        String stored = DB.getConfig(conn, cursorKey);
+        long lastId = stored == null ? 0 : Long.parseLong(stored);
+        long total;
+        long done;
+        try (Statement st = conn.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                total = rs.getLong(1);
+            }
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + table + " WHERE id <= " + lastId)) {
+                done = rs.getLong(1);
+            }
+        }
+
+        try (PreparedStatement upper = conn.prepareStatement(
+                     "SELECT MAX(id) FROM (SELECT id FROM " + table + " WHERE id > ? ORDER BY id LIMIT ?)");
+             PreparedStatement update = conn.prepareStatement(
+                     "UPDATE " + table + " SET " + setClause + " WHERE id > ? AND id <= ?")) {
+            while (true) {
+                upper.setLong(1, lastId);
+                upper.setInt(2, chunkSize);
+                long to;
+                try (ResultSet rs = upper.executeQuery()) {
+                    to = rs.getLong(1);
+                    if (rs.wasNull()) break;
+                }
+                update.setLong(1, lastId);
+                update.setLong(2, to);
+                done += update.executeUpdate();
+                lastId = to;
+                DB.setConfig(conn, cursorKey, String.valueOf(lastId));
+                conn.commit();
+                progress.report(stage, done, total);
+            }
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM config WHERE key = ?")) {
+            ps.setString(1, cursorKey);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.example.isarsw.db;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Кэш подготовленных выражений одного физического соединения, ключ — текст SQL.
+// DAO по-прежнему закрывают PreparedStatement в try-with-resources: close()
+// возвращает выражение в кэш, и SQLite не разбирает и не планирует запрос заново.
+// Соединение пула в каждый момент используется одним потоком, синхронизация не нужна.
+final class StatementCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final Connection physical;
+    private final int capacity;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    // accessOrder = true: порядок по последнему использованию (LRU)
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection physical, int capacity, AtomicLong hits, AtomicLong misses) {
+        this.physical = physical;
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    // autoGeneratedKeys < 0 — обычное выражение без возврата ключей
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "keys:" + sql : sql;
+        Entry e = entries.get(key);
+        if (e != null && e.evicted) {
+            entries.remove(key);
+            e = null;
+        }
+
+        if (e != null && !e.inUse) {
+            hits.incrementAndGet();
+            e.inUse = true;
+            return e.wrap();
+        }
+
+        misses.incrementAndGet();
+        PreparedStatement ps = autoGeneratedKeys < 0
+                ? physical.prepareStatement(sql)
+                : physical.prepareStatement(sql, autoGeneratedKeys);
+
+        // То же выражение уже занято (вложенный вызов с тем же SQL) — отдаём некэшируемое
+        if (e != null) {
+            return ps;
+        }
+
+        Entry created = new Entry(ps);
+        created.inUse = true;
+        entries.put(key, created);
+        evictIfNeeded();
+        return created.wrap();
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            eldest.evicted = true;
+            if (!eldest.inUse) eldest.closeQuietly();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void close() {
+        for (Entry e : entries.values()) e.closeQuietly();
+        entries.clear();
+    }
+
+    private static final class Entry {
+        final PreparedStatement ps;
+        boolean inUse;
+        boolean evicted;
+        ResultSet lastResult;
+
+        Entry(PreparedStatement ps) {
+            this.ps = ps;
+        }
+
+        PreparedStatement wrap() {
+            final boolean[] released = {false};
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (!released[0]) {
+                                    released[0] = true;
+                                    release();
+                                }
+                                return null;
+                            case "isClosed":
+                                return released[0];
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                break;
+                        }
+                        if (released[0]) {
+                            throw new SQLException("Выражение уже возвращено в кэш");
+                        }
+                        try {
+                            Object result = method.invoke(ps, args);
+                            if (result instanceof ResultSet rs && method.getName().equals("executeQuery")) {
+                                lastResult = rs;
+                            }
+                            return result;
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                    });
+        }
+
+        // Открытый курсор держит снимок чтения (в WAL это мешает контрольной точке),
+        // поэтому при возврате в кэш результат закрывается, а параметры очищаются
+        private void release() {
+            inUse = false;
+            try {
+                if (lastResult != null) {
+                    lastResult.close();
+                    lastResult = null;
+                }
+                ps.clearParameters();
+            } catch (SQLException e) {
+                evicted = true;
+            }
+            if (evicted) closeQuietly();
+        }
+
+        void closeQuietly() {
+            try {
+                ps.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.isarsw.model;
+
+// Условия отбора записей журнала изменений для окна аудита. Все условия
+// необязательны: actor и action — точное совпадение, fromTs/toTs — включительные
+// границы времени записи. Каждое условие покрыто индексом (HistoryDao.findAuditPage).
+public record AuditFilter(String actor, String action, Long fromTs, Long toTs) {
+
+    public static final AuditFilter NONE = new AuditFilter(null, null, null, null);
+
+    public AuditFilter {
+        actor = blankToNull(actor);
+        action = blankToNull(action);
+        if (fromTs != null && toTs != null && fromTs > toTs) {
+            throw new IllegalArgumentException("Начало периода позже его конца");
+        }
+    }
+
+    public boolean isEmpty() {
+        return actor == null && action == null && fromTs == null && toTs == null;
+    }
+
+    public boolean test(HistoryEntry e) {
+        if (actor != null && !actor.equals(e.getActor())) return false;
+        if (action != null && !action.equals(e.getAction())) return false;
+        if (fromTs != null && e.getTimestamp() < fromTs) return false;
+        return toTs == null || e.getTimestamp() <= toTs;
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s.trim();
+    }
+}
@@ -13,7 +13,15 @@ public class Flight {
     private final LongProperty arriveTs = new SimpleLongProperty();
     private final IntegerProperty standingTime = new SimpleIntegerProperty();
     private final StringProperty platform = new SimpleStringProperty();
-    private final StringProperty status = new SimpleStringProperty();
+    // Подпись статуса хранится в свойстве для таблицы, а код разбирается один раз
+    // при каждом изменении — сервисы сравнивают FlightStatus, а не строки
+    private FlightStatus flightStatus;
+    private final StringProperty status = new SimpleStringProperty() {
+        @Override
+        protected void invalidated() {
+            flightStatus = FlightStatus.find(get());
+        }
+    };
     private final LongProperty createdAt = new SimpleLongProperty();
     private final LongProperty updatedAt = new SimpleLongProperty();
     private final LongProperty lastArrivalCheck = new SimpleLongProperty(0);
@@ -77,6 +85,10 @@ public class Flight {
     public void setStatus(String v) { this.status.set(v); }
     public StringProperty statusProperty() { return status; }
 
+    // null — подпись не соответствует ни одному статусу
+    public FlightStatus getFlightStatus() { return flightStatus; }
+    public void setFlightStatus(FlightStatus v) { this.status.set(v == null ? null : v.label()); }
+
     public long getCreatedAt() { return createdAt.get(); }
     public void setCreatedAt(long v) { this.createdAt.set(v); }
     public LongProperty createdAtProperty() { return createdAt; }
@@ -89,29 +101,33 @@ public class Flight {
     public void setLastArrivalCheck(long v) { this.lastArrivalCheck.set(v); }
     public LongProperty lastArrivalCheckProperty() { return lastArrivalCheck; }
 
-    // Метод для создания JSON строки для истории
-    public String toPayload() {
-        return "{"
-                + "\"id\":" + getId() + ","
-                + "\"number\":\"" + escape(getNumber()) + "\","
-                + "\"route\":\"" + escape(getRoute()) + "\","
-                + "\"arriveTs\":" + getArriveTs() + ","
-                + "\"standingTime\":" + getStandingTime() + ","
-                + "\"departureTs\":" + getDepartureTs() + ","
-                + "\"platform\":\"" + escape(getPlatform()) + "\","
-                + "\"status\":\"" + escape(getStatus()) + "\","
-                + "\"createdAt\":" + getCreatedAt() + ","
-                + "\"updatedAt\":" + getUpdatedAt() + ","
-                + "\"lastArrivalCheck\":" + getLastArrivalCheck()
-                + "}";
+    // ---------- ЗАПИСЬ ----------
+    // Переход между неизменяемой записью (DAO, сервисы) и объектом для интерфейса
+
+    public static Flight from(FlightRecord r) {
+        return new Flight(r.id(), r.number(), r.route(), r.arriveTs(), r.standingTime(), r.platform(),
+                r.status() == null ? null : r.status().label(), r.createdAt(), r.updatedAt(), r.lastArrivalCheck());
+    }
+
+    public FlightRecord toRecord() {
+        return new FlightRecord(getId(), getNumber(), getRoute(), getArriveTs(), getStandingTime(), getPlatform(),
+                getFlightStatus(), getCreatedAt(), getUpdatedAt(), getLastArrivalCheck());
     }
 
-    private String escape(String s) {
-        if (s == null) return "";
-        return s.replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+    // Переносит значения новой версии того же рейса. Свойства JavaFX
+    // уведомляют слушателей только при фактическом изменении значения,
+    // поэтому неизменившиеся ячейки таблицы не перерисовываются.
+    public void copyFrom(FlightRecord r) {
+        setId(r.id());
+        setNumber(r.number());
+        setRoute(r.route());
+        setArriveTs(r.arriveTs());
+        setStandingTime(r.standingTime());
+        setPlatform(r.platform());
+        setFlightStatus(r.status());
+        setCreatedAt(r.createdAt());
+        setUpdatedAt(r.updatedAt());
+        setLastArrivalCheck(r.lastArrivalCheck());
     }
 
     // Вспомогательные методы
@@ -0,0 +1,80 @@
+package org.example.isarsw.model;
+
+import java.util.Locale;
+import java.util.Objects;
+
+// Условия отбора рейсов для главной таблицы. Применяются в SQL (FlightDao)
+// и той же логикой к отдельному рейсу (test), чтобы решить, попадает ли
+// изменённый рейс в показанное окно, без повторного запроса.
+public final class FlightFilter {
+
+    public static final FlightFilter NONE = new FlightFilter(null, null, null, null, null);
+
+    private final FlightStatus status;
+    private final String platform;
+    private final Long arriveFrom;
+    private final Long arriveTo;
+    private final String text;
+
+    // status — подпись статуса, точное совпадение; platform и text — подстрока;
+    // arriveFrom/arriveTo — включительные границы времени прибытия
+    public FlightFilter(String status, String platform, Long arriveFrom, Long arriveTo, String text) {
+        this.status = FlightStatus.fromLabel(blankToNull(status));
+        this.platform = blankToNull(platform);
+        this.arriveFrom = arriveFrom;
+        this.arriveTo = arriveTo;
+        this.text = blankToNull(text);
+    }
+
+    public FlightStatus getStatus() { return status; }
+    public String getPlatform() { return platform; }
+    public Long getArriveFrom() { return arriveFrom; }
+    public Long getArriveTo() { return arriveTo; }
+    public String getText() { return text; }
+
+    public FlightFilter withText(String newText) {
+        return new FlightFilter(status == null ? null : status.label(), platform, arriveFrom, arriveTo, newText);
+    }
+
+    public boolean isEmpty() {
+        return status == null && platform == null && arriveFrom == null && arriveTo == null && text == null;
+    }
+
+    public boolean test(FlightRecord f) {
+        if (status != null && status != f.status()) return false;
+        if (platform != null && !containsIgnoreCase(f.platform(), platform)) return false;
+        if (arriveFrom != null && f.arriveTs() < arriveFrom) return false;
+        if (arriveTo != null && f.arriveTs() > arriveTo) return false;
+        if (text != null) {
+            return containsIgnoreCase(f.number(), text)
+                    || containsIgnoreCase(f.route(), text)
+                    || containsIgnoreCase(f.platform(), text);
+        }
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(String value, String part) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(part.toLowerCase(Locale.ROOT));
+    }
+
+    private static String blankToNull(String s) {
+        if (s == null) return null;
+        String t = s.trim();
+        return t.isEmpty() ? null : t;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FlightFilter)) return false;
+        FlightFilter that = (FlightFilter) o;
+        return Objects.equals(status, that.status) && Objects.equals(platform, that.platform)
+                && Objects.equals(arriveFrom, that.arriveFrom) && Objects.equals(arriveTo, that.arriveTo)
+                && Objects.equals(text, that.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(status, platform, arriveFrom, arriveTo, text);
+    }
+}
@@ -0,0 +1,122 @@
+package org.example.isarsw.model;
+
+import java.util.Objects;
+
+// Неизменяемый снимок рейса для всех слоёв без привязки к интерфейсу: DAO, сервисы,
+// кэш, индекс занятости, планировщики. Flight со свойствами JavaFX (по объекту-свойству
+// и его слушателям на каждое поле) создают из записи только контроллеры — для строк,
+// которые показываются в таблице и диалогах.
+public record FlightRecord(long id, String number, String route,
+                           long arriveTs, int standingTime,
+                           String platform, FlightStatus status,
+                           long createdAt, long updatedAt, long lastArrivalCheck) {
+
+    // Рейс до сохранения: id и отметки времени выставляет FlightService
+    public static FlightRecord draft(String number, String route, long arriveTs, int standingTime,
+                                     String platform, FlightStatus status) {
+        return new FlightRecord(0, number, route, arriveTs, standingTime, platform, status, 0, 0, 0);
+    }
+
+    public long departureTs() {
+        return arriveTs + standingTime * 60L;
+    }
+
+    public FlightRecord withId(long newId) {
+        return new FlightRecord(newId, number, route, arriveTs, standingTime, platform, status,
+                createdAt, updatedAt, lastArrivalCheck);
+    }
+
+    public FlightRecord withTimestamps(long newCreatedAt, long newUpdatedAt) {
+        return new FlightRecord(id, number, route, arriveTs, standingTime, platform, status,
+                newCreatedAt, newUpdatedAt, lastArrivalCheck);
+    }
+
+    public FlightRecord withUpdatedAt(long newUpdatedAt) {
+        return withTimestamps(createdAt, newUpdatedAt);
+    }
+
+    public FlightRecord withStatus(FlightStatus newStatus, long newUpdatedAt) {
+        return new FlightRecord(id, number, route, arriveTs, standingTime, platform, newStatus,
+                createdAt, newUpdatedAt, lastArrivalCheck);
+    }
+
+    public FlightRecord withPlatform(String newPlatform) {
+        return new FlightRecord(id, number, route, arriveTs, standingTime, newPlatform, status,
+                createdAt, updatedAt, lastArrivalCheck);
+    }
+
+    // Отменённые и отбывшие рейсы платформу не занимают
+    public boolean occupiesPlatform() {
+        return status != FlightStatus.CANCELLED && status != FlightStatus.DEPARTED;
+    }
+
+    // ---------- ИСТОРИЯ ----------
+
+    // Полный снимок рейса в JSON для истории
+    public String toPayload() {
+        return "{"
+                + "\"id\":" + id + ","
+                + "\"number\":" + quote(number) + ","
+                + "\"route\":" + quote(route) + ","
+                + "\"arriveTs\":" + arriveTs + ","
+                + "\"standingTime\":" + standingTime + ","
+                + "\"departureTs\":" + departureTs() + ","
+                + "\"platform\":" + quote(platform) + ","
+                + "\"status\":" + quote(statusLabel()) + ","
+                + "\"createdAt\":" + createdAt + ","
+                + "\"updatedAt\":" + updatedAt + ","
+                + "\"lastArrivalCheck\":" + lastArrivalCheck
+                + "}";
+    }
+
+    // Только поля, которыми рейс отличается от other, — для записи изменения в историю.
+    // id и createdAt не меняются, updatedAt совпадает со временем записи истории,
+    // departureTs вычисляется — эти поля в разницу не входят
+    public String diffPayload(FlightRecord other) {
+        StringBuilder sb = new StringBuilder("{");
+        if (!Objects.equals(number, other.number)) appendField(sb, "number", number);
+        if (!Objects.equals(route, other.route)) appendField(sb, "route", route);
+        if (arriveTs != other.arriveTs) appendField(sb, "arriveTs", arriveTs);
+        if (standingTime != other.standingTime) appendField(sb, "standingTime", standingTime);
+        if (!Objects.equals(platform, other.platform)) appendField(sb, "platform", platform);
+        if (status != other.status) appendField(sb, "status", statusLabel());
+        if (lastArrivalCheck != other.lastArrivalCheck) appendField(sb, "lastArrivalCheck", lastArrivalCheck);
+        return sb.append('}').toString();
+    }
+
+    private String statusLabel() {
+        return status == null ? null : status.label();
+    }
+
+    private static void appendField(StringBuilder sb, String name, String value) {
+        if (sb.length() > 1) sb.append(',');
+        sb.append('"').append(name).append("\":").append(quote(value));
+    }
+
+    private static void appendField(StringBuilder sb, String name, long value) {
+        if (sb.length() > 1) sb.append(',');
+        sb.append('"').append(name).append("\":").append(value);
+    }
+
+    // Строка JSON в кавычках (обратная косая черта, кавычка и управляющие символы
+    // экранируются); отсутствующее значение — null, а не пустая строка
+    private static String quote(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 10).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '\\' -> sb.append("\\\\");
+                case '"' -> sb.append("\\\"");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (ch < 0x20) sb.append(String.format("\\u%04x", (int) ch));
+                    else sb.append(ch);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.isarsw.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Статус рейса. В БД хранится целочисленный код (колонка flights.status),
+// подпись на русском используется только на границе с интерфейсом,
+// в истории изменений и при выгрузке/загрузке файлов.
+// Коды уже записаны в БД — их нельзя менять, новые статусы получают следующий свободный код.
+public enum FlightStatus {
+    PLANNED(0, "ПЛАНИРУЕТСЯ", "Рейс планируется (более 48 часов до прибытия)"),
+    EN_ROUTE(1, "В ПУТИ", "Рейс в пути (от 48 часов до 1 часа до прибытия)"),
+    BOARDING(2, "ПОСАДКА", "Идет посадка пассажиров"),
+    DELAYED(3, "ЗАДЕРЖАН", "Рейс задержан (максимум 24 часа)"),
+    DEPARTED(4, "ОТБЫЛ", "Поезд отбыл со станции"),
+    CANCELLED(5, "ОТМЕНЁН", "Рейс отменен");
+
+    private final int code;
+    private final String label;
+    private final String description;
+
+    FlightStatus(int code, String label, String description) {
+        this.code = code;
+        this.label = label;
+        this.description = description;
+    }
+
+    public int code() { return code; }
+    public String label() { return label; }
+    public String description() { return description; }
+
+    // ---------- ПОИСК ----------
+
+    private static final FlightStatus[] BY_CODE = new FlightStatus[values().length];
+    private static final Map<String, FlightStatus> BY_LABEL = new HashMap<>();
+
+    // Матрица допустимых переходов [из][в] по ordinal, вычисляется один раз
+    private static final boolean[][] TRANSITIONS = new boolean[values().length][values().length];
+
+    static {
+        for (FlightStatus s : values()) {
+            BY_CODE[s.code] = s;
+            BY_LABEL.put(s.label, s);
+        }
+        for (FlightStatus from : values()) {
+            for (FlightStatus to : values()) {
+                TRANSITIONS[from.ordinal()][to.ordinal()] = allowed(from, to);
+            }
+        }
+    }
+
+    public static FlightStatus fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length || BY_CODE[code] == null) {
+            throw new IllegalArgumentException("Неизвестный код статуса: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    // null — для пустого значения
+    public static FlightStatus fromLabel(String label) {
+        if (label == null) return null;
+        FlightStatus s = BY_LABEL.get(label);
+        if (s == null) throw new IllegalArgumentException("Неизвестный статус: " + label);
+        return s;
+    }
+
+    // null — для пустой или неизвестной подписи
+    public static FlightStatus find(String label) {
+        return label == null ? null : BY_LABEL.get(label);
+    }
+
+    public static boolean isLabel(String label) {
+        return find(label) != null;
+    }
+
+    // ---------- ПЕРЕХОДЫ ----------
+
+    public boolean canChangeTo(FlightStatus to) {
+        return TRANSITIONS[ordinal()][to.ordinal()];
+    }
+
+    // Отменённые и отбывшие рейсы не занимают платформу и не меняют статус
+    public boolean isFinal() {
+        return this == DEPARTED || this == CANCELLED;
+    }
+
+    private static boolean allowed(FlightStatus from, FlightStatus to) {
+        // Нельзя менять статус у отменённых или отбывших поездов
+        if (from.isFinal()) return false;
+        // Любой поезд можно отменить (кроме уже отменённых или отбывших)
+        if (to == CANCELLED) return true;
+        // Поезд может отбыть только если он был на посадке или задержан
+        if (to == DEPARTED) return from == BOARDING || from == DELAYED;
+
+        switch (from) {
+            case PLANNED:
+                return to == EN_ROUTE || to == DELAYED || to == BOARDING;
+            case EN_ROUTE:
+                return to == BOARDING || to == DELAYED;
+            case BOARDING:
+                return to == DELAYED;
+            case DELAYED:
+                return to == BOARDING || to == EN_ROUTE;
+            default:
+                return false;
+        }
+    }
+
+    // ---------- SQL ----------
+
+    // Выражение CASE, переводящее код в подпись, — для выгрузки файлов прямо из курсора
+    public static String labelSql(String column) {
+        StringBuilder sql = new StringBuilder("CASE ").append(column);
+        for (FlightStatus s : values()) {
+            sql.append(" WHEN ").append(s.code).append(" THEN '").append(s.label).append('\'');
+        }
+        return sql.append(" END").toString();
+    }
+
+    // Обратное выражение для миграции текстовой колонки; неизвестная подпись даёт NULL —
+    // миграция заранее проверяет подписи по labelsSql()
+    public static String codeSql(String column) {
+        StringBuilder sql = new StringBuilder("CASE ").append(column);
+        for (FlightStatus s : values()) {
+            sql.append(" WHEN '").append(s.label).append("' THEN ").append(s.code);
+        }
+        return sql.append(" END").toString();
+    }
+
+    // Список всех подписей для условия IN (...)
+    public static String labelsSql() {
+        StringBuilder sql = new StringBuilder();
+        for (FlightStatus s : values()) {
+            if (sql.length() > 0) sql.append(", ");
+            sql.append('\'').append(s.label).append('\'');
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
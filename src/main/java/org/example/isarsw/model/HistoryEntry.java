@@ -1,6 +1,11 @@
 package org.example.isarsw.model;
 
 public class HistoryEntry {
+
+    // Содержимое payload_before/payload_after: полные снимки рейса или только изменившиеся поля
+    public static final int FORMAT_FULL = 0;
+    public static final int FORMAT_DIFF = 1;
+
     private Long id;
     private Long flightId;
     private String action;
@@ -8,6 +13,7 @@ public class HistoryEntry {
     private long timestamp;
     private String payloadBefore;
     private String payloadAfter;
+    private int payloadFormat = FORMAT_FULL;
 
     public HistoryEntry() {}
 
@@ -20,6 +26,13 @@ public class HistoryEntry {
         this.payloadAfter = payloadAfter;
     }
 
+    public static HistoryEntry diff(Long flightId, String action, String actor, long timestamp,
+                                    String payloadBefore, String payloadAfter) {
+        HistoryEntry e = new HistoryEntry(flightId, action, actor, timestamp, payloadBefore, payloadAfter);
+        e.setPayloadFormat(FORMAT_DIFF);
+        return e;
+    }
+
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
@@ -40,4 +53,9 @@ public class HistoryEntry {
 
     public String getPayloadAfter() { return payloadAfter; }
     public void setPayloadAfter(String payloadAfter) { this.payloadAfter = payloadAfter; }
-}
\ No newline at end of file
+
+    public int getPayloadFormat() { return payloadFormat; }
+    public void setPayloadFormat(int payloadFormat) { this.payloadFormat = payloadFormat; }
+
+    public boolean isDiff() { return payloadFormat == FORMAT_DIFF; }
+}
@@ -7,129 +7,104 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.example.isarsw.app.App;
 import org.example.isarsw.controller.ArrivalCheckController;
-import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
 import javafx.geometry.Rectangle2D;
 import javafx.stage.Screen;
 
 import java.io.IOException;
 import java.sql.SQLException;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class ArrivalCheckService {
+// Окна проверки прибытия и отправления по срокам: у рейса «в пути» — за 5 минут
+// до прибытия и в момент прибытия, у рейса на посадке — за 5 минут до отправления
+// и в момент отправления. Сроки ведёт DeadlineScheduler и переназначает при каждом
+// изменении рейса в кэше; между сроками сервис не обращается ни к БД, ни к кэшу.
+public class ArrivalCheckService implements FlightCache.Listener {
 
-    private final FlightService flightService = new FlightService();
-    private final Map<String, Boolean> pendingChecks = new HashMap<>();
-
-    public void checkArrivals() {
-        long now = Instant.now().getEpochSecond();
+    public static final long WARNING_SECONDS = 300;
 
-        try {
-            List<Flight> flights = flightService.listAll();
+    private static final String[] KINDS = {"arrival_soon", "arrival_late", "departure_soon", "departure_late"};
 
-            for (Flight flight : flights) {
-                checkSingleFlightForArrival(flight, now);
-            }
-        } catch (SQLException e) {
-            System.err.println("Ошибка проверки прибытия: " + e.getMessage());
+    private final FlightService flightService = new FlightService();
+    private final FlightCache cache = FlightCache.shared();
+    private final DeadlineScheduler deadlines = new DeadlineScheduler("arrival-check-deadlines");
+    // Уже показанные окна: вид + рейс + срок. При переносе прибытия срок другой — окно покажется снова
+    private final Set<String> shownChecks = ConcurrentHashMap.newKeySet();
+
+    // ---------- СРОКИ ----------
+
+    @Override
+    public void flightChanged(FlightRecord f) {
+        long id = f.id();
+        for (String kind : KINDS) deadlines.cancel(kind + "_" + id);
+
+        long arrivalTime = f.arriveTs();
+        long departureTime = f.departureTs();
+        if (f.status() == FlightStatus.EN_ROUTE) {
+            arm(id, "arrival_soon", arrivalTime - WARNING_SECONDS, arrivalTime);
+            arm(id, "arrival_late", arrivalTime, arrivalTime);
+        } else if (f.status() == FlightStatus.BOARDING) {
+            arm(id, "departure_soon", departureTime - WARNING_SECONDS, departureTime);
+            arm(id, "departure_late", departureTime, departureTime);
         }
     }
 
-    private void checkSingleFlightForArrival(Flight flight, long now) {
-        // Пропускаем отмененные или отбывшие поезда
-        if (FlightService.STATUS_CANCELLED.equals(flight.getStatus()) ||
-                FlightService.STATUS_DEPARTED.equals(flight.getStatus())) {
-            return;
-        }
-
-        long arrivalTime = flight.getArriveTs();
-        String currentStatus = flight.getStatus();
-        String checkKey = "arrival_" + flight.getId();
-
-        // Проверяем поезда со статусом "В ПУТИ", которые должны были уже прибыть
-        if (FlightService.STATUS_EN_ROUTE.equals(currentStatus) &&
-                arrivalTime <= now &&  // ← Время прибытия уже прошло!
-                !pendingChecks.containsKey(checkKey)) {
-
-            pendingChecks.put(checkKey, true);
-
-            final Flight finalFlight = flight;
-            final long timeDelta = now - arrivalTime;  // На сколько опоздал
-
-            Platform.runLater(() -> {
-                showArrivalCheckWindow(finalFlight, timeDelta, "arrival_late", "arrival");
-            });
-        }
-
-        // Также проверяем поезда "В ПУТИ", которые должны прибыть в ближайшие 5 минут
-        if (FlightService.STATUS_EN_ROUTE.equals(currentStatus) &&
-                arrivalTime > now && arrivalTime <= (now + 300) &&  // В ближайшие 5 минут
-                !pendingChecks.containsKey(checkKey + "_soon")) {
-
-            pendingChecks.put(checkKey + "_soon", true);
-
-            final Flight finalFlight = flight;
-            final long timeDelta = arrivalTime - now;  // Через сколько прибывает
-
-            Platform.runLater(() -> {
-                showArrivalCheckWindow(finalFlight, -timeDelta, "arrival_soon", "arrival");
-            });
-        }
+    @Override
+    public void flightRemoved(long id) {
+        for (String kind : KINDS) deadlines.cancel(kind + "_" + id);
     }
 
-    public void checkDepartures() {
-        long now = Instant.now().getEpochSecond();
-
+    @Override
+    public void reloaded() {
         try {
-            List<Flight> flights = flightService.getFlightsReadyForDeparture();
-
-            for (Flight flight : flights) {
-                checkSingleFlightForDeparture(flight, now);
-            }
+            for (FlightRecord f : cache.byStatus(FlightStatus.EN_ROUTE)) flightChanged(f);
+            for (FlightRecord f : cache.byStatus(FlightStatus.BOARDING)) flightChanged(f);
         } catch (SQLException e) {
-            System.err.println("Ошибка проверки отправления: " + e.getMessage());
+            System.err.println("Ошибка планирования проверок: " + e.getMessage());
         }
     }
 
-    private void checkSingleFlightForDeparture(Flight flight, long now) {
-        // Проверяем только поезда со статусом "ПОСАДКА"
-        if (!FlightService.STATUS_BOARDING.equals(flight.getStatus())) {
-            return;
-        }
-
-        long departureTime = flight.getArriveTs() + (flight.getStandingTime() * 60L);
-        long timeUntilDeparture = departureTime - now;
-        String checkKey = "departure_" + flight.getId();
-
-        // Если время отправления наступило или прошло
-        if (departureTime <= now && !pendingChecks.containsKey(checkKey)) {
-            pendingChecks.put(checkKey, true);
-
-            final Flight finalFlight = flight;
-            final long timeDelta = now - departureTime;  // На сколько опоздал с отправлением
-
-            Platform.runLater(() -> {
-                showArrivalCheckWindow(finalFlight, timeDelta, "departure_late", "departure");
-            });
-        }
-        // Или если отправление в ближайшие 5 минут
-        else if (timeUntilDeparture > 0 && timeUntilDeparture <= 300 &&
-                !pendingChecks.containsKey(checkKey + "_soon")) {
-
-            pendingChecks.put(checkKey + "_soon", true);
-
-            final Flight finalFlight = flight;
-            final long timeDelta = timeUntilDeparture;  // Через сколько отправление
+    private void arm(long id, String kind, long dueTs, long eventTs) {
+        deadlines.schedule(kind + "_" + id, dueTs * 1000, () -> onDeadline(id, kind, eventTs));
+    }
 
-            Platform.runLater(() -> {
-                showArrivalCheckWindow(finalFlight, -timeDelta, "departure_soon", "departure");
-            });
+    // eventTs — время прибытия/отправления, на которое был назначен срок
+    private void onDeadline(long id, String kind, long eventTs) {
+        try {
+            Optional<FlightRecord> current = cache.get(id);
+            if (current.isEmpty()) return;
+            FlightRecord flight = current.get();
+            long now = Instant.now().getEpochSecond();
+            boolean arrival = kind.startsWith("arrival");
+
+            FlightStatus expectedStatus = arrival ? FlightStatus.EN_ROUTE : FlightStatus.BOARDING;
+            long actualEventTs = arrival ? flight.arriveTs() : flight.departureTs();
+            // Рейс успели изменить, а срок ещё не переназначен — сработает новый срок
+            if (flight.status() != expectedStatus || actualEventTs != eventTs) return;
+            // Срок сработал раньше времени (часы сдвинулись назад) — назначаем его заново
+            long dueTs = kind.endsWith("_soon") ? eventTs - WARNING_SECONDS : eventTs;
+            if (now < dueTs) {
+                arm(id, kind, dueTs, eventTs);
+                return;
+            }
+            // Предупреждение «скоро» не показываем, если событие уже наступило
+            if (kind.endsWith("_soon") && eventTs <= now) return;
+            if (!shownChecks.add(kind + "_" + id + "_" + eventTs)) return;
+
+            // Положительное значение — опоздание, отрицательное — сколько осталось
+            long timeDelta = now - eventTs;
+            String mode = arrival ? "arrival" : "departure";
+            Platform.runLater(() -> showArrivalCheckWindow(flight, timeDelta, kind, mode));
+        } catch (SQLException e) {
+            System.err.println("Ошибка проверки " + kind + ": " + e.getMessage());
         }
     }
 
-    private void showArrivalCheckWindow(Flight flight, long timeDelta, String checkType, String mode) {
+    private void showArrivalCheckWindow(FlightRecord flight, long timeDelta, String checkType, String mode) {
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/org/example/isarsw/fxml/arrival_check.fxml"));
             Stage stage = new Stage();
@@ -175,16 +150,10 @@ public class ArrivalCheckService {
 
             centerStage(stage);
 
-            final String checkKey = mode + "_" + flight.getId() + "_" + checkType;
-            stage.setOnHidden(e -> {
-                pendingChecks.remove(checkKey);
-            });
-
             stage.showAndWait();
 
         } catch (IOException e) {
             e.printStackTrace();
-            pendingChecks.remove(mode + "_" + flight.getId());
         }
     }
 
@@ -217,33 +186,14 @@ public class ArrivalCheckService {
     }
 
     public void startChecking() {
-        Thread checkThread = new Thread(() -> {
-            System.out.println("=== ЗАПУСК СЕРВИСА ПРОВЕРКИ СТАТУСОВ ===");
-
-            while (true) {
-                try {
-                    System.out.println("--- Проверка в " + Instant.now() + " ---");
-                    System.out.println("Проверка прибытия...");
-                    checkArrivals();
-                    System.out.println("Проверка отправления...");
-                    checkDepartures();
-
-                    Thread.sleep(30000);  // Проверяем каждые 30 секунд
-
-                } catch (InterruptedException e) {
-                    System.out.println("Сервис проверки остановлен");
-                    break;
-                } catch (Exception e) {
-                    System.err.println("Ошибка в сервисе проверки: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            }
-        });
-        checkThread.setDaemon(true);
-        checkThread.start();
+        System.out.println("=== ЗАПУСК СЕРВИСА ПРОВЕРКИ СТАТУСОВ ===");
+        cache.addListener(this);
+        reloaded();
     }
 
     public void stopChecking() {
-        pendingChecks.clear();
+        cache.removeListener(this);
+        deadlines.shutdown();
+        shownChecks.clear();
     }
-}
\ No newline at end of file
+}
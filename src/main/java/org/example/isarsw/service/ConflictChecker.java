@@ -1,9 +1,31 @@
 package org.example.isarsw.service;
 
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+
 public class ConflictChecker {
     public static final long DEFAULT_BUFFER_SECONDS = 10 * 60L;
     public static final long BOARDING_BUFFER_SECONDS = 5 * 60L;
 
+    // На сколько расширять окно поиска в PlatformIntervalIndex, чтобы найти всех
+    // кандидатов для любого из правил ниже (intervalsOverlap расширяет оба интервала)
+    public static final long SEARCH_PADDING_SECONDS = 2 * Math.max(DEFAULT_BUFFER_SECONDS, BOARDING_BUFFER_SECONDS);
+
+    // Правило для пары «новый интервал — рейс на платформе»: у рейса на посадке
+    // пассажиры уже на платформе, для него действует буфер посадки,
+    // для остальных — общий буфер с обеих сторон
+    public static boolean conflicts(long newStart, long newEnd, FlightRecord existing) {
+        return conflicts(newStart, newEnd, existing.arriveTs(), existing.departureTs(),
+                existing.status() == FlightStatus.BOARDING);
+    }
+
+    public static boolean conflicts(long newStart, long newEnd, long existingStart, long existingEnd, boolean existingBoarding) {
+        if (existingBoarding) {
+            return boardingConflictExists(newStart, newEnd, existingStart, existingEnd);
+        }
+        return intervalsOverlap(newStart, newEnd, existingStart, existingEnd);
+    }
+
     public static boolean intervalsOverlap(long aStart, long aEnd, long bStart, long bEnd, long bufferSeconds) {
         long aStartB = aStart - bufferSeconds;
         long aEndB = aEnd + bufferSeconds;
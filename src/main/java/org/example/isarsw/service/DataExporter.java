@@ -0,0 +1,186 @@
+package org.example.isarsw.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.example.isarsw.dao.ExportDao;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+// Потоковая выгрузка таблиц flights и history в CSV, JSON-массив или NDJSON,
+// при необходимости со сжатием gzip. Строки идут из курсора ExportDao прямо
+// в буферизованный канал файла, поэтому объём выгрузки не ограничен размером кучи.
+// Файл пишется во временный <имя>.part и переименовывается только после успешного
+// завершения — потребитель никогда не увидит обрезанную выгрузку.
+public class DataExporter {
+
+    public static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    public enum Format { CSV, JSON, NDJSON }
+
+    private final ExportDao exportDao = new ExportDao();
+
+    // Формат и сжатие определяются по расширению: .csv, .json, .ndjson/.jsonl, + .gz
+    public long export(ExportDao.Table table, Path file) throws IOException, SQLException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) name = name.substring(0, name.length() - 3);
+        return export(table, file, formatOf(name), gzip);
+    }
+
+    public long export(ExportDao.Table table, Path file, Format format, boolean gzip) throws IOException, SQLException {
+        Path part = file.resolveSibling(file.getFileName() + ".part");
+        long rows;
+        try (OutputStream out = open(part, gzip)) {
+            rows = exportDao.stream(table, sinkFor(format, out));
+        } catch (IOException | SQLException | RuntimeException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    static Format formatOf(String name) {
+        if (name.endsWith(".csv")) return Format.CSV;
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) return Format.NDJSON;
+        if (name.endsWith(".json")) return Format.JSON;
+        throw new IllegalArgumentException("Неизвестный формат выгрузки (ожидается .csv, .json, .ndjson): " + name);
+    }
+
+    private static OutputStream open(Path file, boolean gzip) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        OutputStream out = Channels.newOutputStream(channel);
+        return gzip
+                ? new GZIPOutputStream(out, WRITE_BUFFER_SIZE)
+                : new BufferedOutputStream(out, WRITE_BUFFER_SIZE);
+    }
+
+    private static ExportDao.RowSink sinkFor(Format format, OutputStream out) throws IOException {
+        switch (format) {
+            case CSV:
+                return new CsvSink(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE));
+            case JSON:
+                return new JsonSink(out, false);
+            default:
+                return new JsonSink(out, true);
+        }
+    }
+
+    // ---------- ФОРМАТЫ ----------
+
+    // Заголовок — имена колонок, совместимые с TimetableImporter (number, route, arrive_ts, ...)
+    static final class CsvSink implements ExportDao.RowSink {
+        private final Writer writer;
+
+        CsvSink(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void begin(String[] columns) throws IOException {
+            writeLine(columns);
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            writeLine(values);
+        }
+
+        @Override
+        public void end() throws IOException {
+            writer.flush();
+        }
+
+        private void writeLine(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) writer.write(',');
+                Object v = values[i];
+                if (v == null) continue;
+                if (v instanceof Number) {
+                    writer.write(v.toString());
+                } else {
+                    writeText(v.toString());
+                }
+            }
+            writer.write('\n');
+        }
+
+        private void writeText(String s) throws IOException {
+            boolean quote = s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0;
+            if (!quote) {
+                writer.write(s);
+                return;
+            }
+            writer.write('"');
+            writer.write(s.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    static final class JsonSink implements ExportDao.RowSink {
+        private final JsonGenerator gen;
+        private final boolean lines;
+        private String[] columns;
+
+        JsonSink(OutputStream out, boolean lines) throws IOException {
+            JsonFactory factory = new JsonFactory();
+            factory.setRootValueSeparator("\n");
+            this.gen = factory.createGenerator(out, JsonEncoding.UTF8);
+            this.lines = lines;
+        }
+
+        @Override
+        public void begin(String[] columns) throws IOException {
+            this.columns = columns;
+            if (!lines) gen.writeStartArray();
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            gen.writeStartObject();
+            for (int i = 0; i < columns.length; i++) {
+                Object v = values[i];
+                gen.writeFieldName(columns[i]);
+                if (v == null) {
+                    gen.writeNull();
+                } else if (v instanceof Integer n) {
+                    gen.writeNumber(n);
+                } else if (v instanceof Long n) {
+                    gen.writeNumber(n);
+                } else if (v instanceof Double n) {
+                    gen.writeNumber(n);
+                } else {
+                    gen.writeString(v.toString());
+                }
+            }
+            gen.writeEndObject();
+        }
+
+        @Override
+        public void end() throws IOException {
+            if (lines) {
+                gen.writeRaw('\n');
+            } else {
+                gen.writeEndArray();
+            }
+            gen.flush();
+        }
+    }
+}
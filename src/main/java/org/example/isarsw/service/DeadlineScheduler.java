@@ -0,0 +1,99 @@
+package org.example.isarsw.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Очередь сроков: действие по ключу выполняется ровно в назначенный момент.
+// Внутри — ScheduledThreadPoolExecutor (двоичная куча по времени срабатывания)
+// с одним потоком; между сроками поток спит, опроса нет.
+// Повторное назначение по тому же ключу отменяет прежний срок.
+// Задержка исполнителя отсчитывается по монотонным часам, а сроки — по настенным:
+// если при срабатывании настенное время ещё не дошло до срока, остаток назначается заново.
+public final class DeadlineScheduler {
+
+    private static final class Armed {
+        final long dueEpochMillis;
+        ScheduledFuture<?> future;
+
+        Armed(long dueEpochMillis) {
+            this.dueEpochMillis = dueEpochMillis;
+        }
+    }
+
+    private final ScheduledThreadPoolExecutor executor;
+    // Настенные часы, мс эпохи
+    private final LongSupplier clock;
+    private final Map<String, Armed> pending = new HashMap<>();
+    private long fired;
+
+    public DeadlineScheduler(String threadName) {
+        this(threadName, System::currentTimeMillis);
+    }
+
+    DeadlineScheduler(String threadName, LongSupplier clock) {
+        this.clock = clock;
+        executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+        // Отменённые сроки сразу удаляются из кучи, а не ждут своего времени
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    // Срок в прошлом — действие выполняется сразу
+    public synchronized void schedule(String key, long dueEpochMillis, Runnable action) {
+        if (executor.isShutdown()) return;
+        cancel(key);
+        Armed armed = new Armed(dueEpochMillis);
+        arm(key, armed, action);
+        pending.put(key, armed);
+    }
+
+    public synchronized void cancel(String key) {
+        Armed old = pending.remove(key);
+        if (old != null && old.future != null) old.future.cancel(false);
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long firedCount() {
+        return fired;
+    }
+
+    public synchronized void shutdown() {
+        pending.clear();
+        executor.shutdownNow();
+    }
+
+    private void arm(String key, Armed armed, Runnable action) {
+        long delay = Math.max(0, armed.dueEpochMillis - clock.getAsLong());
+        armed.future = executor.schedule(() -> fire(key, armed, action), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void fire(String key, Armed armed, Runnable action) {
+        synchronized (this) {
+            // Срок мог быть переназначен, пока задача ждала блокировки
+            if (pending.get(key) != armed) return;
+            // Сработал раньше срока по настенным часам — ждём остаток
+            if (clock.getAsLong() < armed.dueEpochMillis) {
+                if (!executor.isShutdown()) arm(key, armed, action);
+                return;
+            }
+            pending.remove(key);
+            fired++;
+        }
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка обработки срока " + key + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
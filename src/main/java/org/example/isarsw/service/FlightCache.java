@@ -0,0 +1,365 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.FlightDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Общий для всех сервисов кэш рейсов с индексами по id, платформе и статусу
+// и интервальным индексом занятости платформ (PlatformIntervalIndex).
+// Чтение без блокировок (ConcurrentHashMap), запись — только из FlightService
+// после фиксации транзакции (UnitOfWork.afterCommit), поэтому откаченные изменения
+// в кэш не попадают. Хранятся неизменяемые FlightRecord: их можно отдавать сервисам
+// и контроллерам без копирования.
+//
+// Записи в БД в обход сервиса (другой процесс, ручная правка app.db) находит
+// сверка reconcile(): сравнение updated_at всех строк с кэшем.
+public final class FlightCache {
+
+    private static final FlightCache SHARED = new FlightCache();
+
+    public static FlightCache shared() {
+        return SHARED;
+    }
+
+    // Состояние привязано к URL базы: после DB.setUrl кэш перезагружается сам
+    private static final class State {
+        final String url;
+        final Map<Long, FlightRecord> byId = new ConcurrentHashMap<>();
+        final Map<String, Set<Long>> byPlatform = new ConcurrentHashMap<>();
+        final Map<FlightStatus, Set<Long>> byStatus = new ConcurrentHashMap<>();
+        final PlatformIntervalIndex occupancy = new PlatformIntervalIndex();
+        final long loadedAt = Instant.now().getEpochSecond();
+
+        State(String url) {
+            this.url = url;
+        }
+    }
+
+    public record CacheMetrics(int size, long hits, long misses, long writes, long reconciles,
+                               long lastReconcileMismatches, long totalMismatches, long secondsSinceSync) {
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 1.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "рейсов: " + size +
+                    String.format(", попадания: %d/%d (%.1f%%)", hits, hits + misses, hitRatio() * 100) +
+                    ", записей: " + writes +
+                    ", сверок: " + reconciles +
+                    ", расхождений (последняя/всего): " + lastReconcileMismatches + "/" + totalMismatches +
+                    ", с последней синхронизации: " + secondsSinceSync + " с";
+        }
+    }
+
+    // Подписчики на изменения рейсов (сроки переходов статусов, проверки прибытия).
+    // Вызываются после обновления кэша; обработка должна быть быстрой — запись
+    // в это время может удерживать соединение на запись.
+    public interface Listener {
+        void flightChanged(FlightRecord f);
+
+        void flightRemoved(long id);
+
+        // Кэш перечитан целиком (смена БД) — подписчик пересобирает своё состояние
+        default void reloaded() {}
+    }
+
+    private final FlightDao flightDao = new FlightDao();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile State state;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder reconciles = new LongAdder();
+    private final LongAdder totalMismatches = new LongAdder();
+    private volatile long lastReconcileMismatches;
+    private volatile long lastSyncAt;
+
+    private ScheduledExecutorService reconciler;
+
+    private FlightCache() {}
+
+    // ---------- ЗАГРУЗКА ----------
+
+    public synchronized void load() throws SQLException {
+        State fresh = new State(DB.getUrl());
+        for (FlightRecord r : flightDao.findAll()) {
+            index(fresh, r);
+        }
+        state = fresh;
+        lastSyncAt = fresh.loadedAt;
+        System.out.println("Кэш рейсов загружен: " + fresh.byId.size() + " рейсов");
+        notifyListeners(Listener::reloaded);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized void invalidate() {
+        state = null;
+    }
+
+    private State current() throws SQLException {
+        State s = state;
+        if (s != null && s.url.equals(DB.getUrl())) return s;
+        synchronized (this) {
+            s = state;
+            if (s == null || !s.url.equals(DB.getUrl())) {
+                load();
+                s = state;
+            }
+            return s;
+        }
+    }
+
+    // ---------- ЧТЕНИЕ ----------
+    // Попадания и промахи считает только поиск по id: выборки по индексам идут по всему
+    // загруженному кэшу и промахнуться не могут
+
+    public Optional<FlightRecord> get(long id) throws SQLException {
+        State s = current();
+        FlightRecord r = s.byId.get(id);
+        if (r != null) {
+            hits.increment();
+            return Optional.of(r);
+        }
+        misses.increment();
+        Optional<FlightRecord> fromDb = flightDao.findById(id);
+        fromDb.ifPresent(this::put);
+        return fromDb;
+    }
+
+    public List<FlightRecord> byStatus(FlightStatus status) throws SQLException {
+        State s = current();
+        return collect(s, s.byStatus.get(status), r -> r.status() == status);
+    }
+
+    public List<FlightRecord> byPlatform(String platform) throws SQLException {
+        State s = current();
+        return collect(s, s.byPlatform.get(platform), r -> platform.equals(r.platform()));
+    }
+
+    // Рейсы, занимающие платформу в [from, to) — для проверки конфликтов
+    public List<FlightRecord> occupying(String platform, long from, long to, Long excludeId) throws SQLException {
+        State s = current();
+        return s.occupancy.overlapping(platform, from, to, excludeId);
+    }
+
+    // Платформы, на которых есть хотя бы один рейс
+    public List<String> platforms() throws SQLException {
+        State s = current();
+        List<String> out = new ArrayList<>();
+        for (Map.Entry<String, Set<Long>> e : s.byPlatform.entrySet()) {
+            if (!e.getValue().isEmpty()) out.add(e.getKey());
+        }
+        return out;
+    }
+
+    public int size() throws SQLException {
+        return current().byId.size();
+    }
+
+    // Индексы обновляются не атомарно с byId, поэтому значение перепроверяется
+    private static List<FlightRecord> collect(State s, Set<Long> ids, Predicate<FlightRecord> check) {
+        if (ids == null) return new ArrayList<>();
+        List<FlightRecord> out = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            FlightRecord r = s.byId.get(id);
+            if (r != null && check.test(r)) out.add(r);
+        }
+        return out;
+    }
+
+    // ---------- ЗАПИСЬ (из FlightService после фиксации) ----------
+
+    void put(FlightRecord r) {
+        State s = state;
+        if (s == null) return; // ещё не загружен — загрузка прочитает актуальные данные
+        FlightRecord stored = r;
+        synchronized (this) {
+            if (state != s) return;
+            FlightRecord cached = s.byId.get(r.id());
+            // После фиксации потоки применяют изменения в произвольном порядке — старее не пишем
+            if (cached != null && cached.updatedAt() > r.updatedAt()) return;
+            // updated_at в секундах не упорядочивает две правки одной секунды — решает строка в БД
+            if (cached != null && cached.updatedAt() == r.updatedAt() && !cached.equals(r)) {
+                try {
+                    Optional<FlightRecord> fromDb = flightDao.findById(r.id());
+                    if (fromDb.isEmpty()) return; // рейс уже удалён, удаление уберёт его и из кэша
+                    stored = fromDb.get();
+                } catch (SQLException e) {
+                    System.err.println("Не удалось перечитать рейс " + r.id() + ", расхождение исправит сверка: " + e.getMessage());
+                }
+            }
+            index(s, stored);
+            writes.increment();
+        }
+        notifyChanged(stored);
+    }
+
+    void putAll(Collection<FlightRecord> flights) {
+        for (FlightRecord f : flights) put(f);
+    }
+
+    void remove(long id) {
+        State s = state;
+        if (s == null) return;
+        synchronized (this) {
+            FlightRecord old = s.byId.remove(id);
+            if (old != null) unindex(s, old);
+            writes.increment();
+        }
+        notifyListeners(l -> l.flightRemoved(id));
+    }
+
+    private void notifyChanged(FlightRecord r) {
+        if (listeners.isEmpty()) return;
+        notifyListeners(l -> l.flightChanged(r));
+    }
+
+    // Ошибка подписчика не должна сорвать запись, которая уже зафиксирована
+    private void notifyListeners(Consumer<Listener> event) {
+        for (Listener l : listeners) {
+            try {
+                event.accept(l);
+            } catch (RuntimeException e) {
+                System.err.println("Ошибка подписчика кэша рейсов: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void index(State s, FlightRecord r) {
+        FlightRecord old = s.byId.put(r.id(), r);
+        if (old != null) {
+            if (!Objects.equals(old.platform(), r.platform())) removeFrom(s.byPlatform, old.platform(), old.id());
+            if (old.status() != r.status()) removeFrom(s.byStatus, old.status(), old.id());
+        }
+        addTo(s.byPlatform, r.platform(), r.id());
+        addTo(s.byStatus, r.status(), r.id());
+        s.occupancy.put(r);
+    }
+
+    private static void unindex(State s, FlightRecord old) {
+        removeFrom(s.byPlatform, old.platform(), old.id());
+        removeFrom(s.byStatus, old.status(), old.id());
+        s.occupancy.remove(old.id());
+    }
+
+    private static <K> void addTo(Map<K, Set<Long>> index, K key, Long id) {
+        if (key != null) index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Long>> index, K key, Long id) {
+        if (key == null) return;
+        Set<Long> ids = index.get(key);
+        if (ids != null) ids.remove(id);
+    }
+
+    // ---------- СВЕРКА С БД ----------
+
+    // Полный проход по (id, updated_at) — по покрывающему индексу idx_flights_updated.
+    // Расхождения перечитываются по id; возвращает число исправленных рейсов.
+    public long reconcile() throws SQLException {
+        State s = current();
+        Map<Long, Long> versions = flightDao.findAllVersions();
+        long mismatches = 0;
+
+        for (Map.Entry<Long, Long> e : versions.entrySet()) {
+            FlightRecord cached = s.byId.get(e.getKey());
+            if ((cached == null || cached.updatedAt() != e.getValue()) && refresh(s, e.getKey())) {
+                mismatches++;
+            }
+        }
+        for (Long id : new ArrayList<>(s.byId.keySet())) {
+            // Рейс мог быть создан уже после чтения версий — удаляем, только если его нет в БД
+            if (!versions.containsKey(id) && flightDao.findById(id).isEmpty()) {
+                remove(id);
+                mismatches++;
+            }
+        }
+
+        reconciles.increment();
+        totalMismatches.add(mismatches);
+        lastReconcileMismatches = mismatches;
+        lastSyncAt = Instant.now().getEpochSecond();
+        if (mismatches > 0) {
+            System.out.println("Сверка кэша рейсов: исправлено расхождений " + mismatches);
+        }
+        return mismatches;
+    }
+
+    // Строка перечитывается под блокировкой кэша: put() и remove() после фиксации ждут её
+    // и применяются позже, поэтому более старая строка не затирает новую правку, а удалённый
+    // рейс не возвращается. Рейса нет в БД — его уберёт удаление или проход по лишним id.
+    private boolean refresh(State s, long id) throws SQLException {
+        FlightRecord fresh;
+        synchronized (this) {
+            if (state != s) return false;
+            fresh = flightDao.findById(id).orElse(null);
+            if (fresh == null) return false;
+            FlightRecord cached = s.byId.get(id);
+            if (cached != null && cached.updatedAt() > fresh.updatedAt()) return false;
+            index(s, fresh);
+        }
+        notifyChanged(fresh);
+        return true;
+    }
+
+    public synchronized void startReconciler(long periodSeconds) {
+        if (reconciler != null) return;
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "flight-cache-reconcile");
+            t.setDaemon(true);
+            return t;
+        });
+        reconciler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (SQLException e) {
+                System.err.println("Ошибка сверки кэша рейсов: " + e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopReconciler() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+    }
+
+    // ---------- МЕТРИКИ ----------
+
+    public CacheMetrics getMetrics() {
+        State s = state;
+        long since = lastSyncAt == 0 ? 0 : Instant.now().getEpochSecond() - lastSyncAt;
+        return new CacheMetrics(s == null ? 0 : s.byId.size(), hits.sum(), misses.sum(), writes.sum(),
+                reconciles.sum(), lastReconcileMismatches, totalMismatches.sum(), since);
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.model.FlightRecord;
+
+import java.util.List;
+
+// Порция ленты изменений и отметки, с которых читать следующую:
+// updatedAtMark — наибольший увиденный updated_at рейсов,
+// historyMark — последний просмотренный id истории (для надгробий DELETE).
+public record FlightChanges(List<FlightRecord> changed, List<Long> deletedIds, long updatedAtMark, long historyMark) {
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && deletedIds.isEmpty();
+    }
+}
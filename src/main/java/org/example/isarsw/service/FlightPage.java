@@ -0,0 +1,37 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.model.FlightRecord;
+
+import java.util.List;
+
+// Окно расписания для таблицы: рейсы начиная с ключа (cursorTs, cursorId) включительно.
+// Повторный запрос с тем же ключом возвращает то же окно с актуальными данными.
+public record FlightPage(List<FlightRecord> items, long cursorTs, long cursorId, boolean hasPrevious, boolean hasNext) {
+
+    // Ключ «с самого начала таблицы»
+    public static final long FIRST_TS = Long.MIN_VALUE;
+    public static final long FIRST_ID = Long.MIN_VALUE;
+
+    // Ключ следующего окна — сразу за последним рейсом этого
+    public long nextCursorTs() {
+        return items.isEmpty() ? cursorTs : items.get(items.size() - 1).arriveTs();
+    }
+
+    public long nextCursorId() {
+        return items.isEmpty() ? cursorId : items.get(items.size() - 1).id() + 1;
+    }
+
+    // Попадает ли рейс с ключом (arriveTs, id) в окно: от начального ключа и до последнего
+    // рейса окна; у последнего окна таблицы верхней границы нет
+    public boolean covers(long arriveTs, long id) {
+        if (compareKeys(arriveTs, id, cursorTs, cursorId) < 0) return false;
+        if (!hasNext || items.isEmpty()) return true;
+        FlightRecord last = items.get(items.size() - 1);
+        return compareKeys(arriveTs, id, last.arriveTs(), last.id()) <= 0;
+    }
+
+    static int compareKeys(long ts1, long id1, long ts2, long id2) {
+        int c = Long.compare(ts1, ts2);
+        return c != 0 ? c : Long.compare(id1, id2);
+    }
+}
@@ -2,24 +2,37 @@ package org.example.isarsw.service;
 
 import org.example.isarsw.dao.FlightDao;
 import org.example.isarsw.dao.HistoryDao;
-import org.example.isarsw.model.Flight;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightFilter;
+import org.example.isarsw.model.FlightStatus;
 import org.example.isarsw.model.HistoryEntry;
 
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 public class FlightService {
     private final FlightDao flightDao = new FlightDao();
     private final HistoryDao historyDao = new HistoryDao();
+    private final HistoryWriter historyWriter = HistoryWriter.shared();
+    private final FlightCache cache = FlightCache.shared();
 
-    public static final String STATUS_PLANNED = "ПЛАНИРУЕТСЯ";
-    public static final String STATUS_EN_ROUTE = "В ПУТИ";
-    public static final String STATUS_BOARDING = "ПОСАДКА";
-    public static final String STATUS_DELAYED = "ЗАДЕРЖАН";
-    public static final String STATUS_DEPARTED = "ОТБЫЛ";
-    public static final String STATUS_CANCELLED = "ОТМЕНЁН";
+    // Подписи статусов для интерфейса; внутри сервисов и в БД используется FlightStatus
+    public static final String STATUS_PLANNED = FlightStatus.PLANNED.label();
+    public static final String STATUS_EN_ROUTE = FlightStatus.EN_ROUTE.label();
+    public static final String STATUS_BOARDING = FlightStatus.BOARDING.label();
+    public static final String STATUS_DELAYED = FlightStatus.DELAYED.label();
+    public static final String STATUS_DEPARTED = FlightStatus.DEPARTED.label();
+    public static final String STATUS_CANCELLED = FlightStatus.CANCELLED.label();
 
     public static final long TWO_DAYS_SECONDS = 48 * 3600L;
     public static final long ONE_HOUR_SECONDS = 3600L;
@@ -27,185 +40,428 @@ public class FlightService {
 
     public static final String ACTOR_ADMIN = "администратор";
     public static final String ACTOR_SYSTEM = "система";
+    public static final String ACTOR_IMPORT = "импорт";
 
-    public Flight addFlight(Flight f, boolean overrideConflicts) throws SQLException {
+    public static final int DEFAULT_IMPORT_BATCH_SIZE = 5000;
+
+    // updated_at вычисляется до фиксации транзакции, поэтому строка может стать видимой
+    // позже строки с большим updated_at. Лента перечитывает последние секунды с запасом.
+    public static final long CHANGE_FEED_SETTLE_SECONDS = 5;
+
+    // Мутации выполняются единицей работы: проверка конфликтов, запись рейса
+    // и запись истории — одна транзакция и один коммит
+
+    // Возвращает сохранённый рейс с id и отметками времени
+    public FlightRecord addFlight(FlightRecord f, boolean overrideConflicts) throws SQLException {
         validateFlight(f);
+        return UnitOfWork.inTransaction(() -> insertFlight(f, overrideConflicts));
+    }
 
-        List<Flight> conflicts = flightDao.findConflicting(
-                f.getPlatform(),
-                f.getArriveTs(),
-                f.getStandingTime(),
-                null
-        );
-
-        if (!conflicts.isEmpty() && !overrideConflicts) {
-            StringBuilder conflictMsg = new StringBuilder("Обнаружен конфликт по платформе " + f.getPlatform() + ":\n");
-            for (Flight conflict : conflicts) {
-                conflictMsg.append("• Рейс ").append(conflict.getNumber())
-                        .append(" (прибытие: ").append(formatTime(conflict.getArriveTs()))
-                        .append(", стоянка: ").append(conflict.getStandingTime()).append(" мин)\n");
-            }
-            throw new IllegalStateException(conflictMsg.toString());
+    private FlightRecord insertFlight(FlightRecord f, boolean overrideConflicts) throws SQLException {
+        if (!overrideConflicts) {
+            requireNoConflicts(f, null);
         }
 
         long now = Instant.now().getEpochSecond();
-        f.setCreatedAt(now);
-        f.setUpdatedAt(now);
-
-        Flight saved = flightDao.create(f);
+        FlightRecord saved = flightDao.create(f.withTimestamps(now, now));
 
-        HistoryEntry h = new HistoryEntry(saved.getId(), "CREATE", ACTOR_ADMIN, now, null, saved.toPayload());
-        historyDao.insert(h);
+        HistoryEntry h = new HistoryEntry(saved.id(), "CREATE", ACTOR_ADMIN, now, null, saved.toPayload());
+        historyWriter.append(h);
+        UnitOfWork.afterCommit(() -> cache.put(saved));
         return saved;
     }
 
-    public void updateFlight(Flight f, boolean overrideConflicts) throws SQLException {
-        validateFlight(f);
-        Optional<Flight> existingOpt = flightDao.findById(f.getId());
-        if (existingOpt.isEmpty()) throw new IllegalArgumentException("Рейс не найден: " + f.getId());
-        Flight before = existingOpt.get();
-
-        List<Flight> conflicts = flightDao.findConflicting(
-                f.getPlatform(),
-                f.getArriveTs(),
-                f.getStandingTime(),
-                f.getId()
-        );
-
-        if (!conflicts.isEmpty() && !overrideConflicts) {
-            StringBuilder conflictMsg = new StringBuilder("Обнаружен конфликт по платформе " + f.getPlatform() + ":\n");
-            for (Flight conflict : conflicts) {
-                conflictMsg.append("• Рейс ").append(conflict.getNumber())
-                        .append(" (прибытие: ").append(formatTime(conflict.getArriveTs()))
-                        .append(", стоянка: ").append(conflict.getStandingTime()).append(" мин)\n");
-            }
-            throw new IllegalStateException(conflictMsg.toString());
+    // ---------- КОНФЛИКТЫ ПЛАТФОРМ ----------
+    // Проверка при записи рейса — интервальный индекс занятости в общем кэше (без запроса к БД).
+    // Запись сериализована соединением на запись, а кэш обновляется до его возврата,
+    // поэтому проверка видит все рейсы, записанные через сервис; записи в обход
+    // приложения попадают в индекс при сверке (FlightCache.reconcile).
+
+    public List<FlightRecord> findConflicts(String platform, long arriveTs, int standingTime, Long excludeId) throws SQLException {
+        long departureTs = arriveTs + standingTime * 60L;
+        List<FlightRecord> conflicts = cache.occupying(platform,
+                arriveTs - ConflictChecker.SEARCH_PADDING_SECONDS,
+                departureTs + ConflictChecker.SEARCH_PADDING_SECONDS,
+                excludeId);
+        conflicts.removeIf(other -> !ConflictChecker.conflicts(arriveTs, departureTs, other));
+        return conflicts;
+    }
+
+    // Перестановка платформ меняет несколько рейсов в одной транзакции, а кэш получает
+    // их только после фиксации — поэтому итог проверяется по БД, где видны свои изменения
+    private List<FlightRecord> conflictingInDb(String platform, long arriveTs, int standingTime, Long excludeId) throws SQLException {
+        long departureTs = arriveTs + standingTime * 60L;
+        List<FlightRecord> conflicts = flightDao.findOccupying(platform,
+                arriveTs - ConflictChecker.SEARCH_PADDING_SECONDS,
+                departureTs + ConflictChecker.SEARCH_PADDING_SECONDS,
+                excludeId);
+        conflicts.removeIf(other -> !ConflictChecker.conflicts(arriveTs, departureTs, other));
+        return conflicts;
+    }
+
+    private void requireNoConflicts(FlightRecord f, Long excludeId) throws SQLException {
+        failOnConflicts(f, findConflicts(f.platform(), f.arriveTs(), f.standingTime(), excludeId));
+    }
+
+    private void failOnConflicts(FlightRecord f, List<FlightRecord> conflicts) {
+        if (conflicts.isEmpty()) return;
+
+        StringBuilder conflictMsg = new StringBuilder("Обнаружен конфликт по платформе " + f.platform() + ":\n");
+        for (FlightRecord conflict : conflicts) {
+            conflictMsg.append("• Рейс ").append(conflict.number())
+                    .append(" (прибытие: ").append(formatTime(conflict.arriveTs()))
+                    .append(", стоянка: ").append(conflict.standingTime()).append(" мин)\n");
         }
+        throw new IllegalStateException(conflictMsg.toString());
+    }
 
-        f.setUpdatedAt(Instant.now().getEpochSecond());
-        flightDao.update(f);
+    // ---------- ИСТОРИЯ ----------
+    // Создание и удаление пишутся полным снимком рейса, изменения — только изменившимися
+    // полями. Каждое SNAPSHOT_EVERY-е изменение рейса после его последнего полного снимка
+    // пишется полными снимками, чтобы восстановление состояния не проходило всю цепочку
+    // разниц от создания. Счётчик рейса при первом его изменении после запуска (или смены БД)
+    // берётся из истории, дальше ведётся в памяти; изменения идут под соединением на запись.
 
-        HistoryEntry h = new HistoryEntry(f.getId(), "UPDATE", ACTOR_ADMIN, Instant.now().getEpochSecond(), before.toPayload(), f.toPayload());
-        historyDao.insert(h);
+    static final int SNAPSHOT_EVERY = 16;
+
+    private record ChangeCounts(String url, Map<Long, AtomicInteger> byFlight) {}
+
+    private static volatile ChangeCounts changeCounts;
+
+    static HistoryEntry changeEntry(String action, String actor, long timestamp, FlightRecord before, FlightRecord after) throws SQLException {
+        long id = after.id();
+        AtomicInteger sinceFull = changesSinceFull(id);
+        if (sinceFull.incrementAndGet() >= SNAPSHOT_EVERY) {
+            sinceFull.set(0);
+            return new HistoryEntry(id, action, actor, timestamp, before.toPayload(), after.toPayload());
+        }
+        return HistoryEntry.diff(id, action, actor, timestamp, before.diffPayload(after), after.diffPayload(before));
     }
 
-    public void deleteFlight(long id) throws SQLException {
-        Optional<Flight> existingOpt = flightDao.findById(id);
-        if (existingOpt.isEmpty()) throw new IllegalArgumentException("Рейс не найден: " + id);
-        Flight before = existingOpt.get();
-        flightDao.delete(id);
-        HistoryEntry h = new HistoryEntry(id, "DELETE", ACTOR_ADMIN, Instant.now().getEpochSecond(), before.toPayload(), null);
-        historyDao.insert(h);
+    private static AtomicInteger changesSinceFull(long id) throws SQLException {
+        ChangeCounts counts = changeCounts;
+        if (counts == null || !counts.url().equals(DB.getUrl())) {
+            counts = new ChangeCounts(DB.getUrl(), new ConcurrentHashMap<>());
+            changeCounts = counts;
+        }
+        AtomicInteger sinceFull = counts.byFlight().get(id);
+        if (sinceFull == null) {
+            sinceFull = new AtomicInteger(new HistoryDao().countSinceFull(id));
+            AtomicInteger raced = counts.byFlight().putIfAbsent(id, sinceFull);
+            if (raced != null) sinceFull = raced;
+        }
+        return sinceFull;
     }
 
-    public void changeStatus(long id, String newStatus, String actor, boolean automatic) throws SQLException {
-        Optional<Flight> existingOpt = flightDao.findById(id);
-        if (existingOpt.isEmpty()) return;
-        Flight f = existingOpt.get();
-        String prev = f.getStatus();
-        f.setStatus(newStatus);
-        f.setUpdatedAt(Instant.now().getEpochSecond());
-        flightDao.update(f);
-        String action = automatic ? "STATUS_AUTO" : "STATUS_MANUAL";
-        HistoryEntry h = new HistoryEntry(f.getId(), action, actor, Instant.now().getEpochSecond(),
-                "{\"status\":\""+prev+"\"}", "{\"status\":\""+newStatus+"\"}");
-        historyDao.insert(h);
+    // ---------- МАССОВЫЙ ИМПОРТ ----------
+    // Строки читаются из потока пачками; каждая пачка — одна транзакция:
+    // проверка по индексу занятости платформ, пакетная вставка рейсов и истории.
+    // Ошибочные и конфликтующие строки не прерывают импорт, а попадают в отчёт.
+
+    public ImportReport importFlights(Stream<FlightRecord> flights, boolean overrideConflicts) throws SQLException {
+        return importFlights(flights.iterator(), overrideConflicts, DEFAULT_IMPORT_BATCH_SIZE);
     }
 
-    public void changeStatusWithValidation(long id, String newStatus, String actor, boolean automatic) throws SQLException {
-        Optional<Flight> existingOpt = flightDao.findById(id);
-        if (existingOpt.isEmpty()) {
-            throw new IllegalArgumentException("Рейс не найден: " + id);
+    public ImportReport importFlights(Iterator<FlightRecord> flights, boolean overrideConflicts, int batchSize) throws SQLException {
+        if (batchSize <= 0) throw new IllegalArgumentException("Размер пачки должен быть положительным");
+
+        ImportReport report = new ImportReport();
+        List<FlightRecord> batch = new ArrayList<>(batchSize);
+        long firstRow = 1;
+        while (flights.hasNext()) {
+            batch.add(flights.next());
+            if (batch.size() == batchSize) {
+                importBatch(batch, firstRow, overrideConflicts, report);
+                firstRow += batch.size();
+                batch.clear();
+            }
         }
+        importBatch(batch, firstRow, overrideConflicts, report);
+        report.finish();
+        return report;
+    }
 
-        Flight flight = existingOpt.get();
-        String currentStatus = flight.getStatus();
+    // firstRow — номер первой строки пачки во входных данных (для отчёта).
+    // Предыдущие пачки уже зафиксированы и попали в индекс занятости кэша,
+    // занятость платформ в пределах текущей пачки держится в отдельном индексе.
+    public void importBatch(List<FlightRecord> batch, long firstRow, boolean overrideConflicts, ImportReport report) throws SQLException {
+        writeBatch(validateBatch(batch, firstRow), overrideConflicts, report);
+    }
 
-        if (!canChangeStatus(currentStatus, newStatus)) {
-            throw new IllegalStateException("Невозможно изменить статус с '" + currentStatus +
-                    "' на '" + newStatus + "'");
+    // Проверка полей без обращения к БД — может выполняться в отдельном потоке
+    ImportChunk validateBatch(List<FlightRecord> batch, long firstRow) {
+        ImportChunk chunk = new ImportChunk(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            FlightRecord f = batch.get(i);
+            try {
+                validateFlight(f);
+                chunk.add(firstRow + i, f);
+            } catch (IllegalArgumentException e) {
+                chunk.reject(firstRow + i, f == null ? null : f.number(), e.getMessage());
+            }
         }
+        return chunk;
+    }
+
+    void writeBatch(ImportChunk chunk, boolean overrideConflicts, ImportReport report) throws SQLException {
+        List<FlightRecord> valid = chunk.flights();
+        List<ImportReport.Rejection> rejected = new ArrayList<>(chunk.rejected());
 
-        changeStatus(id, newStatus, actor, automatic);
+        int accepted = valid.isEmpty() ? 0 : UnitOfWork.inTransaction(() -> {
+            List<FlightRecord> toInsert = overrideConflicts ? valid : rejectConflicts(valid, chunk.rows(), rejected);
+            if (toInsert.isEmpty()) return 0;
+
+            long now = Instant.now().getEpochSecond();
+            List<FlightRecord> stamped = new ArrayList<>(toInsert.size());
+            for (FlightRecord f : toInsert) {
+                stamped.add(f.withTimestamps(now, now));
+            }
+            List<FlightRecord> saved = flightDao.createBatch(stamped);
+
+            List<HistoryEntry> history = new ArrayList<>(saved.size());
+            for (FlightRecord f : saved) {
+                history.add(new HistoryEntry(f.id(), "CREATE", ACTOR_IMPORT, now, null, f.toPayload()));
+            }
+            historyWriter.appendAll(history);
+            UnitOfWork.afterCommit(() -> cache.putAll(saved));
+            return saved.size();
+        });
+
+        report.accept(accepted);
+        rejected.sort((a, b) -> Long.compare(a.row(), b.row()));
+        for (ImportReport.Rejection r : rejected) report.reject(r);
+        report.batchCommitted();
     }
 
-    public static boolean canChangeStatus(String fromStatus, String toStatus) {
-        // Нельзя менять статус у отменённых или отбывших поездов
-        if (fromStatus.equals(STATUS_CANCELLED) || fromStatus.equals(STATUS_DEPARTED)) {
-            return false;
+    // Проверка пачки против действующего расписания (индекс кэша) и против самой себя:
+    // принятые строки пачки ещё не зафиксированы, их занятость — в отдельном индексе.
+    private List<FlightRecord> rejectConflicts(List<FlightRecord> valid, List<Long> rows, List<ImportReport.Rejection> rejected) throws SQLException {
+        PlatformIntervalIndex batchOccupancy = new PlatformIntervalIndex();
+        List<FlightRecord> accepted = new ArrayList<>(valid.size());
+
+        for (int i = 0; i < valid.size(); i++) {
+            FlightRecord f = valid.get(i);
+            FlightRecord conflict = firstConflict(f, findConflicts(f.platform(), f.arriveTs(), f.standingTime(), null));
+            if (conflict == null) {
+                conflict = firstConflict(f, batchOccupancy.overlapping(f.platform(),
+                        f.arriveTs() - ConflictChecker.SEARCH_PADDING_SECONDS,
+                        f.departureTs() + ConflictChecker.SEARCH_PADDING_SECONDS, null));
+            }
+            if (conflict != null) {
+                rejected.add(new ImportReport.Rejection(rows.get(i), f.number(),
+                        "Конфликт по платформе " + f.platform() + " с рейсом " + conflict.number() +
+                                " (прибытие: " + formatTime(conflict.arriveTs()) + ")"));
+                continue;
+            }
+            accepted.add(f);
+            batchOccupancy.put(f);
         }
+        return accepted;
+    }
 
-        // Любой поезд можно отменить (кроме уже отменённых или отбывших)
-        if (toStatus.equals(STATUS_CANCELLED)) {
-            return true;
+    private static FlightRecord firstConflict(FlightRecord f, List<FlightRecord> candidates) {
+        for (FlightRecord other : candidates) {
+            if (ConflictChecker.conflicts(f.arriveTs(), f.departureTs(), other)) return other;
         }
+        return null;
+    }
 
-        // Поезд может отбыть только если он был на посадке или задержан
-        if (toStatus.equals(STATUS_DEPARTED)) {
-            return fromStatus.equals(STATUS_BOARDING) || fromStatus.equals(STATUS_DELAYED);
+    // Возвращает сохранённую версию рейса с новым updatedAt
+    public FlightRecord updateFlight(FlightRecord f, boolean overrideConflicts) throws SQLException {
+        validateFlight(f);
+        return UnitOfWork.inTransaction(() -> applyUpdate(f, overrideConflicts));
+    }
+
+    private FlightRecord applyUpdate(FlightRecord f, boolean overrideConflicts) throws SQLException {
+        Optional<FlightRecord> existingOpt = flightDao.findById(f.id());
+        if (existingOpt.isEmpty()) throw new IllegalArgumentException("Рейс не найден: " + f.id());
+        FlightRecord before = existingOpt.get();
+
+        if (!overrideConflicts) {
+            requireNoConflicts(f, f.id());
         }
 
-        // Проверка других переходов
-        switch (fromStatus) {
-            case STATUS_PLANNED:
-                return toStatus.equals(STATUS_EN_ROUTE) ||
-                        toStatus.equals(STATUS_DELAYED) ||
-                        toStatus.equals(STATUS_BOARDING);
+        FlightRecord after = f.withUpdatedAt(Instant.now().getEpochSecond());
+        flightDao.update(after);
 
-            case STATUS_EN_ROUTE:
-                return toStatus.equals(STATUS_BOARDING) ||
-                        toStatus.equals(STATUS_DELAYED);
+        historyWriter.append(changeEntry("UPDATE", ACTOR_ADMIN, after.updatedAt(), before, after));
+        UnitOfWork.afterCommit(() -> cache.put(after));
+        return after;
+    }
 
-            case STATUS_BOARDING:
-                return toStatus.equals(STATUS_DELAYED) ||
-                        toStatus.equals(STATUS_DEPARTED); // Теперь может отбыть через окно
+    // Применение плана PlatformAllocator одной транзакцией. Рейс, который успели
+    // перенести или изменить после построения плана, пропускается. Новые платформы
+    // проверяются по БД после всех переносов: рейсы плана освобождают и занимают платформы
+    // друг для друга, а кэш до фиксации их переносов не видит. Конфликт откатывает весь план.
+    // Возвращает число переносов.
+    public int applyPlatformPlan(PlatformAllocator.Plan plan) throws SQLException {
+        return UnitOfWork.inTransaction(() -> {
+            List<FlightRecord> moved = new ArrayList<>();
+            long now = Instant.now().getEpochSecond();
+            for (PlatformAllocator.Move move : plan.moves()) {
+                Optional<FlightRecord> existingOpt = flightDao.findById(move.flightId());
+                if (existingOpt.isEmpty()) continue;
+                FlightRecord before = existingOpt.get();
+                if (!move.matches(before)) continue;
+
+                FlightRecord after = before.withPlatform(move.toPlatform()).withUpdatedAt(now);
+                flightDao.update(after);
+                historyWriter.append(changeEntry("UPDATE", ACTOR_ADMIN, now, before, after));
+                UnitOfWork.afterCommit(() -> cache.put(after));
+                moved.add(after);
+            }
+            for (FlightRecord f : moved) {
+                failOnConflicts(f, conflictingInDb(f.platform(), f.arriveTs(), f.standingTime(), f.id()));
+            }
+            return moved.size();
+        });
+    }
 
-            case STATUS_DELAYED:
-                return toStatus.equals(STATUS_BOARDING) ||
-                        toStatus.equals(STATUS_EN_ROUTE) ||
-                        toStatus.equals(STATUS_DEPARTED); // И задержанный может отбыть
+    public void deleteFlight(long id) throws SQLException {
+        UnitOfWork.run(() -> {
+            Optional<FlightRecord> existingOpt = flightDao.findById(id);
+            if (existingOpt.isEmpty()) throw new IllegalArgumentException("Рейс не найден: " + id);
+            FlightRecord before = existingOpt.get();
+            flightDao.delete(id);
+            HistoryEntry h = new HistoryEntry(id, "DELETE", ACTOR_ADMIN, Instant.now().getEpochSecond(), before.toPayload(), null);
+            historyWriter.append(h);
+            UnitOfWork.afterCommit(() -> cache.remove(id));
+        });
+    }
 
-            default:
-                return false;
-        }
+    public void changeStatus(long id, String newStatus, String actor, boolean automatic) throws SQLException {
+        UnitOfWork.run(() -> {
+            Optional<FlightRecord> existingOpt = flightDao.findById(id);
+            if (existingOpt.isEmpty()) return;
+            FlightRecord before = existingOpt.get();
+            FlightRecord after = before.withStatus(FlightStatus.fromLabel(newStatus), Instant.now().getEpochSecond());
+            flightDao.update(after);
+            String action = automatic ? "STATUS_AUTO" : "STATUS_MANUAL";
+            historyWriter.append(changeEntry(action, actor, after.updatedAt(), before, after));
+            UnitOfWork.afterCommit(() -> cache.put(after));
+        });
     }
 
-    public List<Flight> listAll() throws SQLException {
+    public void changeStatusWithValidation(long id, String newStatus, String actor, boolean automatic) throws SQLException {
+        UnitOfWork.run(() -> {
+            Optional<FlightRecord> existingOpt = flightDao.findById(id);
+            if (existingOpt.isEmpty()) {
+                throw new IllegalArgumentException("Рейс не найден: " + id);
+            }
+
+            FlightStatus currentStatus = existingOpt.get().status();
+
+            if (!currentStatus.canChangeTo(FlightStatus.fromLabel(newStatus))) {
+                throw new IllegalStateException("Невозможно изменить статус с '" + currentStatus +
+                        "' на '" + newStatus + "'");
+            }
+
+            changeStatus(id, newStatus, actor, automatic);
+        });
+    }
+
+    public static boolean canChangeStatus(String fromStatus, String toStatus) {
+        FlightStatus from = FlightStatus.find(fromStatus);
+        FlightStatus to = FlightStatus.find(toStatus);
+        return from != null && to != null && from.canChangeTo(to);
+    }
+
+    public List<FlightRecord> listAll() throws SQLException {
         return flightDao.findAll();
     }
 
-    public List<Flight> search(String query) throws SQLException {
+    // ---------- ПОСТРАНИЧНЫЙ ПРОСМОТР ----------
+    // Для таблицы загружается только окно из size рейсов по ключу (arrive_ts, id),
+    // поэтому стоимость загрузки и обновления не зависит от размера таблицы.
+
+    public FlightPage pageFrom(long cursorTs, long cursorId, int size, FlightFilter filter) throws SQLException {
+        List<FlightRecord> items = flightDao.findPageFrom(cursorTs, cursorId, size + 1, filter);
+        boolean hasNext = items.size() > size;
+        if (hasNext) items = new ArrayList<>(items.subList(0, size));
+        boolean hasPrevious = !flightDao.findPageBefore(cursorTs, cursorId, 1, filter).isEmpty();
+        return new FlightPage(items, cursorTs, cursorId, hasPrevious, hasNext);
+    }
+
+    public FlightPage nextPage(FlightPage current, int size, FlightFilter filter) throws SQLException {
+        if (!current.hasNext()) return pageFrom(current.cursorTs(), current.cursorId(), size, filter);
+        return pageFrom(current.nextCursorTs(), current.nextCursorId(), size, filter);
+    }
+
+    // Если перед текущим окном меньше size рейсов, показываем первое полное окно таблицы
+    public FlightPage previousPage(FlightPage current, int size, FlightFilter filter) throws SQLException {
+        List<FlightRecord> before = flightDao.findPageBefore(current.cursorTs(), current.cursorId(), size, filter);
+        if (before.size() < size) return pageFrom(FlightPage.FIRST_TS, FlightPage.FIRST_ID, size, filter);
+        FlightRecord first = before.get(0);
+        return pageFrom(first.arriveTs(), first.id(), size, filter);
+    }
+
+    // ---------- ЛЕНТА ИЗМЕНЕНИЙ ----------
+    // Отметки берутся до загрузки окна: всё, что изменится после, попадёт в следующую порцию
+
+    public FlightChanges changeFeedStart() throws SQLException {
+        return new FlightChanges(List.of(), List.of(), flightDao.maxUpdatedAt(), historyDao.maxId());
+    }
+
+    // Порядок важен: сначала фиксируем id истории и читаем удаления до него, затем рейсы.
+    // Рейс, удалённый после этой отметки, придёт надгробием в следующей порции.
+    public FlightChanges changesSince(FlightChanges previous) throws SQLException {
+        long historyMark = historyDao.maxId();
+        List<Long> deleted = historyMark > previous.historyMark()
+                ? historyDao.findDeletedFlightIds(previous.historyMark(), historyMark)
+                : List.of();
+
+        List<FlightRecord> changed = flightDao.findChangedSince(previous.updatedAtMark() - CHANGE_FEED_SETTLE_SECONDS);
+        long updatedAtMark = previous.updatedAtMark();
+        for (FlightRecord f : changed) {
+            updatedAtMark = Math.max(updatedAtMark, f.updatedAt());
+        }
+        return new FlightChanges(changed, deleted, updatedAtMark, Math.max(historyMark, previous.historyMark()));
+    }
+
+    public List<FlightRecord> search(String query) throws SQLException {
         return flightDao.search(query);
     }
 
-    public Optional<Flight> findById(long id) throws SQLException {
-        return flightDao.findById(id);
+    // Точечные чтения и выборки по статусу обслуживает общий кэш
+    public Optional<FlightRecord> findById(long id) throws SQLException {
+        return cache.get(id);
+    }
+
+    public List<FlightRecord> listByStatus(String status) throws SQLException {
+        List<FlightRecord> records = cache.byStatus(FlightStatus.fromLabel(status));
+        records.sort(Comparator.comparingLong(FlightRecord::arriveTs));
+        return records;
     }
 
-    void validateFlight(Flight f) {
+    void validateFlight(FlightRecord f) {
         if (f == null) {
             throw new IllegalArgumentException("Рейс равен null");
         }
 
-        if (f.getNumber() == null || f.getNumber().trim().isEmpty()) {
+        if (f.number() == null || f.number().trim().isEmpty()) {
             throw new IllegalArgumentException("Номер рейса обязателен");
         }
 
-        if (f.getRoute() == null || f.getRoute().trim().isEmpty()) {
+        if (f.route() == null || f.route().trim().isEmpty()) {
             throw new IllegalArgumentException("Маршрут обязателен");
         }
 
-        if (f.getPlatform() == null || f.getPlatform().trim().isEmpty()) {
+        if (f.platform() == null || f.platform().trim().isEmpty()) {
             throw new IllegalArgumentException("Платформа обязательна");
         }
 
-        if (f.getArriveTs() <= 0) {
+        if (f.arriveTs() <= 0) {
             throw new IllegalArgumentException("Время прибытия должно быть указано");
         }
 
-        if (f.getStandingTime() <= 0) {
+        if (f.standingTime() <= 0) {
             throw new IllegalArgumentException("Время стоянки должно быть положительным числом");
         }
+
+        // null — статус не выбран или его подпись не распознана (Flight.toRecord)
+        if (f.status() == null) {
+            throw new IllegalArgumentException("Статус не указан или неизвестен");
+        }
     }
 
     private String formatTime(long timestamp) {
@@ -215,38 +471,21 @@ public class FlightService {
     }
 
     public static String[] getAllStatuses() {
-        return new String[] {
-                STATUS_PLANNED,
-                STATUS_EN_ROUTE,
-                STATUS_BOARDING,
-                STATUS_DELAYED,
-                STATUS_DEPARTED,
-                STATUS_CANCELLED
-        };
+        FlightStatus[] values = FlightStatus.values();
+        String[] labels = new String[values.length];
+        for (int i = 0; i < values.length; i++) labels[i] = values[i].label();
+        return labels;
     }
 
     public static String getStatusDescription(String status) {
-        switch (status) {
-            case STATUS_PLANNED:
-                return "Рейс планируется (более 48 часов до прибытия)";
-            case STATUS_EN_ROUTE:
-                return "Рейс в пути (от 48 часов до 1 часа до прибытия)";
-            case STATUS_BOARDING:
-                return "Идет посадка пассажиров";
-            case STATUS_DELAYED:
-                return "Рейс задержан (максимум 24 часа)";
-            case STATUS_DEPARTED:
-                return "Поезд отбыл со станции";
-            case STATUS_CANCELLED:
-                return "Рейс отменен";
-            default:
-                return "Неизвестный статус";
-        }
-    }
-
-    public List<Flight> getFlightsReadyForDeparture() throws SQLException {
+        return FlightStatus.isLabel(status) ? FlightStatus.fromLabel(status).description() : "Неизвестный статус";
+    }
+
+    public List<FlightRecord> getFlightsReadyForDeparture() throws SQLException {
         long currentTime = Instant.now().getEpochSecond();
-        return flightDao.findFlightsReadyForDeparture(currentTime);
+        List<FlightRecord> ready = listByStatus(STATUS_BOARDING);
+        ready.removeIf(f -> f.departureTs() > currentTime);
+        return ready;
     }
 
     public void markAsDeparted(long flightId) throws SQLException {
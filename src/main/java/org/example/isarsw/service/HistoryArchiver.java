@@ -0,0 +1,193 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.HistoryArchiveDao;
+import org.example.isarsw.db.DB;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Хранение истории. Записи рейсов, отбывших или отменённых больше archive_after_days
+// дней назад, и удалённых рейсов переносятся в помесячные архивы (HistoryArchiveDao),
+// архивы старше keep_archive_months месяцев удаляются целиком. Основная таблица history
+// содержит только действующие рейсы, поэтому её размер, а с ним стоимость вставки
+// и индексов, не растёт с годами работы. Политика хранится в таблице config.
+public class HistoryArchiver {
+
+    public static final String ARCHIVE_AFTER_DAYS_KEY = "history.archive_after_days";
+    public static final String KEEP_MONTHS_KEY = "history.keep_archive_months";
+    public static final int DEFAULT_ARCHIVE_AFTER_DAYS = 30;
+    // 0 — архивы хранятся бессрочно
+    public static final int DEFAULT_KEEP_MONTHS = 0;
+
+    // Рейсов в одной транзакции переноса
+    static final int CHUNK_FLIGHTS = 500;
+
+    public record Policy(int archiveAfterDays, int keepMonths) {
+        public Policy {
+            if (archiveAfterDays < 1 || keepMonths < 0) {
+                throw new IllegalArgumentException("Некорректная политика хранения истории: архив через " +
+                        archiveAfterDays + " дн., хранить " + keepMonths + " мес.");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "архив через " + archiveAfterDays + " дн., хранить " +
+                    (keepMonths == 0 ? "бессрочно" : keepMonths + " мес.");
+        }
+    }
+
+    public record Report(int flights, long movedRows, int droppedMonths, long droppedRows, long hotRows, long elapsedMillis) {
+        @Override
+        public String toString() {
+            return "рейсов в архив: " + flights + ", записей: " + movedRows +
+                    ", удалено архивов: " + droppedMonths + " (" + droppedRows + " записей)" +
+                    ", в основной таблице: " + hotRows + ", время: " + elapsedMillis + " мс";
+        }
+    }
+
+    private final HistoryArchiveDao archiveDao = new HistoryArchiveDao();
+    private final ZoneId zone = ZoneId.systemDefault();
+    private ScheduledExecutorService scheduler;
+
+    // ---------- ПОЛИТИКА ----------
+
+    // При первом запуске значения по умолчанию записываются в config, чтобы их было видно
+    public Policy policy() throws SQLException {
+        try (Connection c = DB.getConnection()) {
+            int days = readInt(c, ARCHIVE_AFTER_DAYS_KEY, DEFAULT_ARCHIVE_AFTER_DAYS);
+            int months = readInt(c, KEEP_MONTHS_KEY, DEFAULT_KEEP_MONTHS);
+            try {
+                return new Policy(days, months);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage() + " — используются значения по умолчанию");
+                return new Policy(DEFAULT_ARCHIVE_AFTER_DAYS, DEFAULT_KEEP_MONTHS);
+            }
+        }
+    }
+
+    public void setPolicy(Policy policy) throws SQLException {
+        try (Connection c = DB.getConnection()) {
+            DB.setConfig(c, ARCHIVE_AFTER_DAYS_KEY, String.valueOf(policy.archiveAfterDays()));
+            DB.setConfig(c, KEEP_MONTHS_KEY, String.valueOf(policy.keepMonths()));
+        }
+    }
+
+    private static int readInt(Connection c, String key, int defaultValue) throws SQLException {
+        String stored = DB.getConfig(c, key);
+        if (stored == null) {
+            DB.setConfig(c, key, String.valueOf(defaultValue));
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(stored.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Некорректное значение " + key + ": " + stored);
+            return defaultValue;
+        }
+    }
+
+    // ---------- ПЕРЕНОС ----------
+
+    public Report run() throws SQLException {
+        return run(Instant.now().getEpochSecond());
+    }
+
+    Report run(long now) throws SQLException {
+        long started = System.currentTimeMillis();
+        Policy policy = policy();
+        long cutoff = now - policy.archiveAfterDays() * 24 * 3600L;
+
+        int flights = 0;
+        long moved = 0;
+        for (boolean orphans : new boolean[]{false, true}) {
+            while (true) {
+                List<HistoryArchiveDao.Candidate> chunk = orphans
+                        ? archiveDao.findOrphaned(cutoff, CHUNK_FLIGHTS)
+                        : archiveDao.findArchivable(cutoff, CHUNK_FLIGHTS);
+                if (chunk.isEmpty()) break;
+                int rows = moveChunk(chunk);
+                // Кандидат всегда имеет записи в основной таблице; ноль — их перенёс кто-то другой
+                if (rows == 0) break;
+                flights += chunk.size();
+                moved += rows;
+            }
+        }
+
+        int droppedMonths = 0;
+        long droppedRows = 0;
+        if (policy.keepMonths() > 0) {
+            int oldestKept = month(YearMonth.from(Instant.ofEpochSecond(now).atZone(zone)).minusMonths(policy.keepMonths()));
+            for (int month : archiveDao.months()) {
+                if (month >= oldestKept) break;
+                droppedRows += UnitOfWork.inTransaction(() -> archiveDao.dropMonth(month));
+                droppedMonths++;
+            }
+        }
+
+        Report report = new Report(flights, moved, droppedMonths, droppedRows, archiveDao.hotRowCount(),
+                System.currentTimeMillis() - started);
+        if (flights > 0 || droppedMonths > 0) {
+            System.out.println("Архивация истории: " + report);
+        }
+        return report;
+    }
+
+    // Месяц — по времени отправления рейса (для удалённых — по последней записи);
+    // рейс, уже бывший в архиве, дописывается в свой прежний месяц
+    private int moveChunk(List<HistoryArchiveDao.Candidate> chunk) throws SQLException {
+        Map<Integer, List<Long>> byMonth = new LinkedHashMap<>();
+        for (HistoryArchiveDao.Candidate c : chunk) {
+            Integer month = archiveDao.monthOf(c.flightId());
+            if (month == null) month = month(YearMonth.from(Instant.ofEpochSecond(c.ts()).atZone(zone)));
+            byMonth.computeIfAbsent(month, k -> new ArrayList<>()).add(c.flightId());
+        }
+        return UnitOfWork.inTransaction(() -> {
+            int rows = 0;
+            for (Map.Entry<Integer, List<Long>> e : byMonth.entrySet()) {
+                rows += archiveDao.moveFlights(e.getKey(), e.getValue());
+            }
+            return rows;
+        });
+    }
+
+    private static int month(YearMonth ym) {
+        return ym.getYear() * 100 + ym.getMonthValue();
+    }
+
+    // ---------- ПЕРИОДИЧЕСКИЙ ЗАПУСК ----------
+
+    public synchronized void start(long periodHours) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "history-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        // Первый запуск — через минуту, чтобы не мешать загрузке приложения
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                run();
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Ошибка архивации истории: " + e.getMessage());
+            }
+        }, TimeUnit.MINUTES.toSeconds(1), TimeUnit.HOURS.toSeconds(periodHours), TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.HistoryDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.HistoryEntry;
+import org.sqlite.SQLiteErrorCode;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Журнал изменений рейсов. Пока фоновый поток не запущен (тесты, импорт и выгрузка
+// из командной строки), записи вставляются сразу в транзакции вызывающего — как раньше.
+// После start() записи после фиксации транзакции попадают в ограниченную очередь,
+// а поток записи сбрасывает её пачками одной транзакцией: операция диспетчера
+// больше не ждёт вставки истории. stop() дописывает всё, что осталось в очереди.
+public final class HistoryWriter {
+
+    public static final int DEFAULT_FLUSH_SIZE = 500;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    // Параметры потока записи в таблице config; отсутствующий ключ записывается со значением по умолчанию
+    public static final String FLUSH_SIZE_KEY = "history.flush_size";
+    public static final String FLUSH_INTERVAL_KEY = "history.flush_interval_ms";
+    public static final String QUEUE_CAPACITY_KEY = "history.queue_capacity";
+
+    // Пачка повторяется, пока БД её не примет: занятая БД или нехватка места не теряют
+    // историю. Пауза между повторами растёт вдвое от интервала сброса до этого предела.
+    static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+    private static final HistoryWriter SHARED = new HistoryWriter();
+
+    public static HistoryWriter shared() {
+        return SHARED;
+    }
+
+    public record HistoryMetrics(int queued, long written, long flushes, long inlineFlushes, long failedFlushes,
+                                 long rejected, double avgFlushMillis, double maxFlushMillis) {
+        @Override
+        public String toString() {
+            return "в очереди: " + queued +
+                    ", записано: " + written +
+                    ", сбросов: " + flushes +
+                    ", сбросов в потоке операции: " + inlineFlushes +
+                    ", ошибок: " + failedFlushes +
+                    ", отвергнуто БД: " + rejected +
+                    String.format(", время сброса ср/макс: %.2f/%.2f мс", avgFlushMillis, maxFlushMillis);
+        }
+    }
+
+    private final HistoryDao historyDao = new HistoryDao();
+
+    // queue != null — асинхронный режим; подмена очереди и постановка в неё — под lock
+    private final Object lock = new Object();
+    private volatile BlockingQueue<HistoryEntry> queue;
+    // Принятые в очередь, но ещё не записанные записи (включая пачку в потоке записи)
+    private final AtomicInteger unflushed = new AtomicInteger();
+    private Thread worker;
+    private int flushSize;
+    private long flushIntervalMillis;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder inlineFlushes = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private volatile long maxFlushNanos;
+
+    HistoryWriter() {}
+
+    // ---------- ЗАПИСЬ ----------
+
+    public void append(HistoryEntry entry) throws SQLException {
+        if (queue == null) {
+            historyDao.insert(entry);
+            return;
+        }
+        UnitOfWork.afterCommit(() -> enqueue(List.of(entry)));
+    }
+
+    public void appendAll(List<HistoryEntry> entries) throws SQLException {
+        if (entries.isEmpty()) return;
+        if (queue == null) {
+            historyDao.insertBatch(entries);
+            return;
+        }
+        List<HistoryEntry> copy = List.copyOf(entries);
+        UnitOfWork.afterCommit(() -> enqueue(copy));
+    }
+
+    // Выполняется после фиксации, пока поток ещё держит соединение на запись. Ждать места
+    // в очереди нельзя — потоку записи для сброса нужно то же соединение, поэтому при
+    // переполнении очередь вместе с новыми записями дописывается прямо здесь.
+    private void enqueue(List<HistoryEntry> entries) {
+        List<HistoryEntry> overflow = null;
+        synchronized (lock) {
+            BlockingQueue<HistoryEntry> q = queue;
+            if (q == null) {
+                overflow = new ArrayList<>(entries);
+            } else {
+                for (int i = 0; i < entries.size(); i++) {
+                    if (q.offer(entries.get(i))) {
+                        unflushed.incrementAndGet();
+                        continue;
+                    }
+                    overflow = new ArrayList<>(q.size() + entries.size() - i);
+                    unflushed.addAndGet(-q.drainTo(overflow));
+                    overflow.addAll(entries.subList(i, entries.size()));
+                    break;
+                }
+            }
+        }
+        if (overflow != null) flushInline(overflow);
+    }
+
+    // Пока БД не принимает записи, очередь не растёт дальше ёмкости: операция ждёт записи
+    // своей истории здесь же (обратное давление), а не теряет её
+    private void flushInline(List<HistoryEntry> batch) {
+        inlineFlushes.increment();
+        int attempts = 0;
+        while (!batch.isEmpty()) {
+            try {
+                write(batch);
+            } catch (SQLException | RuntimeException e) {
+                long delay = retryDelay(++attempts);
+                System.err.println("Ошибка записи истории (" + batch.size() + " записей), повтор через " + delay + " мс: " + e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    System.err.println("История не записана, поток прерван (" + batch.size() + " записей)");
+                    return;
+                }
+            }
+        }
+    }
+
+    // Пачку, отвергнутую БД, делим пополам, пока отвергнутая запись не останется одна: она
+    // уходит в history_dead_letter, остальные записываются. Обработанные записи убираются из
+    // начала batch; временная ошибка БД прерывает проход, и остаток повторяет вызывающий.
+    private void write(List<HistoryEntry> batch) throws SQLException {
+        Deque<List<HistoryEntry>> parts = new ArrayDeque<>();
+        parts.push(new ArrayList<>(batch));
+        int done = 0;
+        try {
+            while (!parts.isEmpty()) {
+                List<HistoryEntry> part = parts.pop();
+                try {
+                    flush(part);
+                } catch (SQLException | RuntimeException e) {
+                    if (!isRejected(e)) throw e;
+                    if (part.size() > 1) {
+                        int mid = part.size() / 2;
+                        parts.push(part.subList(mid, part.size()));
+                        parts.push(part.subList(0, mid));
+                        continue;
+                    }
+                    deadLetter(part.get(0), e);
+                }
+                done += part.size();
+            }
+        } finally {
+            batch.subList(0, done).clear();
+        }
+    }
+
+    // Ошибка из-за самой записи, а не из-за состояния БД: повтор её не исправит
+    private static boolean isRejected(Exception e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql) {
+                int code = sql.getErrorCode() & 0xff;
+                if (code == SQLiteErrorCode.SQLITE_CONSTRAINT.code || code == SQLiteErrorCode.SQLITE_MISMATCH.code
+                        || code == SQLiteErrorCode.SQLITE_TOOBIG.code || code == SQLiteErrorCode.SQLITE_RANGE.code) {
+                    return true;
+                }
+            }
+        }
+        return !(e instanceof SQLException);
+    }
+
+    private void deadLetter(HistoryEntry entry, Exception cause) throws SQLException {
+        UnitOfWork.run(() -> historyDao.insertDeadLetter(entry, String.valueOf(cause.getMessage()), Instant.now().getEpochSecond()));
+        rejected.increment();
+        System.err.println("Запись истории отвергнута БД, сохранена в history_dead_letter (рейс " +
+                entry.getFlightId() + ", " + entry.getAction() + "): " + cause.getMessage());
+    }
+
+    private long retryDelay(int attempt) {
+        return Math.min(flushIntervalMillis << Math.min(attempt - 1, 20), MAX_RETRY_DELAY_MILLIS);
+    }
+
+    private void flush(List<HistoryEntry> batch) throws SQLException {
+        if (batch.isEmpty()) return;
+        long started = System.nanoTime();
+        try {
+            UnitOfWork.run(() -> historyDao.insertBatch(batch));
+        } catch (SQLException | RuntimeException e) {
+            failedFlushes.increment();
+            throw e;
+        }
+        long elapsed = System.nanoTime() - started;
+        flushes.increment();
+        written.add(batch.size());
+        flushNanos.add(elapsed);
+        if (elapsed > maxFlushNanos) maxFlushNanos = elapsed;
+    }
+
+    // ---------- ПОТОК ЗАПИСИ ----------
+
+    // Параметры из config; несогласованные значения заменяются значениями по умолчанию
+    public void start() throws SQLException {
+        long size;
+        long interval;
+        long capacity;
+        try (Connection c = DB.getConnection()) {
+            size = configValue(c, FLUSH_SIZE_KEY, DEFAULT_FLUSH_SIZE);
+            interval = configValue(c, FLUSH_INTERVAL_KEY, DEFAULT_FLUSH_INTERVAL_MILLIS);
+            capacity = configValue(c, QUEUE_CAPACITY_KEY, DEFAULT_QUEUE_CAPACITY);
+        }
+        if (size <= 0 || interval <= 0 || capacity < size || capacity > Integer.MAX_VALUE) {
+            System.err.println("Некорректные параметры журнала в config: пачка " + size +
+                    ", интервал " + interval + " мс, очередь " + capacity + "; используются значения по умолчанию");
+            size = DEFAULT_FLUSH_SIZE;
+            interval = DEFAULT_FLUSH_INTERVAL_MILLIS;
+            capacity = DEFAULT_QUEUE_CAPACITY;
+        }
+        start((int) size, interval, (int) capacity);
+    }
+
+    private static long configValue(Connection c, String key, long def) throws SQLException {
+        String stored = DB.getConfig(c, key);
+        if (stored == null) {
+            DB.setConfig(c, key, String.valueOf(def));
+            return def;
+        }
+        try {
+            return Long.parseLong(stored.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Некорректное значение " + key + ": " + stored);
+            return def;
+        }
+    }
+
+    // flushSize — записей в одной транзакции, flushIntervalMillis — сколько пачка
+    // может ждать добора, прежде чем уйти неполной
+    public synchronized void start(int flushSize, long flushIntervalMillis, int capacity) {
+        if (worker != null) return;
+        if (flushSize <= 0 || flushIntervalMillis <= 0 || capacity < flushSize) {
+            throw new IllegalArgumentException("Некорректные параметры журнала: пачка " + flushSize +
+                    ", интервал " + flushIntervalMillis + " мс, очередь " + capacity);
+        }
+        this.flushSize = flushSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        queue = new ArrayBlockingQueue<>(capacity);
+        worker = new Thread(this::drainLoop, "history-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Дописывает очередь и возвращается к синхронной записи
+    public synchronized void stop() {
+        if (worker == null) return;
+        Thread t = worker;
+        worker = null;
+        t.interrupt();
+        try {
+            t.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<HistoryEntry> rest = new ArrayList<>();
+        synchronized (lock) {
+            queue.drainTo(rest);
+            queue = null;
+        }
+        try {
+            write(rest);
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("История не записана при остановке (" + rest.size() + " записей): " + e.getMessage());
+        }
+        unflushed.set(0);
+    }
+
+    public boolean isAsync() {
+        return queue != null;
+    }
+
+    // Ждёт, пока поток записи опустошит очередь; для тестов и перед чтением истории
+    public void awaitFlushed(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (unflushed.get() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void drainLoop() {
+        BlockingQueue<HistoryEntry> q = queue;
+        List<HistoryEntry> batch = new ArrayList<>(flushSize);
+        int attempts = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (batch.isEmpty()) {
+                    HistoryEntry first = q.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    // Первая запись ждёт остальные не дольше интервала сброса
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                    while (batch.size() < flushSize) {
+                        q.drainTo(batch, flushSize - batch.size());
+                        long left = deadline - System.nanoTime();
+                        if (batch.size() >= flushSize || left <= 0) break;
+                        HistoryEntry next = q.poll(left, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                }
+                int before = batch.size();
+                try {
+                    write(batch);
+                } finally {
+                    unflushed.addAndGet(batch.size() - before);
+                }
+                attempts = 0;
+            } catch (InterruptedException e) {
+                break;
+            } catch (SQLException | RuntimeException e) {
+                // Остаток пачки повторяется с растущей паузой; тем временем очередь заполняется
+                // и записывающие операции сами пишут свою историю (flushInline)
+                long delay = retryDelay(++attempts);
+                System.err.println("Ошибка записи истории (" + batch.size() + " записей), повтор через " + delay + " мс: " + e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+        // Взятая из очереди пачка старше оставшихся в ней записей — пишется первой, остальное дописывает stop()
+        Thread.interrupted();
+        if (!batch.isEmpty()) {
+            try {
+                write(batch);
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("История не записана при остановке (" + batch.size() + " записей): " + e.getMessage());
+            }
+        }
+    }
+
+    // ---------- МЕТРИКИ ----------
+
+    public int queueDepth() {
+        return unflushed.get();
+    }
+
+    public HistoryMetrics getMetrics() {
+        long n = flushes.sum();
+        return new HistoryMetrics(unflushed.get(), written.sum(), n, inlineFlushes.sum(), failedFlushes.sum(),
+                rejected.sum(), n == 0 ? 0 : flushNanos.sum() / 1e6 / n, maxFlushNanos / 1e6);
+    }
+}
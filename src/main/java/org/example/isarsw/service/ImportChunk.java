@@ -0,0 +1,33 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.model.FlightRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Пачка строк импорта после разбора и проверки: годные рейсы с номерами строк
+// и уже отклонённые строки. Передаётся между стадиями конвейера импорта.
+final class ImportChunk {
+
+    private final List<FlightRecord> flights;
+    private final List<Long> rows;
+    private final List<ImportReport.Rejection> rejected = new ArrayList<>();
+
+    ImportChunk(int capacity) {
+        flights = new ArrayList<>(capacity);
+        rows = new ArrayList<>(capacity);
+    }
+
+    void add(long row, FlightRecord f) {
+        rows.add(row);
+        flights.add(f);
+    }
+
+    void reject(long row, String number, String reason) {
+        rejected.add(new ImportReport.Rejection(row, number, reason));
+    }
+
+    List<FlightRecord> flights() { return flights; }
+    List<Long> rows() { return rows; }
+    List<ImportReport.Rejection> rejected() { return rejected; }
+}
@@ -0,0 +1,73 @@
+package org.example.isarsw.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Итог массового импорта: сколько строк принято и почему отклонены остальные.
+// Хранится не больше MAX_STORED_REJECTIONS отказов, чтобы отчёт по огромному
+// файлу не занимал память; счётчик отказов при этом полный.
+public class ImportReport {
+
+    public static final int MAX_STORED_REJECTIONS = 10_000;
+
+    public record Rejection(long row, String number, String reason) {
+        @Override
+        public String toString() {
+            return "строка " + row + (number == null ? "" : " (" + number + ")") + ": " + reason;
+        }
+    }
+
+    private long accepted;
+    private long rejected;
+    private long batches;
+    private final List<Rejection> rejections = new ArrayList<>();
+    private final long startedAt = System.nanoTime();
+    private long finishedAt;
+
+    synchronized void accept(long count) {
+        accepted += count;
+    }
+
+    synchronized void reject(Rejection r) {
+        rejected++;
+        if (rejections.size() < MAX_STORED_REJECTIONS) {
+            rejections.add(r);
+        }
+    }
+
+    synchronized void batchCommitted() {
+        batches++;
+    }
+
+    synchronized void finish() {
+        finishedAt = System.nanoTime();
+    }
+
+    public synchronized long getAccepted() { return accepted; }
+    public synchronized long getRejected() { return rejected; }
+    public synchronized long getBatches() { return batches; }
+
+    public synchronized List<Rejection> getRejections() {
+        return Collections.unmodifiableList(new ArrayList<>(rejections));
+    }
+
+    public synchronized long getElapsedMillis() {
+        long end = finishedAt == 0 ? System.nanoTime() : finishedAt;
+        return (end - startedAt) / 1_000_000;
+    }
+
+    public synchronized double getRowsPerSecond() {
+        long ms = Math.max(1, getElapsedMillis());
+        return (accepted + rejected) * 1000.0 / ms;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "принято: " + accepted +
+                ", отклонено: " + rejected +
+                ", транзакций: " + batches +
+                ", время: " + getElapsedMillis() + " мс" +
+                String.format(" (%.0f строк/с)", getRowsPerSecond());
+    }
+}
@@ -0,0 +1,198 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+// Подбор платформ по индексу занятости (PlatformIntervalIndex) и правилам ConflictChecker.
+// Подсказка для одного поезда: все известные платформы, свободные на его стоянку,
+// упорядоченные по запасу времени до соседних рейсов — чем больше запас,
+// тем меньше риск, что задержка соседа превратится в конфликт.
+// Пакетный режим переназначает платформы на сутки жадной раскраской интервального графа.
+public class PlatformAllocator {
+
+    // Запас больше этого уже не влияет на порядок — платформа считается «полностью свободной»
+    public static final long SCORE_HORIZON_SECONDS = 2 * 3600L;
+
+    public record Suggestion(String platform, long gapBeforeSeconds, long gapAfterSeconds) {
+        public long score() {
+            return Math.min(gapBeforeSeconds, gapAfterSeconds);
+        }
+
+        @Override
+        public String toString() {
+            return "платформа " + platform + " (запас " + ScheduleAuditReport.formatDuration(score()) +
+                    (score() >= SCORE_HORIZON_SECONDS ? "+" : "") + ")";
+        }
+    }
+
+    // flight — рейс в том виде, в каком по нему строился план
+    public record Move(FlightRecord flight, String toPlatform) {
+        public long flightId() {
+            return flight.id();
+        }
+
+        public String number() {
+            return flight.number();
+        }
+
+        public String fromPlatform() {
+            return flight.platform();
+        }
+
+        // Рейс не менялся после построения плана: та же версия и те же время и платформа
+        // (updated_at в секундах — правка в ту же секунду видна по полям)
+        public boolean matches(FlightRecord current) {
+            return current.updatedAt() == flight.updatedAt()
+                    && current.arriveTs() == flight.arriveTs()
+                    && current.standingTime() == flight.standingTime()
+                    && current.status() == flight.status()
+                    && Objects.equals(current.platform(), flight.platform());
+        }
+
+        @Override
+        public String toString() {
+            return "рейс " + number() + ": платформа " + fromPlatform() + " → " + toPlatform;
+        }
+    }
+
+    // unresolved — рейсы, для которых не нашлось свободной платформы; они остаются на своих
+    public record Plan(LocalDate day, int flights, List<Move> moves, List<FlightRecord> unresolved) {
+        public boolean isEmpty() {
+            return moves.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return day + ": рейсов " + flights + ", переносов " + moves.size() +
+                    ", без свободной платформы " + unresolved.size();
+        }
+    }
+
+    @FunctionalInterface
+    interface Occupancy {
+        List<FlightRecord> overlapping(String platform, long from, long to, Long excludeId) throws SQLException;
+    }
+
+    private final FlightCache cache;
+
+    public PlatformAllocator() {
+        this(FlightCache.shared());
+    }
+
+    PlatformAllocator(FlightCache cache) {
+        this.cache = cache;
+    }
+
+    // ---------- ПОДСКАЗКА ----------
+
+    // excludeId — редактируемый рейс, его собственная стоянка не мешает
+    public List<Suggestion> suggest(long arriveTs, int standingTime, Long excludeId, int limit) throws SQLException {
+        return rank(cache::occupying, knownPlatforms(), arriveTs, arriveTs + standingTime * 60L, excludeId, limit);
+    }
+
+    public List<String> knownPlatforms() throws SQLException {
+        List<String> platforms = cache.platforms();
+        platforms.sort(PLATFORM_ORDER);
+        return platforms;
+    }
+
+    static List<Suggestion> rank(Occupancy occupancy, List<String> platforms, long arriveTs, long departureTs,
+                                 Long excludeId, int limit) throws SQLException {
+        List<Suggestion> free = new ArrayList<>();
+        for (String platform : platforms) {
+            Suggestion s = evaluate(occupancy, platform, arriveTs, departureTs, excludeId);
+            if (s != null) free.add(s);
+        }
+        // Стабильная сортировка: при равном запасе сохраняется естественный порядок платформ
+        free.sort(Comparator.comparingLong(Suggestion::score).reversed());
+        return free.size() > limit ? new ArrayList<>(free.subList(0, limit)) : free;
+    }
+
+    // null — платформа занята
+    private static Suggestion evaluate(Occupancy occupancy, String platform, long arriveTs, long departureTs,
+                                       Long excludeId) throws SQLException {
+        long horizon = Math.max(SCORE_HORIZON_SECONDS, ConflictChecker.SEARCH_PADDING_SECONDS);
+        long gapBefore = SCORE_HORIZON_SECONDS;
+        long gapAfter = SCORE_HORIZON_SECONDS;
+        for (FlightRecord other : occupancy.overlapping(platform, arriveTs - horizon, departureTs + horizon, excludeId)) {
+            if (ConflictChecker.conflicts(arriveTs, departureTs, other)) return null;
+            long otherDeparture = other.departureTs();
+            if (other.arriveTs() < arriveTs) {
+                gapBefore = Math.min(gapBefore, Math.max(0, arriveTs - otherDeparture));
+            } else {
+                gapAfter = Math.min(gapAfter, Math.max(0, other.arriveTs() - departureTs));
+            }
+        }
+        return new Suggestion(platform, gapBefore, gapAfter);
+    }
+
+    // ---------- ПАКЕТНЫЙ РЕЖИМ ----------
+
+    // Рейсы, прибывающие в течение суток, перебираются по времени прибытия (раскраска
+    // интервального графа в порядке левых концов). Рейс остаётся на своей платформе,
+    // если она свободна, иначе получает лучшую свободную. Рейсы на посадке, отменённые
+    // и отправленные не переносятся; рейсы соседних суток учитываются как занятость.
+    public Plan plan(LocalDate day) throws SQLException {
+        ZoneId zone = ZoneId.systemDefault();
+        long dayStart = day.atStartOfDay(zone).toEpochSecond();
+        long dayEnd = day.plusDays(1).atStartOfDay(zone).toEpochSecond();
+        List<String> platforms = knownPlatforms();
+
+        PlatformIntervalIndex planned = new PlatformIntervalIndex();
+        List<FlightRecord> movable = new ArrayList<>();
+        for (String platform : platforms) {
+            for (FlightRecord f : cache.occupying(platform, dayStart - ConflictChecker.SEARCH_PADDING_SECONDS,
+                    dayEnd + ConflictChecker.SEARCH_PADDING_SECONDS, null)) {
+                if (isMovable(f) && f.arriveTs() >= dayStart && f.arriveTs() < dayEnd) {
+                    movable.add(f);
+                } else {
+                    planned.put(f);
+                }
+            }
+        }
+        movable.sort(Comparator.comparingLong(FlightRecord::arriveTs).thenComparingLong(FlightRecord::id));
+
+        List<Move> moves = new ArrayList<>();
+        List<FlightRecord> unresolved = new ArrayList<>();
+        Occupancy occupancy = planned::overlapping;
+        for (FlightRecord f : movable) {
+            long departureTs = f.departureTs();
+            String target = f.platform();
+            if (evaluate(occupancy, target, f.arriveTs(), departureTs, null) == null) {
+                List<Suggestion> best = rank(occupancy, platforms, f.arriveTs(), departureTs, null, 1);
+                if (best.isEmpty()) {
+                    unresolved.add(f);
+                } else {
+                    target = best.get(0).platform();
+                    moves.add(new Move(f, target));
+                }
+            }
+            planned.put(f.withPlatform(target));
+        }
+        return new Plan(day, movable.size(), Collections.unmodifiableList(moves), Collections.unmodifiableList(unresolved));
+    }
+
+    private static boolean isMovable(FlightRecord f) {
+        return f.status() == FlightStatus.PLANNED
+                || f.status() == FlightStatus.EN_ROUTE
+                || f.status() == FlightStatus.DELAYED;
+    }
+
+    // «2» раньше «10»: числовые номера сравниваются как числа, остальные — как строки
+    static final Comparator<String> PLATFORM_ORDER = (a, b) -> {
+        boolean na = a.chars().allMatch(Character::isDigit) && !a.isEmpty() && a.length() < 10;
+        boolean nb = b.chars().allMatch(Character::isDigit) && !b.isEmpty() && b.length() < 10;
+        if (na && nb) return Integer.compare(Integer.parseInt(a), Integer.parseInt(b));
+        if (na != nb) return na ? -1 : 1;
+        return a.compareTo(b);
+    };
+}
@@ -0,0 +1,197 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.model.FlightRecord;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Интервальное дерево занятости платформ: по дереву на платформу, интервал рейса —
+// [прибытие, отправление). Отменённые и отправленные рейсы платформу не занимают
+// и в индекс не попадают. Дерево — декартово (treap) по ключу (прибытие, id),
+// в каждом узле хранится максимальное отправление поддерева, поэтому поиск
+// пересечений отсекает поддеревья целиком: O(log n + k).
+//
+// Общий экземпляр ведёт FlightCache; для проверки пачки импорта против самой себя
+// создаётся отдельный экземпляр.
+public final class PlatformIntervalIndex {
+
+    private static final class Node {
+        final long id;
+        final long start;
+        final long end;
+        final FlightRecord flight;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        Node left;
+        Node right;
+        long maxEnd;
+
+        Node(FlightRecord f) {
+            this.id = f.id();
+            this.start = f.arriveTs();
+            this.end = f.departureTs();
+            this.flight = f;
+            this.maxEnd = end;
+        }
+    }
+
+    private final Map<String, Node> roots = new HashMap<>();
+    // id -> узел, чтобы при изменении рейса найти и удалить прежний интервал
+    private final Map<Long, Node> byId = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // ---------- ИЗМЕНЕНИЕ ----------
+
+    // Рейс без id (ещё не сохранён, id = 0) индексируется, но не может быть заменён или удалён по id
+    public void put(FlightRecord f) {
+        lock.writeLock().lock();
+        try {
+            if (f.id() != 0) removeLocked(f.id());
+            if (!f.occupiesPlatform() || f.platform() == null) return;
+            Node node = new Node(f);
+            roots.put(f.platform(), insert(roots.get(f.platform()), node));
+            if (f.id() != 0) byId.put(f.id(), node);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            roots.clear();
+            byId.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(long id) {
+        Node old = byId.remove(id);
+        if (old == null) return;
+        String platform = old.flight.platform();
+        Node root = delete(roots.get(platform), old.start, old.id);
+        if (root == null) roots.remove(platform);
+        else roots.put(platform, root);
+    }
+
+    // ---------- ПОИСК ----------
+
+    // Рейсы платформы, чьё окно пересекает [from, to): прибытие < to и отправление > from.
+    // Результат упорядочен по времени прибытия.
+    public List<FlightRecord> overlapping(String platform, long from, long to, Long excludeId) {
+        lock.readLock().lock();
+        try {
+            List<FlightRecord> out = new ArrayList<>();
+            collect(roots.get(platform), from, to, excludeId, out);
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void collect(Node n, long from, long to, Long excludeId, List<FlightRecord> out) {
+        // Ни один интервал поддерева не заканчивается позже from
+        if (n == null || n.maxEnd <= from) return;
+        collect(n.left, from, to, excludeId, out);
+        // Правее только более поздние прибытия
+        if (n.start >= to) return;
+        if (n.end > from && (excludeId == null || n.id != excludeId)) out.add(n.flight);
+        collect(n.right, from, to, excludeId, out);
+    }
+
+    // ---------- ДЕКАРТОВО ДЕРЕВО ----------
+
+    private static int compare(long startA, long idA, long startB, long idB) {
+        int c = Long.compare(startA, startB);
+        return c != 0 ? c : Long.compare(idA, idB);
+    }
+
+    private static Node insert(Node root, Node node) {
+        if (root == null) return node;
+        if (compare(node.start, node.id, root.start, root.id) < 0) {
+            root.left = insert(root.left, node);
+            if (root.left.priority > root.priority) root = rotateRight(root);
+        } else {
+            root.right = insert(root.right, node);
+            if (root.right.priority > root.priority) root = rotateLeft(root);
+        }
+        update(root);
+        return root;
+    }
+
+    private static Node delete(Node root, long start, long id) {
+        if (root == null) return null;
+        int c = compare(start, id, root.start, root.id);
+        if (c < 0) {
+            root.left = delete(root.left, start, id);
+        } else if (c > 0) {
+            root.right = delete(root.right, start, id);
+        } else {
+            return merge(root.left, root.right);
+        }
+        update(root);
+        return root;
+    }
+
+    // Все ключи left меньше ключей right
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static Node rotateRight(Node n) {
+        Node l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private static Node rotateLeft(Node n) {
+        Node r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+
+    private static void update(Node n) {
+        long max = n.end;
+        if (n.left != null) max = Math.max(max, n.left.maxEnd);
+        if (n.right != null) max = Math.max(max, n.right.maxEnd);
+        n.maxEnd = max;
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.isarsw.service;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+
+// Итог аудита расписания: все пары рейсов, нарушающие правила ConflictChecker.
+// Хранится не больше MAX_STORED_CONFLICTS пар (самые ранние по времени),
+// счётчик конфликтов при этом полный.
+public class ScheduleAuditReport {
+
+    public static final int MAX_STORED_CONFLICTS = 100_000;
+
+    private static final DateTimeFormatter DATE_TIME =
+            DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm").withZone(ZoneId.systemDefault());
+
+    // overlapSeconds — пересечение стоянок; отрицательное значение — рейсы не пересекаются,
+    // но интервал между ними меньше буфера
+    public record Conflict(String platform,
+                           long firstId, String firstNumber, long firstArriveTs,
+                           long secondId, String secondNumber, long secondArriveTs,
+                           long overlapSeconds) {
+        @Override
+        public String toString() {
+            String overlap = overlapSeconds > 0
+                    ? "пересечение " + formatDuration(overlapSeconds)
+                    : "интервал " + formatDuration(-overlapSeconds) + " меньше буфера";
+            return "платформа " + platform + ": рейс " + firstNumber + " (" + DATE_TIME.format(Instant.ofEpochSecond(firstArriveTs)) +
+                    ") и рейс " + secondNumber + " (" + DATE_TIME.format(Instant.ofEpochSecond(secondArriveTs)) + "), " + overlap;
+        }
+    }
+
+    private final long flights;
+    private final int platforms;
+    private final long totalConflicts;
+    private final long totalOverlapSeconds;
+    private final List<Conflict> conflicts;
+    private final long elapsedMillis;
+
+    ScheduleAuditReport(long flights, int platforms, long totalConflicts, long totalOverlapSeconds,
+                        List<Conflict> conflicts, long elapsedMillis) {
+        this.flights = flights;
+        this.platforms = platforms;
+        this.totalConflicts = totalConflicts;
+        this.totalOverlapSeconds = totalOverlapSeconds;
+        this.conflicts = Collections.unmodifiableList(conflicts);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getFlights() { return flights; }
+    public int getPlatforms() { return platforms; }
+    public long getTotalConflicts() { return totalConflicts; }
+    public long getTotalOverlapSeconds() { return totalOverlapSeconds; }
+    public List<Conflict> getConflicts() { return conflicts; }
+    public long getElapsedMillis() { return elapsedMillis; }
+
+    public boolean isClean() {
+        return totalConflicts == 0;
+    }
+
+    static String formatDuration(long seconds) {
+        long minutes = seconds / 60;
+        return minutes >= 60 ? (minutes / 60) + " ч " + (minutes % 60) + " мин" : minutes + " мин";
+    }
+
+    @Override
+    public String toString() {
+        return "рейсов: " + flights +
+                ", платформ: " + platforms +
+                ", конфликтов: " + totalConflicts +
+                ", суммарное пересечение: " + formatDuration(totalOverlapSeconds) +
+                ", время: " + elapsedMillis + " мс";
+    }
+}
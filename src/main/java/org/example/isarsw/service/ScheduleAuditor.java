@@ -0,0 +1,174 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.FlightDao;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Аудит всего расписания: находит все пары рейсов на одной платформе, нарушающие
+// правила ConflictChecker, — в том числе сохранённые с overrideConflicts.
+// Таблица читается одним проходом курсора, дальше каждая платформа независимо:
+// сортировка по прибытию и заметающая прямая, платформы — параллельно через fork/join.
+public class ScheduleAuditor {
+
+    private static final Comparator<Slot> BY_ARRIVAL =
+            Comparator.comparingLong((Slot s) -> s.start).thenComparingLong(s -> s.id);
+
+    private final FlightDao flightDao = new FlightDao();
+    private final ForkJoinPool pool;
+
+    public ScheduleAuditor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ScheduleAuditor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Стоянка рейса без лишних полей FlightRecord — на миллион рейсов это заметная экономия памяти
+    private static final class Slot {
+        final long id;
+        final String number;
+        final long start;
+        final long end;
+        final boolean boarding;
+
+        Slot(long id, String number, long start, long end, boolean boarding) {
+            this.id = id;
+            this.number = number;
+            this.start = start;
+            this.end = end;
+            this.boarding = boarding;
+        }
+    }
+
+    // ---------- ЗАПУСК ----------
+
+    public ScheduleAuditReport audit() throws SQLException {
+        long started = System.nanoTime();
+        Map<String, List<Slot>> byPlatform = new HashMap<>();
+        long flights = flightDao.scanOccupancy((id, number, platform, arriveTs, standingTime, status) ->
+                byPlatform.computeIfAbsent(platform, k -> new ArrayList<>()).add(new Slot(id, number,
+                        arriveTs, arriveTs + standingTime * 60L, status == FlightStatus.BOARDING)));
+        return audit(byPlatform, flights, started);
+    }
+
+    // Аудит произвольного набора рейсов, например расписания до импорта
+    public ScheduleAuditReport audit(Collection<FlightRecord> flights) {
+        long started = System.nanoTime();
+        Map<String, List<Slot>> byPlatform = new HashMap<>();
+        long count = 0;
+        for (FlightRecord f : flights) {
+            if (!f.occupiesPlatform()) continue;
+            byPlatform.computeIfAbsent(f.platform(), k -> new ArrayList<>()).add(new Slot(
+                    f.id(), f.number(), f.arriveTs(), f.departureTs(),
+                    f.status() == FlightStatus.BOARDING));
+            count++;
+        }
+        return audit(byPlatform, count, started);
+    }
+
+    private ScheduleAuditReport audit(Map<String, List<Slot>> byPlatform, long flights, long started) {
+        String[] platforms = byPlatform.keySet().toArray(new String[0]);
+        Arrays.sort(platforms);
+
+        Result result = platforms.length == 0
+                ? new Result()
+                : pool.invoke(new SweepTask(platforms, byPlatform, 0, platforms.length));
+        result.conflicts.sort(Comparator.comparingLong(ScheduleAuditReport.Conflict::firstArriveTs)
+                .thenComparing(ScheduleAuditReport.Conflict::platform));
+
+        long ms = (System.nanoTime() - started) / 1_000_000;
+        return new ScheduleAuditReport(flights, platforms.length, result.count, result.overlapSeconds,
+                result.conflicts, ms);
+    }
+
+    // ---------- FORK/JOIN ----------
+
+    private static final class Result {
+        long count;
+        long overlapSeconds;
+        List<ScheduleAuditReport.Conflict> conflicts = new ArrayList<>();
+
+        Result merge(Result other) {
+            count += other.count;
+            overlapSeconds += other.overlapSeconds;
+            conflicts.addAll(other.conflicts);
+            if (conflicts.size() > ScheduleAuditReport.MAX_STORED_CONFLICTS) {
+                conflicts.sort(Comparator.comparingLong(ScheduleAuditReport.Conflict::firstArriveTs));
+                conflicts = new ArrayList<>(conflicts.subList(0, ScheduleAuditReport.MAX_STORED_CONFLICTS));
+            }
+            return this;
+        }
+    }
+
+    // Делит список платформ пополам до одной платформы на задачу
+    @SuppressWarnings("serial")
+    private static final class SweepTask extends RecursiveTask<Result> {
+        private final String[] platforms;
+        private final Map<String, List<Slot>> byPlatform;
+        private final int from;
+        private final int to;
+
+        SweepTask(String[] platforms, Map<String, List<Slot>> byPlatform, int from, int to) {
+            this.platforms = platforms;
+            this.byPlatform = byPlatform;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from == 1) {
+                return sweep(platforms[from], byPlatform.get(platforms[from]));
+            }
+            int mid = (from + to) >>> 1;
+            SweepTask left = new SweepTask(platforms, byPlatform, from, mid);
+            left.fork();
+            Result right = new SweepTask(platforms, byPlatform, mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    // ---------- ЗАМЕТАЮЩАЯ ПРЯМАЯ ----------
+
+    // Рейсы по возрастанию прибытия; в активном списке — те, чьё отправление плюс
+    // наибольший буфер ещё не позади текущего прибытия. Только с ними текущий рейс
+    // может конфликтовать, поэтому работа пропорциональна n log n + числу пар.
+    private static Result sweep(String platform, List<Slot> slots) {
+        Slot[] sorted = slots.toArray(new Slot[0]);
+        Arrays.sort(sorted, BY_ARRIVAL);
+
+        Result result = new Result();
+        List<Slot> active = new ArrayList<>();
+        for (Slot s : sorted) {
+            active.removeIf(a -> a.end + ConflictChecker.SEARCH_PADDING_SECONDS <= s.start);
+            for (Slot a : active) {
+                // Правило посадки несимметрично — пара конфликтует, если нарушено хотя бы одно направление
+                if (!ConflictChecker.conflicts(s.start, s.end, a.start, a.end, a.boarding)
+                        && !ConflictChecker.conflicts(a.start, a.end, s.start, s.end, s.boarding)) {
+                    continue;
+                }
+                long overlap = Math.min(a.end, s.end) - Math.max(a.start, s.start);
+                result.count++;
+                if (overlap > 0) result.overlapSeconds += overlap;
+                if (result.conflicts.size() < ScheduleAuditReport.MAX_STORED_CONFLICTS) {
+                    result.conflicts.add(new ScheduleAuditReport.Conflict(platform,
+                            a.id, a.number, a.start, s.id, s.number, s.start, overlap));
+                }
+            }
+            active.add(s);
+        }
+        return result;
+    }
+}
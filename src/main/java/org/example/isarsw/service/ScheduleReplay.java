@@ -0,0 +1,269 @@
+package org.example.isarsw.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.example.isarsw.dao.HistoryDao;
+import org.example.isarsw.dao.ScheduleSnapshotDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.example.isarsw.model.HistoryEntry;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Воспроизведение истории: состояние рейса или всего расписания на произвольный момент.
+// Записи истории применяются в порядке id: CREATE и полные снимки задают все поля рейса,
+// разницы (HistoryEntry.FORMAT_DIFF) и старые записи статуса — только изменившиеся,
+// DELETE убирает рейс. Расписание восстанавливается от последнего снимка
+// (ScheduleSnapshotDao) не позже нужного момента, поэтому воспроизводится только хвост
+// истории за один период снимков. Отдельный рейс — от его последнего полного снимка
+// в истории (не реже чем через FlightService.SNAPSHOT_EVERY изменений).
+// Если архивы истории удалялись (HistoryArchiver), моменты до удалённых месяцев
+// восстанавливаются без рейсов, чья история удалена.
+public class ScheduleReplay {
+
+    public static final String KEEP_SNAPSHOTS_KEY = "history.keep_snapshots";
+    // При снимке раз в 6 часов — месяц, столько же, сколько история остаётся в основной таблице
+    public static final int DEFAULT_KEEP_SNAPSHOTS = 120;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public record State(long asOf, List<FlightRecord> flights, long fromHistoryId, int replayed, long elapsedMillis) {
+        @Override
+        public String toString() {
+            return "рейсов: " + flights.size() + ", от записи истории: " + fromHistoryId +
+                    ", воспроизведено записей: " + replayed + ", время: " + elapsedMillis + " мс";
+        }
+    }
+
+    private final HistoryDao historyDao = new HistoryDao();
+    private final ScheduleSnapshotDao snapshotDao = new ScheduleSnapshotDao();
+    // Снимки строятся по одному: второй построил бы тот же снимок
+    private final Object snapshotLock = new Object();
+    private ScheduledExecutorService scheduler;
+
+    // ---------- СОСТОЯНИЕ НА МОМЕНТ ----------
+
+    // Все рейсы, существовавшие в момент ts, по возрастанию (arriveTs, id)
+    public State scheduleAt(long ts) throws SQLException {
+        long started = System.nanoTime();
+        ScheduleSnapshotDao.Snapshot base = snapshotDao.latestAtOrBefore(ts);
+        // Записи после следующего снимка сделаны позже ts
+        ScheduleSnapshotDao.Snapshot next = snapshotDao.firstAfter(ts);
+        long fromId = base == null ? 0 : base.historyId();
+
+        Replayer r = base == null ? new Replayer() : load(base);
+        historyDao.replay(fromId, next == null ? Long.MAX_VALUE : next.historyId(), ts, r::apply);
+
+        List<FlightRecord> flights = new ArrayList<>(r.flights.values());
+        flights.sort(Comparator.comparingLong(FlightRecord::arriveTs).thenComparingLong(FlightRecord::id));
+        return new State(ts, flights, fromId, r.applied, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Пусто — рейс в момент ts ещё не создан или уже удалён
+    public Optional<FlightRecord> flightAt(long flightId, long ts) throws SQLException {
+        // Сначала новые: набираем записи до ближайшего полного снимка или удаления
+        Deque<HistoryEntry> tail = new ArrayDeque<>();
+        for (HistoryEntry e : historyDao.listByFlight(flightId)) {
+            if (e.getTimestamp() > ts) continue;
+            tail.addFirst(e);
+            if ("DELETE".equals(e.getAction()) || isFullPayload(e.getPayloadAfter())) break;
+        }
+        Replayer r = new Replayer();
+        for (HistoryEntry e : tail) r.apply(e);
+        return Optional.ofNullable(r.flights.get(flightId));
+    }
+
+    // ---------- СНИМКИ ----------
+
+    public ScheduleSnapshotDao.Snapshot takeSnapshot() throws SQLException {
+        return takeSnapshot(Instant.now().getEpochSecond());
+    }
+
+    // Следующий снимок строится из предыдущего и записей после него, а не из таблицы
+    // flights: журнал пишется асинхронно (HistoryWriter) и может отставать от рейсов
+    ScheduleSnapshotDao.Snapshot takeSnapshot(long now) throws SQLException {
+        synchronized (snapshotLock) {
+            return buildSnapshot(now);
+        }
+    }
+
+    private ScheduleSnapshotDao.Snapshot buildSnapshot(long now) throws SQLException {
+        long started = System.nanoTime();
+        ScheduleSnapshotDao.Snapshot base = snapshotDao.latest();
+        long upTo = historyDao.lastId();
+        if (base != null && base.historyId() >= upTo) return base;
+
+        Replayer r = base == null ? new Replayer() : load(base);
+        historyDao.replay(base == null ? 0 : base.historyId(), upTo, Long.MAX_VALUE, r::apply);
+
+        StringBuilder payload = new StringBuilder(r.flights.size() * 256);
+        for (FlightRecord f : r.flights.values()) {
+            if (payload.length() > 0) payload.append('\n');
+            payload.append(f.toPayload());
+        }
+        long maxTs = Math.max(r.maxTs, base == null ? 0 : base.maxTs());
+        int keep = keepSnapshots();
+        ScheduleSnapshotDao.Snapshot snapshot = UnitOfWork.inTransaction(() -> {
+            ScheduleSnapshotDao.Snapshot s = snapshotDao.insert(upTo, maxTs, now, r.flights.size(), payload.toString());
+            snapshotDao.prune(keep);
+            return s;
+        });
+        System.out.println("Снимок расписания: рейсов " + r.flights.size() + ", записей истории " + r.applied +
+                ", время " + (System.nanoTime() - started) / 1_000_000 + " мс");
+        return snapshot;
+    }
+
+    public int keepSnapshots() throws SQLException {
+        try (Connection c = DB.getConnection()) {
+            String stored = DB.getConfig(c, KEEP_SNAPSHOTS_KEY);
+            if (stored == null) {
+                DB.setConfig(c, KEEP_SNAPSHOTS_KEY, String.valueOf(DEFAULT_KEEP_SNAPSHOTS));
+                return DEFAULT_KEEP_SNAPSHOTS;
+            }
+            try {
+                return Math.max(1, Integer.parseInt(stored.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Некорректное значение " + KEEP_SNAPSHOTS_KEY + ": " + stored);
+                return DEFAULT_KEEP_SNAPSHOTS;
+            }
+        }
+    }
+
+    private Replayer load(ScheduleSnapshotDao.Snapshot snapshot) throws SQLException {
+        Replayer r = new Replayer();
+        r.maxTs = snapshot.maxTs();
+        String payload = snapshotDao.loadPayload(snapshot.id());
+        int from = 0;
+        while (from < payload.length()) {
+            int end = payload.indexOf('\n', from);
+            if (end < 0) end = payload.length();
+            Map<String, Object> fields;
+            try {
+                fields = parseFields(payload.substring(from, end));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Снимок расписания " + snapshot.id() + " повреждён: " + e.getMessage(), e);
+            }
+            if (!(fields.get("id") instanceof Number id)) {
+                throw new IllegalStateException("Снимок расписания " + snapshot.id() + " повреждён: строка без id");
+            }
+            r.flights.put(id.longValue(), merge(null, id.longValue(), fields, snapshot.maxTs()));
+            from = end + 1;
+        }
+        return r;
+    }
+
+    // ---------- ПРИМЕНЕНИЕ ЗАПИСЕЙ ----------
+
+    private static final class Replayer {
+        final Map<Long, FlightRecord> flights = new HashMap<>();
+        long maxTs;
+        int applied;
+
+        void apply(HistoryEntry e) {
+            applied++;
+            maxTs = Math.max(maxTs, e.getTimestamp());
+            long id = e.getFlightId();
+            if ("DELETE".equals(e.getAction())) {
+                flights.remove(id);
+                return;
+            }
+            if (e.getPayloadAfter() == null) return;
+            Map<String, Object> fields;
+            try {
+                fields = parseFields(e.getPayloadAfter());
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalStateException("Запись истории " + e.getId() + " повреждена: " + ex.getMessage(), ex);
+            }
+            FlightRecord base = flights.get(id);
+            // Начала истории рейса нет (удалённый архив) — изменённые поля не к чему применить
+            if (base == null && !fields.containsKey("id")) return;
+            flights.put(id, merge(base, id, fields, e.getTimestamp()));
+        }
+    }
+
+    // Полный снимок FlightRecord.toPayload() начинается с id; разницы полей id не содержат
+    static boolean isFullPayload(String payload) {
+        return payload != null && payload.startsWith("{\"id\":");
+    }
+
+    // Поля из payload поверх base; updatedAt разница не содержит — это время записи истории
+    static FlightRecord merge(FlightRecord base, long id, Map<String, Object> fields, long ts) {
+        String statusLabel = (String) fields.get("status");
+        FlightStatus status = statusLabel == null ? null : FlightStatus.find(statusLabel);
+        return new FlightRecord(id,
+                text(fields, "number", base == null ? "" : base.number()),
+                text(fields, "route", base == null ? "" : base.route()),
+                number(fields, "arriveTs", base == null ? 0 : base.arriveTs()),
+                (int) number(fields, "standingTime", base == null ? 0 : base.standingTime()),
+                text(fields, "platform", base == null ? "" : base.platform()),
+                status != null ? status : base == null ? FlightStatus.PLANNED : base.status(),
+                number(fields, "createdAt", base == null ? ts : base.createdAt()),
+                number(fields, "updatedAt", ts),
+                number(fields, "lastArrivalCheck", base == null ? 0 : base.lastArrivalCheck()));
+    }
+
+    // null в payload — поле стало пустым; отсутствие поля — не менялось
+    private static String text(Map<String, Object> fields, String name, String fallback) {
+        if (!fields.containsKey(name)) return fallback;
+        return fields.get(name) instanceof String s ? s : null;
+    }
+
+    private static long number(Map<String, Object> fields, String name, long fallback) {
+        Object v = fields.get(name);
+        return v instanceof Number n ? n.longValue() : fallback;
+    }
+
+    // Плоский объект JSON: строки, целые числа и null; IllegalArgumentException — запись повреждена
+    static Map<String, Object> parseFields(String payload) {
+        Map<String, Object> out = new HashMap<>();
+        try (JsonParser p = JSON.createParser(payload)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) throw new IllegalArgumentException("ожидался объект JSON");
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                JsonToken t = p.nextToken();
+                if (t == JsonToken.VALUE_NUMBER_INT) out.put(name, p.getLongValue());
+                else if (t == JsonToken.VALUE_STRING) out.put(name, p.getText());
+                else if (t == JsonToken.VALUE_NULL) out.put(name, null);
+                else p.skipChildren();
+            }
+            return out;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    // ---------- ПЕРИОДИЧЕСКИЙ ЗАПУСК ----------
+
+    public synchronized void start(long periodHours) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "schedule-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        // Первый снимок — через минуту, чтобы не мешать загрузке приложения
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                takeSnapshot();
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Ошибка снимка расписания: " + e.getMessage());
+            }
+        }, TimeUnit.MINUTES.toSeconds(1), TimeUnit.HOURS.toSeconds(periodHours), TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -1,84 +1,285 @@
 package org.example.isarsw.service;
 
 import org.example.isarsw.dao.FlightDao;
-import org.example.isarsw.dao.HistoryDao;
-import org.example.isarsw.model.Flight;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
 import org.example.isarsw.model.HistoryEntry;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToLongFunction;
+
+// Автоматический жизненный цикл рейса по таблице правил RULES:
+// ПЛАНИРУЕТСЯ → В ПУТИ за 48 часов до прибытия, В ПУТИ → ПОСАДКА в момент прибытия,
+// ПОСАДКА → ОТБЫЛ после отправления (если диспетчер не ответил на окно отправления),
+// ЗАДЕРЖАН → ОТМЕНЁН через сутки после прибытия по расписанию.
+// У каждого рейса есть срок следующего перехода в DeadlineScheduler; сработавшие сроки
+// собираются в такт, и все переходы такта применяются одной транзакцией: групповой
+// UPDATE ... WHERE id IN (...) на каждую пару статусов и одна пакетная вставка истории.
+// Сроки назначаются только в пределах ARM_HORIZON_SECONDS: рейсы с более поздними
+// сроками (в основном «планируется» на недели вперёд) подбирает периодический обход.
+public class StatusScheduler implements FlightCache.Listener {
+
+    // Время на ответ диспетчера в окне отправления, после него рейс отбывает автоматически
+    public static final long DEPARTURE_GRACE_SECONDS = 15 * 60L;
+
+    // Сроки, сработавшие в пределах этого интервала, попадают в один такт
+    static final long TICK_COALESCE_MILLIS = 100;
+    // Повтор такта после ошибки: рейсы такта возвращаются в очередь
+    static final long RETRY_DELAY_MILLIS = 5000;
+    // Горизонт назначения сроков и период обхода; горизонт не меньше периода,
+    // иначе срок между двумя обходами был бы пропущен
+    static final long ARM_HORIZON_SECONDS = 6 * 3600L;
+    static final long SWEEP_PERIOD_SECONDS = 3600L;
+
+    // Переход from → to допустим начиная с due(f) и до until(f), не включая его
+    record Rule(FlightStatus from, FlightStatus to, ToLongFunction<FlightRecord> due, ToLongFunction<FlightRecord> until) {}
+
+    // Рейс «в пути» или «планируется», у которого стоянка уже закончилась,
+    // автоматически не переводится — его судьбу решает диспетчер в окне проверки
+    static final List<Rule> RULES = List.of(
+            new Rule(FlightStatus.PLANNED, FlightStatus.EN_ROUTE,
+                    f -> f.arriveTs() - FlightService.TWO_DAYS_SECONDS, FlightRecord::departureTs),
+            new Rule(FlightStatus.EN_ROUTE, FlightStatus.BOARDING,
+                    FlightRecord::arriveTs, FlightRecord::departureTs),
+            new Rule(FlightStatus.BOARDING, FlightStatus.DEPARTED,
+                    f -> f.departureTs() + DEPARTURE_GRACE_SECONDS, f -> Long.MAX_VALUE),
+            new Rule(FlightStatus.DELAYED, FlightStatus.CANCELLED,
+                    f -> f.arriveTs() + FlightService.DELAY_LIMIT_SECONDS, f -> Long.MAX_VALUE));
+
+    private record Transition(FlightStatus from, FlightStatus to) {}
+
+    private static final String TICK_KEY = "lifecycle_tick";
+    private static final String SWEEP_KEY = "lifecycle_sweep";
 
-public class StatusScheduler {
     private final FlightDao flightDao = new FlightDao();
-    private final HistoryDao historyDao = new HistoryDao();
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private final long pollIntervalSeconds;
+    private final HistoryWriter historyWriter = HistoryWriter.shared();
+    private final FlightCache cache = FlightCache.shared();
+    private final DeadlineScheduler deadlines = new DeadlineScheduler("status-deadlines");
 
-    public StatusScheduler(long pollIntervalSeconds) {
-        this.pollIntervalSeconds = pollIntervalSeconds;
-    }
+    private final Set<Long> dueIds = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean tickArmed = new AtomicBoolean();
+    private volatile boolean sweepArmed;
+    private volatile long ticks;
+    private volatile long transitions;
 
     public void start() {
-        scheduler.scheduleAtFixedRate(this::runOnce, 5, pollIntervalSeconds, TimeUnit.SECONDS);
+        cache.addListener(this);
+        reloaded();
     }
 
     public void stop() {
-        scheduler.shutdownNow();
+        cache.removeListener(this);
+        deadlines.shutdown();
+        if (transitions > 0) {
+            System.out.println("Автоматическая смена статусов: тактов " + ticks + ", переходов " + transitions);
+        }
+    }
+
+    int pendingDeadlines() {
+        return deadlines.pendingCount() - (tickArmed.get() ? 1 : 0) - (sweepArmed ? 1 : 0);
+    }
+
+    long ticks() {
+        return ticks;
+    }
+
+    // ---------- ПРАВИЛА ----------
+
+    // Правило по ordinal исходного статуса; null — автоматического перехода нет
+    private static final Rule[] RULE_BY_STATUS = new Rule[FlightStatus.values().length];
+
+    static {
+        for (Rule r : RULES) RULE_BY_STATUS[r.from().ordinal()] = r;
+    }
+
+    static Rule ruleFor(FlightStatus status) {
+        return RULE_BY_STATUS[status.ordinal()];
+    }
+
+    // Статус, в котором рейс должен быть в момент now. Переходы применяются цепочкой:
+    // рейс, добавленный за минуту до прибытия, из «планируется» сразу попадает на посадку
+    static FlightStatus targetStatus(FlightRecord f, long now) {
+        FlightStatus status = f.status();
+        for (int step = 0; step < RULES.size(); step++) {
+            Rule r = ruleFor(status);
+            if (r == null || now < r.due().applyAsLong(f) || now >= r.until().applyAsLong(f)) break;
+            if (!status.canChangeTo(r.to())) break;
+            status = r.to();
+        }
+        return status;
+    }
+
+    // -1 — автоматических переходов у рейса больше не будет
+    static long nextDueTs(FlightRecord f, long now) {
+        Rule r = ruleFor(f.status());
+        if (r == null || now >= r.until().applyAsLong(f)) return -1;
+        return r.due().applyAsLong(f);
+    }
+
+    // ---------- СРОКИ ----------
+
+    @Override
+    public void flightChanged(FlightRecord f) {
+        arm(f, Instant.now().getEpochSecond());
+    }
+
+    // Срок за горизонтом не назначается: его назначит обход, когда срок приблизится
+    private void arm(FlightRecord f, long now) {
+        long id = f.id();
+        long due = nextDueTs(f, now);
+        if (due < 0 || due > now + ARM_HORIZON_SECONDS) {
+            deadlines.cancel(key(id));
+        } else {
+            deadlines.schedule(key(id), due * 1000, () -> onDue(id));
+        }
     }
 
-    // Убираем дублирование с FlightService.changeStatus
-    private void changeStatus(long id, String newStatus, String actor, boolean automatic) throws SQLException {
-        Optional<Flight> existingOpt = flightDao.findById(id);
-        if (existingOpt.isEmpty()) return;
+    @Override
+    public void flightRemoved(long id) {
+        deadlines.cancel(key(id));
+        dueIds.remove(id);
+    }
+
+    @Override
+    public void reloaded() {
+        sweep();
+    }
 
-        Flight f = existingOpt.get();
-        String prev = f.getStatus();
-        f.setStatus(newStatus);
-        f.setUpdatedAt(Instant.now().getEpochSecond());
+    // Обход рейсов с автоматическими переходами: назначает сроки, вошедшие в горизонт
+    private void sweep() {
+        try {
+            sweep(Instant.now().getEpochSecond());
+        } catch (SQLException | RuntimeException ex) {
+            ex.printStackTrace();
+        }
+        sweepArmed = true;
+        deadlines.schedule(SWEEP_KEY, System.currentTimeMillis() + SWEEP_PERIOD_SECONDS * 1000, this::sweep);
+    }
 
-        flightDao.update(f);
+    void sweep(long now) throws SQLException {
+        for (Rule r : RULES) {
+            for (FlightRecord f : cache.byStatus(r.from())) arm(f, now);
+        }
+    }
+
+    private static String key(long id) {
+        return "lifecycle_" + id;
+    }
+
+    private void onDue(long id) {
+        dueIds.add(id);
+        armTick(TICK_COALESCE_MILLIS);
+    }
+
+    private void armTick(long delayMillis) {
+        if (tickArmed.compareAndSet(false, true)) {
+            deadlines.schedule(TICK_KEY, System.currentTimeMillis() + delayMillis, this::tick);
+        }
+    }
 
-        String action = automatic ? "STATUS_AUTO" : "STATUS_MANUAL";
-        HistoryEntry h = new HistoryEntry(f.getId(), action, actor, Instant.now().getEpochSecond(),
-                "{\"status\":\""+prev+"\"}", "{\"status\":\""+newStatus+"\"}");
-        historyDao.insert(h);
+    private void tick() {
+        tickArmed.set(false);
+        try {
+            runOnce();
+        } catch (SQLException | RuntimeException ex) {
+            ex.printStackTrace();
+        }
     }
 
-    private void runOnce() {
+    // ---------- ТАКТ ----------
+
+    // Применяет переходы всех рейсов со сработавшим сроком; возвращает число изменённых рейсов
+    int runOnce() throws SQLException {
+        List<Long> ids = new ArrayList<>(dueIds);
+        if (ids.isEmpty()) return 0;
+        dueIds.removeAll(ids);
+        int applied;
         try {
-            List<Flight> flights = flightDao.findFlightsNeedingStatusUpdate(Instant.now().getEpochSecond());
-
-            for (Flight f : flights) {
-                try {
-                    String currentStatus = f.getStatus();
-
-                    // Проверяем только активные рейсы
-                    if (FlightService.STATUS_CANCELLED.equals(currentStatus) ||
-                            FlightService.STATUS_DEPARTED.equals(currentStatus)) {
-                        continue;
-                    }
-
-                    long arrivalTime = f.getArriveTs();
-                    long standingTime = f.getStandingTime() * 60L;
-                    long boardingEndTime = arrivalTime + standingTime;
-                    long now = Instant.now().getEpochSecond();
-
-                    // Перевод из В ПУТИ в ПОСАДКУ когда время прибытия наступило
-                    if (FlightService.STATUS_EN_ROUTE.equals(currentStatus) &&
-                            now >= arrivalTime && now < boardingEndTime) {
-                        changeStatus(f.getId(), FlightService.STATUS_BOARDING,
-                                FlightService.ACTOR_SYSTEM, true);
-                    }
-
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+            applied = UnitOfWork.inTransaction(() -> apply(ids, Instant.now().getEpochSecond()));
+        } catch (SQLException | RuntimeException e) {
+            // Такт откачен целиком: рейсы возвращаются в очередь и пробуются снова позже
+            dueIds.addAll(ids);
+            armTick(RETRY_DELAY_MILLIS);
+            throw e;
+        }
+        ticks++;
+        transitions += applied;
+        return applied;
+    }
+
+    // Выполняется под соединением на запись: кэш уже содержит все зафиксированные изменения
+    private int apply(List<Long> ids, long now) throws SQLException {
+        Map<Transition, List<FlightRecord>> groups = new LinkedHashMap<>();
+        for (long id : ids) {
+            Optional<FlightRecord> current = cache.get(id);
+            if (current.isEmpty()) continue;
+            FlightRecord f = current.get();
+            FlightStatus target = targetStatus(f, now);
+            if (target == f.status()) {
+                // Срок сработал раньше времени (часы сдвинулись) — ждём его заново
+                if (nextDueTs(f, now) > now) arm(f, now);
+                continue;
+            }
+            groups.computeIfAbsent(new Transition(f.status(), target), k -> new ArrayList<>()).add(f);
+        }
+        if (groups.isEmpty()) return 0;
+
+        List<HistoryEntry> history = new ArrayList<>();
+        List<FlightRecord> changed = new ArrayList<>();
+        List<FlightRecord> diverged = new ArrayList<>();
+        // Соединение транзакции такта: точка сохранения на каждую группу
+        try (Connection c = DB.getConnection()) {
+            for (Map.Entry<Transition, List<FlightRecord>> group : groups.entrySet()) {
+                Transition t = group.getKey();
+                List<Long> groupIds = new ArrayList<>(group.getValue().size());
+                for (FlightRecord f : group.getValue()) groupIds.add(f.id());
+
+                Savepoint sp = c.setSavepoint();
+                int updated = flightDao.updateStatuses(groupIds, t.from(), t.to(), now);
+                if (updated != groupIds.size()) {
+                    // Кэш разошёлся с БД: группа откатывается, её рейсы перечитываются из БД,
+                    // остальные группы такта применяются
+                    c.rollback(sp);
+                    System.err.println("Смена статуса " + t.from() + " → " + t.to() +
+                            ": изменено " + updated + " из " + groupIds.size() + " рейсов, группа пропущена");
+                    diverged.addAll(group.getValue());
+                    continue;
+                }
+                c.releaseSavepoint(sp);
+                for (FlightRecord f : group.getValue()) {
+                    FlightRecord after = f.withStatus(t.to(), now);
+                    changed.add(after);
+                    history.add(FlightService.changeEntry("STATUS_AUTO", FlightService.ACTOR_SYSTEM, now,
+                            f, after));
                 }
             }
-        } catch (SQLException ex) {
-            ex.printStackTrace();
         }
+        List<FlightRecord> fresh = new ArrayList<>();
+        List<Long> gone = new ArrayList<>();
+        for (FlightRecord f : diverged) {
+            Optional<FlightRecord> fromDb = flightDao.findById(f.id());
+            if (fromDb.isPresent()) fresh.add(fromDb.get());
+            else gone.add(f.id());
+        }
+        historyWriter.appendAll(history);
+        // Обновление кэша переназначает сроки следующих переходов через слушателей
+        UnitOfWork.afterCommit(() -> {
+            changed.forEach(cache::put);
+            fresh.forEach(cache::put);
+            gone.forEach(cache::remove);
+        });
+        return changed.size();
     }
-}
\ No newline at end of file
+}
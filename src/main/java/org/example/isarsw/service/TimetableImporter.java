@@ -0,0 +1,385 @@
+package org.example.isarsw.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+// Потоковый импорт расписания из CSV или JSON без загрузки файла в память.
+// Конвейер из трёх стадий: разбор (поток import-parse) → проверка полей
+// (поток import-validate) → запись пачками в БД (вызывающий поток).
+// Стадии связаны очередями ограниченной ёмкости: если запись отстаёт,
+// разбор блокируется, и в памяти никогда не больше QUEUE_CAPACITY пачек на очередь.
+//
+// CSV: первая строка — заголовок, разделитель ',' или ';'.
+// Колонки: number, route, arrive_ts, standing_time, platform, status (необязательна).
+// JSON: массив объектов или последовательность объектов (NDJSON) с теми же полями
+// (допускается и camelCase: arriveTs, standingTime — как в выгрузке истории).
+// arrive_ts — секунды эпохи, "dd.MM.yyyy HH:mm" или ISO "yyyy-MM-ddTHH:mm".
+public class TimetableImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = FlightService.DEFAULT_IMPORT_BATCH_SIZE;
+    public static final int QUEUE_CAPACITY = 4;
+    public static final long PROGRESS_INTERVAL_MS = 2000;
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
+
+    private static final List<RawRow> END_OF_INPUT = new ArrayList<>();
+    private static final ImportChunk END_OF_CHUNKS = new ImportChunk(0);
+
+    // Строка после разбора: либо рейс, либо причина, по которой её не удалось разобрать
+    record RawRow(long row, FlightRecord flight, String number, String error) {}
+
+    interface RowSource extends Closeable {
+        RawRow next() throws IOException; // null — конец данных
+    }
+
+    private final FlightService flightService;
+    private final int batchSize;
+    private volatile boolean printProgress = true;
+
+    public TimetableImporter(FlightService flightService) {
+        this(flightService, DEFAULT_BATCH_SIZE);
+    }
+
+    public TimetableImporter(FlightService flightService, int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("Размер пачки должен быть положительным");
+        this.flightService = flightService;
+        this.batchSize = batchSize;
+    }
+
+    public void setPrintProgress(boolean printProgress) {
+        this.printProgress = printProgress;
+    }
+
+    public ImportReport importFile(Path file, boolean overrideConflicts) throws IOException, SQLException {
+        try (RowSource source = open(file)) {
+            return run(source, overrideConflicts);
+        }
+    }
+
+    // ---------- КОНВЕЙЕР ----------
+
+    ImportReport run(RowSource source, boolean overrideConflicts) throws IOException, SQLException {
+        BlockingQueue<List<RawRow>> parsed = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<ImportChunk> validated = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService stages = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+
+        ImportReport report = new ImportReport();
+        try {
+            stages.execute(() -> parseStage(source, parsed, failure));
+            stages.execute(() -> validateStage(parsed, validated, failure));
+
+            long lastProgress = System.currentTimeMillis();
+            while (true) {
+                ImportChunk chunk = validated.take();
+                if (chunk == END_OF_CHUNKS) break;
+                flightService.writeBatch(chunk, overrideConflicts, report);
+
+                long nowMs = System.currentTimeMillis();
+                if (printProgress && nowMs - lastProgress >= PROGRESS_INTERVAL_MS) {
+                    System.out.println("Импорт: " + report);
+                    lastProgress = nowMs;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Импорт прерван", e);
+        } finally {
+            // При ошибке записи освобождаем стадии, заблокированные на полных очередях
+            stages.shutdownNow();
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof IOException io) throw io;
+        if (t instanceof RuntimeException re) throw re;
+        if (t != null) throw new IOException(t);
+
+        report.finish();
+        return report;
+    }
+
+    private void parseStage(RowSource source, BlockingQueue<List<RawRow>> out, AtomicReference<Throwable> failure) {
+        Thread.currentThread().setName("import-parse");
+        try {
+            List<RawRow> batch = new ArrayList<>(batchSize);
+            RawRow row;
+            while ((row = source.next()) != null) {
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    out.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) out.put(batch);
+        } catch (InterruptedException e) {
+            return;
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+        putQuietly(out, END_OF_INPUT);
+    }
+
+    private void validateStage(BlockingQueue<List<RawRow>> in, BlockingQueue<ImportChunk> out, AtomicReference<Throwable> failure) {
+        Thread.currentThread().setName("import-validate");
+        try {
+            while (true) {
+                List<RawRow> rows = in.take();
+                if (rows == END_OF_INPUT) break;
+
+                ImportChunk chunk = new ImportChunk(rows.size());
+                for (RawRow r : rows) {
+                    if (r.error() != null) {
+                        chunk.reject(r.row(), r.number(), r.error());
+                        continue;
+                    }
+                    try {
+                        flightService.validateFlight(r.flight());
+                        chunk.add(r.row(), r.flight());
+                    } catch (IllegalArgumentException e) {
+                        chunk.reject(r.row(), r.number(), e.getMessage());
+                    }
+                }
+                out.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+        putQuietly(out, END_OF_CHUNKS);
+    }
+
+    private static <T> void putQuietly(BlockingQueue<T> q, T item) {
+        try {
+            q.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---------- ИСТОЧНИКИ ----------
+
+    static RowSource open(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        InputStream in = Files.newInputStream(file);
+        try {
+            if (name.endsWith(".gz")) {
+                in = new GZIPInputStream(in, READ_BUFFER_SIZE);
+                name = name.substring(0, name.length() - 3);
+            }
+            if (name.endsWith(".csv")) {
+                return new CsvSource(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), READ_BUFFER_SIZE));
+            }
+            if (name.endsWith(".json") || name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+                return new JsonSource(in);
+            }
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        in.close();
+        throw new IllegalArgumentException("Неизвестный формат файла (ожидается .csv, .json, .ndjson): " + file);
+    }
+
+    static final class CsvSource implements RowSource {
+        private final BufferedReader reader;
+        private final char separator;
+        private final String[] header;
+        private long row;
+
+        CsvSource(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            String first = reader.readLine();
+            if (first == null) throw new IOException("Пустой CSV-файл");
+            if (first.startsWith("\uFEFF")) first = first.substring(1);
+            this.separator = first.indexOf(';') >= 0 && first.indexOf(',') < 0 ? ';' : ',';
+            List<String> columns = splitLine(first, separator);
+            this.header = new String[columns.size()];
+            for (int i = 0; i < header.length; i++) header[i] = normalizeField(columns.get(i));
+        }
+
+        @Override
+        public RawRow next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) return null;
+            } while (line.isBlank());
+
+            row++;
+            List<String> values = splitLine(line, separator);
+            Map<String, String> fields = new HashMap<>(header.length * 2);
+            for (int i = 0; i < header.length && i < values.size(); i++) {
+                fields.put(header[i], values.get(i));
+            }
+            return toRow(row, fields);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        // Разбор строки CSV с кавычками ("" внутри кавычек — сама кавычка).
+        // Переводы строк внутри значений не поддерживаются: файл читается построчно.
+        static List<String> splitLine(String line, char separator) {
+            List<String> out = new ArrayList<>();
+            StringBuilder cur = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char ch = line.charAt(i);
+                if (quoted) {
+                    if (ch == '"') {
+                        if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                            cur.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        cur.append(ch);
+                    }
+                } else if (ch == '"') {
+                    quoted = true;
+                } else if (ch == separator) {
+                    out.add(cur.toString());
+                    cur.setLength(0);
+                } else {
+                    cur.append(ch);
+                }
+            }
+            out.add(cur.toString());
+            return out;
+        }
+    }
+
+    static final class JsonSource implements RowSource {
+        private final JsonParser parser;
+        private boolean inArray;
+        private boolean started;
+        private long row;
+
+        JsonSource(InputStream in) throws IOException {
+            this.parser = new JsonFactory().createParser(in);
+        }
+
+        @Override
+        public RawRow next() throws IOException {
+            JsonToken t = parser.nextToken();
+            if (!started) {
+                started = true;
+                if (t == JsonToken.START_ARRAY) {
+                    inArray = true;
+                    t = parser.nextToken();
+                }
+            }
+            if (t == null || (inArray && t == JsonToken.END_ARRAY)) return null;
+            if (t != JsonToken.START_OBJECT) {
+                throw new IOException("Ожидался объект рейса в позиции " + parser.currentLocation());
+            }
+
+            row++;
+            Map<String, String> fields = new HashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = normalizeField(parser.currentName());
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                } else if (value != JsonToken.VALUE_NULL) {
+                    fields.put(name, parser.getText());
+                }
+            }
+            return toRow(row, fields);
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    // ---------- ПРЕОБРАЗОВАНИЕ ПОЛЕЙ ----------
+
+    static String normalizeField(String name) {
+        return name.trim().toLowerCase(Locale.ROOT).replace("_", "").replace("-", "");
+    }
+
+    static RawRow toRow(long row, Map<String, String> fields) {
+        String number = trimToNull(fields.get("number"));
+        try {
+            String arrive = trimToNull(fields.containsKey("arrivets") ? fields.get("arrivets") : fields.get("arrive"));
+            String standing = trimToNull(fields.get("standingtime"));
+            FlightRecord f = FlightRecord.draft(
+                    number,
+                    trimToNull(fields.get("route")),
+                    arrive == null ? 0 : parseTimestamp(arrive),
+                    standing == null ? 0 : Integer.parseInt(standing),
+                    trimToNull(fields.get("platform")),
+                    parseStatus(fields.get("status"))
+            );
+            return new RawRow(row, f, number, null);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return new RawRow(row, null, number, "Неверное значение: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return new RawRow(row, null, number, e.getMessage());
+        }
+    }
+
+    static long parseTimestamp(String s) {
+        if (s.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(s);
+        }
+        LocalDateTime t = s.indexOf('T') > 0
+                ? LocalDateTime.parse(s, DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+                : LocalDateTime.parse(s, DATE_TIME_FORMAT);
+        return t.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    static FlightStatus parseStatus(String s) {
+        String status = trimToNull(s);
+        if (status == null) return FlightStatus.PLANNED;
+        String upper = status.toUpperCase(Locale.ROOT);
+        if (FlightStatus.isLabel(upper)) return FlightStatus.fromLabel(upper);
+        throw new IllegalArgumentException("Неизвестный статус: " + status);
+    }
+
+    private static String trimToNull(String s) {
+        if (s == null) return null;
+        String t = s.trim();
+        return t.isEmpty() ? null : t;
+    }
+}
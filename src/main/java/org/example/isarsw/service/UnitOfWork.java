@@ -0,0 +1,73 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.db.DB;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Единица работы: последовательность вызовов DAO в одной транзакции на одном соединении.
+// Пока поток держит соединение на запись, DB.getConnection() и DB.getReadConnection()
+// возвращают его же, поэтому DAO участвуют в транзакции без передачи соединения.
+public final class UnitOfWork {
+
+    @FunctionalInterface
+    public interface Work<T> {
+        T execute() throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface VoidWork {
+        void execute() throws SQLException;
+    }
+
+    // Действия после фиксации внешней транзакции текущего потока (например, обновление кэша).
+    // При откате отбрасываются — кэш не увидит записей, которых нет в БД.
+    private static final ThreadLocal<List<Runnable>> AFTER_COMMIT = new ThreadLocal<>();
+
+    private UnitOfWork() {}
+
+    // Вложенный вызов присоединяется к внешней транзакции; фиксирует только внешний.
+    // Любое исключение (в том числе конфликт расписания) откатывает всю единицу работы.
+    public static <T> T inTransaction(Work<T> work) throws SQLException {
+        List<Runnable> afterCommit = new ArrayList<>();
+        T result;
+        try (Connection c = DB.getConnection()) {
+            if (!c.getAutoCommit()) {
+                return work.execute();
+            }
+
+            c.setAutoCommit(false);
+            AFTER_COMMIT.set(afterCommit);
+            try {
+                result = work.execute();
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                AFTER_COMMIT.remove();
+                c.setAutoCommit(true);
+            }
+            // Соединение на запись ещё не возвращено: следующая транзакция (и её проверка
+            // конфликтов по индексу занятости) начнётся только после обновления кэша
+            for (Runnable r : afterCommit) r.run();
+        }
+        return result;
+    }
+
+    // Вне транзакции действие выполняется сразу
+    public static void afterCommit(Runnable action) {
+        List<Runnable> pending = AFTER_COMMIT.get();
+        if (pending == null) action.run();
+        else pending.add(action);
+    }
+
+    public static void run(VoidWork work) throws SQLException {
+        inTransaction(() -> {
+            work.execute();
+            return null;
+        });
+    }
+}
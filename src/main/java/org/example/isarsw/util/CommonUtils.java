@@ -3,9 +3,15 @@ package org.example.isarsw.util;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.stage.Stage;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.service.FlightService;
+import org.example.isarsw.service.PlatformAllocator;
+
+import java.sql.SQLException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Optional;
 
 public class CommonUtils {
@@ -48,4 +54,30 @@ public class CommonUtils {
     public static String formatTime(long timestamp) {
         return TIME_FORMATTER.format(Instant.ofEpochSecond(timestamp));
     }
-}
\ No newline at end of file
+
+    // ---------- ПРЕДПРОСМОТР КОНФЛИКТОВ ----------
+
+    // Текст и стиль подписи о конфликте в диалогах создания и редактирования рейса
+    public record ConflictPreview(String text, String style) {}
+
+    // Проверка по индексу занятости платформ (без запроса к БД); при конфликте
+    // подсказываются до трёх свободных платформ. excludeId — редактируемый рейс
+    public static ConflictPreview conflictPreview(FlightService flightService, PlatformAllocator platformAllocator,
+                                                  String platform, long arriveTs, int standingTime,
+                                                  Long excludeId) throws SQLException {
+        List<FlightRecord> conflicts = flightService.findConflicts(platform, arriveTs, standingTime, excludeId);
+        if (conflicts.isEmpty()) {
+            return new ConflictPreview("Платформа свободна", "-fx-font-size: 12px; -fx-text-fill: #27ae60;");
+        }
+        FlightRecord first = conflicts.get(0);
+        List<PlatformAllocator.Suggestion> free = platformAllocator.suggest(arriveTs, standingTime, excludeId, 3);
+        StringBuilder freeText = new StringBuilder();
+        for (PlatformAllocator.Suggestion suggestion : free) {
+            freeText.append(freeText.length() == 0 ? "" : ", ").append(suggestion.platform());
+        }
+        String text = "Конфликт с рейсом " + first.number() + " (прибытие " + formatTime(first.arriveTs()) + ")" +
+                (conflicts.size() > 1 ? " и ещё " + (conflicts.size() - 1) : "") +
+                (free.isEmpty() ? "; свободных платформ нет" : "; свободны: " + freeText);
+        return new ConflictPreview(text, "-fx-font-size: 12px; -fx-text-fill: #e74c3c;");
+    }
+}
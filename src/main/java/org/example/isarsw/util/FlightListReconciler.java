@@ -0,0 +1,99 @@
+package org.example.isarsw.util;
+
+import javafx.collections.ObservableList;
+import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+// Сверка наблюдаемого списка рейсов таблицы с записями из сервиса за один проход
+// по индексу id. Уже показанные рейсы обновляются на месте (copyFrom), поэтому строки
+// таблицы и выделение сохраняются; Flight создаётся только для новых строк. Состав
+// списка меняется одним setAll — одно событие ListChangeListener вместо события
+// на каждую строку; если состав и порядок не изменились, события списка нет вовсе.
+public final class FlightListReconciler {
+
+    // Порядок окна расписания — ключ (arrive_ts, id)
+    public static final Comparator<Flight> BY_ARRIVAL_KEY =
+            Comparator.comparingLong(Flight::getArriveTs).thenComparing(Flight::getId);
+
+    private FlightListReconciler() {}
+
+    // Полная замена содержимого: target становится равен fresh (в порядке fresh)
+    public static void reconcile(ObservableList<Flight> target, List<FlightRecord> fresh) {
+        Map<Long, Flight> byId = indexById(target);
+        List<Flight> result = new ArrayList<>(fresh.size());
+        for (FlightRecord f : fresh) {
+            Flight existing = byId.get(f.id());
+            if (existing != null) {
+                existing.copyFrom(f);
+                result.add(existing);
+            } else {
+                result.add(Flight.from(f));
+            }
+        }
+        commit(target, result);
+    }
+
+    // Применение порции изменений: changed — новые версии рейсов, deletedIds — удалённые.
+    // visible решает, остаётся ли изменённый рейс в списке (фильтр и границы окна).
+    public static void applyChanges(ObservableList<Flight> target, Collection<FlightRecord> changed,
+                                    Collection<Long> deletedIds, Predicate<FlightRecord> visible) {
+        Map<Long, Flight> byId = indexById(target);
+        Set<Long> removed = new HashSet<>(deletedIds);
+        List<Flight> added = new ArrayList<>();
+        boolean keyChanged = false;
+
+        for (FlightRecord f : changed) {
+            Flight existing = byId.get(f.id());
+            if (!visible.test(f)) {
+                if (existing != null) removed.add(f.id());
+                continue;
+            }
+            if (existing == null) {
+                added.add(Flight.from(f));
+                continue;
+            }
+            keyChanged |= existing.getArriveTs() != f.arriveTs();
+            existing.copyFrom(f);
+        }
+
+        if (removed.isEmpty() && added.isEmpty() && !keyChanged) return;
+
+        List<Flight> result = new ArrayList<>(target.size() + added.size());
+        for (Flight f : target) {
+            if (!removed.contains(f.getId())) result.add(f);
+        }
+        result.addAll(added);
+        // Почти упорядоченный список: TimSort укладывается в линейное время
+        result.sort(BY_ARRIVAL_KEY);
+        commit(target, result);
+    }
+
+    private static Map<Long, Flight> indexById(List<Flight> list) {
+        Map<Long, Flight> byId = new HashMap<>(list.size() * 2);
+        for (Flight f : list) byId.put(f.getId(), f);
+        return byId;
+    }
+
+    private static void commit(ObservableList<Flight> target, List<Flight> result) {
+        if (sameSequence(target, result)) return;
+        target.setAll(result);
+    }
+
+    private static boolean sameSequence(List<Flight> a, List<Flight> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+}
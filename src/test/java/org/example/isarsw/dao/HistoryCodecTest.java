@@ -0,0 +1,55 @@
+package org.example.isarsw.dao;
+
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryCodecTest {
+
+    private static FlightRecord flight() {
+        return new FlightRecord(42L, "SU-1234", "Москва - Санкт-Петербург", 1_760_000_000L, 30, "3",
+                FlightStatus.EN_ROUTE, 1_759_000_000L, 1_759_500_000L, 0L);
+    }
+
+    @Test
+    void encode_ShortDiff_StaysText() throws SQLException {
+        String diff = "{\"platform\":\"4\"}";
+        assertSame(diff, HistoryCodec.encode(diff));
+        assertEquals(diff, HistoryCodec.decode(diff));
+        assertNull(HistoryCodec.encode(null));
+        assertNull(HistoryCodec.decode(null));
+    }
+
+    @Test
+    void encode_FullSnapshot_CompressesAndRoundTrips() throws SQLException {
+        String payload = flight().toPayload();
+        Object stored = HistoryCodec.encode(payload);
+
+        assertTrue(stored instanceof byte[]);
+        byte[] packed = (byte[]) stored;
+        assertTrue(packed.length * 2 < payload.getBytes(StandardCharsets.UTF_8).length,
+                "снимок " + payload.getBytes(StandardCharsets.UTF_8).length + " байт сжат до " + packed.length);
+        assertEquals(payload, HistoryCodec.decode(packed));
+    }
+
+    @Test
+    void diffPayload_PlatformChange_AtLeastFiveTimesSmallerThanSnapshots() {
+        FlightRecord before = flight();
+        FlightRecord after = before.withPlatform("4").withUpdatedAt(before.updatedAt() + 60);
+
+        String diffBefore = before.diffPayload(after);
+        String diffAfter = after.diffPayload(before);
+        assertEquals("{\"platform\":\"3\"}", diffBefore);
+        assertEquals("{\"platform\":\"4\"}", diffAfter);
+
+        int full = before.toPayload().getBytes(StandardCharsets.UTF_8).length
+                + after.toPayload().getBytes(StandardCharsets.UTF_8).length;
+        int diff = diffBefore.length() + diffAfter.length();
+        assertTrue(diff * 5 <= full, "разница " + diff + " байт против " + full);
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.isarsw.dao;
+
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.AuditFilter;
+import org.example.isarsw.model.HistoryEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryDaoTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final HistoryDao historyDao = new HistoryDao();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("history.db"));
+        DB.init();
+
+        // 30 записей по 10 рейсам; время повторяется, чтобы ключ различал записи по id
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            String actor = i % 3 == 0 ? "система" : "администратор";
+            String action = i % 3 == 0 ? "STATUS_AUTO" : "UPDATE";
+            entries.add(new HistoryEntry((long) (i % 10), action, actor, 1000L + i / 2, null, "{}"));
+        }
+        historyDao.insertBatch(entries);
+        // Записи рейсов 0..4 уходят в архив, журнал должен их видеть на своих местах
+        new HistoryArchiveDao().moveFlights(202601, List.of(0L, 1L, 2L, 3L, 4L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        DB.shutdown();
+    }
+
+    private List<HistoryEntry> readAll(AuditFilter filter, int pageSize) throws SQLException {
+        List<HistoryEntry> all = new ArrayList<>();
+        long ts = HistoryDao.NEWEST_TS;
+        long id = HistoryDao.NEWEST_ID;
+        while (true) {
+            List<HistoryEntry> page = historyDao.findAuditPageBefore(filter, ts, id, pageSize);
+            if (page.isEmpty()) return all;
+            all.addAll(page);
+            HistoryEntry last = page.get(page.size() - 1);
+            ts = last.getTimestamp();
+            id = last.getId();
+        }
+    }
+
+    @Test
+    void findAuditPageBefore_PagesThroughHotAndArchivedRowsNewestFirst() throws SQLException {
+        List<HistoryEntry> all = readAll(AuditFilter.NONE, 7);
+
+        assertEquals(30, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            HistoryEntry prev = all.get(i - 1);
+            HistoryEntry cur = all.get(i);
+            assertTrue(prev.getTimestamp() > cur.getTimestamp()
+                    || (prev.getTimestamp() == cur.getTimestamp() && prev.getId() > cur.getId()));
+        }
+    }
+
+    @Test
+    void findAuditPageBefore_Filters_ApplyToEveryTable() throws SQLException {
+        AuditFilter system = new AuditFilter("система", null, null, null);
+        List<HistoryEntry> bySystem = readAll(system, 4);
+        assertEquals(10, bySystem.size());
+        assertTrue(bySystem.stream().allMatch(system::test));
+
+        AuditFilter window = new AuditFilter(null, "UPDATE", 1002L, 1005L);
+        List<HistoryEntry> inWindow = readAll(window, 100);
+        assertEquals(6, inWindow.size());
+        assertTrue(inWindow.stream().allMatch(window::test));
+    }
+
+    @Test
+    void findAuditPageAfter_ReturnsNewerNeighboursNewestFirst() throws SQLException {
+        List<HistoryEntry> all = readAll(AuditFilter.NONE, 100);
+        HistoryEntry key = all.get(10);
+
+        List<HistoryEntry> newer = historyDao.findAuditPageAfter(AuditFilter.NONE, key.getTimestamp(), key.getId(), 4);
+        assertEquals(ids(all.subList(6, 10)), ids(newer));
+        assertTrue(historyDao.findAuditPageAfter(AuditFilter.NONE, HistoryDao.NEWEST_TS, HistoryDao.NEWEST_ID, 4).isEmpty());
+
+        // Начало периода ограничивает поиск вверх от самого старого ключа
+        AuditFilter window = new AuditFilter(null, "UPDATE", 1002L, 1005L);
+        List<HistoryEntry> oldest = historyDao.findAuditPageAfter(window, 0L, 0L, 2);
+        assertEquals(2, oldest.size());
+        assertTrue(oldest.stream().allMatch(window::test));
+        assertEquals(1002L, oldest.get(1).getTimestamp());
+    }
+
+    @Test
+    void auditFilter_RejectsInvertedPeriod() {
+        assertThrows(IllegalArgumentException.class, () -> new AuditFilter(null, null, 10L, 5L));
+        assertTrue(new AuditFilter(" ", "", null, null).isEmpty());
+    }
+
+    private static List<Long> ids(List<HistoryEntry> entries) {
+        return entries.stream().map(HistoryEntry::getId).toList();
+    }
+}
@@ -0,0 +1,149 @@
+package org.example.isarsw.dao;
+
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.AuditFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Проверяем через EXPLAIN QUERY PLAN, что горячие запросы таблицы, ленты изменений,
+// истории и проверки конфликтов идут по индексам, а не полным сканированием
+class QueryPlanTest {
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("plan.db"));
+        DB.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        DB.shutdown();
+    }
+
+    @Test
+    void findConflicting_UsesPlatformIndex() throws SQLException {
+        String plan = explain(FlightDao.SQL_FIND_CONFLICTING, "A1", 1L, 2L, 1L, "x", "y", 1L);
+        assertTrue(plan.contains("idx_flights_platform_arrive"), plan);
+        // Окно ограничено с обеих сторон, MAX(standing_time) берётся из индекса
+        assertTrue(plan.contains("arrive_ts>? AND arrive_ts<?"), plan);
+        assertTrue(plan.contains("idx_flights_standing_time"), plan);
+    }
+
+    @Test
+    void findPageFrom_UsesArriveIndexWithoutSorting() throws SQLException {
+        String plan = explain(FlightDao.SQL_PAGE_FROM + " ORDER BY arrive_ts, id LIMIT ?", 1L, 1L, 1L, 100);
+        assertTrue(plan.contains("idx_flights_arrive "), plan);
+        assertFalse(plan.contains("TEMP B-TREE"), "Окно должно читаться в порядке индекса: " + plan);
+    }
+
+    @Test
+    void findPageBefore_UsesArriveIndexWithoutSorting() throws SQLException {
+        String plan = explain(FlightDao.SQL_PAGE_BEFORE + " ORDER BY arrive_ts DESC, id DESC LIMIT ?", 1L, 1L, 1L, 100);
+        assertTrue(plan.contains("idx_flights_arrive "), plan);
+        assertFalse(plan.contains("TEMP B-TREE"), plan);
+    }
+
+    @Test
+    void findPageFrom_StatusFilter_UsesStatusIndex() throws SQLException {
+        String plan = explain(FlightDao.SQL_PAGE_FROM + " AND status = ? ORDER BY arrive_ts, id LIMIT ?", 1L, 1L, 1L, 1, 100);
+        assertTrue(plan.contains("idx_flights_status_arrive"), plan);
+    }
+
+    @Test
+    void findChangedSince_UsesUpdatedAtIndex() throws SQLException {
+        String plan = explain(FlightDao.SQL_FIND_CHANGED_SINCE, 1L);
+        assertTrue(plan.contains("idx_flights_updated"), plan);
+    }
+
+    @Test
+    void findAllVersions_ReadsOnlyCoveringIndex() throws SQLException {
+        String plan = explain(FlightDao.SQL_FIND_ALL_VERSIONS);
+        assertTrue(plan.contains("COVERING INDEX idx_flights_updated"), plan);
+    }
+
+    @Test
+    void findDeletedFlightIds_ScansOnlyHistoryIdRange() throws SQLException {
+        String plan = explain(HistoryDao.SQL_FIND_DELETED_BETWEEN, 1L, 2L);
+        assertTrue(plan.contains("INTEGER PRIMARY KEY (rowid>? AND rowid<?)"), plan);
+    }
+
+    @Test
+    void listByFlight_UsesHistoryIndexWithoutSorting() throws SQLException {
+        String plan = explain(HistoryDao.SQL_LIST_BY_FLIGHT, 1L);
+        assertTrue(plan.contains("idx_history_flight_ts"), plan);
+        assertFalse(plan.contains("TEMP B-TREE"), "Сортировка должна идти по индексу: " + plan);
+    }
+
+    @Test
+    void findArchivable_UsesDepartureExpressionAndHistoryIndexes() throws SQLException {
+        String plan = explain(HistoryArchiveDao.SQL_FIND_ARCHIVABLE, 1L, 500);
+        assertTrue(plan.contains("idx_flights_status_departure"), plan);
+        assertTrue(plan.contains("idx_history_flight_ts"), plan);
+    }
+
+    @Test
+    void findAuditPage_MergesIndexOrderedTablesWithoutSorting() throws SQLException {
+        new HistoryArchiveDao().moveFlights(202601, List.of(1L));
+        List<String> tables = List.of("history", HistoryArchiveDao.tableName(202601));
+
+        for (AuditFilter filter : List.of(AuditFilter.NONE,
+                new AuditFilter("система", null, null, null),
+                new AuditFilter(null, "STATUS_AUTO", null, null),
+                new AuditFilter(null, null, 1L, 2L))) {
+            List<Object> params = new ArrayList<>();
+            String sql = HistoryDao.auditSql(tables, HistoryDao.AUDIT_OLDER, true, filter, 10L, 10L, params);
+            params.add(100);
+            String plan = explain(sql, params.toArray());
+            assertTrue(plan.contains("MERGE (UNION ALL)"), plan);
+            assertFalse(plan.contains("SCAN history"), plan);
+            assertFalse(plan.contains("TEMP B-TREE"), "Сортировка должна идти по индексам: " + plan);
+        }
+    }
+
+    @Test
+    void replay_MergesPrimaryKeyRangesWithoutSorting() throws SQLException {
+        new HistoryArchiveDao().moveFlights(202601, List.of(1L));
+        String sql = HistoryDao.replaySql(List.of("history", HistoryArchiveDao.tableName(202601)));
+        String plan = explain(sql, 1L, 2L, 3L, 1L, 2L, 3L);
+        assertTrue(plan.contains("MERGE (UNION ALL)"), plan);
+        assertTrue(plan.contains("SEARCH history USING INTEGER PRIMARY KEY (rowid>? AND rowid<?)"), plan);
+        assertFalse(plan.contains("TEMP B-TREE"), "Сортировка должна идти по первичному ключу: " + plan);
+    }
+
+    @Test
+    void snapshotLookup_UsesMaxTsIndex() throws SQLException {
+        for (String sql : List.of(ScheduleSnapshotDao.SQL_LATEST_AT_OR_BEFORE, ScheduleSnapshotDao.SQL_FIRST_AFTER)) {
+            String plan = explain(sql, 1L);
+            assertTrue(plan.contains("idx_schedule_snapshots_max_ts"), plan);
+        }
+    }
+
+    private String explain(String sql, Object... params) throws SQLException {
+        try (Connection c = DB.getReadConnection();
+             PreparedStatement ps = c.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            StringBuilder sb = new StringBuilder();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) sb.append(rs.getString("detail")).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+}
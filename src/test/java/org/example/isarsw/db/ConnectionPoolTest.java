@@ -0,0 +1,109 @@
+package org.example.isarsw.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = new ConnectionPool("jdbc:sqlite:" + tempDir.resolve("pool.db"), 2, 500, 30_000);
+        try (Connection c = pool.getWriter(); Statement st = c.createStatement()) {
+            st.executeUpdate("CREATE TABLE t (id INTEGER PRIMARY KEY, v TEXT)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void getWriter_NestedInSameThread_ReusesConnection() throws SQLException {
+        try (Connection outer = pool.getWriter()) {
+            outer.setAutoCommit(false);
+            try (Connection inner = pool.getWriter(); Statement st = inner.createStatement()) {
+                st.executeUpdate("INSERT INTO t(v) VALUES('a')");
+            }
+            // Вложенное закрытие не должно откатывать внешнюю транзакцию
+            assertFalse(outer.getAutoCommit());
+            outer.commit();
+        }
+
+        assertEquals(1, count());
+    }
+
+    @Test
+    void getReader_InsideWriterTransaction_SeesUncommittedRows() throws SQLException {
+        try (Connection w = pool.getWriter()) {
+            w.setAutoCommit(false);
+            try (Statement st = w.createStatement()) {
+                st.executeUpdate("INSERT INTO t(v) VALUES('b')");
+            }
+            assertEquals(1, count(), "Чтение в транзакции должно идти через писателя");
+        }
+
+        // Незафиксированная транзакция откатывается при возврате в пул
+        assertEquals(0, count());
+    }
+
+    @Test
+    void getReader_AllBorrowed_TimesOutAndCountsMetric() throws SQLException {
+        Connection r1 = pool.getReader();
+        Connection r2 = pool.getReader();
+
+        assertThrows(SQLException.class, () -> pool.getReader());
+        assertEquals(1, pool.getMetrics().timeouts());
+
+        r1.close();
+        r2.close();
+        assertEquals(2, pool.getMetrics().idleReaders());
+    }
+
+    @Test
+    void getReader_WriteAttempt_IsRejected() throws SQLException {
+        try (Connection r = pool.getReader(); Statement st = r.createStatement()) {
+            assertThrows(SQLException.class, () -> st.executeUpdate("INSERT INTO t(v) VALUES('c')"));
+        }
+    }
+
+    @Test
+    void prepareStatement_SameSqlOnReturnedConnection_HitsCache() throws SQLException {
+        String sql = "SELECT v FROM t WHERE id = ?";
+        for (int i = 0; i < 3; i++) {
+            try (Connection w = pool.getWriter(); PreparedStatement ps = w.prepareStatement(sql)) {
+                ps.setLong(1, i);
+                try (ResultSet rs = ps.executeQuery()) {
+                    assertFalse(rs.next());
+                }
+            }
+        }
+
+        assertEquals(2, pool.getMetrics().statementHits());
+        assertEquals(1, pool.getMetrics().statementMisses());
+    }
+
+    private int count() throws SQLException {
+        try (Connection r = pool.getReader();
+             Statement st = r.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM t")) {
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.example.isarsw.db;
+
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("migrate.db"));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void migrate_EmptyDatabase_ReachesLatestVersion() throws SQLException {
+        SchemaMigrator.migrate(connection, (stage, done, total) -> { });
+
+        assertEquals(SchemaMigrator.latestVersion(), SchemaMigrator.currentVersion(connection));
+        assertTrue(SchemaMigrator.hasColumn(connection, "flights", "last_arrival_check"));
+    }
+
+    @Test
+    void migrate_LegacySchema_AddsColumnsInPlaceAndKeepsRows() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            // Схема до появления стоянки и проверки прибытия
+            st.executeUpdate("CREATE TABLE flights (id INTEGER PRIMARY KEY AUTOINCREMENT, number TEXT NOT NULL, " +
+                    "route TEXT NOT NULL, arrive_ts INTEGER NOT NULL, platform TEXT NOT NULL, status TEXT NOT NULL, " +
+                    "created_at INTEGER NOT NULL, updated_at INTEGER NOT NULL)");
+            st.executeUpdate("INSERT INTO flights(number, route, arrive_ts, platform, status, created_at, updated_at) " +
+                    "VALUES('SU-1', 'A-B', 1000, '1', 'ПЛАНИРУЕТСЯ', 1, 1)");
+        }
+
+        SchemaMigrator.migrate(connection, (stage, done, total) -> { });
+
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT standing_time, last_arrival_check, arrive_ts FROM flights")) {
+            assertTrue(rs.next());
+            assertEquals(30, rs.getInt(1));
+            assertEquals(0, rs.getLong(2));
+            assertEquals(1000, rs.getLong(3));
+        }
+    }
+
+    @Test
+    void migrate_TextStatuses_BecomeCodesAndKeepHistory() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("PRAGMA foreign_keys = ON");
+            st.executeUpdate("CREATE TABLE flights (" + SchemaMigrator.FLIGHTS_COLUMNS_DDL + ")");
+            st.executeUpdate("INSERT INTO flights(number, route, arrive_ts, platform, status, created_at, updated_at) " +
+                    "VALUES('SU-1', 'A-B', 1000, '1', 'ОТБЫЛ', 1, 1), ('SU-2', 'A-B', 2000, '1', 'ПОСАДКА', 1, 1)");
+            st.executeUpdate("CREATE TABLE history (id INTEGER PRIMARY KEY AUTOINCREMENT, flight_id INTEGER, " +
+                    "action TEXT NOT NULL, actor TEXT NOT NULL, timestamp INTEGER NOT NULL, payload_before TEXT, " +
+                    "payload_after TEXT, FOREIGN KEY(flight_id) REFERENCES flights(id) ON DELETE CASCADE)");
+            st.executeUpdate("INSERT INTO history(flight_id, action, actor, timestamp) VALUES(1, 'CREATE', 'a', 1)");
+        }
+
+        SchemaMigrator.migrate(connection, (stage, done, total) -> { });
+
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT status, typeof(status) FROM flights ORDER BY id")) {
+            assertTrue(rs.next());
+            assertEquals(FlightStatus.DEPARTED.code(), rs.getInt(1));
+            assertEquals("integer", rs.getString(2));
+            assertTrue(rs.next());
+            assertEquals(FlightStatus.BOARDING.code(), rs.getInt(1));
+        }
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE name = 'idx_flights_status_arrive'")) {
+            assertEquals(1, rs.getInt(1));
+        }
+        // Внешний ключ истории не задет: таблица рейсов не пересоздавалась
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM history")) {
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void migrate_UnknownTextStatus_FailsAndListsLabels() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("CREATE TABLE flights (" + SchemaMigrator.FLIGHTS_COLUMNS_DDL + ")");
+            st.executeUpdate("INSERT INTO flights(number, route, arrive_ts, platform, status, created_at, updated_at) " +
+                    "VALUES('SU-1', 'A-B', 1000, '1', 'ОТБЫЛ', 1, 1), ('SU-2', 'A-B', 2000, '1', 'ОТМЕНЕН', 1, 1)");
+        }
+
+        SQLException e = assertThrows(SQLException.class,
+                () -> SchemaMigrator.migrate(connection, (stage, done, total) -> { }));
+        assertTrue(e.getMessage().contains("'ОТМЕНЕН'"), e.getMessage());
+
+        // Шаг откатился: подписи остались текстом
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT status FROM flights ORDER BY id")) {
+            assertTrue(rs.next());
+            assertEquals("ОТБЫЛ", rs.getString(1));
+        }
+    }
+
+    @Test
+    void migrate_UpToDate_DoesNothing() throws SQLException {
+        SchemaMigrator.migrate(connection, (stage, done, total) -> { });
+        List<String> reports = new ArrayList<>();
+
+        SchemaMigrator.migrate(connection, (stage, done, total) -> reports.add(stage));
+
+        assertTrue(reports.isEmpty());
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM schema_version")) {
+            assertEquals(SchemaMigrator.latestVersion(), rs.getInt(1));
+        }
+    }
+
+    @Test
+    void updateInChunks_CommitsEachChunkWithProgress() throws SQLException {
+        createChunkTable();
+        List<Long> progress = new ArrayList<>();
+
+        SchemaMigrator.updateInChunks(connection, "t", "n = CAST(v AS INTEGER)", "test.cursor", 10,
+                "перевод", (stage, done, total) -> progress.add(done));
+        connection.commit();
+
+        assertEquals(List.of(10L, 20L, 25L), progress);
+        assertEquals(325, sumOfN());
+        assertNull(DB.getConfig(connection, "test.cursor"));
+    }
+
+    @Test
+    void updateInChunks_Interrupted_ResumesAfterLastCommittedChunk() throws SQLException {
+        createChunkTable();
+        DB.setConfig(connection, "test.cursor", "20");
+        connection.commit();
+        List<Long> progress = new ArrayList<>();
+
+        SchemaMigrator.updateInChunks(connection, "t", "n = CAST(v AS INTEGER)", "test.cursor", 10,
+                "перевод", (stage, done, total) -> progress.add(done));
+        connection.commit();
+
+        // Строки до сохранённого id не перечитываются
+        assertEquals(List.of(25L), progress);
+        assertEquals(21 + 22 + 23 + 24 + 25, sumOfN());
+    }
+
+    private void createChunkTable() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("CREATE TABLE config (key TEXT PRIMARY KEY, value TEXT)");
+            st.executeUpdate("CREATE TABLE t (id INTEGER PRIMARY KEY, v TEXT, n INTEGER NOT NULL DEFAULT 0)");
+            for (int i = 1; i <= 25; i++) {
+                st.executeUpdate("INSERT INTO t(v) VALUES('" + i + "')");
+            }
+        }
+        connection.setAutoCommit(false);
+    }
+
+    private int sumOfN() throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT SUM(n) FROM t")) {
+            return rs.getInt(1);
+        }
+    }
+}
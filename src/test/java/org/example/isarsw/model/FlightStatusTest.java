@@ -0,0 +1,48 @@
+package org.example.isarsw.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightStatusTest {
+
+    @Test
+    void codesAndLabels_RoundTrip() {
+        for (FlightStatus s : FlightStatus.values()) {
+            assertSame(s, FlightStatus.fromCode(s.code()));
+            assertSame(s, FlightStatus.fromLabel(s.label()));
+        }
+        assertNull(FlightStatus.find("STATUS"));
+        assertThrows(IllegalArgumentException.class, () -> FlightStatus.fromLabel("STATUS"));
+        assertThrows(IllegalArgumentException.class, () -> FlightStatus.fromCode(42));
+    }
+
+    @Test
+    void canChangeTo_FollowsTransitionTable() {
+        assertTrue(FlightStatus.PLANNED.canChangeTo(FlightStatus.EN_ROUTE));
+        assertTrue(FlightStatus.EN_ROUTE.canChangeTo(FlightStatus.BOARDING));
+        assertTrue(FlightStatus.BOARDING.canChangeTo(FlightStatus.DEPARTED));
+        assertTrue(FlightStatus.DELAYED.canChangeTo(FlightStatus.DEPARTED));
+        assertTrue(FlightStatus.EN_ROUTE.canChangeTo(FlightStatus.CANCELLED));
+
+        assertFalse(FlightStatus.PLANNED.canChangeTo(FlightStatus.DEPARTED));
+        assertFalse(FlightStatus.EN_ROUTE.canChangeTo(FlightStatus.PLANNED));
+        assertFalse(FlightStatus.PLANNED.canChangeTo(FlightStatus.PLANNED));
+        for (FlightStatus to : FlightStatus.values()) {
+            assertFalse(FlightStatus.DEPARTED.canChangeTo(to));
+            assertFalse(FlightStatus.CANCELLED.canChangeTo(to));
+        }
+    }
+
+    @Test
+    void flight_StatusLabelAndCodeStayInSync() {
+        Flight f = new Flight("SU-1", "A-B", 1000, 30, "1", "ПОСАДКА");
+        assertEquals(FlightStatus.BOARDING, f.getFlightStatus());
+
+        f.setFlightStatus(FlightStatus.DEPARTED);
+        assertEquals("ОТБЫЛ", f.getStatus());
+
+        f.statusProperty().set("x");
+        assertNull(f.getFlightStatus());
+    }
+}
@@ -17,7 +17,7 @@ class FlightTest {
 
     @Test
     void toPayload_ReturnsValidJson() {
-        Flight flight = new Flight("SU-1234", "Москва-СПб", 1234567890L, 30, "A1", "PLANNED");
+        FlightRecord flight = FlightRecord.draft("SU-1234", "Москва-СПб", 1234567890L, 30, "A1", FlightStatus.PLANNED);
         String payload = flight.toPayload();
         assertTrue(payload.contains("\"number\":\"SU-1234\""));
         assertTrue(payload.contains("\"route\":\"Москва-СПб\""));
@@ -31,4 +31,30 @@ class FlightTest {
         flight.setLastArrivalCheck(0);
         assertTrue(flight.needsArrivalCheck());
     }
-}
\ No newline at end of file
+
+    @Test
+    void toRecord_RoundTripsAllFields() {
+        Flight flight = new Flight(7L, "SU-1234", "Route", 1234567890L, 30, "A1",
+                FlightStatus.BOARDING.label(), 100L, 200L, 300L);
+        FlightRecord record = flight.toRecord();
+        assertEquals(FlightStatus.BOARDING, record.status());
+        assertEquals(flight.getDepartureTs(), record.departureTs());
+
+        Flight back = Flight.from(record);
+        assertEquals(300L, back.getLastArrivalCheck());
+        assertEquals(record, back.toRecord());
+    }
+
+    @Test
+    void copyFrom_Record_UpdatesPropertiesInPlace() {
+        Flight flight = new Flight(7L, "SU-1234", "Route", 1234567890L, 30, "A1",
+                FlightStatus.PLANNED.label(), 100L, 200L, 0L);
+        FlightRecord moved = flight.toRecord().withPlatform("B2").withStatus(FlightStatus.DELAYED, 300L);
+
+        flight.copyFrom(moved);
+        assertEquals("B2", flight.getPlatform());
+        assertEquals(FlightStatus.DELAYED.label(), flight.getStatus());
+        assertEquals(FlightStatus.DELAYED, flight.getFlightStatus());
+        assertEquals(moved, flight.toRecord());
+    }
+}
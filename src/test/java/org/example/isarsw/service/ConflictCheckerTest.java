@@ -1,5 +1,7 @@
 package org.example.isarsw.service;
 
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -22,4 +24,14 @@ class ConflictCheckerTest {
     void boardingConflictExists_WithBufferConflict_ReturnsTrue() {
         assertTrue(ConflictChecker.boardingConflictExists(1000, 2000, 1800, 2800, 300));
     }
-}
\ No newline at end of file
+
+    @Test
+    void conflicts_BoardingFlight_UsesOneSidedBoardingBuffer() {
+        // Стоянка [0, 1800); новый рейс через 7 минут после отправления
+        FlightRecord boarding = FlightRecord.draft("B-1", "A-B", 0, 30, "1", FlightStatus.BOARDING);
+        FlightRecord planned = FlightRecord.draft("P-1", "A-B", 0, 30, "1", FlightStatus.PLANNED);
+
+        assertFalse(ConflictChecker.conflicts(1800 + 420, 1800 + 420 + 600, boarding));
+        assertTrue(ConflictChecker.conflicts(1800 + 420, 1800 + 420 + 600, planned));
+    }
+}
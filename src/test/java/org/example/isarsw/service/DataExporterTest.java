@@ -0,0 +1,82 @@
+package org.example.isarsw.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.isarsw.dao.ExportDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataExporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightService service = new FlightService();
+    private final DataExporter exporter = new DataExporter();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("export.db"));
+        DB.init();
+        long base = Instant.now().getEpochSecond() + 3 * 24 * 3600;
+        service.addFlight(FlightRecord.draft("701", "Москва, Тверь \"экспресс\"", base, 20, "1", FlightStatus.PLANNED), false);
+        service.addFlight(FlightRecord.draft("702", "A-B", base + 3600, 20, "1", FlightStatus.PLANNED), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        DB.shutdown();
+    }
+
+    @Test
+    void export_FlightsCsv_ReimportsIntoEmptyDatabase() throws IOException, SQLException {
+        Path csv = tempDir.resolve("flights.csv");
+        assertEquals(2, exporter.export(ExportDao.Table.FLIGHTS, csv));
+        assertFalse(Files.exists(tempDir.resolve("flights.csv.part")));
+
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("copy.db"));
+        DB.init();
+        TimetableImporter importer = new TimetableImporter(service);
+        importer.setPrintProgress(false);
+        ImportReport report = importer.importFile(csv, false);
+
+        assertEquals(2, report.getAccepted());
+        List<FlightRecord> copy = service.listAll();
+        assertTrue(copy.stream().anyMatch(f -> f.route().equals("Москва, Тверь \"экспресс\"")));
+    }
+
+    @Test
+    void export_HistoryNdjsonGzip_WritesOneObjectPerLine() throws IOException, SQLException {
+        Path file = tempDir.resolve("history.ndjson.gz");
+        assertEquals(2, exporter.export(ExportDao.Table.HISTORY, file));
+
+        ObjectMapper mapper = new ObjectMapper();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            List<String> lines = r.lines().toList();
+            assertEquals(2, lines.size());
+            JsonNode first = mapper.readTree(lines.get(0));
+            assertEquals("CREATE", first.get("action").asText());
+            assertTrue(first.get("payload_before").isNull());
+            assertTrue(first.get("flight_id").isIntegralNumber());
+        }
+    }
+}
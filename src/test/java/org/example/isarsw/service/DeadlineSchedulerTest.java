@@ -0,0 +1,120 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlineSchedulerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final DeadlineScheduler deadlines = new DeadlineScheduler("test-deadlines");
+
+    @AfterEach
+    void tearDown() {
+        deadlines.shutdown();
+    }
+
+    @Test
+    void schedule_FiresAtDueTime() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong firedAt = new AtomicLong();
+        long due = System.currentTimeMillis() + 200;
+
+        deadlines.schedule("k", due, () -> {
+            firedAt.set(System.currentTimeMillis());
+            fired.countDown();
+        });
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(firedAt.get() >= due);
+        assertTrue(firedAt.get() - due < 1000);
+        assertEquals(0, deadlines.pendingCount());
+    }
+
+    @Test
+    void schedule_SameKey_ReplacesPreviousDeadline() throws InterruptedException {
+        AtomicInteger first = new AtomicInteger();
+        CountDownLatch second = new CountDownLatch(1);
+
+        deadlines.schedule("k", System.currentTimeMillis() + 100, first::incrementAndGet);
+        deadlines.schedule("k", System.currentTimeMillis() + 300, second::countDown);
+
+        assertTrue(second.await(2, TimeUnit.SECONDS));
+        assertEquals(0, first.get());
+        assertEquals(1, deadlines.firedCount());
+    }
+
+    @Test
+    void schedule_WallClockBehind_WaitsForDueTime() throws InterruptedException {
+        AtomicLong behind = new AtomicLong();
+        DeadlineScheduler skewed = new DeadlineScheduler("test-skewed", () -> System.currentTimeMillis() - behind.get());
+        try {
+            CountDownLatch fired = new CountDownLatch(1);
+            AtomicLong firedAt = new AtomicLong();
+            long due = System.currentTimeMillis() + 100;
+            skewed.schedule("k", due, () -> {
+                firedAt.set(System.currentTimeMillis() - behind.get());
+                fired.countDown();
+            });
+            // Настенные часы отстали после назначения — исполнитель срабатывает по монотонным раньше срока
+            behind.set(300);
+
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            assertTrue(firedAt.get() >= due, "Сработал раньше срока на " + (due - firedAt.get()) + " мс");
+            assertEquals(1, skewed.firedCount());
+        } finally {
+            skewed.shutdown();
+        }
+    }
+
+    @Test
+    void statusScheduler_EnRouteFlight_BoardsAtArrivalAndFollowsEdits() throws SQLException, InterruptedException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("deadlines.db"));
+        DB.init();
+        StatusScheduler scheduler = new StatusScheduler();
+        try {
+            FlightService service = new FlightService();
+            long now = Instant.now().getEpochSecond();
+            FlightRecord f = service.addFlight(FlightRecord.draft("D-1", "A-B", now + 3600, 30, "1", FlightStatus.EN_ROUTE), false);
+            scheduler.start();
+            assertEquals(1, scheduler.pendingDeadlines());
+
+            // Перенос прибытия на ближайшую секунду переназначает срок
+            Flight edited = Flight.from(service.findById(f.id()).orElseThrow());
+            edited.setArriveTs(now + 1);
+            service.updateFlight(edited.toRecord(), false);
+
+            long deadline = System.currentTimeMillis() + 4000;
+            while (!FlightStatus.BOARDING.equals(service.findById(f.id()).orElseThrow().status())
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(FlightStatus.BOARDING, service.findById(f.id()).orElseThrow().status());
+            // Следующий срок — автоматическое отправление
+            assertEquals(1, scheduler.pendingDeadlines());
+
+            service.deleteFlight(f.id());
+            assertEquals(0, scheduler.pendingDeadlines());
+        } finally {
+            scheduler.stop();
+            FlightCache.shared().invalidate();
+            DB.shutdown();
+        }
+    }
+}
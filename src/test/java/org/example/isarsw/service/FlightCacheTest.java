@@ -0,0 +1,148 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.FlightDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightService service = new FlightService();
+    private final FlightCache cache = FlightCache.shared();
+    private long base;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("cache.db"));
+        DB.init();
+        cache.load();
+        base = Instant.now().getEpochSecond() + 3 * 24 * 3600;
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.invalidate();
+        DB.shutdown();
+    }
+
+    @Test
+    void writeThrough_AddUpdateDelete_KeepsIndexesInSync() throws SQLException {
+        FlightRecord f = service.addFlight(FlightRecord.draft("K-1", "A-B", base, 10, "1", FlightStatus.PLANNED), false);
+        assertEquals(1, cache.byPlatform("1").size());
+
+        service.changeStatus(f.id(), FlightService.STATUS_DELAYED, FlightService.ACTOR_ADMIN, false);
+        assertTrue(cache.byStatus(FlightStatus.PLANNED).isEmpty());
+        assertEquals(FlightStatus.DELAYED, cache.get(f.id()).orElseThrow().status());
+
+        FlightRecord moved = cache.get(f.id()).orElseThrow();
+        service.updateFlight(moved.withPlatform("2"), false);
+        assertTrue(cache.byPlatform("1").isEmpty());
+        assertEquals(1, cache.byPlatform("2").size());
+
+        service.deleteFlight(f.id());
+        assertEquals(0, cache.size());
+        assertTrue(cache.byStatus(FlightStatus.DELAYED).isEmpty());
+    }
+
+    @Test
+    void rolledBackTransaction_DoesNotReachCache() throws SQLException {
+        FlightDao flightDao = new FlightDao();
+        assertThrows(IllegalStateException.class, () -> UnitOfWork.run(() -> {
+            FlightRecord f = flightDao.create(FlightRecord.draft("K-2", "A-B", base, 10, "1", FlightStatus.PLANNED));
+            UnitOfWork.afterCommit(() -> cache.put(f));
+            throw new IllegalStateException("сбой после записи");
+        }));
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void reconcile_PicksUpWritesMadeBehindTheService() throws SQLException {
+        FlightRecord changed = service.addFlight(FlightRecord.draft("K-4", "A-B", base, 10, "1", FlightStatus.PLANNED), false);
+        FlightRecord dropped = service.addFlight(FlightRecord.draft("K-5", "A-B", base + 3600, 10, "1", FlightStatus.PLANNED), false);
+
+        try (Connection conn = DB.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("UPDATE flights SET platform = '7', updated_at = updated_at + 1 WHERE id = " + changed.id());
+            st.executeUpdate("DELETE FROM flights WHERE id = " + dropped.id());
+            st.executeUpdate("INSERT INTO flights(number, route, arrive_ts, standing_time, platform, status, created_at, updated_at)" +
+                    " VALUES ('K-6', 'A-B', " + (base + 7200) + ", 10, '3', " + FlightStatus.PLANNED.code() + ", 1, 1)");
+        }
+
+        assertEquals(3, cache.reconcile());
+        assertEquals("7", cache.get(changed.id()).orElseThrow().platform());
+        assertTrue(cache.get(dropped.id()).isEmpty());
+        assertEquals(1, cache.byPlatform("3").size());
+        assertEquals(0, cache.reconcile());
+    }
+
+    @Test
+    void put_SameSecondOutOfOrder_KeepsDatabaseVersion() throws SQLException {
+        FlightRecord f = service.addFlight(FlightRecord.draft("K-9", "A-B", base, 10, "1", FlightStatus.PLANNED), false);
+        FlightRecord first = service.updateFlight(f.withPlatform("2"), false);
+        FlightRecord second = service.updateFlight(first.withPlatform("3"), false);
+
+        // Запоздавшая запись первой правки с тем же updated_at не затирает вторую
+        cache.put(first.withUpdatedAt(second.updatedAt()));
+        assertEquals("3", cache.get(f.id()).orElseThrow().platform());
+        assertTrue(cache.byPlatform("2").isEmpty());
+    }
+
+    @Test
+    void addFlight_ConflictWrittenBehindTheCache_RejectedAfterReconcile() throws SQLException {
+        try (Connection conn = DB.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("INSERT INTO flights(number, route, arrive_ts, standing_time, platform, status, created_at, updated_at)" +
+                    " VALUES ('K-10', 'A-B', " + base + ", 30, '5', " + FlightStatus.PLANNED.code() + ", 1, 1)");
+        }
+        assertTrue(cache.byPlatform("5").isEmpty());
+        cache.reconcile();
+
+        assertThrows(IllegalStateException.class, () -> service.addFlight(
+                FlightRecord.draft("K-11", "A-B", base + 600, 30, "5", FlightStatus.PLANNED), false));
+    }
+
+    @Test
+    void metrics_CountHitsAndMisses() throws SQLException {
+        FlightRecord f = service.addFlight(FlightRecord.draft("K-7", "A-B", base, 10, "1", FlightStatus.PLANNED), false);
+        FlightCache.CacheMetrics before = cache.getMetrics();
+
+        cache.get(f.id());
+        cache.get(f.id() + 1000);
+        // Выборки по индексам промахнуться не могут и в долю попаданий не входят
+        cache.byStatus(FlightStatus.PLANNED);
+        cache.byPlatform("1");
+        cache.occupying("1", base, base + 600, null);
+
+        FlightCache.CacheMetrics after = cache.getMetrics();
+        assertEquals(before.hits() + 1, after.hits());
+        assertEquals(before.misses() + 1, after.misses());
+    }
+
+    @Test
+    void findConflicts_UsesOccupancyIndexWithBuffer() throws SQLException {
+        FlightRecord first = service.addFlight(FlightRecord.draft("K-8", "A-B", base, 30, "1", FlightStatus.PLANNED), false);
+
+        // Через 15 минут после отправления — внутри общего буфера
+        FlightRecord tooClose = FlightRecord.draft("K-9", "A-B", base + 1800 + 900, 10, "1", FlightStatus.PLANNED);
+        assertThrows(IllegalStateException.class, () -> service.addFlight(tooClose, false));
+        assertEquals(1, service.findConflicts("1", tooClose.arriveTs(), 10, null).size());
+        assertTrue(service.findConflicts("1", tooClose.arriveTs(), 10, first.id()).isEmpty());
+
+        service.changeStatus(first.id(), FlightService.STATUS_CANCELLED, FlightService.ACTOR_ADMIN, false);
+        assertTrue(service.findConflicts("1", base, 30, null).isEmpty());
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightChangesTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightService service = new FlightService();
+    private long base;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("feed.db"));
+        DB.init();
+        base = Instant.now().getEpochSecond() + 3 * 24 * 3600;
+    }
+
+    @AfterEach
+    void tearDown() {
+        DB.shutdown();
+    }
+
+    @Test
+    void changesSince_ReportsUpdatesAndDeleteTombstones() throws SQLException {
+        FlightRecord kept = service.addFlight(FlightRecord.draft("C-1", "A-B", base, 10, "1", FlightStatus.PLANNED), false);
+        FlightRecord removed = service.addFlight(FlightRecord.draft("C-2", "A-B", base + 3600, 10, "1", FlightStatus.PLANNED), false);
+        FlightChanges start = service.changeFeedStart();
+
+        service.changeStatus(kept.id(), FlightService.STATUS_DELAYED, FlightService.ACTOR_ADMIN, false);
+        service.deleteFlight(removed.id());
+        FlightChanges delta = service.changesSince(start);
+
+        assertTrue(delta.changed().stream().anyMatch(f -> f.id() == kept.id()
+                && f.status() == FlightStatus.DELAYED));
+        assertTrue(delta.changed().stream().noneMatch(f -> f.id() == removed.id()));
+        assertEquals(java.util.List.of(removed.id()), delta.deletedIds());
+        assertTrue(delta.historyMark() > start.historyMark());
+    }
+
+    @Test
+    void changesSince_TombstoneIsReportedOnce() throws SQLException {
+        FlightRecord f = service.addFlight(FlightRecord.draft("C-3", "A-B", base, 10, "1", FlightStatus.PLANNED), false);
+        FlightChanges start = service.changeFeedStart();
+        service.deleteFlight(f.id());
+
+        FlightChanges first = service.changesSince(start);
+        FlightChanges second = service.changesSince(first);
+
+        assertEquals(1, first.deletedIds().size());
+        assertTrue(second.deletedIds().isEmpty());
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.FlightDao;
+import org.example.isarsw.dao.HistoryDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightImportTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightService service = new FlightService();
+    private final FlightDao flightDao = new FlightDao();
+    private final HistoryDao historyDao = new HistoryDao();
+    private long now;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("import.db"));
+        DB.init();
+        now = Instant.now().getEpochSecond();
+    }
+
+    @AfterEach
+    void tearDown() {
+        DB.shutdown();
+    }
+
+    @Test
+    void importFlights_ManyBatches_AssignsIdsAndWritesHistory() throws SQLException {
+        // Рейсы по 10 минут с шагом в час на десяти платформах — конфликтов нет
+        List<FlightRecord> flights = IntStream.range(0, 2500)
+                .mapToObj(i -> FlightRecord.draft("T-" + i, "A-B", now + 3600L * (i / 10 + 1), 10,
+                        String.valueOf(i % 10), FlightStatus.PLANNED))
+                .toList();
+
+        ImportReport report = service.importFlights(flights.iterator(), false, 1000);
+
+        assertEquals(2500, report.getAccepted());
+        assertEquals(0, report.getRejected());
+        assertEquals(3, report.getBatches());
+        assertEquals(2500, flightDao.findAll().size());
+
+        // Пачки получают подряд идущие id в порядке входных строк
+        assertEquals("T-2499", flightDao.findById(2500L).orElseThrow().number());
+        assertEquals(FlightService.ACTOR_IMPORT, historyDao.listByFlight(2500L).get(0).getActor());
+    }
+
+    @Test
+    void importFlights_ConflictsAndInvalidRows_AreRejectedPerRow() throws SQLException {
+        service.addFlight(FlightRecord.draft("EXIST", "A-B", now + 3600, 30, "1", FlightStatus.PLANNED), false);
+
+        ImportReport report = service.importFlights(Stream.of(
+                FlightRecord.draft("OK", "A-B", now + 7200, 30, "1", FlightStatus.PLANNED),
+                FlightRecord.draft("VS-EXIST", "A-B", now + 3600 + 600, 30, "1", FlightStatus.PLANNED),
+                FlightRecord.draft("VS-BATCH", "A-B", now + 7200 + 600, 30, "1", FlightStatus.PLANNED),
+                FlightRecord.draft("", "A-B", now + 9000, 30, "2", FlightStatus.PLANNED)
+        ), false);
+
+        assertEquals(1, report.getAccepted());
+        List<ImportReport.Rejection> rejections = report.getRejections();
+        assertEquals(3, rejections.size());
+        assertEquals(2, rejections.get(0).row());
+        assertTrue(rejections.get(0).reason().contains("EXIST"));
+        assertEquals(3, rejections.get(1).row());
+        assertTrue(rejections.get(1).reason().contains("OK"));
+        assertEquals(4, rejections.get(2).row());
+        assertEquals(2, flightDao.findAll().size());
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.example.isarsw.model.FlightFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightPageTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightService service = new FlightService();
+    private long base;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("page.db"));
+        DB.init();
+        base = Instant.now().getEpochSecond() + 3 * 24 * 3600;
+        // По три рейса на одно время прибытия — ключ страницы должен различать их по id
+        service.importFlights(IntStream.range(0, 25)
+                .mapToObj(i -> FlightRecord.draft("P-" + i, "A-B", base + 3600L * (i / 3), 10,
+                        String.valueOf(i % 3), FlightStatus.PLANNED)), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        DB.shutdown();
+    }
+
+    @Test
+    void nextPage_WalksWholeTableOnceWithTiedArrivals() throws SQLException {
+        List<String> seen = new ArrayList<>();
+        FlightPage page = service.pageFrom(FlightPage.FIRST_TS, FlightPage.FIRST_ID, 4, FlightFilter.NONE);
+        assertFalse(page.hasPrevious());
+        while (true) {
+            page.items().forEach(f -> seen.add(f.number()));
+            if (!page.hasNext()) break;
+            page = service.nextPage(page, 4, FlightFilter.NONE);
+            assertTrue(page.hasPrevious());
+        }
+
+        assertEquals(IntStream.range(0, 25).mapToObj(i -> "P-" + i).toList(), seen);
+    }
+
+    @Test
+    void previousPage_ReturnsPrecedingWindow() throws SQLException {
+        FlightPage first = service.pageFrom(FlightPage.FIRST_TS, FlightPage.FIRST_ID, 4, FlightFilter.NONE);
+        FlightPage second = service.nextPage(first, 4, FlightFilter.NONE);
+        FlightPage third = service.nextPage(second, 4, FlightFilter.NONE);
+
+        FlightPage back = service.previousPage(third, 4, FlightFilter.NONE);
+        assertEquals(numbers(second), numbers(back));
+
+        // Перед первым окном меньше четырёх рейсов — возвращаемся к началу таблицы
+        FlightPage shifted = service.pageFrom(first.items().get(2).arriveTs(), first.items().get(2).id(), 4, FlightFilter.NONE);
+        assertEquals(numbers(first), numbers(service.previousPage(shifted, 4, FlightFilter.NONE)));
+    }
+
+    @Test
+    void pageFrom_Filter_AppliesInDatabase() throws SQLException {
+        FlightFilter onPlatform = new FlightFilter(null, "1", null, null, null);
+        FlightPage page = service.pageFrom(FlightPage.FIRST_TS, FlightPage.FIRST_ID, 100, onPlatform);
+
+        assertEquals(8, page.items().size());
+        assertTrue(page.items().stream().allMatch(onPlatform::test));
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    void pageFrom_TextFilter_IgnoresCyrillicCase() throws SQLException {
+        service.addFlight(FlightRecord.draft("ЭКС-1", "Москва — Ёлкино", base + 7200, 10, "Пл-9", FlightStatus.PLANNED), true);
+        service.addFlight(FlightRecord.draft("50%_A", "A-B", base + 7200, 10, "9", FlightStatus.PLANNED), true);
+
+        for (String text : List.of("москва", "ЁЛКИНО", "эКс", "пл-9")) {
+            FlightFilter filter = FlightFilter.NONE.withText(text);
+            FlightPage page = service.pageFrom(FlightPage.FIRST_TS, FlightPage.FIRST_ID, 100, filter);
+            assertEquals(List.of("ЭКС-1"), numbers(page), text);
+        }
+        assertEquals(List.of("ЭКС-1"), service.search("ёлк").stream().map(FlightRecord::number).toList());
+        // % и _ ищутся как обычные символы
+        assertEquals(List.of("50%_A"), numbers(service.pageFrom(FlightPage.FIRST_TS, FlightPage.FIRST_ID, 100,
+                FlightFilter.NONE.withText("%_"))));
+    }
+
+    private static List<String> numbers(FlightPage page) {
+        return page.items().stream().map(FlightRecord::number).toList();
+    }
+}
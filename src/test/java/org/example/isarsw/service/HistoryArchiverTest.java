@@ -0,0 +1,134 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.ExportDao;
+import org.example.isarsw.dao.HistoryArchiveDao;
+import org.example.isarsw.dao.HistoryDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.example.isarsw.model.HistoryEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryArchiverTest {
+
+    private static final long DAY = 24 * 3600L;
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightService service = new FlightService();
+    private final HistoryDao historyDao = new HistoryDao();
+    private final HistoryArchiveDao archiveDao = new HistoryArchiveDao();
+    private final HistoryArchiver archiver = new HistoryArchiver();
+    private long now;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("archive.db"));
+        DB.init();
+        FlightCache.shared().load();
+        now = Instant.now().getEpochSecond();
+    }
+
+    @AfterEach
+    void tearDown() {
+        FlightCache.shared().invalidate();
+        DB.shutdown();
+    }
+
+    private FlightRecord add(String number, long arriveTs, FlightStatus status) throws SQLException {
+        return service.addFlight(FlightRecord.draft(number, "A-B", arriveTs, 30, number, status), true);
+    }
+
+    private static int monthOf(long ts) {
+        ZonedDateTime z = Instant.ofEpochSecond(ts).atZone(ZoneId.systemDefault());
+        return z.getYear() * 100 + z.getMonthValue();
+    }
+
+    @Test
+    void policy_DefaultsAreStoredInConfig() throws SQLException {
+        HistoryArchiver.Policy policy = archiver.policy();
+        assertEquals(HistoryArchiver.DEFAULT_ARCHIVE_AFTER_DAYS, policy.archiveAfterDays());
+        assertEquals(HistoryArchiver.DEFAULT_KEEP_MONTHS, policy.keepMonths());
+
+        archiver.setPolicy(new HistoryArchiver.Policy(7, 12));
+        assertEquals(new HistoryArchiver.Policy(7, 12), archiver.policy());
+        assertThrows(IllegalArgumentException.class, () -> new HistoryArchiver.Policy(0, 1));
+    }
+
+    @Test
+    void run_MovesDepartedAndDeletedFlights_ReadsStayFederated() throws SQLException, IOException {
+        FlightRecord departed = add("OLD", now - 60 * DAY, FlightStatus.DEPARTED);
+        FlightRecord active = add("NEW", now + 3600, FlightStatus.PLANNED);
+        FlightRecord deleted = add("DEL", now + 7200, FlightStatus.PLANNED);
+        service.deleteFlight(deleted.id());
+
+        // Через 40 дней удалённый рейс тоже старше порога в 30 дней
+        HistoryArchiver.Report report = archiver.run(now + 40 * DAY);
+
+        assertEquals(2, report.flights());
+        assertEquals(3, report.movedRows());
+        assertEquals(1, report.hotRows());
+        assertEquals(Integer.valueOf(monthOf(departed.departureTs())), archiveDao.monthOf(departed.id()));
+        assertEquals(Integer.valueOf(monthOf(now)), archiveDao.monthOf(deleted.id()));
+        assertNull(archiveDao.monthOf(active.id()));
+
+        // Чтение истории не замечает переноса
+        List<HistoryEntry> history = historyDao.listByFlight(departed.id());
+        assertEquals(1, history.size());
+        assertEquals("CREATE", history.get(0).getAction());
+        assertEquals(2, historyDao.listByFlight(deleted.id()).size());
+
+        // Изменение после архивации попадает в основную таблицу и читается первым
+        Flight rerouted = Flight.from(departed);
+        rerouted.setRoute("A-C");
+        service.updateFlight(rerouted.toRecord(), true);
+        history = historyDao.listByFlight(departed.id());
+        assertEquals(2, history.size());
+        assertEquals("UPDATE", history.get(0).getAction());
+
+        // Повторный перенос дописывает рейс в его прежний месяц
+        archiver.run(now + 40 * DAY);
+        assertEquals(1, archiveDao.hotRowCount());
+        assertEquals(2, historyDao.listByFlight(departed.id()).size());
+
+        AtomicLong exported = new AtomicLong();
+        new ExportDao().stream(ExportDao.Table.HISTORY, new ExportDao.RowSink() {
+            @Override public void begin(String[] columns) {}
+            @Override public void row(Object[] values) { exported.incrementAndGet(); }
+            @Override public void end() {}
+        });
+        assertEquals(5, exported.get());
+    }
+
+    @Test
+    void run_KeepMonths_DropsOldArchives() throws SQLException {
+        FlightRecord departed = add("OLD", now - 60 * DAY, FlightStatus.DEPARTED);
+        archiver.run(now);
+        assertEquals(List.of(monthOf(departed.departureTs())), archiveDao.months());
+
+        archiver.setPolicy(new HistoryArchiver.Policy(30, 1));
+        HistoryArchiver.Report report = archiver.run(now + 120 * DAY);
+
+        assertEquals(1, report.droppedMonths());
+        assertEquals(1, report.droppedRows());
+        assertTrue(archiveDao.months().isEmpty());
+        assertNull(archiveDao.monthOf(departed.id()));
+        assertTrue(historyDao.listByFlight(departed.id()).isEmpty());
+    }
+}
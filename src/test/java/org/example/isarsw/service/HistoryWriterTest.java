@@ -0,0 +1,219 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.FlightDao;
+import org.example.isarsw.dao.HistoryDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.example.isarsw.model.HistoryEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final HistoryDao historyDao = new HistoryDao();
+    private final HistoryWriter writer = new HistoryWriter();
+    private long now;
+    private long flightId;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("journal.db"));
+        DB.init();
+        now = Instant.now().getEpochSecond();
+        flightId = new FlightDao().create(FlightRecord.draft("SU-1", "A-B", now + 3600, 30, "1", FlightStatus.PLANNED)).id();
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+        DB.shutdown();
+    }
+
+    private HistoryEntry entry(int i) {
+        return new HistoryEntry(flightId, "UPDATE", "test", now + i, null, "{\"n\":" + i + "}");
+    }
+
+    private List<HistoryEntry> entries(int count) {
+        List<HistoryEntry> out = new ArrayList<>();
+        for (int i = 0; i < count; i++) out.add(entry(i));
+        return out;
+    }
+
+    @Test
+    void append_NotStarted_WritesInCallerTransaction() throws SQLException {
+        writer.append(entry(0));
+        assertEquals(1, historyDao.listByFlight(flightId).size());
+        assertFalse(writer.isAsync());
+    }
+
+    @Test
+    void append_Async_WritesAfterFlush() throws SQLException, InterruptedException {
+        writer.start(10, 20, 100);
+        UnitOfWork.run(() -> writer.appendAll(entries(25)));
+        writer.awaitFlushed(3000);
+
+        assertEquals(25, historyDao.listByFlight(flightId).size());
+        assertEquals(0, writer.queueDepth());
+        assertEquals(25, writer.getMetrics().written());
+        assertTrue(writer.getMetrics().flushes() >= 3);
+    }
+
+    @Test
+    void append_RolledBack_IsNotWritten() throws SQLException, InterruptedException {
+        writer.start(10, 20, 100);
+        assertThrows(IllegalStateException.class, () -> UnitOfWork.run(() -> {
+            writer.append(entry(0));
+            throw new IllegalStateException("сбой после записи");
+        }));
+        writer.awaitFlushed(3000);
+        writer.stop();
+
+        assertTrue(historyDao.listByFlight(flightId).isEmpty());
+    }
+
+    @Test
+    void append_QueueFull_FlushesInCallerThread() throws SQLException {
+        // Поток записи ждёт добора пачки минуту — без сброса на месте записи бы застряли
+        writer.start(2, 60_000, 2);
+        UnitOfWork.run(() -> writer.appendAll(entries(5)));
+
+        assertTrue(historyDao.listByFlight(flightId).size() >= 3);
+        assertEquals(1, writer.getMetrics().inlineFlushes());
+        writer.stop();
+        assertEquals(5, historyDao.listByFlight(flightId).size());
+    }
+
+    @Test
+    void stop_FlushesQueuedEntries() throws SQLException {
+        writer.start(100, 60_000, 1000);
+        UnitOfWork.run(() -> writer.appendAll(entries(3)));
+        writer.stop();
+
+        assertEquals(3, historyDao.listByFlight(flightId).size());
+        assertFalse(writer.isAsync());
+    }
+
+    @Test
+    void start_ReadsParametersFromConfig() throws SQLException {
+        try (Connection c = DB.getConnection()) {
+            DB.setConfig(c, HistoryWriter.FLUSH_SIZE_KEY, "2");
+            DB.setConfig(c, HistoryWriter.FLUSH_INTERVAL_KEY, "60000");
+            DB.setConfig(c, HistoryWriter.QUEUE_CAPACITY_KEY, "2");
+        }
+        writer.start();
+        // Очередь на две записи из config: остальное сбрасывается в потоке операции
+        UnitOfWork.run(() -> writer.appendAll(entries(5)));
+        assertEquals(1, writer.getMetrics().inlineFlushes());
+        writer.stop();
+
+        // Отсутствующий ключ записывается со значением по умолчанию
+        try (Connection c = DB.getConnection(); Statement st = c.createStatement()) {
+            DB.setConfig(c, HistoryWriter.FLUSH_SIZE_KEY, "много");
+            st.executeUpdate("DELETE FROM config WHERE key = '" + HistoryWriter.QUEUE_CAPACITY_KEY + "'");
+        }
+        writer.start();
+        assertTrue(writer.isAsync());
+        try (Connection c = DB.getConnection()) {
+            assertEquals(String.valueOf(HistoryWriter.DEFAULT_QUEUE_CAPACITY), DB.getConfig(c, HistoryWriter.QUEUE_CAPACITY_KEY));
+        }
+    }
+
+    @Test
+    void drainLoop_RejectedEntry_GoesToDeadLetterAndRestIsWritten() throws SQLException, InterruptedException {
+        writer.start(10, 20, 100);
+        // action NOT NULL: такую запись БД не примет ни с какой попытки
+        List<HistoryEntry> batch = entries(5);
+        batch.set(2, new HistoryEntry(flightId, null, "test", now, null, "{}"));
+        UnitOfWork.run(() -> writer.appendAll(batch));
+        writer.awaitFlushed(3000);
+
+        assertEquals(0, writer.queueDepth());
+        assertEquals(1, writer.getMetrics().rejected());
+        assertEquals(4, historyDao.listByFlight(flightId).size());
+        try (Connection c = DB.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT flight_id, action, error FROM history_dead_letter")) {
+            assertTrue(rs.next());
+            assertEquals(flightId, rs.getLong(1));
+            assertNull(rs.getString(2));
+            assertTrue(rs.getString(3).contains("NOT NULL"), rs.getString(3));
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    void drainLoop_DatabaseUnavailable_RetriesUntilWritten() throws SQLException, InterruptedException {
+        writer.start(10, 20, 100);
+        try (Connection c = DB.getConnection(); Statement st = c.createStatement()) {
+            st.executeUpdate("ALTER TABLE history RENAME TO history_off");
+        }
+        UnitOfWork.run(() -> writer.append(entry(0)));
+        Thread.sleep(300);
+        // Пачка не отброшена и ждёт в очереди
+        assertEquals(1, writer.queueDepth());
+        assertTrue(writer.getMetrics().failedFlushes() > 1);
+
+        try (Connection c = DB.getConnection(); Statement st = c.createStatement()) {
+            st.executeUpdate("ALTER TABLE history_off RENAME TO history");
+        }
+        writer.awaitFlushed(5000);
+        assertEquals(0, writer.queueDepth());
+        assertEquals(0, writer.getMetrics().rejected());
+        assertEquals(1, historyDao.listByFlight(flightId).size());
+    }
+
+    @Test
+    void insertBatch_MultiRowAndRemainder_KeepsOrder() throws SQLException {
+        // Две полные порции многострочного INSERT по 100 строк и остаток
+        int count = 207;
+        UnitOfWork.run(() -> historyDao.insertBatch(entries(count)));
+
+        List<HistoryEntry> stored = historyDao.listByFlight(flightId);
+        assertEquals(count, stored.size());
+        // listByFlight — от новых к старым
+        assertEquals("{\"n\":" + (count - 1) + "}", stored.get(0).getPayloadAfter());
+        assertEquals("{\"n\":0}", stored.get(count - 1).getPayloadAfter());
+    }
+
+    @Test
+    void updateFlight_StoresChangedFieldsOnly() throws SQLException {
+        FlightService service = new FlightService();
+        FlightCache.shared().load();
+        try {
+            FlightRecord f = service.addFlight(FlightRecord.draft("SU-2", "A-B", now + 7200, 30, "2", FlightStatus.PLANNED), true);
+            FlightRecord after = service.updateFlight(f.withPlatform("5"), true);
+
+            HistoryEntry update = historyDao.listByFlight(f.id()).stream()
+                    .filter(e -> e.getAction().equals("UPDATE")).findFirst().orElseThrow();
+            if (update.isDiff()) {
+                assertEquals("{\"platform\":\"2\"}", update.getPayloadBefore());
+                assertEquals("{\"platform\":\"5\"}", update.getPayloadAfter());
+            } else {
+                // Попали на периодический полный снимок
+                assertEquals(after.toPayload(), update.getPayloadAfter());
+            }
+            HistoryEntry create = historyDao.listByFlight(f.id()).stream()
+                    .filter(e -> e.getAction().equals("CREATE")).findFirst().orElseThrow();
+            assertFalse(create.isDiff());
+            assertTrue(create.getPayloadAfter().contains("\"number\":\"SU-2\""));
+        } finally {
+            FlightCache.shared().invalidate();
+        }
+    }
+}
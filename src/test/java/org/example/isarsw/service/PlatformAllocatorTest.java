@@ -0,0 +1,100 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlatformAllocatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightService service = new FlightService();
+    private final PlatformAllocator allocator = new PlatformAllocator();
+    private LocalDate day;
+    private long noon;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("alloc.db"));
+        DB.init();
+        day = LocalDate.now().plusDays(3);
+        noon = day.atStartOfDay(ZoneId.systemDefault()).toEpochSecond() + 12 * 3600;
+    }
+
+    @AfterEach
+    void tearDown() {
+        FlightCache.shared().invalidate();
+        DB.shutdown();
+    }
+
+    @Test
+    void suggest_SkipsBusyPlatformsAndPrefersWiderGaps() throws SQLException {
+        service.addFlight(FlightRecord.draft("S-1", "A-B", noon, 30, "1", FlightStatus.PLANNED), false);
+        service.addFlight(FlightRecord.draft("S-2", "A-B", noon + 3600, 30, "2", FlightStatus.PLANNED), false);
+        service.addFlight(FlightRecord.draft("S-3", "A-B", noon - 6 * 3600, 30, "10", FlightStatus.PLANNED), false);
+
+        List<PlatformAllocator.Suggestion> free = allocator.suggest(noon, 20, null, 5);
+
+        assertEquals(List.of("10", "2"), free.stream().map(PlatformAllocator.Suggestion::platform).toList());
+        assertEquals(3600 - 20 * 60, free.get(1).gapAfterSeconds());
+        assertEquals("1", allocator.suggest(noon, 20, service.findConflicts("1", noon, 20, null).get(0).id(), 1)
+                .get(0).platform());
+    }
+
+    @Test
+    void plan_MovesOverriddenConflictsAndKeepsFreeFlightsInPlace() throws SQLException {
+        service.addFlight(FlightRecord.draft("P-1", "A-B", noon, 30, "1", FlightStatus.PLANNED), false);
+        FlightRecord clash = service.addFlight(FlightRecord.draft("P-2", "A-B", noon + 600, 30, "1", FlightStatus.PLANNED), true);
+        service.addFlight(FlightRecord.draft("P-3", "A-B", noon, 30, "2", FlightStatus.BOARDING), false);
+        service.addFlight(FlightRecord.draft("P-4", "A-B", noon + 4 * 3600, 30, "3", FlightStatus.PLANNED), false);
+
+        PlatformAllocator.Plan plan = allocator.plan(day);
+
+        assertEquals(3, plan.flights());
+        assertEquals(1, plan.moves().size());
+        assertEquals(clash.id(), plan.moves().get(0).flightId());
+        assertEquals("3", plan.moves().get(0).toPlatform());
+        assertTrue(plan.unresolved().isEmpty());
+
+        assertEquals(1, service.applyPlatformPlan(plan));
+        assertEquals("3", service.findById(clash.id()).orElseThrow().platform());
+        assertTrue(new ScheduleAuditor().audit().isClean());
+        assertTrue(allocator.plan(day).isEmpty());
+    }
+
+    @Test
+    void applyPlatformPlan_SkipsChangedFlightsAndRejectsTakenPlatform() throws SQLException {
+        service.addFlight(FlightRecord.draft("C-1", "A-B", noon, 30, "1", FlightStatus.PLANNED), false);
+        FlightRecord clash = service.addFlight(FlightRecord.draft("C-2", "A-B", noon + 600, 30, "1", FlightStatus.PLANNED), true);
+        service.addFlight(FlightRecord.draft("C-4", "A-B", noon + 4 * 3600, 30, "3", FlightStatus.PLANNED), false);
+        PlatformAllocator.Plan plan = allocator.plan(day);
+
+        // Стоянка изменена в ту же секунду, что и построение плана — перенос пропускается
+        Flight edited = Flight.from(service.findById(clash.id()).orElseThrow());
+        edited.setStandingTime(35);
+        service.updateFlight(edited.toRecord(), true);
+        assertEquals(0, service.applyPlatformPlan(plan));
+
+        // Целевую платформу занял другой рейс — план откатывается целиком
+        plan = allocator.plan(day);
+        String target = plan.moves().get(0).toPlatform();
+        service.addFlight(FlightRecord.draft("C-3", "A-B", noon + 600, 30, target, FlightStatus.PLANNED), false);
+        PlatformAllocator.Plan stale = plan;
+        assertThrows(IllegalStateException.class, () -> service.applyPlatformPlan(stale));
+        assertEquals("1", service.findById(clash.id()).orElseThrow().platform());
+    }
+}
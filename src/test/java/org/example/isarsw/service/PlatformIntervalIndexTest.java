@@ -0,0 +1,83 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.example.isarsw.model.FlightRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlatformIntervalIndexTest {
+
+    private static FlightRecord flight(long id, long arriveTs, int standingMinutes, String platform, FlightStatus status) {
+        return FlightRecord.draft("F-" + id, "A-B", arriveTs, standingMinutes, platform, status).withId(id);
+    }
+
+    @Test
+    void overlapping_HalfOpenWindows_TouchingIntervalsDoNotOverlap() {
+        PlatformIntervalIndex index = new PlatformIntervalIndex();
+        index.put(flight(1, 1000, 10, "1", FlightStatus.PLANNED));   // [1000, 1600)
+        index.put(flight(2, 5000, 10, "2", FlightStatus.PLANNED));
+
+        assertTrue(index.overlapping("1", 1600, 2000, null).isEmpty());
+        assertTrue(index.overlapping("1", 0, 1000, null).isEmpty());
+        assertEquals(1, index.overlapping("1", 1599, 1700, null).size());
+        assertTrue(index.overlapping("1", 1000, 1600, 1L).isEmpty());
+    }
+
+    @Test
+    void put_InactiveOrMovedFlight_ReplacesPreviousInterval() {
+        PlatformIntervalIndex index = new PlatformIntervalIndex();
+        index.put(flight(1, 1000, 10, "1", FlightStatus.PLANNED));
+
+        index.put(flight(1, 1000, 10, "2", FlightStatus.PLANNED));
+        assertTrue(index.overlapping("1", 0, 10_000, null).isEmpty());
+        assertEquals(1, index.overlapping("2", 0, 10_000, null).size());
+
+        index.put(flight(1, 1000, 10, "2", FlightStatus.CANCELLED));
+        assertTrue(index.overlapping("2", 0, 10_000, null).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void overlapping_RandomSchedule_MatchesLinearScan() {
+        Random rnd = new Random(42);
+        PlatformIntervalIndex index = new PlatformIntervalIndex();
+        Map<Long, FlightRecord> live = new HashMap<>();
+
+        for (long id = 1; id <= 3000; id++) {
+            FlightRecord f = flight(id, rnd.nextInt(200_000), 1 + rnd.nextInt(240), String.valueOf(rnd.nextInt(3)),
+                    FlightStatus.PLANNED);
+            index.put(f);
+            live.put(id, f);
+            if (rnd.nextInt(4) == 0) {
+                long victim = 1 + rnd.nextInt((int) id);
+                index.remove(victim);
+                live.remove(victim);
+            }
+        }
+
+        for (int q = 0; q < 500; q++) {
+            long from = rnd.nextInt(200_000);
+            long to = from + rnd.nextInt(20_000);
+            List<Long> expected = new ArrayList<>();
+            for (FlightRecord f : live.values()) {
+                if ("1".equals(f.platform()) && f.arriveTs() < to && f.departureTs() > from) {
+                    expected.add(f.id());
+                }
+            }
+            List<Long> actual = new ArrayList<>();
+            for (FlightRecord f : index.overlapping("1", from, to, null)) actual.add(f.id());
+
+            expected.sort(null);
+            actual.sort(null);
+            assertEquals(expected, actual);
+        }
+    }
+}
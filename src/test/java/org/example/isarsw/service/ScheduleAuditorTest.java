@@ -0,0 +1,96 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduleAuditorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightService service = new FlightService();
+    private long base;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("audit.db"));
+        DB.init();
+        base = Instant.now().getEpochSecond() + 3 * 24 * 3600;
+    }
+
+    @AfterEach
+    void tearDown() {
+        DB.shutdown();
+    }
+
+    @Test
+    void audit_FindsOverlapsSavedWithOverride() throws SQLException {
+        service.addFlight(FlightRecord.draft("A-1", "A-B", base, 30, "1", FlightStatus.PLANNED), false);
+        service.addFlight(FlightRecord.draft("A-2", "A-B", base + 600, 30, "1", FlightStatus.PLANNED), true);
+        service.addFlight(FlightRecord.draft("A-3", "A-B", base + 600, 30, "2", FlightStatus.PLANNED), false);
+        service.addFlight(FlightRecord.draft("A-4", "A-B", base + 900, 30, "2", FlightStatus.CANCELLED), true);
+
+        ScheduleAuditReport report = new ScheduleAuditor().audit();
+
+        assertEquals(3, report.getFlights());
+        assertEquals(1, report.getTotalConflicts());
+        ScheduleAuditReport.Conflict c = report.getConflicts().get(0);
+        assertEquals("A-1", c.firstNumber());
+        assertEquals("A-2", c.secondNumber());
+        assertEquals(1200, c.overlapSeconds());
+        assertEquals(1200, report.getTotalOverlapSeconds());
+    }
+
+    @Test
+    void audit_BufferViolationWithoutOverlap_HasNegativeOverlap() {
+        List<FlightRecord> flights = List.of(
+                FlightRecord.draft("B-1", "A-B", base, 30, "1", FlightStatus.PLANNED),
+                FlightRecord.draft("B-2", "A-B", base + 1800 + 300, 30, "1", FlightStatus.PLANNED));
+
+        ScheduleAuditReport report = new ScheduleAuditor().audit(flights);
+
+        assertEquals(1, report.getTotalConflicts());
+        assertEquals(-300, report.getConflicts().get(0).overlapSeconds());
+        assertEquals(0, report.getTotalOverlapSeconds());
+    }
+
+    @Test
+    void audit_RandomSchedule_MatchesPairwiseCheck() {
+        Random rnd = new Random(7);
+        List<FlightRecord> flights = new ArrayList<>();
+        for (long id = 1; id <= 600; id++) {
+            FlightRecord f = FlightRecord.draft("R-" + id, "A-B", base + rnd.nextInt(100_000), 1 + rnd.nextInt(60),
+                    String.valueOf(rnd.nextInt(4)), rnd.nextInt(5) == 0 ? FlightStatus.BOARDING : FlightStatus.PLANNED);
+            flights.add(f.withId(id));
+        }
+
+        long expected = 0;
+        for (int i = 0; i < flights.size(); i++) {
+            for (int j = i + 1; j < flights.size(); j++) {
+                FlightRecord a = flights.get(i);
+                FlightRecord b = flights.get(j);
+                if (!a.platform().equals(b.platform())) continue;
+                if (ConflictChecker.conflicts(a.arriveTs(), a.departureTs(), b)
+                        || ConflictChecker.conflicts(b.arriveTs(), b.departureTs(), a)) {
+                    expected++;
+                }
+            }
+        }
+
+        assertEquals(expected, new ScheduleAuditor().audit(flights).getTotalConflicts());
+    }
+}
@@ -0,0 +1,235 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.HistoryArchiveDao;
+import org.example.isarsw.dao.HistoryDao;
+import org.example.isarsw.dao.ScheduleSnapshotDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.example.isarsw.model.HistoryEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduleReplayTest {
+
+    private static final long T0 = 1_700_000_000L;
+
+    @TempDir
+    Path tempDir;
+
+    private final HistoryDao historyDao = new HistoryDao();
+    private final ScheduleReplay replay = new ScheduleReplay();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("replay.db"));
+        DB.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        DB.shutdown();
+    }
+
+    private FlightRecord create(long id, String number, String platform, long ts) throws SQLException {
+        FlightRecord f = new FlightRecord(id, number, "A-B", T0 + 3600 * id, 30, platform, FlightStatus.PLANNED, ts, ts, 0L);
+        historyDao.insert(new HistoryEntry(id, "CREATE", FlightService.ACTOR_ADMIN, ts, null, f.toPayload()));
+        return f;
+    }
+
+    private FlightRecord change(FlightRecord before, String action, long ts, Consumer<Flight> edit) throws SQLException {
+        Flight edited = Flight.from(before);
+        edit.accept(edited);
+        FlightRecord after = edited.toRecord().withUpdatedAt(ts);
+        historyDao.insert(FlightService.changeEntry(action, FlightService.ACTOR_ADMIN, ts, before, after));
+        return after;
+    }
+
+    private void delete(FlightRecord f, long ts) throws SQLException {
+        historyDao.insert(new HistoryEntry(f.id(), "DELETE", FlightService.ACTOR_ADMIN, ts, f.toPayload(), null));
+    }
+
+    private static String board(ScheduleReplay.State state) {
+        StringBuilder sb = new StringBuilder();
+        for (FlightRecord f : state.flights()) {
+            sb.append(f.number()).append('/').append(f.platform()).append('/').append(f.status().label()).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    // A создан, B создан, A на платформу 2 | B задержан, A удалён | C создан
+    private void buildHistory(boolean withSnapshots) throws SQLException {
+        FlightRecord a = create(1, "A", "1", T0 + 10);
+        FlightRecord b = create(2, "B", "1", T0 + 20);
+        change(a, "UPDATE", T0 + 30, f -> f.setPlatform("2"));
+        if (withSnapshots) replay.takeSnapshot(T0 + 31);
+        change(b, "STATUS_MANUAL", T0 + 40, f -> f.setStatus(FlightService.STATUS_DELAYED));
+        delete(a, T0 + 50);
+        if (withSnapshots) replay.takeSnapshot(T0 + 51);
+        create(3, "C", "3", T0 + 60);
+    }
+
+    private void assertBoards() throws SQLException {
+        String planned = FlightService.STATUS_PLANNED;
+        assertEquals("", board(replay.scheduleAt(T0 + 5)));
+        assertEquals("A/1/" + planned + " B/1/" + planned, board(replay.scheduleAt(T0 + 25)));
+        assertEquals("A/2/" + planned + " B/1/" + FlightService.STATUS_DELAYED, board(replay.scheduleAt(T0 + 45)));
+        assertEquals("B/1/" + FlightService.STATUS_DELAYED, board(replay.scheduleAt(T0 + 55)));
+        assertEquals("B/1/" + FlightService.STATUS_DELAYED + " C/3/" + planned, board(replay.scheduleAt(T0 + 65)));
+    }
+
+    @Test
+    void scheduleAt_WithoutSnapshots_ReplaysWholeHistory() throws SQLException {
+        buildHistory(false);
+        assertBoards();
+        assertEquals(6, replay.scheduleAt(T0 + 65).replayed());
+    }
+
+    @Test
+    void scheduleAt_FromSnapshots_ReplaysOnlyTail() throws SQLException {
+        buildHistory(true);
+        assertBoards();
+
+        // Между снимками — только записи после предыдущего и не позже момента
+        ScheduleReplay.State state = replay.scheduleAt(T0 + 45);
+        assertEquals(3, state.fromHistoryId());
+        assertEquals(1, state.replayed());
+        assertEquals(1, replay.scheduleAt(T0 + 65).replayed());
+        // До первого снимка — с начала истории, но не дальше первого снимка
+        assertEquals(2, replay.scheduleAt(T0 + 25).replayed());
+
+        // Снимок без новых записей не создаётся
+        assertEquals(2, new ScheduleSnapshotDao().count());
+        replay.takeSnapshot(T0 + 70);
+        replay.takeSnapshot(T0 + 71);
+        assertEquals(3, new ScheduleSnapshotDao().count());
+        assertEquals(0, replay.scheduleAt(T0 + 65).replayed());
+    }
+
+    @Test
+    void scheduleAt_ArchivedHistory_StillReplayed() throws SQLException {
+        buildHistory(true);
+        new HistoryArchiveDao().moveFlights(202311, List.of(1L, 2L));
+        assertBoards();
+    }
+
+    @Test
+    void flightAt_AppliesDiffsFromLatestFullEntry() throws SQLException {
+        FlightRecord f = create(7, "X", "1", T0);
+        // Больше SNAPSHOT_EVERY изменений: часть записей — полные снимки
+        for (int i = 1; i <= 40; i++) {
+            String platform = String.valueOf(i);
+            f = change(f, "UPDATE", T0 + i * 10L, x -> x.setPlatform(platform));
+        }
+        for (int i = 0; i <= 40; i++) {
+            Optional<FlightRecord> at = replay.flightAt(7, T0 + i * 10L + 5);
+            assertTrue(at.isPresent());
+            assertEquals(i == 0 ? "1" : String.valueOf(i), at.get().platform());
+        }
+        assertEquals(T0 + 400, replay.flightAt(7, T0 + 405).orElseThrow().updatedAt());
+
+        assertTrue(replay.flightAt(7, T0 - 1).isEmpty());
+        delete(f, T0 + 500);
+        assertTrue(replay.flightAt(7, T0 + 500).isEmpty());
+        assertEquals("40", replay.flightAt(7, T0 + 499).orElseThrow().platform());
+    }
+
+    @Test
+    void flightAt_LegacyStatusEntry_ChangesOnlyStatus() throws SQLException {
+        create(9, "L", "4", T0);
+        // Записи статуса до разниц полей: полный формат, но только статус
+        historyDao.insert(new HistoryEntry(9L, "STATUS_AUTO", FlightService.ACTOR_SYSTEM, T0 + 10,
+                "{\"status\":\"" + FlightService.STATUS_PLANNED + "\"}", "{\"status\":\"" + FlightService.STATUS_EN_ROUTE + "\"}"));
+
+        FlightRecord at = replay.flightAt(9, T0 + 10).orElseThrow();
+        assertEquals(FlightStatus.EN_ROUTE, at.status());
+        assertEquals("4", at.platform());
+        assertEquals("L", board(replay.scheduleAt(T0 + 10)).split("/")[0]);
+    }
+
+    @Test
+    void flightAt_SameSecondChanges_AppliedInWriteOrderWithEscapedText() throws SQLException {
+        FlightRecord f = create(11, "S", "1", T0);
+        // Обратная косая черта и кавычки переживают запись в историю и снимок
+        f = change(f, "UPDATE", T0 + 10, x -> x.setRoute("C:\\путь \"А\"\tБ"));
+        for (int i = 2; i <= 5; i++) {
+            String platform = String.valueOf(i);
+            f = change(f, "UPDATE", T0 + 20, x -> x.setPlatform(platform));
+        }
+        new HistoryArchiveDao().moveFlights(202311, List.of(11L));
+        change(f, "UPDATE", T0 + 20, x -> x.setPlatform("6"));
+
+        FlightRecord at = replay.flightAt(11, T0 + 20).orElseThrow();
+        assertEquals("6", at.platform());
+        assertEquals("C:\\путь \"А\"\tБ", at.route());
+        replay.takeSnapshot(T0 + 30);
+        assertEquals("C:\\путь \"А\"\tБ", replay.scheduleAt(T0 + 30).flights().get(0).route());
+    }
+
+    @Test
+    void changeEntry_SnapshotPeriodCountedPerFlightFromHistory() throws SQLException {
+        FlightRecord a = create(1, "A", "1", T0);
+        // Рейс с тем же остатком id по модулю 4096 не сдвигает период рейса A
+        FlightRecord b = create(4097, "B", "1", T0);
+        for (int i = 1; i < FlightService.SNAPSHOT_EVERY - 1; i++) {
+            String platform = String.valueOf(i);
+            a = change(a, "UPDATE", T0 + i, x -> x.setPlatform(platform));
+            b = change(b, "UPDATE", T0 + i, x -> x.setPlatform(platform));
+        }
+        // Перезапуск: счётчики в памяти теряются и восстанавливаются по истории
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("other.db"));
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("replay.db"));
+
+        a = change(a, "UPDATE", T0 + 100, x -> x.setPlatform("x"));
+        assertEquals(HistoryEntry.FORMAT_DIFF, historyDao.listByFlight(1L).get(0).getPayloadFormat());
+        change(a, "UPDATE", T0 + 101, x -> x.setPlatform("y"));
+        assertEquals(HistoryEntry.FORMAT_FULL, historyDao.listByFlight(1L).get(0).getPayloadFormat());
+    }
+
+    @Test
+    void flightAt_FieldClearedToNull_ReplaysAsNull() throws SQLException {
+        FlightRecord f = create(14, "N", "1", T0);
+        f = change(f, "UPDATE", T0 + 10, x -> x.setRoute(null));
+        change(f, "UPDATE", T0 + 20, x -> x.setRoute(""));
+
+        assertNull(replay.flightAt(14, T0 + 10).orElseThrow().route());
+        assertEquals("", replay.flightAt(14, T0 + 20).orElseThrow().route());
+        assertEquals("1", replay.flightAt(14, T0 + 10).orElseThrow().platform());
+    }
+
+    @Test
+    void scheduleAt_CorruptedEntry_Fails() throws SQLException {
+        create(12, "K", "1", T0);
+        historyDao.insert(HistoryEntry.diff(12L, "UPDATE", FlightService.ACTOR_ADMIN, T0 + 10, "{}", "{\"platform\":"));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> replay.scheduleAt(T0 + 20));
+        assertTrue(e.getMessage().contains("повреждена"), e.getMessage());
+    }
+
+    @Test
+    void takeSnapshot_KeepsConfiguredNumber() throws SQLException {
+        try (Connection c = DB.getConnection()) {
+            DB.setConfig(c, ScheduleReplay.KEEP_SNAPSHOTS_KEY, "2");
+        }
+        for (int i = 1; i <= 4; i++) {
+            create(i, "F" + i, "1", T0 + i);
+            replay.takeSnapshot(T0 + i);
+        }
+        assertEquals(2, new ScheduleSnapshotDao().count());
+        assertEquals(4, replay.scheduleAt(T0 + 10).flights().size());
+        // Моменты до сохранённых снимков восстанавливаются воспроизведением с начала
+        assertEquals(2, replay.scheduleAt(T0 + 2).flights().size());
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.HistoryDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.example.isarsw.model.HistoryEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusSchedulerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightService service = new FlightService();
+    private final StatusScheduler scheduler = new StatusScheduler();
+    private long now;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("lifecycle.db"));
+        DB.init();
+        FlightCache.shared().load();
+        now = Instant.now().getEpochSecond();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+        FlightCache.shared().invalidate();
+        DB.shutdown();
+    }
+
+    private static FlightRecord flight(String number, long arriveTs, int standing, FlightStatus status) {
+        return FlightRecord.draft(number, "A-B", arriveTs, standing, number, status);
+    }
+
+    @Test
+    void targetStatus_FollowsRuleTable() {
+        long day = 24 * 3600L;
+        assertEquals(FlightStatus.PLANNED,
+                StatusScheduler.targetStatus(flight("1", now + 3 * day, 30, FlightStatus.PLANNED), now));
+        assertEquals(FlightStatus.EN_ROUTE,
+                StatusScheduler.targetStatus(flight("2", now + day, 30, FlightStatus.PLANNED), now));
+        // Цепочка переходов за один такт
+        assertEquals(FlightStatus.BOARDING,
+                StatusScheduler.targetStatus(flight("3", now - 60, 30, FlightStatus.PLANNED), now));
+        // Стоянка закончилась, а поезд «в пути» — решает диспетчер
+        assertEquals(FlightStatus.EN_ROUTE,
+                StatusScheduler.targetStatus(flight("4", now - 3600, 30, FlightStatus.EN_ROUTE), now));
+        assertEquals(FlightStatus.BOARDING,
+                StatusScheduler.targetStatus(flight("5", now - 30 * 60 - 60, 30, FlightStatus.BOARDING), now));
+        assertEquals(FlightStatus.DEPARTED,
+                StatusScheduler.targetStatus(flight("6", now - 3600, 30, FlightStatus.BOARDING), now));
+        assertEquals(FlightStatus.CANCELLED,
+                StatusScheduler.targetStatus(flight("7", now - day - 60, 30, FlightStatus.DELAYED), now));
+        assertEquals(-1, StatusScheduler.nextDueTs(flight("8", now, 30, FlightStatus.DEPARTED), now));
+    }
+
+    @Test
+    void start_AppliesAllDueTransitionsInOneBatch() throws SQLException, InterruptedException {
+        long day = 24 * 3600L;
+        FlightRecord planned = service.addFlight(flight("P", now + day, 30, FlightStatus.PLANNED), true);
+        FlightRecord arriving = service.addFlight(flight("E", now - 60, 30, FlightStatus.EN_ROUTE), true);
+        FlightRecord boarding = service.addFlight(flight("B", now - 3600, 30, FlightStatus.BOARDING), true);
+        FlightRecord delayed = service.addFlight(flight("D", now - day - 60, 30, FlightStatus.DELAYED), true);
+        FlightRecord future = service.addFlight(flight("F", now + 5 * day, 30, FlightStatus.PLANNED), true);
+
+        scheduler.start();
+        long deadline = System.currentTimeMillis() + 3000;
+        while (scheduler.ticks() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(1, scheduler.ticks());
+        assertEquals(FlightStatus.EN_ROUTE, service.findById(planned.id()).orElseThrow().status());
+        assertEquals(FlightStatus.BOARDING, service.findById(arriving.id()).orElseThrow().status());
+        assertEquals(FlightStatus.DEPARTED, service.findById(boarding.id()).orElseThrow().status());
+        assertEquals(FlightStatus.CANCELLED, service.findById(delayed.id()).orElseThrow().status());
+        assertEquals(FlightStatus.PLANNED, service.findById(future.id()).orElseThrow().status());
+
+        List<HistoryEntry> history = new HistoryDao().listByFlight(boarding.id());
+        assertEquals("STATUS_AUTO", history.get(0).getAction());
+        assertEquals(FlightService.ACTOR_SYSTEM, history.get(0).getActor());
+
+        // Следующий срок в пределах горизонта — только отправление у нового на посадке
+        assertEquals(1, scheduler.pendingDeadlines());
+        // Обход назначает сроки, вошедшие в горизонт: прибытие нового «в пути» через сутки
+        scheduler.sweep(now + day - 3600);
+        assertEquals(2, scheduler.pendingDeadlines());
+    }
+
+    @Test
+    void runOnce_DivergedGroup_SkippedOthersApplied() throws SQLException, InterruptedException {
+        FlightRecord arriving = service.addFlight(flight("E1", now - 60, 30, FlightStatus.EN_ROUTE), true);
+        FlightRecord other = service.addFlight(flight("E2", now - 120, 30, FlightStatus.EN_ROUTE), true);
+        FlightRecord boarding = service.addFlight(flight("B", now - 3600, 30, FlightStatus.BOARDING), true);
+        // Запись в обход кэша: рейс уже задержан, кэш считает его «в пути»
+        try (Connection c = DB.getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE flights SET status=?, updated_at=? WHERE id=?")) {
+            ps.setInt(1, FlightStatus.DELAYED.code());
+            ps.setLong(2, now + 1);
+            ps.setLong(3, arriving.id());
+            ps.executeUpdate();
+        }
+
+        scheduler.start();
+        long deadline = System.currentTimeMillis() + 3000;
+        while (scheduler.ticks() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        // Первый такт применил только другую группу; рейсы разошедшейся группы перечитаны
+        // из БД, и второй такт перевёл тот, что по-прежнему «в пути»
+        assertEquals(2, scheduler.ticks());
+        assertEquals(FlightStatus.DELAYED, service.findById(arriving.id()).orElseThrow().status());
+        assertEquals(FlightStatus.BOARDING, service.findById(other.id()).orElseThrow().status());
+        assertEquals(FlightStatus.DEPARTED, service.findById(boarding.id()).orElseThrow().status());
+    }
+}
@@ -0,0 +1,86 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.FlightDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimetableImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightDao flightDao = new FlightDao();
+    private TimetableImporter importer;
+    private long base;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("importer.db"));
+        DB.init();
+        importer = new TimetableImporter(new FlightService(), 2);
+        importer.setPrintProgress(false);
+        base = Instant.now().getEpochSecond() + 3 * 24 * 3600;
+    }
+
+    @AfterEach
+    void tearDown() {
+        DB.shutdown();
+    }
+
+    @Test
+    void importFile_Csv_ParsesQuotesAndRejectsBadRows() throws IOException, SQLException {
+        Path csv = tempDir.resolve("timetable.csv");
+        Files.writeString(csv, String.join("\n",
+                "number;route;arrive_ts;standing_time;platform;status",
+                "101;\"Москва; Казань\";" + base + ";20;1;",
+                "102;A-B;" + (base + 3600) + ";abc;1;",
+                "103;A-B;" + (base + 7200) + ";20;2;отменён",
+                "104;A-B;" + (base + 9000) + ";20;;",
+                ""), StandardCharsets.UTF_8);
+
+        ImportReport report = importer.importFile(csv, false);
+
+        assertEquals(2, report.getAccepted());
+        assertEquals(2, report.getRejected());
+        List<ImportReport.Rejection> rejections = report.getRejections();
+        assertEquals(2, rejections.get(0).row());
+        assertEquals(4, rejections.get(1).row());
+
+        List<FlightRecord> flights = flightDao.findAll();
+        assertTrue(flights.stream().anyMatch(f -> f.route().equals("Москва; Казань")
+                && f.status().equals(FlightStatus.PLANNED)));
+        assertTrue(flights.stream().anyMatch(f -> f.status().equals(FlightStatus.CANCELLED)));
+    }
+
+    @Test
+    void importFile_JsonArray_ImportsAllObjects() throws IOException, SQLException {
+        Path json = tempDir.resolve("timetable.json");
+        Files.writeString(json, "[" +
+                "{\"number\":\"201\",\"route\":\"A-B\",\"arriveTs\":" + base + ",\"standingTime\":15,\"platform\":\"3\",\"extra\":{\"x\":[1,2]}}," +
+                "{\"number\":\"202\",\"route\":\"A-B\",\"arrive_ts\":" + (base + 3600) + ",\"standing_time\":15,\"platform\":\"3\"}," +
+                "{\"number\":\"203\",\"route\":\"A-B\",\"arrive_ts\":" + (base + 60) + ",\"standing_time\":15,\"platform\":\"3\"}" +
+                "]", StandardCharsets.UTF_8);
+
+        ImportReport report = importer.importFile(json, false);
+
+        assertEquals(2, report.getAccepted());
+        assertEquals(1, report.getRejected());
+        assertEquals(3, report.getRejections().get(0).row());
+        assertEquals(2, flightDao.findAll().size());
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.isarsw.service;
+
+import org.example.isarsw.dao.FlightDao;
+import org.example.isarsw.dao.HistoryDao;
+import org.example.isarsw.db.DB;
+import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.example.isarsw.model.HistoryEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnitOfWorkTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FlightDao flightDao = new FlightDao();
+    private final HistoryDao historyDao = new HistoryDao();
+    private long now;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.setUrl("jdbc:sqlite:" + tempDir.resolve("uow.db"));
+        DB.init();
+        now = Instant.now().getEpochSecond();
+    }
+
+    @AfterEach
+    void tearDown() {
+        DB.shutdown();
+    }
+
+    @Test
+    void inTransaction_WorkThrows_RollsBackFlightAndHistory() throws SQLException {
+        FlightRecord f = FlightRecord.draft("SU-1", "A-B", now + 3600, 30, "1", FlightStatus.PLANNED);
+
+        assertThrows(IllegalStateException.class, () -> UnitOfWork.run(() -> {
+            flightDao.create(f);
+            historyDao.insert(new HistoryEntry(f.id(), "CREATE", "test", now, null, f.toPayload()));
+            throw new IllegalStateException("сбой после записи");
+        }));
+
+        assertTrue(flightDao.findAll().isEmpty());
+        assertTrue(historyDao.listByFlight(f.id()).isEmpty());
+    }
+
+    @Test
+    void inTransaction_ReadInsideWork_SeesOwnWrites() throws SQLException {
+        long id = UnitOfWork.inTransaction(() -> {
+            FlightRecord f = flightDao.create(FlightRecord.draft("SU-2", "A-B", now + 3600, 30, "1", FlightStatus.PLANNED));
+            assertTrue(flightDao.findById(f.id()).isPresent());
+            return f.id();
+        });
+
+        assertTrue(flightDao.findById(id).isPresent());
+    }
+
+    @Test
+    void updateFlight_Conflict_LeavesNoHistory() throws SQLException {
+        FlightService service = new FlightService();
+        service.addFlight(FlightRecord.draft("SU-3", "A-B", now + 3600, 30, "1", FlightStatus.PLANNED), false);
+        FlightRecord second = service.addFlight(FlightRecord.draft("SU-4", "A-B", now + 7200, 30, "1", FlightStatus.PLANNED), false);
+
+        Flight moved = Flight.from(second);
+        moved.setArriveTs(now + 3600);
+        assertThrows(IllegalStateException.class, () -> service.updateFlight(moved.toRecord(), false));
+
+        assertEquals(1, historyDao.listByFlight(second.id()).size());
+        assertEquals(now + 7200, flightDao.findById(second.id()).orElseThrow().arriveTs());
+    }
+}
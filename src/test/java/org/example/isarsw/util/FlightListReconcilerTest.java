@@ -0,0 +1,76 @@
+package org.example.isarsw.util;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.example.isarsw.model.Flight;
+import org.example.isarsw.model.FlightRecord;
+import org.example.isarsw.model.FlightStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightListReconcilerTest {
+
+    private static FlightRecord record(long id, long arriveTs, FlightStatus status) {
+        return new FlightRecord(id, "R-" + id, "A-B", arriveTs, 10, "1", status, 0, 0, 0);
+    }
+
+    private static Flight flight(long id, long arriveTs, FlightStatus status) {
+        return Flight.from(record(id, arriveTs, status));
+    }
+
+    @Test
+    void reconcile_SameRowsChangedValues_UpdatesInPlaceWithoutListEvent() {
+        Flight a = flight(1, 100, FlightStatus.PLANNED);
+        Flight b = flight(2, 200, FlightStatus.PLANNED);
+        ObservableList<Flight> list = FXCollections.observableArrayList(a, b);
+        AtomicInteger events = new AtomicInteger();
+        list.addListener((ListChangeListener<Flight>) c -> events.incrementAndGet());
+
+        FlightListReconciler.reconcile(list, List.of(record(1, 100, FlightStatus.DELAYED), record(2, 200, FlightStatus.PLANNED)));
+
+        assertEquals(0, events.get());
+        assertSame(a, list.get(0));
+        assertEquals(FlightStatus.DELAYED, a.getFlightStatus());
+    }
+
+    @Test
+    void reconcile_MembershipChanged_FiresSingleEventAndKeepsInstances() {
+        Flight a = flight(1, 100, FlightStatus.PLANNED);
+        ObservableList<Flight> list = FXCollections.observableArrayList(a, flight(2, 200, FlightStatus.PLANNED));
+        AtomicInteger events = new AtomicInteger();
+        list.addListener((ListChangeListener<Flight>) c -> events.incrementAndGet());
+
+        FlightListReconciler.reconcile(list, List.of(record(1, 100, FlightStatus.PLANNED),
+                record(3, 300, FlightStatus.PLANNED), record(4, 400, FlightStatus.PLANNED)));
+
+        assertEquals(1, events.get());
+        assertSame(a, list.get(0));
+        assertEquals(List.of(1L, 3L, 4L), list.stream().map(Flight::getId).toList());
+    }
+
+    @Test
+    void applyChanges_AddsRemovesAndReordersInOneEvent() {
+        Flight a = flight(1, 100, FlightStatus.PLANNED);
+        Flight b = flight(2, 200, FlightStatus.PLANNED);
+        Flight c = flight(3, 300, FlightStatus.PLANNED);
+        ObservableList<Flight> list = FXCollections.observableArrayList(a, b, c);
+        AtomicInteger events = new AtomicInteger();
+        list.addListener((ListChangeListener<Flight>) ch -> events.incrementAndGet());
+
+        FlightListReconciler.applyChanges(list,
+                List.of(record(1, 350, FlightStatus.PLANNED), record(5, 150, FlightStatus.PLANNED),
+                        record(2, 200, FlightStatus.CANCELLED)),
+                List.of(3L),
+                f -> f.status() != FlightStatus.CANCELLED);
+
+        assertEquals(1, events.get());
+        assertEquals(List.of(5L, 1L), list.stream().map(Flight::getId).toList());
+        assertSame(a, list.get(1));
+        assertEquals(350, a.getArriveTs());
+    }
+}